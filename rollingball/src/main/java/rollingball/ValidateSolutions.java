@@ -0,0 +1,139 @@
+package rollingball;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import rollingball.dao.FileUserProgressDao;
+import rollingball.dao.UserProgressDao.LevelCompletionInfo;
+import rollingball.game.BatchValidator;
+import rollingball.game.BatchValidator.Report;
+import rollingball.game.BatchValidator.Solution;
+import rollingball.game.BatchValidator.Throughput;
+import rollingball.game.SimulationRunner;
+
+/**
+ * Command-line entry point that re-plays every solution stored in the given progress
+ * files and reports the ones that no longer win their level.
+ * <p>
+ * Usage: <code>ValidateSolutions [--threads n] file...</code>
+ * <p>
+ * Exits with status 1 if any solution fails, and 2 on invalid arguments.
+ */
+public class ValidateSolutions {
+    private static final String USAGE = "Usage: ValidateSolutions [--threads n] file...";
+
+    private record Arguments(int threads, List<File> files) {
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        var arguments = parseArguments(args);
+        var stored = loadCompletions(arguments.files());
+        if (validateAll(stored, arguments.threads()) > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Re-plays the stored solutions, printing a line for each.
+     * @return the number of solutions that no longer win their level
+     */
+    private static int validateAll(List<LevelCompletionInfo> stored, int threads) throws InterruptedException {
+        var solutions = stored.stream().map(ValidateSolutions::toSolution).toList();
+        var pool = new ForkJoinPool(threads);
+        var failures = new int[1];
+        try {
+            var validator = new BatchValidator(pool, new SimulationRunner());
+            var throughput = validator.validate(solutions, report -> {
+                if (!report.isVictory()) {
+                    ++failures[0];
+                }
+                var completion = stored.get(report.index());
+                System.out.printf("#%d %s: %s%n", report.index(), completion.level().getName(),
+                        describe(report, completion));
+            });
+            printSummary(throughput, failures[0], threads);
+        } finally {
+            pool.shutdown();
+        }
+        return failures[0];
+    }
+
+    private static void printSummary(Throughput throughput, int failures, int threads) {
+        System.out.printf("%d solutions, %d failed, %d threads: %.1f simulations/s, %.0f ticks/s%n",
+                throughput.simulations(), failures, threads, throughput.simulationsPerSecond(),
+                throughput.ticksPerSecond());
+    }
+
+    private static Arguments parseArguments(String[] args) {
+        var threads = Runtime.getRuntime().availableProcessors();
+        var files = new ArrayList<File>();
+        for (var i = 0; i < args.length; ++i) {
+            if (args[i].equals("--threads")) {
+                threads = parseThreads(i + 1 < args.length ? args[++i] : null);
+            } else {
+                files.add(new File(args[i]));
+            }
+        }
+        if (files.isEmpty()) {
+            exitWithUsage();
+        }
+        return new Arguments(threads, files);
+    }
+
+    // Returns the thread count, or exits if it is missing, not a number or not positive
+    private static int parseThreads(String value) {
+        int threads;
+        try {
+            threads = value != null ? Integer.parseInt(value) : 0;
+        } catch (NumberFormatException e) {
+            threads = 0;
+        }
+        if (threads < 1) {
+            exitWithUsage();
+        }
+        return threads;
+    }
+
+    private static void exitWithUsage() {
+        System.err.println(USAGE);
+        System.exit(2);
+    }
+
+    private static List<LevelCompletionInfo> loadCompletions(List<File> files) throws IOException {
+        var stored = new ArrayList<LevelCompletionInfo>();
+        for (var file : files) {
+            var progress = FileUserProgressDao.loadFromFile(file);
+            if (progress == null) {
+                System.err.println(file + ": corrupted, skipped");
+                continue;
+            }
+            stored.addAll(progress.getLevelCompletions());
+        }
+        return stored;
+    }
+
+    private static String describe(Report report, LevelCompletionInfo completion) {
+        var result = report.result();
+        if (report.error() != null) {
+            return "does not parse: " + report.error().getMessage();
+        } else if (result.isVictory()) {
+            return String.format("wins in %.2f s, score %.0f%% (stored %.0f%%)",
+                    result.timeSeconds(), 100 * result.score(), 100 * completion.scorePercentage());
+        }
+        return result.outcome() + (result.deathCause() != null ? " " + result.deathCause() : "")
+                + String.format(" after %.2f s", result.timeSeconds());
+    }
+
+    private static Solution toSolution(LevelCompletionInfo completion) {
+        var formulas = new ArrayList<String>();
+        var conditions = new ArrayList<String>();
+        for (var equation : completion.equations()) {
+            formulas.add(equation.formula());
+            conditions.add(equation.condition());
+        }
+        return new Solution(completion.level(), List.copyOf(formulas), List.copyOf(conditions));
+    }
+}
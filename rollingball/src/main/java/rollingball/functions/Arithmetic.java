@@ -0,0 +1,60 @@
+package rollingball.functions;
+
+import rollingball.functions.Function.Expr;
+import rollingball.functions.Operators.ArithmeticOp;
+
+/**
+ * A binary arithmetic operation.
+ * @param lhs the left-hand side operand
+ * @param op the operator
+ * @param rhs the right-hand side operand
+ */
+public record Arithmetic(Expr lhs, ArithmeticOp op, Expr rhs) implements Expr {
+    @Override
+    public double eval(EvalContext ctx) {
+        return switch (op) {
+            case ADD -> lhs.eval(ctx) + rhs.eval(ctx);
+            case SUB -> lhs.eval(ctx) - rhs.eval(ctx);
+            case MUL -> lhs.eval(ctx) * rhs.eval(ctx);
+            case DIV -> lhs.eval(ctx) / rhs.eval(ctx);
+            case POW -> Math.pow(lhs.eval(ctx), rhs.eval(ctx));
+        };
+    }
+
+    @Override
+    public double eval(double x, double t) {
+        return switch (op) {
+            case ADD -> lhs.eval(x, t) + rhs.eval(x, t);
+            case SUB -> lhs.eval(x, t) - rhs.eval(x, t);
+            case MUL -> lhs.eval(x, t) * rhs.eval(x, t);
+            case DIV -> lhs.eval(x, t) / rhs.eval(x, t);
+            case POW -> Math.pow(lhs.eval(x, t), rhs.eval(x, t));
+        };
+    }
+
+    @Override
+    public void evalBatch(double[] xs, double t, double[] out, int len) {
+        var scratch = BatchScratch.get();
+        var rhsValues = scratch.takeDoubles(len);
+        try {
+            lhs.evalBatch(xs, t, out, len);
+            rhs.evalBatch(xs, t, rhsValues, len);
+            BatchKernels.INSTANCE.arithmetic(op, out, rhsValues, len);
+        } finally {
+            scratch.releaseDoubles();
+        }
+    }
+
+    @Override
+    public Interval evalInterval(Interval x, Interval t) {
+        var a = lhs.evalInterval(x, t);
+        var b = rhs.evalInterval(x, t);
+        return switch (op) {
+            case ADD -> Interval.add(a, b);
+            case SUB -> Interval.sub(a, b);
+            case MUL -> Interval.mul(a, b);
+            case DIV -> Interval.div(a, b);
+            case POW -> Interval.pow(a, b);
+        };
+    }
+}
@@ -0,0 +1,73 @@
+package rollingball.functions;
+
+import rollingball.functions.Operators.ArithmeticOp;
+import rollingball.functions.Operators.RelationalOp;
+
+/**
+ * The element-wise loops used by batch evaluation of arithmetic and relational nodes.
+ *
+ * By default these are plain scalar loops. When the application is started with
+ * <code>--add-modules jdk.incubator.vector -Drollingball.simd=true</code> and was built
+ * with the <code>vector</code> Maven profile, an implementation based on the JDK Vector API
+ * is used instead, processing several samples per instruction. If the module or the
+ * implementation class is missing, the scalar loops are used as a fallback.
+ */
+interface BatchKernels {
+    /**
+     * The system property that opts in to the Vector API kernels.
+     */
+    String SIMD_PROPERTY = "rollingball.simd";
+
+    /**
+     * The kernels used by this JVM.
+     */
+    BatchKernels INSTANCE = load();
+
+    /**
+     * Computes <code>out[i] = out[i] op rhs[i]</code>.
+     * @param op the operator
+     * @param out the left-hand side operands; overwritten with the results
+     * @param rhs the right-hand side operands
+     * @param len the number of elements
+     */
+    void arithmetic(ArithmeticOp op, double[] out, double[] rhs, int len);
+
+    /**
+     * Computes <code>out[i] = -out[i]</code>.
+     * @param out the operands; overwritten with the results
+     * @param len the number of elements
+     */
+    void negate(double[] out, int len);
+
+    /**
+     * Computes <code>mask[i] = lhs[i] op rhs[i]</code>.
+     * @param op the operator
+     * @param lhs the left-hand side operands
+     * @param rhs the right-hand side operands
+     * @param mask receives the results
+     * @param len the number of elements
+     */
+    void compare(RelationalOp op, double[] lhs, double[] rhs, boolean[] mask, int len);
+
+    /**
+     * Checks whether the Vector API kernels are in use.
+     * @return true if batches are evaluated with SIMD instructions
+     */
+    static boolean isVectorized() {
+        return !(INSTANCE instanceof ScalarBatchKernels);
+    }
+
+    private static BatchKernels load() {
+        if (!Boolean.getBoolean(SIMD_PROPERTY)
+                || ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return new ScalarBatchKernels();
+        }
+
+        try {
+            var kernels = Class.forName("rollingball.functions.VectorBatchKernels");
+            return (BatchKernels) kernels.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return new ScalarBatchKernels();
+        }
+    }
+}
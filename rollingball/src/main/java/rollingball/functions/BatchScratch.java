@@ -0,0 +1,178 @@
+package rollingball.functions;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Per-thread scratch buffers for batch evaluation. Each node that needs
+ * temporary storage for an operand takes a buffer on the way down and
+ * returns it on the way up, so the buffers behave like a stack and
+ * batch evaluation does not allocate after warm-up.
+ *
+ * While a function is evaluated over a batch, the buffers also hold the values of
+ * its {@link Shared} nodes, which are all evaluated at the same x coordinates.
+ * For single samples, the scratch lends out contexts instead, whose
+ * {@link SampleCache} keeps the values of the shared nodes from one call to the next.
+ */
+final class BatchScratch {
+    private static final ThreadLocal<BatchScratch> LOCAL = ThreadLocal.withInitial(BatchScratch::new);
+
+    private double[][] doubles = new double[8][];
+    private int doublesTop;
+    private boolean[][] masks = new boolean[4][];
+    private int masksTop;
+
+    private final Map<Object, double[]> sharedValues = new IdentityHashMap<>();
+    private double[][] sharedBuffers = new double[4][];
+    private int sharedBuffersTop;
+    private int batchDepth;
+
+    private EvalContext[] contexts = new EvalContext[2];
+    private int contextsTop;
+
+    private BatchScratch() {
+    }
+
+    /**
+     * Returns the scratch buffers of the calling thread.
+     * @return the buffers
+     */
+    static BatchScratch get() {
+        return LOCAL.get();
+    }
+
+    /**
+     * Takes a temporary buffer of at least the given length.
+     * Must be paired with {@link #releaseDoubles()}.
+     * @param len the minimum length
+     * @return the buffer, with unspecified contents
+     */
+    double[] takeDoubles(int len) {
+        if (doublesTop == doubles.length) {
+            doubles = Arrays.copyOf(doubles, doubles.length * 2);
+        }
+        var buffer = doubles[doublesTop];
+        if (buffer == null || buffer.length < len) {
+            buffer = new double[len];
+            doubles[doublesTop] = buffer;
+        }
+        doublesTop++;
+        return buffer;
+    }
+
+    /**
+     * Returns the most recently taken buffer.
+     */
+    void releaseDoubles() {
+        doublesTop--;
+    }
+
+    /**
+     * Takes a temporary mask of at least the given length.
+     * Must be paired with {@link #releaseMask()}.
+     * @param len the minimum length
+     * @return the mask, with unspecified contents
+     */
+    boolean[] takeMask(int len) {
+        if (masksTop == masks.length) {
+            masks = Arrays.copyOf(masks, masks.length * 2);
+        }
+        var mask = masks[masksTop];
+        if (mask == null || mask.length < len) {
+            mask = new boolean[len];
+            masks[masksTop] = mask;
+        }
+        masksTop++;
+        return mask;
+    }
+
+    /**
+     * Returns the most recently taken mask.
+     */
+    void releaseMask() {
+        masksTop--;
+    }
+
+    /**
+     * Takes a context for evaluating a single sample. Must be paired with
+     * {@link #releaseContext()}. Contexts are reused, so the values remembered in their
+     * caches carry over to later samples evaluated at the same point.
+     * @param x the x coordinate
+     * @param t the time variable
+     * @return the context
+     */
+    EvalContext takeContext(double x, double t) {
+        if (contextsTop == contexts.length) {
+            contexts = Arrays.copyOf(contexts, contexts.length * 2);
+        }
+        var ctx = contexts[contextsTop];
+        if (ctx == null) {
+            ctx = new EvalContext(t);
+            contexts[contextsTop] = ctx;
+        }
+        contextsTop++;
+        ctx.x = x;
+        ctx.t = t;
+        return ctx;
+    }
+
+    /**
+     * Returns the most recently taken context.
+     */
+    void releaseContext() {
+        contextsTop--;
+    }
+
+    /**
+     * Starts evaluating a function over a batch. Must be paired with {@link #endBatch()}.
+     * Values are only remembered for the outermost batch, as a node that evaluates
+     * another function over a batch of its own passes different x coordinates.
+     */
+    void beginBatch() {
+        batchDepth++;
+    }
+
+    /**
+     * Ends the batch, forgetting the values of the shared nodes.
+     */
+    void endBatch() {
+        if (--batchDepth == 0) {
+            sharedValues.clear();
+            sharedBuffersTop = 0;
+        }
+    }
+
+    /**
+     * Returns the values a shared node was evaluated to in the current batch.
+     * @param node the node
+     * @return the values, or null if the node has not been evaluated in the batch
+     */
+    double[] sharedValues(Object node) {
+        return batchDepth == 1 ? sharedValues.get(node) : null;
+    }
+
+    /**
+     * Remembers the values of a shared node until the end of the current batch.
+     * Does nothing outside a batch.
+     * @param node the node
+     * @param values the values
+     * @param len the number of values
+     */
+    void putSharedValues(Object node, double[] values, int len) {
+        if (batchDepth != 1) {
+            return;
+        }
+        if (sharedBuffersTop == sharedBuffers.length) {
+            sharedBuffers = Arrays.copyOf(sharedBuffers, sharedBuffers.length * 2);
+        }
+        var buffer = sharedBuffers[sharedBuffersTop];
+        if (buffer == null || buffer.length < len) {
+            buffer = new double[len];
+            sharedBuffers[sharedBuffersTop] = buffer;
+        }
+        sharedBuffersTop++;
+        System.arraycopy(values, 0, buffer, 0, len);
+        sharedValues.put(node, buffer);
+    }
+}
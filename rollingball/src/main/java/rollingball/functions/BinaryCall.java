@@ -0,0 +1,52 @@
+package rollingball.functions;
+
+import rollingball.functions.BuiltinFunctions.Builtin;
+import rollingball.functions.BuiltinFunctions.Precision;
+import rollingball.functions.Function.Expr;
+
+/**
+ * A call to a two-parameter built-in function.
+ * @param fn the function
+ * @param first the first parameter
+ * @param second the second parameter
+ * @param precision how accurately the function is evaluated
+ */
+public record BinaryCall(Builtin fn, Expr first, Expr second, Precision precision) implements Expr {
+    /**
+     * A call evaluated at {@link Precision#DEFAULT}.
+     * @param fn the function
+     * @param first the first parameter
+     * @param second the second parameter
+     */
+    public BinaryCall(Builtin fn, Expr first, Expr second) {
+        this(fn, first, second, Precision.DEFAULT);
+    }
+
+    @Override
+    public double eval(EvalContext ctx) {
+        return fn.apply(first.eval(ctx), second.eval(ctx), precision);
+    }
+
+    @Override
+    public double eval(double x, double t) {
+        return fn.apply(first.eval(x, t), second.eval(x, t), precision);
+    }
+
+    @Override
+    public void evalBatch(double[] xs, double t, double[] out, int len) {
+        var scratch = BatchScratch.get();
+        var secondValues = scratch.takeDoubles(len);
+        try {
+            first.evalBatch(xs, t, out, len);
+            second.evalBatch(xs, t, secondValues, len);
+            fn.applyBatch(out, secondValues, len, precision);
+        } finally {
+            scratch.releaseDoubles();
+        }
+    }
+
+    @Override
+    public Interval evalInterval(Interval x, Interval t) {
+        return fn.applyInterval(first.evalInterval(x, t), second.evalInterval(x, t));
+    }
+}
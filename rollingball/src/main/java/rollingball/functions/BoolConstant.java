@@ -0,0 +1,36 @@
+package rollingball.functions;
+
+import java.util.Arrays;
+
+import rollingball.functions.Function.Condition;
+
+/**
+ * A constant truth value.
+ * @param value the value
+ */
+public record BoolConstant(boolean value) implements Condition {
+    @Override
+    public boolean eval(EvalContext ctx) {
+        return value;
+    }
+
+    @Override
+    public boolean eval(double x, double t) {
+        return value;
+    }
+
+    @Override
+    public void evalBatch(double[] xs, double t, boolean[] out, int len) {
+        Arrays.fill(out, 0, len, value);
+    }
+
+    @Override
+    public Interval.Truth evalInterval(Interval x, Interval t) {
+        return value ? Interval.Truth.ALWAYS : Interval.Truth.NEVER;
+    }
+
+    @Override
+    public boolean isConstant() {
+        return true;
+    }
+}
@@ -0,0 +1,100 @@
+package rollingball.functions;
+
+import rollingball.functions.XIntervals.Spans;
+
+/**
+ * Moves a bound solved from the coefficients of a comparison to the exact double
+ * where the comparison changes its result, so that the sets computed by
+ * {@link XIntervals} agree with evaluating the condition.
+ */
+final class BoundRefinement {
+    private BoundRefinement() {
+    } // Make non-instantiable
+
+    private static final long MIN_KEY = orderedBits(-Double.MAX_VALUE);
+    private static final long MAX_KEY = orderedBits(Double.MAX_VALUE);
+
+    /**
+     * Returns the half-line where the comparison holds at and above a solved bound.
+     */
+    static Spans from(Comparison original, EvalContext ctx, double bound) {
+        var lo = refine(original, ctx, bound, 1);
+        return Double.isNaN(lo) ? Spans.NONE : Spans.of(lo, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Returns the half-line where the comparison holds at and below a solved bound.
+     */
+    static Spans upTo(Comparison original, EvalContext ctx, double bound) {
+        var hi = refine(original, ctx, bound, -1);
+        return Double.isNaN(hi) ? Spans.NONE : Spans.of(Double.NEGATIVE_INFINITY, hi);
+    }
+
+    static boolean holdsAt(Comparison comparison, EvalContext ctx, double x) {
+        ctx.x = x;
+        return comparison.eval(ctx);
+    }
+
+    /**
+     * Finds the outermost x where the comparison holds, near a bound solved from the
+     * coefficients. <code>inward</code> is 1 if the comparison holds above the bound and
+     * -1 if below. The search runs over the doubles in order, first widening its step
+     * until the result of the comparison changes and then bisecting, so it takes at most
+     * about 128 evaluations however far the bound is off.
+     * @return the bound, an infinity if the comparison holds everywhere, or NaN if nowhere
+     */
+    private static double refine(Comparison original, EvalContext ctx, double bound, int inward) {
+        var start = Double.isFinite(bound) ? orderedBits(bound) : orderedBits(Math.copySign(Double.MAX_VALUE, bound));
+        if (holdsAt(original, ctx, start)) {
+            var outside = findChange(original, ctx, start, -inward, true);
+            return outside == start
+                    ? inward * Double.NEGATIVE_INFINITY
+                    : fromOrderedBits(bisect(original, ctx, start, outside));
+        }
+        var inside = findChange(original, ctx, start, inward, false);
+        return inside == start ? Double.NaN : fromOrderedBits(bisect(original, ctx, inside, start));
+    }
+
+    // Narrows down to the last position where the comparison holds, given that
+    // it holds at inside but not at outside
+    private static long bisect(Comparison original, EvalContext ctx, long inside, long outside) {
+        while (Math.abs(inside - outside) > 1) {
+            var mid = (inside >> 1) + (outside >> 1) + (inside & outside & 1);
+            if (holdsAt(original, ctx, mid)) {
+                inside = mid;
+            } else {
+                outside = mid;
+            }
+        }
+        return inside;
+    }
+
+    // Steps away from start in exponentially growing steps until the comparison no longer
+    // gives `from`, returning that position, or start if it never changes
+    private static long findChange(Comparison original, EvalContext ctx, long start, int direction, boolean from) {
+        for (var step = 1L; step > 0; step <<= 1) {
+            var key = direction > 0 ? Math.min(MAX_KEY, start + step) : Math.max(MIN_KEY, start - step);
+            if (holdsAt(original, ctx, key) != from) {
+                return key;
+            }
+            if (key == MAX_KEY || key == MIN_KEY) {
+                break;
+            }
+        }
+        return start;
+    }
+
+    // Maps doubles to longs in the same order, so that adjacent doubles map to adjacent longs
+    private static long orderedBits(double x) {
+        var bits = Double.doubleToRawLongBits(x);
+        return bits >= 0 ? bits : bits ^ Long.MAX_VALUE;
+    }
+
+    private static double fromOrderedBits(long key) {
+        return Double.longBitsToDouble(key >= 0 ? key : key ^ Long.MAX_VALUE);
+    }
+
+    private static boolean holdsAt(Comparison comparison, EvalContext ctx, long key) {
+        return holdsAt(comparison, ctx, fromOrderedBits(key));
+    }
+}
@@ -11,6 +11,221 @@ public final class BuiltinFunctions {
     private BuiltinFunctions() {
     } // Make non-instantiable
 
+    /**
+     * How accurately builtins are evaluated. Calls in a tree carry a precision; see
+     * {@link Function#withPrecision(Precision)}.
+     */
+    public enum Precision {
+        /**
+         * Polynomial approximations of the transcendental functions, within about 1e-9
+         * of {@link #DEFAULT}. Intended for rendering.
+         */
+        FAST,
+        /**
+         * {@link Math}, which may use platform-specific intrinsics.
+         */
+        DEFAULT,
+        /**
+         * {@link StrictMath}, which gives bit-identical results on every machine.
+         * Intended for simulation and scoring.
+         */
+        STRICT
+    }
+
+    /**
+     * Represents a built-in function that can be called from expressions.
+     * Single-parameter functions ignore the second argument of {@link #apply(double, double)}.
+     */
+    public enum Builtin {
+        SIN(1), COS(1), TAN(1),
+        ASIN(1), ACOS(1), ATAN(1),
+        SINH(1), COSH(1), TANH(1),
+        EXP(1), LOG(1), LOG10(1),
+        SQRT(1), CBRT(1), ABS(1),
+        FLOOR(1), CEIL(1), ROUND(1), SIGNUM(1),
+        MIN(2), MAX(2), POW(2), ATAN2(2), HYPOT(2);
+
+        private final int arity;
+
+        private Builtin(int arity) {
+            this.arity = arity;
+        }
+
+        /**
+         * Returns the number of parameters the function takes.
+         * @return 1 or 2
+         */
+        public int getArity() {
+            return arity;
+        }
+
+        /**
+         * Applies the function to the given arguments.
+         * @param a the first argument
+         * @param b the second argument, ignored by single-parameter functions
+         * @return the result
+         */
+        public double apply(double a, double b) {
+            return switch (this) {
+                case SIN -> Math.sin(a);
+                case COS -> Math.cos(a);
+                case TAN -> Math.tan(a);
+                case ASIN -> Math.asin(a);
+                case ACOS -> Math.acos(a);
+                case ATAN -> Math.atan(a);
+                case SINH -> Math.sinh(a);
+                case COSH -> Math.cosh(a);
+                case TANH -> Math.tanh(a);
+                default -> applyMiscellaneous(a, b);
+            };
+        }
+
+        /**
+         * Applies the function to the given arguments at the given precision.
+         * @param a the first argument
+         * @param b the second argument, ignored by single-parameter functions
+         * @param precision the precision
+         * @return the result
+         */
+        public double apply(double a, double b, Precision precision) {
+            return switch (precision) {
+                case FAST -> applyFast(a, b);
+                case DEFAULT -> apply(a, b);
+                case STRICT -> applyStrict(a, b);
+            };
+        }
+
+        /**
+         * Applies the function element-wise over a batch, storing the results in <code>a</code>.
+         * @param a the first arguments; overwritten with the results
+         * @param b the second arguments, or null for single-parameter functions
+         * @param len the number of elements
+         */
+        public void applyBatch(double[] a, double[] b, int len) {
+            applyBatch(a, b, len, Precision.DEFAULT);
+        }
+
+        /**
+         * Applies the function element-wise over a batch at the given precision.
+         * See {@link #applyBatch(double[], double[], int)}.
+         * @param a the first arguments; overwritten with the results
+         * @param b the second arguments, or null for single-parameter functions
+         * @param len the number of elements
+         * @param precision the precision
+         */
+        public void applyBatch(double[] a, double[] b, int len, Precision precision) {
+            for (var i = 0; i < len; ++i) {
+                a[i] = apply(a[i], b == null ? 0.0 : b[i], precision);
+            }
+        }
+
+        /**
+         * Bounds the result of the function over ranges of arguments.
+         * See {@link Interval}.
+         * @param a the range of the first argument
+         * @param b the range of the second argument, ignored by single-parameter functions
+         * @return a range containing every non-NaN result
+         */
+        public Interval applyInterval(Interval a, Interval b) {
+            return switch (this) {
+                case SIN -> Interval.sin(a);
+                case COS -> Interval.cos(a);
+                case TAN -> Interval.tan(a);
+                case ASIN -> Interval.increasing(a, -1.0, 1.0, Math::asin);
+                case ACOS -> Interval.acos(a);
+                case ATAN -> Interval.increasing(a, Math::atan);
+                case SINH -> Interval.increasing(a, Math::sinh);
+                case COSH -> Interval.cosh(a);
+                case TANH -> Interval.increasing(a, Math::tanh);
+                default -> applyMiscellaneousInterval(a, b);
+            };
+        }
+
+        private Interval applyMiscellaneousInterval(Interval a, Interval b) {
+            return switch (this) {
+                case EXP -> Interval.increasing(a, Math::exp);
+                case LOG -> Interval.increasing(a, 0.0, Double.POSITIVE_INFINITY, Math::log);
+                case LOG10 -> Interval.increasing(a, 0.0, Double.POSITIVE_INFINITY, Math::log10);
+                case SQRT -> Interval.increasing(a, 0.0, Double.POSITIVE_INFINITY, Math::sqrt);
+                case CBRT -> Interval.increasing(a, Math::cbrt);
+                case ABS -> Interval.abs(a);
+                case FLOOR -> Interval.increasing(a, Math::floor);
+                case CEIL -> Interval.increasing(a, Math::ceil);
+                case ROUND -> Interval.round(a);
+                case SIGNUM -> Interval.increasing(a, Math::signum);
+                case MIN -> Interval.min(a, b);
+                case MAX -> Interval.max(a, b);
+                case POW -> Interval.pow(a, b);
+                case ATAN2 -> Interval.atan2(a, b);
+                case HYPOT -> Interval.hypot(a, b);
+                default -> throw new IllegalStateException("Unhandled builtin " + this);
+            };
+        }
+
+        private double applyMiscellaneous(double a, double b) {
+            return switch (this) {
+                case EXP -> Math.exp(a);
+                case LOG -> Math.log(a);
+                case LOG10 -> Math.log10(a);
+                case SQRT -> Math.sqrt(a);
+                case CBRT -> Math.cbrt(a);
+                case ABS -> Math.abs(a);
+                case FLOOR -> Math.floor(a);
+                case CEIL -> Math.ceil(a);
+                case ROUND -> Math.round(a);
+                case SIGNUM -> Math.signum(a);
+                default -> applyMultiParam(a, b);
+            };
+        }
+
+        private double applyFast(double a, double b) {
+            return switch (this) {
+                case SIN -> FastMath.sin(a);
+                case COS -> FastMath.cos(a);
+                case TAN -> FastMath.tan(a);
+                case ATAN -> FastMath.atan(a);
+                case EXP -> FastMath.exp(a);
+                case LOG -> FastMath.log(a);
+                case LOG10 -> FastMath.log10(a);
+                case POW -> FastMath.pow(a, b);
+                case ATAN2 -> FastMath.atan2(a, b);
+                default -> apply(a, b);
+            };
+        }
+
+        private double applyStrict(double a, double b) {
+            return switch (this) {
+                case SIN -> StrictMath.sin(a);
+                case COS -> StrictMath.cos(a);
+                case TAN -> StrictMath.tan(a);
+                case ASIN -> StrictMath.asin(a);
+                case ACOS -> StrictMath.acos(a);
+                case ATAN -> StrictMath.atan(a);
+                case SINH -> StrictMath.sinh(a);
+                case COSH -> StrictMath.cosh(a);
+                case TANH -> StrictMath.tanh(a);
+                case EXP -> StrictMath.exp(a);
+                case LOG -> StrictMath.log(a);
+                case LOG10 -> StrictMath.log10(a);
+                case CBRT -> StrictMath.cbrt(a);
+                case POW -> StrictMath.pow(a, b);
+                case ATAN2 -> StrictMath.atan2(a, b);
+                default -> apply(a, b); // Correctly rounded or exact in Math too
+            };
+        }
+
+        private double applyMultiParam(double a, double b) {
+            return switch (this) {
+                case MIN -> Math.min(a, b);
+                case MAX -> Math.max(a, b);
+                case POW -> Math.pow(a, b);
+                case ATAN2 -> Math.atan2(a, b);
+                case HYPOT -> Math.sqrt(a * a + b * b);
+                default -> throw new IllegalStateException("Unhandled builtin " + this);
+            };
+        }
+    }
+
     /**
      * Maps a function name and parameters to an {@link Expr}.
      * Recognized function names are:
@@ -30,63 +245,59 @@ public final class BuiltinFunctions {
      * @throws ParserException if the function name is not recognized.
      */
     public static Expr parseFunctionCall(String name, Expr firstParam, Supplier<Expr> paramSupplier) {
-        Expr result;
-        if ((result = tryParseTrigonometric(name, firstParam)) != null) {
-            return result;
-        }
-        if ((result = tryParseMiscellaneous(name, firstParam)) != null) {
-            return result;
-        }
-        if ((result = tryParseMultiParam(name, firstParam, paramSupplier.get())) != null) {
-            return result;
+        var fn = lookup(name.toCharArray(), 0, name.length());
+        if (fn == null) {
+            throw new ParserException("Unknown function: '" + name + "'");
         }
-
-        throw new ParserException("Unknown function: '" + name + "'");
+        return fn.getArity() == 1
+                ? ConstantFolder.call(fn, firstParam)
+                : ConstantFolder.call(fn, firstParam, paramSupplier.get());
     }
 
-    private static Expr tryParseTrigonometric(String name, Expr param) {
-        return switch (name.toLowerCase()) {
-            case "sin" -> ctx -> Math.sin(param.eval(ctx));
-            case "cos" -> ctx -> Math.cos(param.eval(ctx));
-            case "tan" -> ctx -> Math.tan(param.eval(ctx));
-            case "asin", "arcsin" -> ctx -> Math.asin(param.eval(ctx));
-            case "acos", "arccos" -> ctx -> Math.acos(param.eval(ctx));
-            case "atan", "arctan" -> ctx -> Math.atan(param.eval(ctx));
-            case "sinh" -> ctx -> Math.sinh(param.eval(ctx));
-            case "cosh" -> ctx -> Math.cosh(param.eval(ctx));
-            case "tanh" -> ctx -> Math.tanh(param.eval(ctx));
-            default -> null;
-        };
-    }
+    private record Name(char[] chars, Builtin fn, boolean ignoreCase) {
+        Name(String name, Builtin fn) {
+            this(name.toCharArray(), fn, fn.getArity() == 1); // Only single-parameter names ignore case
+        }
 
-    private static Expr tryParseMiscellaneous(String name, Expr param) {
-        return switch (name.toLowerCase()) {
-            case "exp" -> ctx -> Math.exp(param.eval(ctx));
-            case "log", "ln" -> ctx -> Math.log(param.eval(ctx));
-            case "log10", "lg" -> ctx -> Math.log10(param.eval(ctx));
-            case "sqrt" -> ctx -> Math.sqrt(param.eval(ctx));
-            case "cbrt" -> ctx -> Math.cbrt(param.eval(ctx));
-            case "abs" -> ctx -> Math.abs(param.eval(ctx));
-            case "floor" -> ctx -> Math.floor(param.eval(ctx));
-            case "ceil" -> ctx -> Math.ceil(param.eval(ctx));
-            case "round" -> ctx -> Math.round(param.eval(ctx));
-            case "sign", "signum" -> ctx -> Math.signum(param.eval(ctx));
-            default -> null;
-        };
+        boolean matches(char[] src, int start, int end) {
+            if (end - start != chars.length) {
+                return false;
+            }
+            for (var i = 0; i < chars.length; ++i) {
+                var c = src[start + i];
+                if (c != chars[i] && !(ignoreCase && Character.toLowerCase(c) == chars[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
     }
 
-    private static Expr tryParseMultiParam(String name, Expr param1, Expr param2) {
-        return switch (name) {
-            case "min" -> ctx -> Math.min(param1.eval(ctx), param2.eval(ctx));
-            case "max" -> ctx -> Math.max(param1.eval(ctx), param2.eval(ctx));
-            case "pow" -> ctx -> Math.pow(param1.eval(ctx), param2.eval(ctx));
-            case "atan2", "arctan2" -> ctx -> Math.atan2(param1.eval(ctx), param2.eval(ctx));
-            case "hypot" -> ctx -> {
-                var x1 = param1.eval(ctx);
-                var x2 = param2.eval(ctx);
-                return Math.sqrt(x1 * x1 + x2 * x2);
-            };
-            default -> null;
-        };
+    private static final Name[] NAMES = {
+        new Name("sin", Builtin.SIN), new Name("cos", Builtin.COS), new Name("tan", Builtin.TAN),
+        new Name("asin", Builtin.ASIN), new Name("arcsin", Builtin.ASIN),
+        new Name("acos", Builtin.ACOS), new Name("arccos", Builtin.ACOS),
+        new Name("atan", Builtin.ATAN), new Name("arctan", Builtin.ATAN),
+        new Name("sinh", Builtin.SINH), new Name("cosh", Builtin.COSH), new Name("tanh", Builtin.TANH),
+        new Name("exp", Builtin.EXP), new Name("log", Builtin.LOG), new Name("ln", Builtin.LOG),
+        new Name("log10", Builtin.LOG10), new Name("lg", Builtin.LOG10),
+        new Name("sqrt", Builtin.SQRT), new Name("cbrt", Builtin.CBRT), new Name("abs", Builtin.ABS),
+        new Name("floor", Builtin.FLOOR), new Name("ceil", Builtin.CEIL), new Name("round", Builtin.ROUND),
+        new Name("sign", Builtin.SIGNUM), new Name("signum", Builtin.SIGNUM),
+        new Name("min", Builtin.MIN), new Name("max", Builtin.MAX), new Name("pow", Builtin.POW),
+        new Name("atan2", Builtin.ATAN2), new Name("arctan2", Builtin.ATAN2), new Name("hypot", Builtin.HYPOT),
+    };
+
+    /**
+     * Looks up a builtin by the name in <code>src[start..end)</code>, without creating a string.
+     * @return the builtin, or null if the name is not recognized
+     */
+    static Builtin lookup(char[] src, int start, int end) {
+        for (var name : NAMES) {
+            if (name.matches(src, start, end)) {
+                return name.fn();
+            }
+        }
+        return null;
     }
 }
@@ -0,0 +1,86 @@
+package rollingball.functions;
+
+import rollingball.functions.Function.Expr;
+import rollingball.functions.Operators.ArithmeticOp;
+
+/**
+ * Builds chains of operators of the same precedence, such as <code>a+b-c+d</code> or
+ * <code>a*b/c</code>. Short chains nest to the left, as written. Longer ones, like
+ * machine-generated series with thousands of terms, are built as balanced trees, so
+ * that the depth grows logarithmically with the number of operands and the recursive
+ * passes and evaluators never see a chain deeper than a few dozen nodes.
+ */
+final class Chains {
+    private Chains() {
+    } // Make non-instantiable
+
+    /**
+     * The longest chain built left-nested, so that typed expressions evaluate
+     * exactly in the order written.
+     */
+    static final int MAX_UNBALANCED = 32;
+
+    /**
+     * Builds a chain. The operands are <code>operands[start]</code> to
+     * <code>operands[start + count - 1]</code>, and <code>ops[start + i]</code> is the
+     * operator applied to <code>operands[start + i]</code>; <code>ops[start]</code>
+     * is ignored. All operators must be {@link ArithmeticOp#ADD} and
+     * {@link ArithmeticOp#SUB}, or {@link ArithmeticOp#MUL} and {@link ArithmeticOp#DIV}.
+     * Both arrays are used as scratch space when balancing.
+     * @param operands the operands
+     * @param ops the operators
+     * @param start the index of the first operand
+     * @param count the number of operands, at least 1
+     * @return the chain
+     */
+    static Expr build(Expr[] operands, ArithmeticOp[] ops, int start, int count) {
+        var result = operands[start];
+        if (count <= MAX_UNBALANCED) {
+            for (var i = 1; i < count; ++i) {
+                result = ConstantFolder.arithmetic(result, ops[start + i], operands[start + i]);
+            }
+            return result;
+        }
+
+        return balance(operands, ops, start, count);
+    }
+
+    // Every operand carries a sign: the identity operator (+ or *) or the inverse
+    // one (- or /). Neighbours are combined pairwise until one remains; as the
+    // first operand is positive, so is the result.
+    private static Expr balance(Expr[] operands, ArithmeticOp[] ops, int start, int count) {
+        var identity = ops[start + 1].getPrecedence() == ArithmeticOp.ADD.getPrecedence()
+                ? ArithmeticOp.ADD : ArithmeticOp.MUL;
+        ops[start] = identity;
+        while (count > 1) {
+            var half = count / 2;
+            for (var i = 0; i < half; ++i) {
+                combinePair(operands, ops, start, i, identity);
+            }
+            if (count % 2 != 0) {
+                operands[start + half] = operands[start + count - 1];
+                ops[start + half] = ops[start + count - 1];
+            }
+            for (var i = (count + 1) / 2; i < count; ++i) {
+                operands[start + i] = null;
+            }
+            count = (count + 1) / 2;
+        }
+        return operands[start];
+    }
+
+    // Combines the operands 2i and 2i+1 into operand i, with its sign
+    private static void combinePair(Expr[] operands, ArithmeticOp[] ops, int start, int i, ArithmeticOp identity) {
+        var inverse = identity == ArithmeticOp.ADD ? ArithmeticOp.SUB : ArithmeticOp.DIV;
+        var a = operands[start + 2 * i];
+        var b = operands[start + 2 * i + 1];
+        var aInverse = ops[start + 2 * i] == inverse;
+        var bInverse = ops[start + 2 * i + 1] == inverse;
+        if (aInverse && !bInverse) {
+            operands[start + i] = ConstantFolder.arithmetic(b, inverse, a); // -a + b = b - a
+        } else {
+            operands[start + i] = ConstantFolder.arithmetic(a, aInverse == bInverse ? identity : inverse, b);
+        }
+        ops[start + i] = aInverse && bInverse ? inverse : identity; // -a - b = -(a + b)
+    }
+}
@@ -0,0 +1,284 @@
+package rollingball.functions;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A minimal writer for JVM class files, supporting just enough to emit a
+ * final class with a no-argument constructor and straight-line methods.
+ * Methods may not contain branches, because this writer does not
+ * compute stack map frames.
+ */
+final class ClassFileWriter {
+    private static final int JAVA_17_MAJOR_VERSION = 61;
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+
+    private static final int TAG_UTF8 = 1;
+    private static final int TAG_DOUBLE = 6;
+    private static final int TAG_CLASS = 7;
+    private static final int TAG_METHODREF = 10;
+    private static final int TAG_NAME_AND_TYPE = 12;
+
+    /**
+     * A method body under construction. Tracks the operand stack depth
+     * so that max_stack can be written without a separate analysis pass.
+     */
+    final class MethodWriter {
+        private final int nameIdx;
+        private final int descriptorIdx;
+        private int maxLocals;
+        private final ByteArrayOutputStream code = new ByteArrayOutputStream();
+        private int stack;
+        private int maxStack;
+
+        private MethodWriter(String name, String descriptor, int maxLocals) {
+            this.nameIdx = utf8(name);
+            this.descriptorIdx = utf8(descriptor);
+            this.maxLocals = maxLocals;
+        }
+
+        /**
+         * Reserves a new local variable slot after the ones given to {@link ClassFileWriter#addMethod}.
+         * @param size the size of the variable in slots; 2 for a double
+         * @return the index of the first slot
+         */
+        int addLocal(int size) {
+            var slot = maxLocals;
+            maxLocals += size;
+            return slot;
+        }
+
+        /**
+         * Emits a single-byte instruction.
+         * @param opcode the opcode
+         * @param stackDelta the change in operand stack size, in slots
+         */
+        void op(int opcode, int stackDelta) {
+            code.write(opcode);
+            adjustStack(stackDelta);
+        }
+
+        /**
+         * Emits an instruction with a one-byte operand, such as a local variable index.
+         * @param opcode the opcode
+         * @param operand the operand
+         * @param stackDelta the change in operand stack size, in slots
+         */
+        void opU1(int opcode, int operand, int stackDelta) {
+            code.write(opcode);
+            code.write(operand);
+            adjustStack(stackDelta);
+        }
+
+        /**
+         * Emits an instruction with a two-byte operand, such as a constant pool index.
+         * @param opcode the opcode
+         * @param operand the operand
+         * @param stackDelta the change in operand stack size, in slots
+         */
+        void opU2(int opcode, int operand, int stackDelta) {
+            code.write(opcode);
+            code.write(operand >> 8);
+            code.write(operand);
+            adjustStack(stackDelta);
+        }
+
+        int codeLength() {
+            return code.size();
+        }
+
+        private void adjustStack(int delta) {
+            stack += delta;
+            maxStack = Math.max(maxStack, stack);
+        }
+
+        private void writeTo(DataOutputStream out, int codeAttrIdx) throws IOException {
+            var bytes = code.toByteArray();
+            out.writeShort(ACC_PUBLIC);
+            out.writeShort(nameIdx);
+            out.writeShort(descriptorIdx);
+            out.writeShort(1); // attributes_count
+            out.writeShort(codeAttrIdx);
+            out.writeInt(12 + bytes.length);
+            out.writeShort(maxStack);
+            out.writeShort(maxLocals);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+            out.writeShort(0); // exception_table_length
+            out.writeShort(0); // attributes_count
+        }
+    }
+
+    private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream pool = new DataOutputStream(poolBytes);
+    private final Map<String, Integer> poolIndices = new HashMap<>();
+    private int poolCount = 1;
+
+    private final List<MethodWriter> methods = new ArrayList<>();
+
+    /**
+     * Starts a new public method. Instructions are appended to the returned writer.
+     * @param name the method name
+     * @param descriptor the method descriptor, e.g. <code>(DD)D</code>
+     * @param maxLocals the number of local variable slots, including <code>this</code>
+     * @return the writer for the method body
+     */
+    MethodWriter addMethod(String name, String descriptor, int maxLocals) {
+        var method = new MethodWriter(name, descriptor, maxLocals);
+        methods.add(method);
+        return method;
+    }
+
+    /**
+     * Returns the constant pool index of a double constant, adding it if needed.
+     * @param value the constant
+     * @return the index, usable with <code>ldc2_w</code>
+     */
+    int doubleConst(double value) {
+        var key = "D" + Double.doubleToRawLongBits(value);
+        var idx = poolIndices.get(key);
+        if (idx != null) {
+            return idx;
+        }
+        idx = poolCount;
+        writePool(() -> {
+            pool.writeByte(TAG_DOUBLE);
+            pool.writeDouble(value);
+        });
+        poolCount += 2; // doubles take two constant pool slots
+        poolIndices.put(key, idx);
+        return idx;
+    }
+
+    /**
+     * Returns the constant pool index of a method reference, adding it if needed.
+     * @param owner the internal name of the class declaring the method
+     * @param name the method name
+     * @param descriptor the method descriptor
+     * @return the index, usable with <code>invokestatic</code> and <code>invokespecial</code>
+     */
+    int methodRef(String owner, String name, String descriptor) {
+        var ownerIdx = classRef(owner);
+        var nameAndTypeIdx = nameAndType(name, descriptor);
+        return intern("M" + owner + "." + name + descriptor, TAG_METHODREF, ownerIdx, nameAndTypeIdx);
+    }
+
+    /**
+     * Assembles the class file.
+     * @param thisClass the internal name of the class
+     * @param superClass the internal name of the super class
+     * @param interfaceName the internal name of the single implemented interface
+     * @return the class file bytes
+     */
+    byte[] toByteArray(String thisClass, String superClass, String interfaceName) {
+        var thisIdx = classRef(thisClass);
+        var superIdx = classRef(superClass);
+        var interfaceIdx = classRef(interfaceName);
+        var codeAttrIdx = utf8("Code");
+
+        var bytes = new ByteArrayOutputStream();
+        try (var out = new DataOutputStream(bytes)) {
+            writeHeader(out);
+            writeClassInfo(out, thisIdx, superIdx, interfaceIdx);
+            out.writeShort(methods.size());
+            for (var method : methods) {
+                method.writeTo(out, codeAttrIdx);
+            }
+            out.writeShort(0); // attributes_count
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    // The magic number, the version and the constant pool, which must be complete by now
+    private void writeHeader(DataOutputStream out) throws IOException {
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0);
+        out.writeShort(JAVA_17_MAJOR_VERSION);
+        out.writeShort(poolCount);
+        out.write(poolBytes.toByteArray());
+    }
+
+    private static void writeClassInfo(DataOutputStream out, int thisIdx, int superIdx, int interfaceIdx)
+            throws IOException {
+        out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+        out.writeShort(thisIdx);
+        out.writeShort(superIdx);
+        out.writeShort(1);
+        out.writeShort(interfaceIdx);
+        out.writeShort(0); // fields_count
+    }
+
+    /**
+     * Returns the number of constant pool slots in use.
+     * @return the constant pool count
+     */
+    int poolSize() {
+        return poolCount;
+    }
+
+    private int utf8(String value) {
+        var key = "U" + value;
+        var idx = poolIndices.get(key);
+        if (idx != null) {
+            return idx;
+        }
+        idx = poolCount++;
+        writePool(() -> {
+            pool.writeByte(TAG_UTF8);
+            pool.writeUTF(value);
+        });
+        poolIndices.put(key, idx);
+        return idx;
+    }
+
+    private int classRef(String internalName) {
+        var nameIdx = utf8(internalName);
+        return intern("C" + internalName, TAG_CLASS, nameIdx, -1);
+    }
+
+    private int nameAndType(String name, String descriptor) {
+        var nameIdx = utf8(name);
+        var descriptorIdx = utf8(descriptor);
+        return intern("N" + name + ":" + descriptor, TAG_NAME_AND_TYPE, nameIdx, descriptorIdx);
+    }
+
+    private int intern(String key, int tag, int first, int second) {
+        var idx = poolIndices.get(key);
+        if (idx != null) {
+            return idx;
+        }
+        idx = poolCount++;
+        writePool(() -> {
+            pool.writeByte(tag);
+            pool.writeShort(first);
+            if (second >= 0) {
+                pool.writeShort(second);
+            }
+        });
+        poolIndices.put(key, idx);
+        return idx;
+    }
+
+    @FunctionalInterface
+    private interface PoolWrite {
+        void write() throws IOException;
+    }
+
+    private static void writePool(PoolWrite write) {
+        try {
+            write.write();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package rollingball.functions;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+import rollingball.functions.Function.Condition;
+import rollingball.functions.Function.Expr;
+
+/**
+ * Common-subexpression elimination. The trees of one or more functions are
+ * hash-consed, so that structurally identical subtrees become a single node, and
+ * every subtree that then occurs more than once is wrapped in one {@link Shared}
+ * node. This covers repeats within a formula (<code>sin(t/2)+sin(t/2)^2</code>),
+ * between a formula and its condition, and between the graphs of a level.
+ *
+ * The tree interpreter evaluates a shared node once per <code>(x, t)</code>, and
+ * {@link FunctionCompiler} and {@link RegisterProgram} keep its value in a local
+ * variable or register instead of recomputing it.
+ */
+public final class CommonSubexpressions {
+    private CommonSubexpressions() {
+    } // Make non-instantiable
+
+    /**
+     * Shares the repeated subexpressions of a single function.
+     * @param fn the function
+     * @return a function with the same backend, evaluating to the same values
+     */
+    public static Function share(Function fn) {
+        return share(List.of(fn)).get(0);
+    }
+
+    /**
+     * Shares repeated subexpressions between several functions. Any {@link Shared}
+     * or {@link Hoisted} nodes from an earlier call are discarded first, so this can be called again
+     * whenever the set of functions changes.
+     * @param fns the functions
+     * @return new functions with the same backends, in the same order
+     */
+    public static List<Function> share(List<Function> fns) {
+        var interner = new Interner();
+        var formulas = new ArrayList<Expr>();
+        var conditions = new ArrayList<Condition>();
+        for (var fn : fns) {
+            formulas.add(interner.internRoot(fn.getFormula()));
+            conditions.add(interner.internCondition(fn.getCondition()));
+        }
+
+        var result = new ArrayList<Function>();
+        for (var i = 0; i < fns.size(); ++i) {
+            var shared = new Function(interner.wrapExpr(formulas.get(i)), interner.wrapCondition(conditions.get(i)));
+            shared.setBackend(fns.get(i).getBackend());
+            result.add(shared);
+        }
+        return result;
+    }
+
+    /**
+     * Identifies a node by its type, its non-node properties and the identities of its
+     * children. Children are always interned first, so comparing them by identity is
+     * equivalent to comparing them structurally, without walking whole subtrees.
+     */
+    private record Key(Class<?> type, Object tag, Expr first, Expr second) {
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Key key && key.type == type && Objects.equals(key.tag, tag)
+                    && key.first == first && key.second == second;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(type, tag, System.identityHashCode(first), System.identityHashCode(second));
+        }
+    }
+
+    /**
+     * The coefficients of a {@link Polynomial} or {@link HarmonicSeries}, compared by value.
+     */
+    private record Coefficients(double[] first, double[] second) {
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Coefficients c && Arrays.equals(c.first, first) && Arrays.equals(c.second, second);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Arrays.hashCode(first) + Arrays.hashCode(second);
+        }
+    }
+
+    private static final class Interner {
+        private final Map<Key, Expr> canonical = new HashMap<>();
+        private final Map<Expr, Integer> uses = new IdentityHashMap<>();
+        private final Map<Expr, Expr> wrapped = new IdentityHashMap<>();
+
+        Expr internRoot(Expr expr) {
+            var result = internExpr(expr);
+            addUse(result);
+            return result;
+        }
+
+        Condition internCondition(Condition condition) {
+            if (condition instanceof Comparison c) {
+                return new Comparison(internRoot(c.lhs()), c.op(), internRoot(c.rhs()));
+            } else if (condition instanceof Conjunction c) {
+                return new Conjunction(internCondition(c.lhs()), internCondition(c.rhs()));
+            }
+            return condition;
+        }
+
+        private Expr internExpr(Expr expr) {
+            if (expr instanceof Shared s) {
+                return internExpr(s.expr());
+            } else if (expr instanceof Hoisted h) {
+                return internExpr(h.expr());
+            } else if (expr instanceof Constant c) {
+                return lookup(new Key(Constant.class, c.value(), null, null), expr);
+            } else if (expr instanceof Negate n) {
+                var operand = internExpr(n.operand());
+                return lookup(new Key(Negate.class, null, operand, null), () -> new Negate(operand));
+            } else if (expr instanceof Arithmetic a) {
+                var lhs = internExpr(a.lhs());
+                var rhs = internExpr(a.rhs());
+                return lookup(new Key(Arithmetic.class, a.op(), lhs, rhs), () -> new Arithmetic(lhs, a.op(), rhs));
+            } else if (expr instanceof IntPower p) {
+                var base = internExpr(p.base());
+                return lookup(new Key(IntPower.class, p.exponent(), base, null), () -> new IntPower(base, p.exponent()));
+            }
+            return internSeries(expr);
+        }
+
+        private Expr internSeries(Expr expr) {
+            if (expr instanceof Polynomial p) {
+                var arg = internExpr(p.arg());
+                return lookup(new Key(Polynomial.class, new Coefficients(p.coefficients(), null), arg, null),
+                        () -> new Polynomial(arg, p.coefficients()));
+            } else if (expr instanceof HarmonicSeries h) {
+                var arg = internExpr(h.arg());
+                return lookup(new Key(HarmonicSeries.class,
+                        List.of(h.precision(), new Coefficients(h.sines(), h.cosines())), arg, null),
+                        () -> new HarmonicSeries(arg, h.sines(), h.cosines(), h.precision()));
+            }
+            return internCall(expr);
+        }
+
+        private Expr internCall(Expr expr) {
+            if (expr instanceof UnaryCall call) {
+                var arg = internExpr(call.arg());
+                return lookup(new Key(UnaryCall.class, List.of(call.fn(), call.precision()), arg, null),
+                        () -> new UnaryCall(call.fn(), arg, call.precision()));
+            } else if (expr instanceof BinaryCall call) {
+                var first = internExpr(call.first());
+                var second = internExpr(call.second());
+                return lookup(new Key(BinaryCall.class, List.of(call.fn(), call.precision()), first, second),
+                        () -> new BinaryCall(call.fn(), first, second, call.precision()));
+            }
+            return expr; // Variables, and opaque nodes, can only be compared by identity
+        }
+
+        private Expr lookup(Key key, Expr node) {
+            return lookup(key, () -> node);
+        }
+
+        private Expr lookup(Key key, Supplier<Expr> factory) {
+            var existing = canonical.get(key);
+            if (existing != null) {
+                return existing;
+            }
+            var node = factory.get();
+            canonical.put(key, node);
+            // Children are counted only when their parent is first seen: if the parent
+            // itself is repeated, it is shared, and its children are evaluated once.
+            addUse(key.first());
+            addUse(key.second());
+            return node;
+        }
+
+        private void addUse(Expr node) {
+            if (node != null) {
+                uses.merge(node, 1, Integer::sum);
+            }
+        }
+
+        Condition wrapCondition(Condition condition) {
+            if (condition instanceof Comparison c) {
+                return new Comparison(wrapExpr(c.lhs()), c.op(), wrapExpr(c.rhs()));
+            } else if (condition instanceof Conjunction c) {
+                return new Conjunction(wrapCondition(c.lhs()), wrapCondition(c.rhs()));
+            }
+            return condition;
+        }
+
+        Expr wrapExpr(Expr expr) {
+            var result = wrapped.get(expr);
+            if (result == null) {
+                result = rebuild(expr);
+                if (uses.getOrDefault(expr, 0) > 1 && isWorthSharing(expr)) {
+                    result = new Shared(result);
+                }
+                wrapped.put(expr, result);
+            }
+            return result;
+        }
+
+        private Expr rebuild(Expr expr) {
+            if (expr instanceof Negate n) {
+                return new Negate(wrapExpr(n.operand()));
+            } else if (expr instanceof Arithmetic a) {
+                return new Arithmetic(wrapExpr(a.lhs()), a.op(), wrapExpr(a.rhs()));
+            } else if (expr instanceof IntPower p) {
+                return new IntPower(wrapExpr(p.base()), p.exponent());
+            } else if (expr instanceof Polynomial p) {
+                return new Polynomial(wrapExpr(p.arg()), p.coefficients());
+            } else if (expr instanceof HarmonicSeries h) {
+                return new HarmonicSeries(wrapExpr(h.arg()), h.sines(), h.cosines(), h.precision());
+            } else if (expr instanceof UnaryCall call) {
+                return new UnaryCall(call.fn(), wrapExpr(call.arg()), call.precision());
+            } else if (expr instanceof BinaryCall call) {
+                return new BinaryCall(call.fn(), wrapExpr(call.first()), wrapExpr(call.second()), call.precision());
+            }
+            return expr;
+        }
+
+        // Leaves are cheaper to evaluate than to look up
+        private static boolean isWorthSharing(Expr expr) {
+            return !(expr instanceof Constant || expr instanceof Variable || expr.isConstant());
+        }
+    }
+}
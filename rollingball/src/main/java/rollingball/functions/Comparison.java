@@ -0,0 +1,60 @@
+package rollingball.functions;
+
+import rollingball.functions.Function.Condition;
+import rollingball.functions.Function.Expr;
+import rollingball.functions.Operators.RelationalOp;
+
+/**
+ * A comparison between two expressions.
+ * @param lhs the left-hand side operand
+ * @param op the operator
+ * @param rhs the right-hand side operand
+ */
+public record Comparison(Expr lhs, RelationalOp op, Expr rhs) implements Condition {
+    @Override
+    public boolean eval(EvalContext ctx) {
+        return switch (op) {
+            case LT -> lhs.eval(ctx) < rhs.eval(ctx);
+            case LE -> lhs.eval(ctx) <= rhs.eval(ctx);
+            case GT -> lhs.eval(ctx) > rhs.eval(ctx);
+            case GE -> lhs.eval(ctx) >= rhs.eval(ctx);
+        };
+    }
+
+    @Override
+    public boolean eval(double x, double t) {
+        return switch (op) {
+            case LT -> lhs.eval(x, t) < rhs.eval(x, t);
+            case LE -> lhs.eval(x, t) <= rhs.eval(x, t);
+            case GT -> lhs.eval(x, t) > rhs.eval(x, t);
+            case GE -> lhs.eval(x, t) >= rhs.eval(x, t);
+        };
+    }
+
+    @Override
+    public void evalBatch(double[] xs, double t, boolean[] out, int len) {
+        var scratch = BatchScratch.get();
+        var lhsValues = scratch.takeDoubles(len);
+        var rhsValues = scratch.takeDoubles(len);
+        try {
+            lhs.evalBatch(xs, t, lhsValues, len);
+            rhs.evalBatch(xs, t, rhsValues, len);
+            BatchKernels.INSTANCE.compare(op, lhsValues, rhsValues, out, len);
+        } finally {
+            scratch.releaseDoubles();
+            scratch.releaseDoubles();
+        }
+    }
+
+    @Override
+    public Interval.Truth evalInterval(Interval x, Interval t) {
+        var a = lhs.evalInterval(x, t);
+        var b = rhs.evalInterval(x, t);
+        return switch (op) {
+            case LT -> Interval.lessThan(a, b, false);
+            case LE -> Interval.lessThan(a, b, true);
+            case GT -> Interval.lessThan(b, a, false);
+            case GE -> Interval.lessThan(b, a, true);
+        };
+    }
+}
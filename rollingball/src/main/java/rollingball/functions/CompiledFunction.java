@@ -0,0 +1,25 @@
+package rollingball.functions;
+
+/**
+ * A {@link Function} lowered from its expression tree into a flat form, either
+ * JVM bytecode by {@link FunctionCompiler} or a {@link RegisterProgram}.
+ * Variables are passed in directly instead of through an {@link EvalContext},
+ * and evaluation does not go through a chain of nested virtual calls.
+ */
+public interface CompiledFunction {
+    /**
+     * Evaluates the formula of the function.
+     * @param x the x coordinate to evaluate the function at
+     * @param t the time variable
+     * @return the result of evaluating the formula
+     */
+    double eval(double x, double t);
+
+    /**
+     * Evaluates the condition of the function.
+     * @param x the x coordinate to evaluate the condition at
+     * @param t the time variable
+     * @return true if the function is defined at the given point
+     */
+    boolean canEval(double x, double t);
+}
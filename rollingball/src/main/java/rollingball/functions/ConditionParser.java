@@ -1,5 +1,8 @@
 package rollingball.functions;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import rollingball.functions.Function.Condition;
 import rollingball.functions.Function.Expr;
 import rollingball.functions.Operators.RelationalOp;
@@ -40,9 +43,12 @@ public final class ConditionParser extends Parser<Condition> {
     }
 
     private Expr parseExpr() {
-        var result = exprParser.parse(this.src, this.srcPos);
-        this.srcPos = result.nextCharIdx();
-        return result.value();
+        if (!hasNext()) {
+            throw new ParserException("Condition cannot end with a relational operator");
+        }
+        var result = exprParser.parseRange(this.src, this.srcPos, this.srcEnd);
+        this.srcPos = exprParser.getPosition();
+        return result;
     }
 
     private Condition parseCondition() {
@@ -50,7 +56,7 @@ public final class ConditionParser extends Parser<Condition> {
         var op = tryParseRelationalOp();
         if (op == null) {
             throw new ParserException("Expected a relational operator, found '%s'",
-                    srcPos == src.length ? "(end of expression)" : ("" + src[srcPos]));
+                    srcPos == srcEnd ? "(end of expression)" : ("" + src[srcPos]));
         }
 
         var rhs = parseExpr();
@@ -59,6 +65,8 @@ public final class ConditionParser extends Parser<Condition> {
     }
 
     private Condition parseComplexCondition(Condition condition, Expr rhs, RelationalOp op) {
+        var comparisons = new ArrayList<Condition>();
+        comparisons.add(condition);
         while (true) {
             var nextOp = tryParseRelationalOp();
             if (nextOp == null) {
@@ -66,22 +74,37 @@ public final class ConditionParser extends Parser<Condition> {
             }
 
             var nextRhs = parseExpr();
-            var leftCondition = condition;
-            var rightCondition = packCondition(rhs, nextOp, nextRhs);
-            condition = ctx -> leftCondition.eval(ctx) && rightCondition.eval(ctx);
+            comparisons.add(packCondition(rhs, nextOp, nextRhs));
             rhs = nextRhs;
         }
+        return and(comparisons);
+    }
 
-        return condition;
+    // Joins the comparisons of a chain such as a < b < c
+    private static Condition and(List<Condition> comparisons) {
+        if (comparisons.size() <= Chains.MAX_UNBALANCED) {
+            var condition = comparisons.get(0);
+            for (var i = 1; i < comparisons.size(); ++i) {
+                condition = ConstantFolder.and(condition, comparisons.get(i));
+            }
+            return condition;
+        }
+        // Balanced, like long chains of arithmetic, so that the passes over it stay shallow
+        while (comparisons.size() > 1) {
+            var next = new ArrayList<Condition>((comparisons.size() + 1) / 2);
+            for (var i = 0; i + 1 < comparisons.size(); i += 2) {
+                next.add(ConstantFolder.and(comparisons.get(i), comparisons.get(i + 1)));
+            }
+            if (comparisons.size() % 2 != 0) {
+                next.add(comparisons.get(comparisons.size() - 1));
+            }
+            comparisons = next;
+        }
+        return comparisons.get(0);
     }
 
     private Condition packCondition(Expr lhs, RelationalOp op, Expr rhs) {
-        return switch (op) {
-            case LT -> ctx -> lhs.eval(ctx) < rhs.eval(ctx);
-            case LE -> ctx -> lhs.eval(ctx) <= rhs.eval(ctx);
-            case GT -> ctx -> lhs.eval(ctx) > rhs.eval(ctx);
-            case GE -> ctx -> lhs.eval(ctx) >= rhs.eval(ctx);
-        };
+        return ConstantFolder.compare(lhs, op, rhs);
     }
 
 }
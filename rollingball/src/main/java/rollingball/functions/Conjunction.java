@@ -0,0 +1,40 @@
+package rollingball.functions;
+
+import rollingball.functions.Function.Condition;
+
+/**
+ * Two conditions that must both hold, as in the chained comparison <code>a &lt; x &lt; b</code>.
+ * @param lhs the first condition
+ * @param rhs the second condition
+ */
+public record Conjunction(Condition lhs, Condition rhs) implements Condition {
+    @Override
+    public boolean eval(EvalContext ctx) {
+        return lhs.eval(ctx) && rhs.eval(ctx);
+    }
+
+    @Override
+    public boolean eval(double x, double t) {
+        return lhs.eval(x, t) && rhs.eval(x, t);
+    }
+
+    @Override
+    public void evalBatch(double[] xs, double t, boolean[] out, int len) {
+        var scratch = BatchScratch.get();
+        var rhsValues = scratch.takeMask(len);
+        try {
+            lhs.evalBatch(xs, t, out, len);
+            rhs.evalBatch(xs, t, rhsValues, len);
+            for (var i = 0; i < len; ++i) {
+                out[i] &= rhsValues[i];
+            }
+        } finally {
+            scratch.releaseMask();
+        }
+    }
+
+    @Override
+    public Interval.Truth evalInterval(Interval x, Interval t) {
+        return lhs.evalInterval(x, t).and(rhs.evalInterval(x, t));
+    }
+}
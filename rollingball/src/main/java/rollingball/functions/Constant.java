@@ -0,0 +1,36 @@
+package rollingball.functions;
+
+import java.util.Arrays;
+
+import rollingball.functions.Function.Expr;
+
+/**
+ * A constant number.
+ * @param value the value
+ */
+public record Constant(double value) implements Expr {
+    @Override
+    public double eval(EvalContext ctx) {
+        return value;
+    }
+
+    @Override
+    public double eval(double x, double t) {
+        return value;
+    }
+
+    @Override
+    public void evalBatch(double[] xs, double t, double[] out, int len) {
+        Arrays.fill(out, 0, len, value);
+    }
+
+    @Override
+    public Interval evalInterval(Interval x, Interval t) {
+        return Interval.point(value);
+    }
+
+    @Override
+    public boolean isConstant() {
+        return true;
+    }
+}
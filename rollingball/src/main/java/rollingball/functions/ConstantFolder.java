@@ -0,0 +1,142 @@
+package rollingball.functions;
+
+import rollingball.functions.BuiltinFunctions.Builtin;
+import rollingball.functions.BuiltinFunctions.Precision;
+import rollingball.functions.Function.Condition;
+import rollingball.functions.Function.Expr;
+import rollingball.functions.Operators.ArithmeticOp;
+import rollingball.functions.Operators.RelationalOp;
+
+/**
+ * Constant propagation for node trees. The parsers create every node through
+ * the factory methods here, so any subtree that does not depend on a variable is
+ * replaced with a single {@link Constant} or {@link BoolConstant} as soon as it is parsed.
+ * This covers builtin calls (<code>sqrt(pi)</code>), negation (<code>-2*pi</code>)
+ * and comparisons as well as arithmetic.
+ *
+ * Builtins are folded at {@link Precision#STRICT}, so a parsed tree holds the
+ * same constants on every machine.
+ */
+public final class ConstantFolder {
+    private ConstantFolder() {
+    } // Make non-instantiable
+
+    /**
+     * Folds every constant subtree of an expression. Trees produced by the parsers
+     * are already folded; this is for trees constructed by other means.
+     * @param expr the expression
+     * @return the folded expression
+     */
+    public static Expr foldExpr(Expr expr) {
+        if (expr instanceof Negate n) {
+            return negate(foldExpr(n.operand()));
+        } else if (expr instanceof Arithmetic a) {
+            return arithmetic(foldExpr(a.lhs()), a.op(), foldExpr(a.rhs()));
+        } else if (expr instanceof IntPower p) {
+            return intPower(foldExpr(p.base()), p.exponent());
+        } else if (expr instanceof Polynomial p) {
+            return polynomial(foldExpr(p.arg()), p.coefficients());
+        } else if (expr instanceof HarmonicSeries h) {
+            return harmonicSeries(foldExpr(h.arg()), h.sines(), h.cosines(), h.precision());
+        } else if (expr instanceof UnaryCall call) {
+            return call(call.fn(), foldExpr(call.arg()));
+        } else if (expr instanceof BinaryCall call) {
+            return call(call.fn(), foldExpr(call.first()), foldExpr(call.second()));
+        }
+        return expr;
+    }
+
+    /**
+     * Folds every constant subtree of a condition, including the expressions
+     * compared by it. See {@link #foldExpr(Expr)}.
+     * @param condition the condition
+     * @return the folded condition
+     */
+    public static Condition foldCondition(Condition condition) {
+        if (condition instanceof Comparison c) {
+            return compare(foldExpr(c.lhs()), c.op(), foldExpr(c.rhs()));
+        } else if (condition instanceof Conjunction c) {
+            return and(foldCondition(c.lhs()), foldCondition(c.rhs()));
+        }
+        return condition;
+    }
+
+    static Expr negate(Expr operand) {
+        if (operand.isConstant()) {
+            return new Constant(-valueOf(operand));
+        }
+        if (operand instanceof Negate n) {
+            return n.operand();
+        }
+        return new Negate(operand);
+    }
+
+    static Expr arithmetic(Expr lhs, ArithmeticOp op, Expr rhs) {
+        if (lhs.isConstant() && rhs.isConstant()) {
+            return new Constant(op.apply(valueOf(lhs), valueOf(rhs)));
+        }
+        return new Arithmetic(lhs, op, rhs);
+    }
+
+    static Expr intPower(Expr base, int exponent) {
+        if (base.isConstant()) {
+            return new Constant(IntPower.apply(valueOf(base), exponent));
+        }
+        return new IntPower(base, exponent);
+    }
+
+    static Expr polynomial(Expr arg, double[] coefficients) {
+        if (coefficients.length == 1) {
+            return new Constant(coefficients[0]);
+        }
+        if (arg.isConstant()) {
+            return new Constant(Polynomial.apply(valueOf(arg), coefficients));
+        }
+        return new Polynomial(arg, coefficients);
+    }
+
+    static Expr harmonicSeries(Expr arg, double[] sines, double[] cosines, Precision precision) {
+        if (arg.isConstant()) {
+            return new Constant(HarmonicSeries.apply(valueOf(arg), sines, cosines, Precision.STRICT));
+        }
+        return new HarmonicSeries(arg, sines, cosines, precision);
+    }
+
+    static Expr call(Builtin fn, Expr arg) {
+        if (arg.isConstant()) {
+            return new Constant(fn.apply(valueOf(arg), 0.0, Precision.STRICT));
+        }
+        return new UnaryCall(fn, arg);
+    }
+
+    static Expr call(Builtin fn, Expr first, Expr second) {
+        if (first.isConstant() && second.isConstant()) {
+            return new Constant(fn.apply(valueOf(first), valueOf(second), Precision.STRICT));
+        }
+        return new BinaryCall(fn, first, second);
+    }
+
+    static Condition compare(Expr lhs, RelationalOp op, Expr rhs) {
+        var comparison = new Comparison(lhs, op, rhs);
+        if (lhs.isConstant() && rhs.isConstant()) {
+            return new BoolConstant(comparison.eval(null));
+        }
+        return comparison;
+    }
+
+    static Condition and(Condition lhs, Condition rhs) {
+        // Conditions have no side effects, so a constant false on either side
+        // decides the result on its own
+        if (lhs.isConstant()) {
+            return lhs.eval(null) ? rhs : lhs;
+        }
+        if (rhs.isConstant()) {
+            return rhs.eval(null) ? lhs : rhs;
+        }
+        return new Conjunction(lhs, rhs);
+    }
+
+    private static double valueOf(Expr constant) {
+        return constant.eval(null);
+    }
+}
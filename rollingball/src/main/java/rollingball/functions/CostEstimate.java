@@ -0,0 +1,152 @@
+package rollingball.functions;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import rollingball.functions.Function.Condition;
+import rollingball.functions.Function.Expr;
+import rollingball.functions.Operators.ArithmeticOp;
+
+/**
+ * A static estimate of how expensive a function is to evaluate, computed from its tree.
+ * Nodes that occur several times through {@link Shared} or {@link Hoisted} are counted
+ * once, as they are evaluated once per sample. See {@link ParserLimits}.
+ * @param nodeCount the number of distinct nodes in the formula and the condition
+ * @param transcendentalCount the number of those that call a transcendental function,
+ *        including non-integer powers
+ * @param depth the length of the longest path from a root to a leaf
+ */
+public record CostEstimate(int nodeCount, int transcendentalCount, int depth) {
+    /**
+     * Estimates the cost of a function.
+     * @param fn the function
+     * @return the estimate
+     */
+    public static CostEstimate of(Function fn) {
+        return of(fn.getFormula(), fn.getCondition());
+    }
+
+    /**
+     * Estimates the cost of evaluating a formula and a condition.
+     * @param formula the formula
+     * @param condition the condition
+     * @return the estimate
+     */
+    public static CostEstimate of(Expr formula, Condition condition) {
+        var counter = new Counter();
+        var depth = Math.max(counter.visitExpr(formula), counter.visitCondition(condition));
+        return new CostEstimate(counter.nodes, counter.transcendentals, depth);
+    }
+
+    private static final class Counter {
+        private static final Expr[] NO_CHILDREN = {};
+
+        private final Map<Expr, Integer> depths = new IdentityHashMap<>();
+        private final Deque<Expr> pending = new ArrayDeque<>();
+        private int nodes;
+        private int transcendentals;
+
+        int visitCondition(Condition condition) {
+            if (condition instanceof Comparison c) {
+                ++nodes;
+                return 1 + Math.max(visitExpr(c.lhs()), visitExpr(c.rhs()));
+            } else if (condition instanceof Conjunction c) {
+                ++nodes;
+                return 1 + Math.max(visitCondition(c.lhs()), visitCondition(c.rhs()));
+            }
+            if (condition.isConstant()) {
+                return 0;
+            }
+            ++nodes;
+            return 1;
+        }
+
+        // Iterative, as the depth of a parsed tree is measured before the recursive
+        // passes run on it
+        int visitExpr(Expr root) {
+            pending.push(root);
+            while (!pending.isEmpty()) {
+                var expr = pending.peek();
+                if (depths.containsKey(expr)) {
+                    pending.pop(); // Reached through several parents
+                    continue;
+                }
+                var children = children(expr);
+                if (pushUnvisited(children)) {
+                    pending.pop();
+                    depths.put(expr, count(expr, children));
+                }
+            }
+            return depths.get(root);
+        }
+
+        // Returns true if every child has been visited already
+        private boolean pushUnvisited(Expr[] children) {
+            var ready = true;
+            for (var child : children) {
+                if (!depths.containsKey(child)) {
+                    pending.push(child);
+                    ready = false;
+                }
+            }
+            return ready;
+        }
+
+        private static Expr[] children(Expr expr) {
+            if (expr instanceof Arithmetic a) {
+                return new Expr[] { a.lhs(), a.rhs() };
+            } else if (expr instanceof BinaryCall call) {
+                return new Expr[] { call.first(), call.second() };
+            }
+            var child = onlyChild(expr);
+            return child == null ? NO_CHILDREN : new Expr[] { child };
+        }
+
+        private static Expr onlyChild(Expr expr) {
+            if (expr instanceof Shared s) {
+                return s.expr();
+            } else if (expr instanceof Hoisted h) {
+                return h.expr();
+            } else if (expr instanceof Negate n) {
+                return n.operand();
+            } else if (expr instanceof IntPower p) {
+                return p.base();
+            } else if (expr instanceof Polynomial p) {
+                return p.arg();
+            } else if (expr instanceof HarmonicSeries h) {
+                return h.arg();
+            } else if (expr instanceof UnaryCall call) {
+                return call.arg();
+            }
+            return null; // Constants, variables and opaque nodes
+        }
+
+        // Called once per node, after all of its children
+        private int count(Expr expr, Expr[] children) {
+            var depth = 0;
+            for (var child : children) {
+                depth = Math.max(depth, depths.get(child));
+            }
+            if (expr instanceof Shared || expr instanceof Hoisted) {
+                return depth; // Only a wrapper
+            }
+            ++nodes;
+            if (expr instanceof Arithmetic a && a.op() == ArithmeticOp.POW
+                    || expr instanceof UnaryCall u && isTranscendental(u.fn())
+                    || expr instanceof BinaryCall b && isTranscendental(b.fn())
+                    || expr instanceof HarmonicSeries) {
+                ++transcendentals;
+            }
+            return 1 + depth;
+        }
+
+        private static boolean isTranscendental(BuiltinFunctions.Builtin fn) {
+            return switch (fn) {
+                case ABS, FLOOR, CEIL, ROUND, SIGNUM, MIN, MAX, SQRT, HYPOT -> false;
+                default -> true;
+            };
+        }
+    }
+}
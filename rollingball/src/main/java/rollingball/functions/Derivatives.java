@@ -0,0 +1,323 @@
+package rollingball.functions;
+
+import rollingball.functions.BuiltinFunctions.Builtin;
+import rollingball.functions.Function.Expr;
+import rollingball.functions.Operators.ArithmeticOp;
+
+/**
+ * Symbolic differentiation of node trees.
+ *
+ * Every builtin has a derivative rule except the step functions <code>floor</code>,
+ * <code>ceil</code>, <code>round</code> and <code>signum</code>, whose derivative is
+ * zero or undefined everywhere. For those, and for opaque nodes, the derivative is a
+ * central difference over {@link #NUMERIC_STEP}. Step functions are differentiated by
+ * substituting <code>x&#177;h</code> into the tree, so the result can still be compiled.
+ */
+public final class Derivatives {
+    private Derivatives() {
+    } // Make non-instantiable
+
+    /**
+     * The width of the central difference used when there is no exact derivative.
+     */
+    public static final double NUMERIC_STEP = 0.01;
+
+    /**
+     * Differentiates a function. The condition of the result is that of the original.
+     * @param fn the function
+     * @param wrt the variable to differentiate with respect to
+     * @return the derivative, simplified, with common subexpressions shared and t-only
+     *         subexpressions hoisted
+     */
+    public static Function differentiate(Function fn, Variable wrt) {
+        var derivative = ExprOptimizer.optimizeExpr(differentiate(fn.getFormula(), wrt));
+        return TimeInvariance.hoist(CommonSubexpressions.share(new Function(derivative, fn.getCondition())));
+    }
+
+    /**
+     * Differentiates an expression. The result is not simplified beyond dropping
+     * terms that are exactly zero; see {@link ExprOptimizer}.
+     * @param expr the expression
+     * @param wrt the variable to differentiate with respect to
+     * @return the derivative
+     */
+    public static Expr differentiate(Expr expr, Variable wrt) {
+        if (expr instanceof Constant) {
+            return zero();
+        } else if (expr instanceof Variable v) {
+            return new Constant(v == wrt ? 1.0 : 0.0);
+        } else if (expr instanceof Shared s) {
+            return differentiate(s.expr(), wrt);
+        } else if (expr instanceof Hoisted h) {
+            return differentiate(h.expr(), wrt);
+        } else if (expr instanceof Negate n) {
+            return neg(differentiate(n.operand(), wrt));
+        } else if (expr instanceof Arithmetic a) {
+            return differentiateArithmetic(a, wrt);
+        } else if (expr instanceof IntPower p) {
+            var n = p.exponent();
+            var lower = n == 2 ? p.base() : new IntPower(p.base(), n - 1);
+            return times(times(new Constant(n), lower), differentiate(p.base(), wrt));
+        }
+        return differentiateChain(expr, wrt);
+    }
+
+    // The nodes that apply a function to their arguments, differentiated with the chain rule
+    private static Expr differentiateChain(Expr expr, Variable wrt) {
+        if (expr instanceof Polynomial p) {
+            return times(differentiatePolynomial(p), differentiate(p.arg(), wrt));
+        } else if (expr instanceof HarmonicSeries h) {
+            return times(differentiateSeries(h), differentiate(h.arg(), wrt));
+        } else if (expr instanceof UnaryCall call) {
+            return differentiateCall(call, wrt);
+        } else if (expr instanceof BinaryCall call) {
+            return differentiateCall(call, wrt);
+        }
+        return new NumericDerivative(expr, wrt);
+    }
+
+    private static Expr differentiatePolynomial(Polynomial p) {
+        var c = p.coefficients();
+        var derivative = new double[c.length - 1];
+        for (var i = 1; i < c.length; ++i) {
+            derivative[i - 1] = i * c[i];
+        }
+        return ConstantFolder.polynomial(p.arg(), derivative);
+    }
+
+    // (a*sin(ku) + b*cos(ku))' = (k*a*cos(ku) - k*b*sin(ku)) * u'
+    private static Expr differentiateSeries(HarmonicSeries h) {
+        var sines = new double[h.sines().length];
+        var cosines = new double[sines.length];
+        for (var k = 1; k <= sines.length; ++k) {
+            sines[k - 1] = -k * h.cosines()[k - 1];
+            cosines[k - 1] = k * h.sines()[k - 1];
+        }
+        return new HarmonicSeries(h.arg(), sines, cosines, h.precision());
+    }
+
+    private static Expr differentiateArithmetic(Arithmetic a, Variable wrt) {
+        var u = a.lhs();
+        var v = a.rhs();
+        var du = differentiate(u, wrt);
+        var dv = differentiate(v, wrt);
+        return switch (a.op()) {
+            case ADD -> plus(du, dv);
+            case SUB -> minus(du, dv);
+            case MUL -> plus(times(du, v), times(u, dv));
+            case DIV -> over(minus(times(du, v), times(u, dv)), new IntPower(v, 2));
+            case POW -> differentiatePower(u, v, du, dv);
+        };
+    }
+
+    private static Expr differentiatePower(Expr u, Expr v, Expr du, Expr dv) {
+        var power = new Arithmetic(u, ArithmeticOp.POW, v);
+        if (isZero(dv)) { // u^c => c * u^(c-1) * u'
+            var lower = new Arithmetic(u, ArithmeticOp.POW, ConstantFolder.arithmetic(v, ArithmeticOp.SUB, one()));
+            return times(times(v, lower), du);
+        }
+        var log = new UnaryCall(Builtin.LOG, u);
+        if (isZero(du)) { // c^v => ln(c) * c^v * v'
+            return times(times(log, power), dv);
+        }
+        return times(power, plus(times(dv, log), over(times(v, du), u)));
+    }
+
+    private static Expr differentiateCall(UnaryCall call, Variable wrt) {
+        var u = call.arg();
+        var du = differentiate(u, wrt);
+        if (isZero(du)) {
+            return zero();
+        }
+        return switch (call.fn()) {
+            case SIN, COS, TAN, ASIN, ACOS, ATAN, SINH, COSH, TANH -> differentiateTrig(call, du);
+            case FLOOR, CEIL, ROUND, SIGNUM -> centralDifference(call, wrt);
+            default -> differentiateAlgebraic(call, du);
+        };
+    }
+
+    private static Expr differentiateTrig(UnaryCall call, Expr du) {
+        var u = call.arg();
+        return switch (call.fn()) {
+            case SIN -> times(new UnaryCall(Builtin.COS, u), du);
+            case COS -> neg(times(new UnaryCall(Builtin.SIN, u), du));
+            case TAN -> over(du, new IntPower(new UnaryCall(Builtin.COS, u), 2));
+            case ASIN -> over(du, sqrtOneMinusSquare(u));
+            case ACOS -> neg(over(du, sqrtOneMinusSquare(u)));
+            case ATAN -> over(du, plus(one(), new IntPower(u, 2)));
+            case SINH -> times(new UnaryCall(Builtin.COSH, u), du);
+            case COSH -> times(new UnaryCall(Builtin.SINH, u), du);
+            case TANH -> times(minus(one(), new IntPower(call, 2)), du);
+            default -> throw new IllegalStateException("Unhandled builtin " + call.fn());
+        };
+    }
+
+    private static Expr differentiateAlgebraic(UnaryCall call, Expr du) {
+        var u = call.arg();
+        return switch (call.fn()) {
+            case EXP -> times(call, du);
+            case LOG -> over(du, u);
+            case LOG10 -> over(du, times(u, new Constant(Math.log(10.0))));
+            case SQRT -> over(du, times(new Constant(2.0), call));
+            case CBRT -> over(du, times(new Constant(3.0), new IntPower(call, 2)));
+            case ABS -> times(new UnaryCall(Builtin.SIGNUM, u), du);
+            default -> throw new IllegalStateException("Unhandled builtin " + call.fn());
+        };
+    }
+
+    private static Expr differentiateCall(BinaryCall call, Variable wrt) {
+        var u = call.first();
+        var v = call.second();
+        var du = differentiate(u, wrt);
+        var dv = differentiate(v, wrt);
+        if (isZero(du) && isZero(dv)) {
+            return zero();
+        }
+        return switch (call.fn()) {
+            // min(u, v) = (u + v - |u - v|) / 2 and max(u, v) = (u + v + |u - v|) / 2
+            case MIN -> times(new Constant(0.5), minus(plus(du, dv), times(signOfDifference(u, v), minus(du, dv))));
+            case MAX -> times(new Constant(0.5), plus(plus(du, dv), times(signOfDifference(u, v), minus(du, dv))));
+            case POW -> differentiatePower(u, v, du, dv);
+            case ATAN2 -> over(minus(times(v, du), times(u, dv)), plus(new IntPower(u, 2), new IntPower(v, 2)));
+            case HYPOT -> over(plus(times(u, du), times(v, dv)), call);
+            default -> throw new IllegalStateException("Unhandled builtin " + call.fn());
+        };
+    }
+
+    private static Expr sqrtOneMinusSquare(Expr u) {
+        return new UnaryCall(Builtin.SQRT, minus(one(), new IntPower(u, 2)));
+    }
+
+    private static Expr signOfDifference(Expr u, Expr v) {
+        return new UnaryCall(Builtin.SIGNUM, minus(u, v));
+    }
+
+    private static Expr centralDifference(Expr expr, Variable wrt) {
+        var h = new Constant(NUMERIC_STEP / 2.0);
+        var after = substitute(expr, wrt, new Arithmetic(wrt, ArithmeticOp.ADD, h));
+        var before = substitute(expr, wrt, new Arithmetic(wrt, ArithmeticOp.SUB, h));
+        if (after == null || before == null) {
+            return new NumericDerivative(expr, wrt);
+        }
+        return over(minus(after, before), new Constant(NUMERIC_STEP));
+    }
+
+    /**
+     * Replaces a variable in a tree. Returns null if the tree contains opaque nodes.
+     */
+    private static Expr substitute(Expr expr, Variable variable, Expr replacement) {
+        if (expr instanceof Constant) {
+            return expr;
+        } else if (expr instanceof Variable v) {
+            return v == variable ? replacement : v;
+        } else if (expr instanceof Shared s) {
+            return substitute(s.expr(), variable, replacement);
+        } else if (expr instanceof Hoisted h) {
+            return substitute(h.expr(), variable, replacement);
+        } else if (expr instanceof Negate n) {
+            var operand = substitute(n.operand(), variable, replacement);
+            return operand == null ? null : new Negate(operand);
+        } else if (expr instanceof Arithmetic a) {
+            var lhs = substitute(a.lhs(), variable, replacement);
+            var rhs = substitute(a.rhs(), variable, replacement);
+            return lhs == null || rhs == null ? null : new Arithmetic(lhs, a.op(), rhs);
+        }
+        return substituteChain(expr, variable, replacement);
+    }
+
+    private static Expr substituteChain(Expr expr, Variable variable, Expr replacement) {
+        if (expr instanceof IntPower p) {
+            var base = substitute(p.base(), variable, replacement);
+            return base == null ? null : new IntPower(base, p.exponent());
+        } else if (expr instanceof Polynomial p) {
+            var arg = substitute(p.arg(), variable, replacement);
+            return arg == null ? null : new Polynomial(arg, p.coefficients());
+        } else if (expr instanceof HarmonicSeries h) {
+            var arg = substitute(h.arg(), variable, replacement);
+            return arg == null ? null : new HarmonicSeries(arg, h.sines(), h.cosines(), h.precision());
+        } else if (expr instanceof UnaryCall call) {
+            var arg = substitute(call.arg(), variable, replacement);
+            return arg == null ? null : new UnaryCall(call.fn(), arg, call.precision());
+        } else if (expr instanceof BinaryCall call) {
+            var first = substitute(call.first(), variable, replacement);
+            var second = substitute(call.second(), variable, replacement);
+            return first == null || second == null ? null : new BinaryCall(call.fn(), first, second, call.precision());
+        }
+        return null;
+    }
+
+    // Constructors that drop terms known to be exactly zero. Unlike ExprOptimizer, these
+    // may drop 0*u even if u could be infinite, because a derivative that is zero
+    // symbolically is not a product that happens to be evaluated.
+
+    private static Constant zero() {
+        return new Constant(0.0);
+    }
+
+    private static Constant one() {
+        return new Constant(1.0);
+    }
+
+    private static boolean isZero(Expr expr) {
+        return expr instanceof Constant c && c.value() == 0.0;
+    }
+
+    private static boolean isOne(Expr expr) {
+        return expr instanceof Constant c && c.value() == 1.0;
+    }
+
+    private static Expr neg(Expr a) {
+        return isZero(a) ? zero() : ConstantFolder.negate(a);
+    }
+
+    private static Expr plus(Expr a, Expr b) {
+        if (isZero(a)) {
+            return b;
+        }
+        return isZero(b) ? a : ConstantFolder.arithmetic(a, ArithmeticOp.ADD, b);
+    }
+
+    private static Expr minus(Expr a, Expr b) {
+        if (isZero(b)) {
+            return a;
+        }
+        return isZero(a) ? neg(b) : ConstantFolder.arithmetic(a, ArithmeticOp.SUB, b);
+    }
+
+    private static Expr times(Expr a, Expr b) {
+        if (isZero(a) || isZero(b)) {
+            return zero();
+        }
+        if (isOne(a)) {
+            return b;
+        }
+        return isOne(b) ? a : ConstantFolder.arithmetic(a, ArithmeticOp.MUL, b);
+    }
+
+    private static Expr over(Expr a, Expr b) {
+        if (isZero(a)) {
+            return zero();
+        }
+        return isOne(b) ? a : ConstantFolder.arithmetic(a, ArithmeticOp.DIV, b);
+    }
+
+    /**
+     * The derivative of an opaque node, by central difference. Not compilable.
+     */
+    private record NumericDerivative(Expr expr, Variable wrt) implements Expr {
+        @Override
+        public double eval(EvalContext ctx) {
+            return eval(ctx.x, ctx.t);
+        }
+
+        @Override
+        public double eval(double x, double t) {
+            var h = NUMERIC_STEP / 2.0;
+            return (evalShifted(x, t, h) - evalShifted(x, t, -h)) / NUMERIC_STEP;
+        }
+
+        private double evalShifted(double x, double t, double h) {
+            return wrt == Variable.X ? expr.eval(x + h, t) : expr.eval(x, t + h);
+        }
+    }
+}
@@ -7,8 +7,10 @@ package rollingball.functions;
  */
 public final class EvalContext {
     /// The time variable. In seconds, since the start of the simulation.
-    public final double t;
+    /// Mutable like x, so that {@link Function} can reuse one context per thread.
+    public double t;
     /// The x coordinate to evaluate the function at. Not the ball position!
+    /// Mutable so that one context can be reused for many samples by a single thread.
     public double x;
 
     /**
@@ -18,4 +20,29 @@ public final class EvalContext {
     public EvalContext(double t) {
         this.t = t;
     }
+
+    /**
+     * Constructs a new evaluation context for a single point.
+     * @param t the time variable.
+     * @param x the x coordinate.
+     */
+    public EvalContext(double t, double x) {
+        this.t = t;
+        this.x = x;
+    }
+
+    private SampleCache cache; // Created on first use
+
+    /**
+     * Returns the values shared and hoisted nodes were last evaluated to in this context.
+     * @return the cache
+     */
+    SampleCache sampleCache() {
+        var result = cache;
+        if (result == null) {
+            result = new SampleCache();
+            cache = result;
+        }
+        return result;
+    }
 }
@@ -0,0 +1,291 @@
+package rollingball.functions;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import rollingball.functions.BuiltinFunctions.Builtin;
+import rollingball.functions.Function.Condition;
+import rollingball.functions.Function.Expr;
+import rollingball.functions.Operators.ArithmeticOp;
+
+/**
+ * Algebraic simplification and strength reduction for node trees, run on every
+ * parsed function after {@link ConstantFolder}. The rewrites are:
+ * <ul>
+ * <li>identities: <code>x*1</code>, <code>x/1</code>, <code>x+0</code>, <code>x-0</code>,
+ *     <code>x^1</code> and <code>x^0</code></li>
+ * <li><code>0*expr</code>, but only when <code>expr</code> can never be infinite or NaN</li>
+ * <li>small integer powers (<code>x^2</code>, <code>x*x</code>) into {@link IntPower}</li>
+ * <li><code>e^u</code> into <code>exp(u)</code></li>
+ * <li>division by a constant into multiplication by its reciprocal</li>
+ * <li>constants are collected from sums and products, so <code>2*x*3</code>
+ *     becomes <code>6*x</code> and <code>x+1-3</code> becomes <code>x-2</code></li>
+ * <li>sums of constant multiples of powers of x into a {@link Polynomial}, evaluated
+ *     with Horner's scheme, and sums of constant multiples of <code>sin(k*u)</code> and
+ *     <code>cos(k*u)</code> into a {@link HarmonicSeries}, which needs only one sine and
+ *     one cosine; see {@link SeriesSpecializer}</li>
+ * </ul>
+ * Reassociating floating-point operations can change results in the last bits, which
+ * is fine for drawing and simulating graphs. Opaque nodes are kept as they are.
+ */
+public final class ExprOptimizer {
+    private ExprOptimizer() {
+    } // Make non-instantiable
+
+    /**
+     * Simplifies an expression.
+     * @param expr the expression
+     * @return an equivalent, simplified expression
+     */
+    public static Expr optimizeExpr(Expr expr) {
+        if (expr instanceof Negate n) {
+            return negate(optimizeExpr(n.operand()));
+        } else if (expr instanceof Arithmetic a) {
+            return optimizeArithmetic(new Arithmetic(optimizeExpr(a.lhs()), a.op(), optimizeExpr(a.rhs())));
+        } else if (expr instanceof UnaryCall call) {
+            return ConstantFolder.call(call.fn(), optimizeExpr(call.arg()));
+        } else if (expr instanceof BinaryCall call) {
+            var first = optimizeExpr(call.first());
+            var second = optimizeExpr(call.second());
+            return call.fn() == Builtin.POW ? power(first, second) : ConstantFolder.call(call.fn(), first, second);
+        } else if (expr instanceof IntPower p) {
+            return ConstantFolder.intPower(optimizeExpr(p.base()), p.exponent());
+        } else if (expr instanceof Polynomial p) {
+            return ConstantFolder.polynomial(optimizeExpr(p.arg()), p.coefficients());
+        } else if (expr instanceof HarmonicSeries s) {
+            return ConstantFolder.harmonicSeries(optimizeExpr(s.arg()), s.sines(), s.cosines(), s.precision());
+        }
+        return expr;
+    }
+
+    /**
+     * Simplifies the expressions compared by a condition.
+     * @param condition the condition
+     * @return an equivalent, simplified condition
+     */
+    public static Condition optimizeCondition(Condition condition) {
+        if (condition instanceof Comparison c) {
+            return ConstantFolder.compare(optimizeExpr(c.lhs()), c.op(), optimizeExpr(c.rhs()));
+        } else if (condition instanceof Conjunction c) {
+            return ConstantFolder.and(optimizeCondition(c.lhs()), optimizeCondition(c.rhs()));
+        }
+        return condition;
+    }
+
+    private static Expr optimizeArithmetic(Arithmetic a) {
+        return switch (a.op()) {
+            case ADD, SUB -> new Sum(a).build();
+            case MUL, DIV -> new Product(a).build();
+            case POW -> power(a.lhs(), a.rhs());
+        };
+    }
+
+    private static Expr negate(Expr operand) {
+        // -(c*x) => (-c)*x, so that the sign joins the coefficient
+        if (operand instanceof Arithmetic a && a.op() == ArithmeticOp.MUL && a.lhs() instanceof Constant c) {
+            return new Arithmetic(new Constant(-c.value()), ArithmeticOp.MUL, a.rhs());
+        }
+        return ConstantFolder.negate(operand);
+    }
+
+    private static Expr power(Expr base, Expr exponent) {
+        if (base instanceof Constant b && b.value() == Math.E) {
+            return ConstantFolder.call(Builtin.EXP, exponent);
+        }
+        if (!(exponent instanceof Constant e)) {
+            return ConstantFolder.arithmetic(base, ArithmeticOp.POW, exponent);
+        }
+        var n = e.value();
+        if (n == 0.0) {
+            return new Constant(1.0); // Math.pow(a, 0) is 1 even for NaN
+        } else if (n == 1.0) {
+            return base;
+        } else if (n == (int) n && n >= 2 && n <= IntPower.MAX_EXPONENT) {
+            return ConstantFolder.intPower(base, (int) n);
+        }
+        return ConstantFolder.arithmetic(base, ArithmeticOp.POW, exponent);
+    }
+
+    /**
+     * Whether an expression is finite whenever the variables are finite. Only such
+     * expressions can be removed by multiplying with zero, since <code>0*inf</code>
+     * and <code>0*NaN</code> are NaN.
+     */
+    private static boolean isAlwaysFinite(Expr expr) {
+        if (expr instanceof Constant c) {
+            return Double.isFinite(c.value());
+        } else if (expr instanceof Variable) {
+            return true;
+        } else if (expr instanceof Negate n) {
+            return isAlwaysFinite(n.operand());
+        } else if (expr instanceof UnaryCall call) {
+            return isAlwaysFinite(call);
+        } else if (expr instanceof BinaryCall call) {
+            return isAlwaysFinite(call);
+        } else if (expr instanceof HarmonicSeries s) {
+            return Arrays.stream(s.sines()).allMatch(Double::isFinite)
+                    && Arrays.stream(s.cosines()).allMatch(Double::isFinite);
+        }
+        return false;
+    }
+
+    private static boolean isAlwaysFinite(UnaryCall call) {
+        return switch (call.fn()) {
+            case SIN, COS, ATAN, TANH, SIGNUM -> true; // Finite for any finite input
+            case ABS, FLOOR, CEIL, ROUND -> isAlwaysFinite(call.arg());
+            default -> false;
+        };
+    }
+
+    private static boolean isAlwaysFinite(BinaryCall call) {
+        return switch (call.fn()) {
+            case ATAN2 -> true;
+            case MIN, MAX -> isAlwaysFinite(call.first()) && isAlwaysFinite(call.second());
+            default -> false;
+        };
+    }
+
+    /**
+     * A flattened chain of additions and subtractions: a list of signed terms plus
+     * one constant.
+     */
+    private static final class Sum {
+        private final List<Expr> terms = new ArrayList<>();
+        private final List<Boolean> negated = new ArrayList<>();
+        private double constant;
+
+        Sum(Arithmetic root) {
+            add(root, false);
+        }
+
+        private void add(Expr expr, boolean negative) {
+            if (expr instanceof Arithmetic a && (a.op() == ArithmeticOp.ADD || a.op() == ArithmeticOp.SUB)) {
+                add(a.lhs(), negative);
+                add(a.rhs(), negative ^ (a.op() == ArithmeticOp.SUB));
+            } else if (expr instanceof Negate n) {
+                add(n.operand(), !negative);
+            } else if (expr instanceof Constant c) {
+                constant += negative ? -c.value() : c.value();
+            } else {
+                terms.add(expr);
+                negated.add(negative);
+            }
+        }
+
+        Expr build() {
+            constant = new SeriesSpecializer(terms, negated, constant).run();
+            if (terms.isEmpty()) {
+                return new Constant(constant);
+            }
+            var operands = terms.toArray(new Expr[0]);
+            var ops = new ArithmeticOp[operands.length];
+            if (negated.get(0)) {
+                operands[0] = negate(operands[0]);
+            }
+            for (var i = 1; i < operands.length; ++i) {
+                ops[i] = negated.get(i) ? ArithmeticOp.SUB : ArithmeticOp.ADD;
+            }
+            var result = Chains.build(operands, ops, 0, operands.length);
+            if (constant != 0.0) {
+                var op = constant < 0.0 ? ArithmeticOp.SUB : ArithmeticOp.ADD;
+                result = new Arithmetic(result, op, new Constant(Math.abs(constant)));
+            }
+            return result;
+        }
+    }
+
+    /**
+     * A flattened chain of multiplications and divisions: a constant coefficient,
+     * the factors in the numerator (with repeats counted) and the divisors.
+     */
+    private static final class Product {
+        private double coefficient = 1.0;
+        private final List<Expr> factors = new ArrayList<>();
+        private final List<Integer> counts = new ArrayList<>();
+        private final List<Expr> divisors = new ArrayList<>();
+
+        Product(Arithmetic root) {
+            multiply(root);
+        }
+
+        private void multiply(Expr expr) {
+            if (expr instanceof Arithmetic a && a.op() == ArithmeticOp.MUL) {
+                multiply(a.lhs());
+                multiply(a.rhs());
+            } else if (expr instanceof Arithmetic a && a.op() == ArithmeticOp.DIV) {
+                multiply(a.lhs());
+                divide(a.rhs());
+            } else if (expr instanceof Negate n) {
+                coefficient = -coefficient;
+                multiply(n.operand());
+            } else if (expr instanceof Constant c) {
+                coefficient *= c.value();
+            } else if (expr instanceof IntPower p) {
+                addFactor(p.base(), p.exponent());
+            } else {
+                addFactor(expr, 1);
+            }
+        }
+
+        private void addFactor(Expr factor, int count) {
+            var idx = factors.indexOf(factor);
+            if (idx >= 0) {
+                counts.set(idx, counts.get(idx) + count);
+            } else {
+                factors.add(factor);
+                counts.add(count);
+            }
+        }
+
+        private void divide(Expr expr) {
+            if (expr instanceof Constant c) {
+                coefficient /= c.value(); // Division by a constant becomes a multiplication by its reciprocal
+            } else if (expr instanceof Negate n) {
+                coefficient = -coefficient;
+                divide(n.operand());
+            } else {
+                divisors.add(expr);
+            }
+        }
+
+        Expr build() {
+            if (coefficient == 0.0 && divisors.isEmpty() && factors.stream().allMatch(ExprOptimizer::isAlwaysFinite)) {
+                return new Constant(0.0);
+            }
+            var result = buildFactors();
+            if (result == null) {
+                result = new Constant(coefficient);
+            } else if (coefficient == -1.0) {
+                result = ConstantFolder.negate(result);
+            } else if (coefficient != 1.0) {
+                result = new Arithmetic(new Constant(coefficient), ArithmeticOp.MUL, result);
+            }
+            return divisors.isEmpty() ? result : buildQuotient(result);
+        }
+
+        private Expr buildQuotient(Expr dividend) {
+            var operands = new Expr[divisors.size() + 1];
+            var ops = new ArithmeticOp[operands.length];
+            operands[0] = dividend;
+            for (var i = 1; i < operands.length; ++i) {
+                operands[i] = divisors.get(i - 1);
+                ops[i] = ArithmeticOp.DIV;
+            }
+            return Chains.build(operands, ops, 0, operands.length);
+        }
+
+        private Expr buildFactors() {
+            if (factors.isEmpty()) {
+                return null;
+            }
+            var operands = new Expr[factors.size()];
+            var ops = new ArithmeticOp[operands.length];
+            for (var i = 0; i < operands.length; ++i) {
+                operands[i] = power(factors.get(i), new Constant(counts.get(i)));
+                ops[i] = ArithmeticOp.MUL;
+            }
+            return Chains.build(operands, ops, 0, operands.length);
+        }
+    }
+}
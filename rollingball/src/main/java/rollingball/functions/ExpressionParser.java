@@ -1,35 +1,97 @@
 package rollingball.functions;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.function.Supplier;
+import java.util.Arrays;
 
+import rollingball.functions.BuiltinFunctions.Builtin;
 import rollingball.functions.Function.Expr;
 import rollingball.functions.Operators.ArithmeticOp;
 
 /**
  * An implementation of {@link Parser} for expressions that evaluate to a number,
  * represented with an {@link Function.Expr}.
+ *
+ * The parser is an iterative operator-precedence parser: parentheses, function calls,
+ * negations and powers are kept on an explicit operator stack rather than the call
+ * stack, so arbitrarily nested input cannot overflow the stack, and parse time and
+ * memory grow linearly with the input. Chains of operators of the same precedence
+ * are built by {@link Chains}, which balances long ones.
+ *
+ * A parser can be reused for any number of inputs. Apart from the nodes of the
+ * resulting tree, parsing allocates nothing once the stacks have grown to fit the
+ * largest input: identifiers are matched in place in the source buffer.
  */
 public final class ExpressionParser extends Parser<Expr> {
+    private static final ArithmeticOp[] OPERATORS = ArithmeticOp.values();
+    private static final Builtin[] BUILTINS = Builtin.values();
+
+    // Entries of the operator stack besides the ordinals of the arithmetic operators
+    private static final int NEGATE = OPERATORS.length;
+    private static final int GROUP = NEGATE + 1; // '('
+    private static final int CALL = GROUP + 1; // CALL + 2 * builtin ordinal + index of the parameter being parsed
+
+    private Expr[] operandStack = new Expr[16];
+    private int numOperands;
+    private int[] operatorStack = new int[16];
+    private int numOperators;
+    // Operators of a chain being built, aligned with their operands in operandStack
+    private ArithmeticOp[] chainOps = new ArithmeticOp[16];
 
     @Override
     protected final Expr doParse() {
-        return parseExpr();
+        // A previous parse may have thrown halfway through
+        Arrays.fill(operandStack, 0, numOperands, null);
+        numOperands = 0;
+        numOperators = 0;
+
+        while (true) {
+            parseOperand();
+            if (reduceAfterOperand()) {
+                return popOperand();
+            }
+        }
+    }
+
+    /**
+     * Reduces everything the operand just parsed completes, up to where the next
+     * operand begins.
+     * @return true at the end of the expression
+     */
+    private boolean reduceAfterOperand() {
+        while (true) {
+            if (consume('^')) {
+                pushOperator(ArithmeticOp.POW.ordinal());
+                return false; // Parse the exponent
+            }
+            reduceOperand();
+
+            var op = tryParseOperator();
+            if (op != null) {
+                reduceChains(op.getPrecedence());
+                pushOperator(op.ordinal());
+                return false; // Parse the next operand
+            }
+
+            // End of the expression, a parameter, or a parenthesized group
+            reduceChains(0);
+            if (numOperators == 0 || nextParameter()) {
+                return numOperators == 0;
+            }
+            closeGroup(); // The group is an operand, which may be followed by '^'
+        }
     }
 
     private Expr parseConstant() {
         var posBefore = srcPos;
         var result = 0.0;
 
-        while (srcPos < src.length && Character.isDigit(src[srcPos])) {
+        while (srcPos < srcEnd && Character.isDigit(src[srcPos])) {
             result = result * 10 + (src[srcPos] - '0');
             srcPos++;
         }
 
         if (consume('.')) {
             var frac = 0.1;
-            while (srcPos < src.length && Character.isDigit(src[srcPos])) {
+            while (srcPos < srcEnd && Character.isDigit(src[srcPos])) {
                 result += (src[srcPos] - '0') * frac;
                 frac *= 0.1;
                 srcPos++;
@@ -37,85 +99,180 @@ public final class ExpressionParser extends Parser<Expr> {
         }
 
         if (posBefore == srcPos) {
-            if (srcPos == src.length) {
+            if (srcPos == srcEnd) {
                 throw new ParserException("Expression cannot end with an operator or '('");
             } else {
-                throw new ParserException("Expected a number or '(' instead of '%s'", new String(src, srcPos, src.length - srcPos));
+                throw new ParserException("Expected a number or '(' instead of '%s'", new String(src, srcPos, srcEnd - srcPos));
             }
         }
 
         return Expr.constant(result);
     }
 
-    private String parseIdentifier() {
-        var posBefore = srcPos;
-        while (srcPos < src.length && Character.isJavaIdentifierPart(src[srcPos])) {
+    private void skipIdentifier() {
+        while (srcPos < srcEnd && Character.isJavaIdentifierPart(src[srcPos])) {
             srcPos++;
         }
+    }
 
-        return new String(src, posBefore, srcPos - posBefore);
+    private Builtin lookupFunction(int nameStart, int nameEnd) {
+        var fn = BuiltinFunctions.lookup(src, nameStart, nameEnd);
+        if (fn == null) {
+            throw new ParserException("Unknown function: '" + new String(src, nameStart, nameEnd - nameStart) + "'");
+        }
+        return fn;
     }
 
-    private Expr parseFuncCall(String name) {
-        var firstParam = parseExpr();
-        Supplier<Expr> paramSupplier = () -> {
-            expect(',', "Missing comma between function parameters");
-            return parseExpr();
-        };
+    private Expr parseVariable(int nameStart) {
+        var length = srcPos - nameStart;
+        var first = src[nameStart];
+        if (length == 1 && first == 'x') {
+            return Variable.X;
+        } else if (length == 1 && first == 't') {
+            return Variable.T;
+        } else if (length == 1 && (first == 'e' || first == 'E')) {
+            return Expr.constant(Math.E);
+        } else if (length == 2 && (first == 'p' && src[nameStart + 1] == 'i' || first == 'P' && src[nameStart + 1] == 'I')) {
+            return Expr.constant(Math.PI);
+        }
+        throw new ParserException("Unknown variable '%s', only 'x', 't', 'pi' and 'e' are allowed",
+                new String(src, nameStart, length));
+    }
 
-        var result = BuiltinFunctions.parseFunctionCall(name, firstParam, paramSupplier);
-        expect(')', "Missing closing ')'");
-        return result;
+    /**
+     * Parses an operand up to its first variable or constant, pushing a marker for
+     * a leading '-' and for every '(' and function call opened on the way.
+     */
+    private void parseOperand() {
+        while (true) {
+            if (consume('-')) {
+                pushOperator(NEGATE); // Only one; '--x' is not valid
+            }
+            if (consume('(')) {
+                pushOperator(GROUP);
+                continue;
+            }
+            if (!hasNext() || !Character.isAlphabetic(src[srcPos])) {
+                pushOperand(parseConstant());
+                return;
+            }
+            if (!parseIdentifier()) {
+                return;
+            }
+        }
     }
 
-    private Expr parseVariableOrFuncCall() {
-        var name = parseIdentifier();
+    /**
+     * Parses a variable, or the name and '(' of a function call.
+     * @return true if a call was opened, whose arguments are to be parsed next
+     */
+    private boolean parseIdentifier() {
+        var nameStart = srcPos;
+        skipIdentifier();
         if (consume('(')) {
-            return parseFuncCall(name);
+            pushOperator(CALL + 2 * lookupFunction(nameStart, srcPos - 1).ordinal());
+            return true;
         }
-
-        return switch (name) {
-            case "x" -> ctx -> ctx.x;
-            case "t" -> ctx -> ctx.t;
-            case "pi", "PI" -> Expr.constant(Math.PI);
-            case "e", "E" -> Expr.constant(Math.E);
-            default ->
-                throw new ParserException("Unknown variable '%s', only 'x', 't', 'pi' and 'e' are allowed", name);
-        };
+        pushOperand(parseVariable(nameStart));
+        return false;
     }
 
-    private Expr parseOperandInner2() {
-        if (consume('(')) {
-            var result = parseExpr();
-            expect(')', "Missing closing ')'");
-            return result;
+    /**
+     * Applies the powers and the negation of the operand just parsed. Powers are
+     * right-associative and bind tighter than a leading '-', so <code>-x^-y^z</code>
+     * is <code>-(x^(-(y^z)))</code>.
+     */
+    private void reduceOperand() {
+        while (numOperators > 0) {
+            var top = operatorStack[numOperators - 1];
+            if (top == NEGATE) {
+                numOperators--;
+                pushOperand(ConstantFolder.negate(popOperand()));
+            } else if (top == ArithmeticOp.POW.ordinal()) {
+                numOperators--;
+                var exponent = popOperand();
+                pushOperand(ConstantFolder.arithmetic(popOperand(), ArithmeticOp.POW, exponent));
+            } else {
+                return;
+            }
         }
+    }
 
-        if (hasNext() && Character.isAlphabetic(src[srcPos])) {
-            return parseVariableOrFuncCall();
+    /**
+     * Builds the chains on top of the stack whose precedence is higher than the given one.
+     * Chains of equal precedence are left on the stack to grow, and built whole once
+     * they end.
+     */
+    private void reduceChains(int precedence) {
+        while (numOperators > 0 && operatorStack[numOperators - 1] < NEGATE
+                && OPERATORS[operatorStack[numOperators - 1]].getPrecedence() > precedence) {
+            buildChain(chainLength());
         }
+    }
 
-        return parseConstant();
+    // The number of operators on top of the stack with the precedence of the topmost one
+    private int chainLength() {
+        var chainPrecedence = OPERATORS[operatorStack[numOperators - 1]].getPrecedence();
+        var length = 1;
+        while (length < numOperators && operatorStack[numOperators - length - 1] < NEGATE
+                && OPERATORS[operatorStack[numOperators - length - 1]].getPrecedence() == chainPrecedence) {
+            length++;
+        }
+        return length;
     }
 
-    private Expr parseOperandInner1() {
-        var result = parseOperandInner2();
+    // Replaces the topmost operators and their operands with the chain they form
+    private void buildChain(int length) {
+        var start = numOperands - length - 1;
+        if (chainOps.length < numOperands) {
+            chainOps = new ArithmeticOp[operandStack.length];
+        }
+        for (var i = 1; i <= length; ++i) {
+            chainOps[start + i] = OPERATORS[operatorStack[numOperators - length + i - 1]];
+        }
+        numOperators -= length;
+
+        var chain = Chains.build(operandStack, chainOps, start, length + 1);
+        Arrays.fill(operandStack, start, numOperands, null);
+        numOperands = start;
+        pushOperand(chain);
+    }
 
-        if (consume('^')) {
-            var power = parseOperand();
-            return makeArithmetic(result, ArithmeticOp.POW, power);
+    /**
+     * Moves on to the second parameter if the innermost group is a call of a
+     * two-parameter function that is still at its first.
+     */
+    private boolean nextParameter() {
+        var top = operatorStack[numOperators - 1] - CALL;
+        if (top < 0 || top % 2 != 0 || BUILTINS[top / 2].getArity() != 2 || !consume(',')) {
+            return false;
         }
-        return result;
+        operatorStack[numOperators - 1]++;
+        return true;
     }
 
-    private Expr parseOperand() {
-        var negate = consume('-');
-        var result = parseOperandInner1();
+    /**
+     * Closes the innermost parenthesized group or function call, which must be
+     * followed by ')', and replaces it with its value.
+     */
+    private void closeGroup() {
+        var top = operatorStack[--numOperators];
+        if (top == GROUP) {
+            expect(')', "Missing closing ')'");
+            return;
+        }
 
-        if (negate) {
-            return ctx -> -result.eval(ctx);
+        var fn = BUILTINS[(top - CALL) / 2];
+        if (fn.getArity() == 2 && (top - CALL) % 2 == 0) {
+            throw new ParserException("Missing comma between function parameters");
+        }
+        expect(')', "Missing closing ')'");
+        if (fn.getArity() == 1) {
+            pushOperand(ConstantFolder.call(fn, popOperand()));
+        } else {
+            var second = popOperand();
+            pushOperand(ConstantFolder.call(fn, popOperand(), second));
         }
-        return result;
     }
 
     private ArithmeticOp tryParseOperator() {
@@ -141,66 +298,23 @@ public final class ExpressionParser extends Parser<Expr> {
         };
     }
 
-    private Expr parseComplexExpr(Expr firstOperand, ArithmeticOp firstOp) {
-        var operatorStack = new ArrayList<ArithmeticOp>();
-        operatorStack.add(firstOp);
-
-        var operandStack = new ArrayList<Expr>();
-        operandStack.add(firstOperand);
-        operandStack.add(parseOperand());
-
-        ArithmeticOp op;
-        while ((op = tryParseOperator()) != null) {
-            var operand = parseOperand();
-
-            while (!operatorStack.isEmpty() && op.getPrecedence() <= operatorStack.get(operatorStack.size() - 1).getPrecedence()) {
-                mergeTopOfStack(operandStack, operatorStack);
-            }
-
-            operatorStack.add(op);
-            operandStack.add(operand);
-        }
-
-        while (!operatorStack.isEmpty()) {
-            mergeTopOfStack(operandStack, operatorStack);
-        }
-
-        return operandStack.get(0);
-    }
-
-    private Expr parseExpr() {
-        var root = parseOperand();
-
-        var op = tryParseOperator();
-        if (op != null) {
-            return parseComplexExpr(root, op);
+    private void pushOperand(Expr operand) {
+        if (numOperands == operandStack.length) {
+            operandStack = Arrays.copyOf(operandStack, numOperands * 2);
         }
-
-        return root;
+        operandStack[numOperands++] = operand;
     }
 
-    private void mergeTopOfStack(List<Expr> operandStack, List<ArithmeticOp> operatorStack) {
-        var mergedOp = operatorStack.remove(operatorStack.size() - 1);
-        var rhs = operandStack.remove(operandStack.size() - 1);
-        var lhs = operandStack.remove(operandStack.size() - 1);
-
-        operandStack.add(makeArithmetic(lhs, mergedOp, rhs));
+    private Expr popOperand() {
+        var operand = operandStack[--numOperands];
+        operandStack[numOperands] = null; // Do not keep finished trees alive
+        return operand;
     }
 
-    private Expr makeArithmetic(Expr lhs, ArithmeticOp op, Expr rhs) {
-        var lhsConstEval = lhs.tryConstEvaluate();
-        var rhsConstEval = rhs.tryConstEvaluate();
-        if (lhsConstEval != null && rhsConstEval != null) {
-            return Expr.constant(op.apply(lhsConstEval, rhsConstEval));
+    private void pushOperator(int entry) {
+        if (numOperators == operatorStack.length) {
+            operatorStack = Arrays.copyOf(operatorStack, numOperators * 2);
         }
-
-        return switch (op) {
-            case ADD -> ctx -> lhs.eval(ctx) + rhs.eval(ctx);
-            case SUB -> ctx -> lhs.eval(ctx) - rhs.eval(ctx);
-            case MUL -> ctx -> lhs.eval(ctx) * rhs.eval(ctx);
-            case DIV -> ctx -> lhs.eval(ctx) / rhs.eval(ctx);
-            case POW -> ctx -> Math.pow(lhs.eval(ctx), rhs.eval(ctx));
-        };
+        operatorStack[numOperators++] = entry;
     }
-
-}
\ No newline at end of file
+}
@@ -0,0 +1,177 @@
+package rollingball.functions;
+
+/**
+ * Range-reduced polynomial approximations of the transcendental builtins, used by
+ * {@link BuiltinFunctions.Precision#FAST}. Results are within about 1e-9 of
+ * {@link Math}, relative to the magnitude of the result, or absolute below 1.
+ *
+ * Special values (NaN, infinities, signed zeros) and arguments outside the ranges
+ * the approximations are accurate in are passed on to {@link Math}.
+ * Called directly from code generated by {@link FunctionCompiler}.
+ */
+final class FastMath {
+    private FastMath() {
+    } // Make non-instantiable
+
+    // pi/2 and ln(2) split in two, so that k * HI is exact for the k used in range reduction
+    private static final double PI_2_HI = 1.57079632673412561417e+00;
+    private static final double PI_2_LO = 6.07710050650619224932e-11;
+    private static final double LN2_HI = 6.93147180369123816490e-01;
+    private static final double LN2_LO = 1.90821492927058770002e-10;
+
+    private static final double MAX_TRIG_ARG = 1e6;
+    private static final double SQRT_2 = Math.sqrt(2.0);
+    private static final double SQRT_3 = Math.sqrt(3.0);
+    private static final double TAN_PI_12 = 2.0 - SQRT_3;
+    private static final double INV_LN10 = 1.0 / Math.log(10.0);
+
+    /**
+     * Returns true if the builtin has an approximation in this class; the others
+     * are as fast in {@link Math}.
+     */
+    static boolean approximates(BuiltinFunctions.Builtin fn) {
+        return switch (fn) {
+            case SIN, COS, TAN, ATAN, EXP, LOG, LOG10, POW, ATAN2 -> true;
+            default -> false;
+        };
+    }
+
+    static double sin(double x) {
+        if (x == 0.0 || !(Math.abs(x) <= MAX_TRIG_ARG)) { // Keeps the sign of zero
+            return Math.sin(x);
+        }
+        var k = Math.rint(x * (2.0 / Math.PI));
+        var r = (x - k * PI_2_HI) - k * PI_2_LO;
+        return switch ((int) k & 3) {
+            case 0 -> sinKernel(r);
+            case 1 -> cosKernel(r);
+            case 2 -> -sinKernel(r);
+            default -> -cosKernel(r);
+        };
+    }
+
+    static double cos(double x) {
+        if (!(Math.abs(x) <= MAX_TRIG_ARG)) {
+            return Math.cos(x);
+        }
+        var k = Math.rint(x * (2.0 / Math.PI));
+        var r = (x - k * PI_2_HI) - k * PI_2_LO;
+        return switch ((int) k & 3) {
+            case 0 -> cosKernel(r);
+            case 1 -> -sinKernel(r);
+            case 2 -> -cosKernel(r);
+            default -> sinKernel(r);
+        };
+    }
+
+    static double tan(double x) {
+        if (x == 0.0 || !(Math.abs(x) <= MAX_TRIG_ARG)) { // Keeps the sign of zero
+            return Math.tan(x);
+        }
+        var k = Math.rint(x * (2.0 / Math.PI));
+        var r = (x - k * PI_2_HI) - k * PI_2_LO;
+        var s = sinKernel(r);
+        var c = cosKernel(r);
+        return ((int) k & 1) == 0 ? s / c : -c / s;
+    }
+
+    // Taylor series, for |r| <= pi/4
+    private static double sinKernel(double r) {
+        var r2 = r * r;
+        return r + r * r2 * (-1.0 / 6 + r2 * (1.0 / 120 + r2 * (-1.0 / 5040
+                + r2 * (1.0 / 362880 + r2 * (-1.0 / 39916800 + r2 * (1.0 / 6227020800.0))))));
+    }
+
+    private static double cosKernel(double r) {
+        var r2 = r * r;
+        return 1.0 + r2 * (-1.0 / 2 + r2 * (1.0 / 24 + r2 * (-1.0 / 720 + r2 * (1.0 / 40320
+                + r2 * (-1.0 / 3628800 + r2 * (1.0 / 479001600 + r2 * (-1.0 / 87178291200.0)))))));
+    }
+
+    static double atan(double x) {
+        if (Double.isNaN(x)) {
+            return x;
+        }
+        var a = Math.abs(x);
+        var invert = a > 1.0;
+        if (invert) {
+            a = 1.0 / a;
+        }
+        var result = atanUnit(a);
+        if (invert) {
+            result = Math.PI / 2.0 - result;
+        }
+        return Math.copySign(result, x);
+    }
+
+    // atan(a) for a in [0, 1]
+    private static double atanUnit(double a) {
+        // atan(a) = pi/6 + atan((a*sqrt(3) - 1) / (a + sqrt(3))) moves a into [-tan(pi/12), tan(pi/12)]
+        var shift = a > TAN_PI_12;
+        if (shift) {
+            a = (a * SQRT_3 - 1.0) / (a + SQRT_3);
+        }
+        var a2 = a * a;
+        var result = a + a * a2 * (-1.0 / 3 + a2 * (1.0 / 5 + a2 * (-1.0 / 7 + a2 * (1.0 / 9 + a2 * (-1.0 / 11
+                + a2 * (1.0 / 13 + a2 * (-1.0 / 15 + a2 * (1.0 / 17))))))));
+        return shift ? result + Math.PI / 6.0 : result;
+    }
+
+    static double atan2(double y, double x) {
+        if (y == 0.0 || x == 0.0 || !Double.isFinite(y) || !Double.isFinite(x)) {
+            return Math.atan2(y, x);
+        }
+        var angle = atan(y / x);
+        if (x > 0.0) {
+            return angle;
+        }
+        return y > 0.0 ? angle + Math.PI : angle - Math.PI;
+    }
+
+    static double exp(double x) {
+        if (!(Math.abs(x) <= 700.0)) { // Overflow, underflow to subnormals, NaN
+            return Math.exp(x);
+        }
+        var k = Math.rint(x * (1.0 / Math.log(2.0)));
+        var r = (x - k * LN2_HI) - k * LN2_LO;
+        // Taylor series, for |r| <= ln(2)/2
+        var p = 1.0 + r * (1.0 + r * (1.0 / 2 + r * (1.0 / 6 + r * (1.0 / 24 + r * (1.0 / 120 + r * (1.0 / 720
+                + r * (1.0 / 5040 + r * (1.0 / 40320 + r * (1.0 / 362880 + r * (1.0 / 3628800))))))))));
+        return Math.scalb(p, (int) k);
+    }
+
+    static double log(double x) {
+        if (!(x >= Double.MIN_NORMAL && x < Double.POSITIVE_INFINITY)) { // Non-positive, subnormal, NaN
+            return Math.log(x);
+        }
+        var e = Math.getExponent(x);
+        var m = Math.scalb(x, -e); // In [1, 2)
+        if (m > SQRT_2) {
+            m *= 0.5;
+            ++e;
+        }
+        // log(m) = 2 atanh(f), with |f| <= 0.172
+        var f = (m - 1.0) / (m + 1.0);
+        var s = f * f;
+        var series = 2.0 * f * (1.0 + s * (1.0 / 3 + s * (1.0 / 5 + s * (1.0 / 7 + s * (1.0 / 9
+                + s * (1.0 / 11 + s * (1.0 / 13 + s * (1.0 / 15))))))));
+        return e * LN2_HI + (e * LN2_LO + series);
+    }
+
+    static double log10(double x) {
+        if (!(x >= Double.MIN_NORMAL && x < Double.POSITIVE_INFINITY)) {
+            return Math.log10(x);
+        }
+        return log(x) * INV_LN10;
+    }
+
+    static double pow(double a, double b) {
+        // Only positive finite bases with moderate results; the sign and special-case
+        // rules of Math.pow are left to it
+        if (!(a > 0.0 && a < Double.POSITIVE_INFINITY && Math.abs(b) < Double.POSITIVE_INFINITY)) {
+            return Math.pow(a, b);
+        }
+        var y = b * log(a);
+        return Math.abs(y) <= 700.0 ? exp(y) : Math.pow(a, b);
+    }
+}
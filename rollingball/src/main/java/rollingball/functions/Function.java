@@ -1,7 +1,13 @@
 package rollingball.functions;
 
+import rollingball.functions.BuiltinFunctions.Precision;
+
 /**
  * Represents a mathematical expression filtered by a conditional expression.
+ *
+ * {@link #eval(double, double)}, {@link #canEval(double, double)} and the batch methods
+ * may be called from several threads at once. Only {@link #setBackend(Backend)} must
+ * not race with evaluation.
  */
 public final class Function {
 
@@ -22,12 +28,55 @@ public final class Function {
         double eval(EvalContext ctx);
 
         /**
-         * Tries to to evaluate the expression without context. Meant for
-         * simplifying expressions where possible during parsing.
-         * @return the result of evaluating the expression, or null if context is required.
+         * Evaluates the expression at a point. The node types of this package evaluate without
+         * allocating; the default implementation creates a context for
+         * {@link #eval(EvalContext)}.
+         * @param x the x coordinate to evaluate the expression at.
+         * @param t the time variable.
+         * @return the result of evaluating the expression.
+         */
+        default double eval(double x, double t) {
+            return eval(new EvalContext(t, x));
+        }
+
+        /**
+         * Evaluates the expression at every x coordinate of a batch.
+         * The node types of this package evaluate the whole batch one node at a time;
+         * the default implementation falls back to calling {@link #eval(EvalContext)}
+         * for each sample.
+         * @param xs the x coordinates to evaluate the expression at.
+         * @param t the time variable.
+         * @param out receives the results, <code>out[i]</code> for <code>xs[i]</code>.
+         * @param len the number of samples to evaluate.
+         */
+        default void evalBatch(double[] xs, double t, double[] out, int len) {
+            var ctx = new EvalContext(t);
+            for (var i = 0; i < len; ++i) {
+                ctx.x = xs[i];
+                out[i] = eval(ctx);
+            }
+        }
+
+        /**
+         * Bounds the values of the expression over a range of x and t; see {@link Interval}.
+         * The default implementation knows nothing about the expression and returns
+         * {@link Interval#ENTIRE}.
+         * @param x the range of x.
+         * @param t the range of t.
+         * @return a range containing every non-NaN value of the expression over the ranges.
+         */
+        default Interval evalInterval(Interval x, Interval t) {
+            return Interval.ENTIRE;
+        }
+
+        /**
+         * Checks if the expression evaluates to the same value regardless of context.
+         * Constant expressions can be evaluated with a null context, which is
+         * how {@link ConstantFolder} simplifies expressions during parsing.
+         * @return true if the expression does not depend on any variables.
          */
-        default Double tryConstEvaluate() {
-            return null;
+        default boolean isConstant() {
+            return false;
         }
 
         /**
@@ -39,17 +88,7 @@ public final class Function {
          * @return the Expr node
          */
         static Expr constant(double val) {
-            return new Expr() {
-                @Override
-                public double eval(EvalContext ctx) {
-                    return val;
-                }
-
-                @Override
-                public Double tryConstEvaluate() {
-                    return val;
-                }
-            };
+            return new Constant(val);
         }
     }
 
@@ -69,12 +108,50 @@ public final class Function {
         boolean eval(EvalContext ctx);
 
         /**
-         * Tries to to evaluate the condition without context. Meant for
-         * simplifying conditions where possible during parsing.
-         * @return the result of evaluating the condition, or null if context is required.
+         * Evaluates the condition at a point. See {@link Expr#eval(double, double)}.
+         * @param x the x coordinate to evaluate the condition at.
+         * @param t the time variable.
+         * @return the result of evaluating the condition.
          */
-        default Boolean tryConstEvaluate() {
-            return null;
+        default boolean eval(double x, double t) {
+            return eval(new EvalContext(t, x));
+        }
+
+        /**
+         * Evaluates the condition at every x coordinate of a batch.
+         * See {@link Expr#evalBatch(double[], double, double[], int)}.
+         * @param xs the x coordinates to evaluate the condition at.
+         * @param t the time variable.
+         * @param out receives the results, <code>out[i]</code> for <code>xs[i]</code>.
+         * @param len the number of samples to evaluate.
+         */
+        default void evalBatch(double[] xs, double t, boolean[] out, int len) {
+            var ctx = new EvalContext(t);
+            for (var i = 0; i < len; ++i) {
+                ctx.x = xs[i];
+                out[i] = eval(ctx);
+            }
+        }
+
+        /**
+         * Determines whether the condition can hold anywhere in a range of x and t.
+         * See {@link Expr#evalInterval(Interval, Interval)}. The default implementation
+         * returns {@link Interval.Truth#MAYBE}.
+         * @param x the range of x.
+         * @param t the range of t.
+         * @return whether the condition holds never, always or sometimes within the ranges.
+         */
+        default Interval.Truth evalInterval(Interval x, Interval t) {
+            return Interval.Truth.MAYBE;
+        }
+
+        /**
+         * Checks if the condition evaluates to the same value regardless of context.
+         * See {@link Expr#isConstant()}.
+         * @return true if the condition does not depend on any variables.
+         */
+        default boolean isConstant() {
+            return false;
         }
 
         /**
@@ -86,31 +163,221 @@ public final class Function {
          * @return the Condition node
          */
         static Condition constant(boolean result) {
-            return new Condition() {
-                @Override
-                public boolean eval(EvalContext ctx) {
-                    return result;
-                }
-
-                @Override
-                public Boolean tryConstEvaluate() {
-                    return result;
-                }
-            };
+            return new BoolConstant(result);
         }
     }
 
+    /**
+     * Selects how a function is evaluated.
+     */
+    public enum Backend {
+        /**
+         * Always evaluate by walking the parsed expression tree.
+         */
+        TREE,
+        /**
+         * Walk the expression tree until the function has been evaluated
+         * {@link Function#COMPILE_THRESHOLD} times, then switch to bytecode
+         * compiled with {@link FunctionCompiler}, or to a {@link RegisterProgram}
+         * if the function is too large to compile.
+         */
+        TIERED,
+        /**
+         * Evaluate with a {@link RegisterProgram}, built when the backend is selected.
+         */
+        REGISTERS
+    }
+
+    /**
+     * The number of evaluations after which a {@link Backend#TIERED} function is compiled.
+     */
+    public static final int COMPILE_THRESHOLD = 1000;
+
     private final Expr formula;
     private final Condition condition;
 
+    private final boolean timeInvariant;
+    private final XIntervals xIntervals;
+
+    private final FunctionBackend backend;
+
+    private CostEstimate cost; // Computed on first use
+
     /**
      * Creates a new function with the given expression and condition.
+     * The function uses the {@link Backend#TIERED} backend.
      * @param formula the expression to evaluate.
      * @param condition the condition to evaluate.
      */
     public Function(Expr formula, Condition condition) {
         this.formula = formula;
         this.condition = condition;
+        this.timeInvariant = !TimeInvariance.exprDependsOn(formula, Variable.T)
+                && !TimeInvariance.conditionDependsOn(condition, Variable.T);
+        this.xIntervals = XIntervals.compile(condition);
+        this.backend = new FunctionBackend();
+    }
+
+    private Function(Function original) {
+        this.formula = original.formula;
+        this.condition = original.condition;
+        this.timeInvariant = original.timeInvariant;
+        this.xIntervals = original.xIntervals;
+        this.backend = new FunctionBackend(original.backend);
+        this.cost = original.cost;
+    }
+
+    /**
+     * Creates a function with the same formula and condition and the {@link Backend#TIERED}
+     * backend. Copies tier up independently, but compile to bytecode only once between them.
+     * @return the copy
+     */
+    Function copy() {
+        return new Function(this);
+    }
+
+    /**
+     * Returns this function with every builtin call, and the <code>^</code> operator,
+     * evaluated at the given precision. The result is built on first use and then
+     * cached; it uses the same backend as this function.
+     * @param precision the precision
+     * @return a function with the same formula and condition at that precision
+     */
+    public Function withPrecision(Precision precision) {
+        return backend.variant(this, precision);
+    }
+
+    /**
+     * Returns a static estimate of the cost of evaluating this function.
+     * @return the estimate, computed on first use
+     */
+    public CostEstimate getCost() {
+        var estimate = cost;
+        if (estimate == null) {
+            estimate = CostEstimate.of(this);
+            cost = estimate;
+        }
+        return estimate;
+    }
+
+    /**
+     * Returns the expression of this function.
+     * @return the formula
+     */
+    public Expr getFormula() {
+        return formula;
+    }
+
+    /**
+     * Returns the condition that filters where this function is defined.
+     * @return the condition
+     */
+    public Condition getCondition() {
+        return condition;
+    }
+
+    /**
+     * Checks if neither the formula nor the condition depend on t, meaning the
+     * graph of the function never changes and can be cached.
+     * @return true if the function is independent of time
+     */
+    public boolean isTimeInvariant() {
+        return timeInvariant;
+    }
+
+    /**
+     * Returns the set of x where the condition holds at the given time, if the condition
+     * could be compiled into intervals; see {@link XIntervals}. When it could,
+     * {@link #canEval(EvalContext)} and the batch methods test x against the set
+     * instead of evaluating the condition.
+     * @param t the time variable
+     * @return the set, or null if the condition must be evaluated
+     */
+    public XIntervals.Spans getXSpans(double t) {
+        return xIntervals == null ? null : xIntervals.spansAt(t);
+    }
+
+    /**
+     * Returns how this function is evaluated.
+     * @return the backend selected with {@link #setBackend(Backend)}, {@link Backend#TIERED} by default
+     */
+    public Backend getBackend() {
+        return backend.get();
+    }
+
+    /**
+     * Changes how this function is evaluated. Switching back to
+     * {@link Backend#TREE} discards any compiled code. If the function
+     * cannot be lowered to a {@link RegisterProgram}, selecting
+     * {@link Backend#REGISTERS} leaves it evaluating the tree.
+     * @param backend the new backend
+     */
+    public void setBackend(Backend backend) {
+        this.backend.set(this, backend);
+    }
+
+    /**
+     * Compiles a {@link Backend#TIERED} function now rather than after
+     * {@link #COMPILE_THRESHOLD} evaluations, so that the thread preparing the
+     * function pays for compiling it instead of the first thread to evaluate it.
+     */
+    public void compile() {
+        backend.compileNow(this);
+    }
+
+    /**
+     * Checks whether the function has been compiled to bytecode or a register program.
+     * @return true if evaluation currently goes through a {@link CompiledFunction}
+     */
+    public boolean isCompiled() {
+        return backend.compiled() != null;
+    }
+
+    /**
+     * Tests if the condition permits evaluating the function at the given point.
+     * @param x the x coordinate.
+     * @param t the time variable.
+     * @return true if {@link #eval(double, double)} should be called with these values.
+     */
+    public boolean canEval(double x, double t) {
+        var spans = getXSpans(t);
+        if (spans != null) {
+            return spans.contains(x);
+        }
+        var compiledFn = backend.compiled();
+        if (compiledFn != null) {
+            return compiledFn.canEval(x, t);
+        }
+        backend.countEvaluations(this, 1);
+        var scratch = BatchScratch.get();
+        try {
+            return this.condition.eval(scratch.takeContext(x, t));
+        } finally {
+            scratch.releaseContext();
+        }
+    }
+
+    /**
+     * Evaluates the function at the given point.
+     * {@link #canEval(double, double)} should be checked first for intended results.
+     * @param x the x coordinate.
+     * @param t the time variable.
+     * @return the result of evaluating the expression.
+     */
+    public double eval(double x, double t) {
+        var compiledFn = backend.compiled();
+        if (compiledFn != null) {
+            return compiledFn.eval(x, t);
+        }
+        backend.countEvaluations(this, 1);
+        // Through a reused context, so that shared and hoisted values carry over
+        // between the formula and the condition, and from one call to the next
+        var scratch = BatchScratch.get();
+        try {
+            return this.formula.eval(scratch.takeContext(x, t));
+        } finally {
+            scratch.releaseContext();
+        }
     }
 
     /**
@@ -120,6 +387,15 @@ public final class Function {
      * @return true if eval() should be called with this context.
      */
     public boolean canEval(EvalContext ctx) {
+        var spans = xIntervals == null ? null : xIntervals.spansAt(ctx.t);
+        if (spans != null) {
+            return spans.contains(ctx.x);
+        }
+        var compiledFn = backend.compiled();
+        if (compiledFn != null) {
+            return compiledFn.canEval(ctx.x, ctx.t);
+        }
+        backend.countEvaluations(this, 1);
         return this.condition.eval(ctx);
     }
 
@@ -130,13 +406,19 @@ public final class Function {
      * @return the result of evaluating the expression.
      */
     public double eval(EvalContext ctx) {
+        var compiledFn = backend.compiled();
+        if (compiledFn != null) {
+            return compiledFn.eval(ctx.x, ctx.t);
+        }
+        backend.countEvaluations(this, 1);
         return this.formula.eval(ctx);
     }
 
     /**
      * Evaluates the function with the given context, at the specified
      * x coordinate. This is a convenience method that calls
-     * {@link eval(EvalContext)}.
+     * {@link eval(EvalContext)}. It writes to <code>ctx.x</code>, so the
+     * context must not be shared between threads; prefer {@link #eval(double, double)}.
      * @param x the x coordinate to evaluate the function at.
      * @param ctx the context in which to evaluate the expression.
      * @return the result of evaluating the expression.
@@ -145,4 +427,67 @@ public final class Function {
         ctx.x = x;
         return eval(ctx);
     }
+
+    /**
+     * Evaluates the function and its condition at every x coordinate in <code>xs</code>.
+     * This is considerably faster than calling {@link #canEval(EvalContext)} and
+     * {@link #eval(EvalContext)} for each sample, as each node of the expression is
+     * dispatched once per batch rather than once per sample.
+     * @param xs the x coordinates to evaluate the function at.
+     * @param t the time variable.
+     * @param out receives the values of the formula. Must be at least as long as <code>xs</code>.
+     * @param mask receives the values of the condition. Must be at least as long as <code>xs</code>.
+     * @return the number of samples for which the condition holds.
+     */
+    public int evalBatch(double[] xs, double t, double[] out, boolean[] mask) {
+        return evalBatch(xs, t, out, mask, xs.length);
+    }
+
+    /**
+     * Evaluates the function and its condition at the first <code>len</code> x coordinates
+     * in <code>xs</code>. See {@link #evalBatch(double[], double, double[], boolean[])}.
+     * @param xs the x coordinates to evaluate the function at.
+     * @param t the time variable.
+     * @param out receives the values of the formula.
+     * @param mask receives the values of the condition.
+     * @param len the number of samples to evaluate.
+     * @return the number of samples for which the condition holds.
+     */
+    public int evalBatch(double[] xs, double t, double[] out, boolean[] mask, int len) {
+        var spans = getXSpans(t);
+        var compiledFn = backend.compiled();
+        if (compiledFn != null) {
+            for (var i = 0; i < len; ++i) {
+                out[i] = compiledFn.eval(xs[i], t);
+                mask[i] = spans != null ? spans.contains(xs[i]) : compiledFn.canEval(xs[i], t);
+            }
+        } else {
+            evalTreeBatch(xs, t, out, mask, len, spans);
+        }
+
+        var numValid = 0;
+        for (var i = 0; i < len; ++i) {
+            numValid += mask[i] ? 1 : 0;
+        }
+        return numValid;
+    }
+
+    private void evalTreeBatch(double[] xs, double t, double[] out, boolean[] mask, int len,
+            XIntervals.Spans spans) {
+        backend.countEvaluations(this, len);
+        var scratch = BatchScratch.get();
+        scratch.beginBatch();
+        try {
+            this.formula.evalBatch(xs, t, out, len);
+            if (spans == null) {
+                this.condition.evalBatch(xs, t, mask, len);
+                return;
+            }
+            for (var i = 0; i < len; ++i) {
+                mask[i] = spans.contains(xs[i]);
+            }
+        } finally {
+            scratch.endBatch();
+        }
+    }
 }
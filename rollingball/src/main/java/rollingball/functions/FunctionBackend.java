@@ -0,0 +1,101 @@
+package rollingball.functions;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import rollingball.functions.BuiltinFunctions.Precision;
+import rollingball.functions.Function.Backend;
+
+/**
+ * The evaluation state of a {@link Function}: the selected {@link Backend}, the count
+ * of tree evaluations a {@link Backend#TIERED} function tiers up after, the code it was
+ * compiled to, and the variants built by {@link Function#withPrecision(Precision)}.
+ */
+final class FunctionBackend {
+    // Bytecode compiled for the formula and condition, shared with copies
+    private final AtomicReference<CompiledFunction> sharedBytecode;
+    // Built by variant() on first use
+    private final AtomicReferenceArray<Function> precisionVariants =
+            new AtomicReferenceArray<>(Precision.values().length);
+
+    private Backend backend;
+    private int evalCount; // Approximate when evaluated from several threads
+    private volatile CompiledFunction compiled;
+
+    FunctionBackend() {
+        this.backend = Backend.TIERED;
+        this.sharedBytecode = new AtomicReference<>();
+    }
+
+    /**
+     * Creates the state of a copy, which tiers up on its own but shares compiled bytecode.
+     * @param original the state of the function being copied
+     */
+    FunctionBackend(FunctionBackend original) {
+        this.backend = Backend.TIERED;
+        this.sharedBytecode = original.sharedBytecode;
+    }
+
+    Backend get() {
+        return backend;
+    }
+
+    void set(Function fn, Backend backend) {
+        this.backend = backend;
+        this.evalCount = 0;
+        this.compiled = backend == Backend.REGISTERS ? RegisterProgram.compile(fn) : null;
+    }
+
+    /**
+     * Returns the code the function currently evaluates through.
+     * @return the compiled function, or null while the tree is evaluated
+     */
+    CompiledFunction compiled() {
+        return compiled;
+    }
+
+    void compileNow(Function fn) {
+        if (backend == Backend.TIERED && evalCount < Function.COMPILE_THRESHOLD) {
+            countEvaluations(fn, Function.COMPILE_THRESHOLD - evalCount);
+        }
+    }
+
+    void countEvaluations(Function fn, int count) {
+        // The count stops at the threshold, so a function that fails to compile
+        // is only attempted once
+        if (backend != Backend.TIERED || evalCount >= Function.COMPILE_THRESHOLD) {
+            return;
+        }
+        evalCount = (int) Math.min(Function.COMPILE_THRESHOLD, (long) evalCount + count);
+        if (evalCount == Function.COMPILE_THRESHOLD) {
+            var bytecode = bytecodeFor(fn);
+            // Functions too large for a method still avoid the recursive tree walk
+            this.compiled = bytecode != null ? bytecode : RegisterProgram.compile(fn);
+        }
+    }
+
+    private CompiledFunction bytecodeFor(Function fn) {
+        var bytecode = sharedBytecode.get();
+        if (bytecode == null) {
+            bytecode = FunctionCompiler.compile(fn);
+            if (bytecode != null && !sharedBytecode.compareAndSet(null, bytecode)) {
+                bytecode = sharedBytecode.get();
+            }
+        }
+        return bytecode;
+    }
+
+    Function variant(Function fn, Precision precision) {
+        var variant = precisionVariants.get(precision.ordinal());
+        if (variant == null) {
+            variant = PrecisionRewriter.rewrite(fn, precision);
+            if (!precisionVariants.compareAndSet(precision.ordinal(), null, variant)) {
+                variant = precisionVariants.get(precision.ordinal());
+            }
+        }
+        if (variant.getBackend() != backend) {
+            variant.setBackend(backend);
+        }
+        return variant;
+    }
+}
@@ -0,0 +1,418 @@
+package rollingball.functions;
+
+import java.lang.invoke.MethodHandles;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import rollingball.functions.BuiltinFunctions.Builtin;
+import rollingball.functions.BuiltinFunctions.Precision;
+import rollingball.functions.ClassFileWriter.MethodWriter;
+import rollingball.functions.Function.Condition;
+import rollingball.functions.Function.Expr;
+
+/**
+ * Compiles a parsed {@link Function} into a hidden class, wrapped in a {@link CompiledFunction}.
+ * The whole formula becomes one straight-line method, which the JIT can optimize as a unit,
+ * instead of a chain of virtual <code>eval()</code> calls through the node tree.
+ *
+ * Only the node types of this package can be compiled. Functions containing other
+ * {@link Expr} or {@link Condition} implementations (for example hand-written lambdas)
+ * are left for the tree interpreter.
+ */
+public final class FunctionCompiler {
+    private FunctionCompiler() {
+    } // Make non-instantiable
+
+    // Methods larger than this are never JIT-compiled by HotSpot (-XX:HugeMethodLimit),
+    // so bytecode this large would only ever run in the bytecode interpreter
+    private static final int MAX_CODE_LENGTH = 8000;
+    private static final int MAX_POOL_SIZE = 0xFFFF;
+
+    private static final String CLASS_NAME = "rollingball/functions/GeneratedFunction";
+    private static final String INTERFACE_NAME = "rollingball/functions/FunctionCompiler$Kernel";
+    private static final String HELPERS_NAME = "rollingball/functions/FunctionCompiler";
+    private static final String OBJECT_NAME = "java/lang/Object";
+    private static final String MATH_NAME = "java/lang/Math";
+    private static final String STRICT_MATH_NAME = "java/lang/StrictMath";
+    private static final String FAST_MATH_NAME = "rollingball/functions/FastMath";
+
+    // Local variable slots of eval(double x, double t, double[] hoisted); slot 0 is `this`
+    private static final int X_SLOT = 1;
+    private static final int T_SLOT = 3;
+    private static final int HOISTED_SLOT = 5;
+    private static final int NUM_LOCALS = 6;
+    // dload and dstore take a one-byte index, and a double takes two slots
+    private static final int MAX_LOCAL_SLOT = 0xFE;
+
+    private static final int ICONST_0 = 0x03;
+    private static final int ICONST_1 = 0x04;
+    private static final int DCONST_0 = 0x0e;
+    private static final int SIPUSH = 0x11;
+    private static final int LDC2_W = 0x14;
+    private static final int DLOAD = 0x18;
+    private static final int ALOAD = 0x19;
+    private static final int DALOAD = 0x31;
+    private static final int DSTORE = 0x39;
+    private static final int ALOAD_0 = 0x2a;
+    private static final int DUP2 = 0x5c;
+    private static final int DADD = 0x63;
+    private static final int DSUB = 0x67;
+    private static final int DMUL = 0x6b;
+    private static final int DDIV = 0x6f;
+    private static final int DNEG = 0x77;
+    private static final int IAND = 0x7e;
+    private static final int L2D = 0x8a;
+    private static final int IRETURN = 0xac;
+    private static final int DRETURN = 0xaf;
+    private static final int RETURN = 0xb1;
+    private static final int INVOKESPECIAL = 0xb7;
+    private static final int INVOKESTATIC = 0xb8;
+
+    /**
+     * Thrown internally when a node cannot be compiled.
+     */
+    private static final class NotCompilableException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        // Thrown for control flow only, so one stackless instance serves every compilation
+        static final NotCompilableException INSTANCE = new NotCompilableException();
+
+        private NotCompilableException() {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * The interface implemented by generated classes. {@link Hoisted} values are passed
+     * in, as computing them needs a branch on whether t has changed.
+     */
+    interface Kernel {
+        double eval(double x, double t, double[] hoisted);
+
+        boolean canEval(double x, double t, double[] hoisted);
+    }
+
+    /**
+     * A generated kernel together with the prologue computing its hoisted values.
+     */
+    private record KernelFunction(Kernel kernel, Prologue prologue) implements CompiledFunction {
+        @Override
+        public double eval(double x, double t) {
+            return kernel.eval(x, t, prologue.valuesAt(t));
+        }
+
+        @Override
+        public boolean canEval(double x, double t) {
+            return kernel.canEval(x, t, prologue.valuesAt(t));
+        }
+    }
+
+    /**
+     * The state of the method being generated.
+     */
+    private static final class Scope {
+        private final Prologue prologue;
+        private final Map<Shared, Integer> sharedSlots = new IdentityHashMap<>();
+
+        Scope(Prologue prologue) {
+            this.prologue = prologue;
+        }
+    }
+
+    /**
+     * Compiles the formula and condition of the given function.
+     * @param fn the function to compile
+     * @return the compiled function, or null if the function contains nodes
+     *         that cannot be compiled, or is too large to benefit from compilation
+     */
+    public static CompiledFunction compile(Function fn) {
+        var prologue = new Prologue(fn);
+        byte[] bytes;
+        try {
+            bytes = generate(fn.getFormula(), fn.getCondition(), prologue);
+        } catch (NotCompilableException e) {
+            return null;
+        }
+        if (bytes == null) {
+            return null;
+        }
+
+        try {
+            var lookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+            var kernel = (Kernel) lookup.lookupClass().getDeclaredConstructor().newInstance();
+            return new KernelFunction(kernel, prologue);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    private static byte[] generate(Expr formula, Condition condition, Prologue prologue) {
+        var writer = new ClassFileWriter();
+
+        var ctor = writer.addMethod("<init>", "()V", 1);
+        ctor.op(ALOAD_0, 1);
+        ctor.opU2(INVOKESPECIAL, writer.methodRef(OBJECT_NAME, "<init>", "()V"), -1);
+        ctor.op(RETURN, 0);
+
+        var eval = writer.addMethod("eval", "(DD[D)D", NUM_LOCALS);
+        // Each method computes its shared subexpressions itself, as either can be called alone
+        emitExpr(writer, eval, new Scope(prologue), formula);
+        eval.op(DRETURN, -2);
+
+        var canEval = writer.addMethod("canEval", "(DD[D)Z", NUM_LOCALS);
+        emitCondition(writer, canEval, new Scope(prologue), condition);
+        canEval.op(IRETURN, -1);
+
+        if (eval.codeLength() > MAX_CODE_LENGTH || canEval.codeLength() > MAX_CODE_LENGTH
+                || writer.poolSize() > MAX_POOL_SIZE || prologue.size() > Short.MAX_VALUE) {
+            return null;
+        }
+        return writer.toByteArray(CLASS_NAME, OBJECT_NAME, INTERFACE_NAME);
+    }
+
+    private static void emitExpr(ClassFileWriter writer, MethodWriter code, Scope scope, Expr expr) {
+        if (expr instanceof Constant c) {
+            code.opU2(LDC2_W, writer.doubleConst(c.value()), 2);
+        } else if (expr instanceof Variable v) {
+            code.opU1(DLOAD, v == Variable.X ? X_SLOT : T_SLOT, 2);
+        } else if (expr instanceof Negate n) {
+            emitExpr(writer, code, scope, n.operand());
+            code.op(DNEG, 0);
+        } else if (expr instanceof Arithmetic a) {
+            emitArithmetic(writer, code, scope, a);
+        } else if (expr instanceof Shared s) {
+            emitShared(writer, code, scope, s);
+        } else if (expr instanceof Hoisted h) {
+            code.opU1(ALOAD, HOISTED_SLOT, 1);
+            code.opU2(SIPUSH, scope.prologue.indexOf(h), 1);
+            code.op(DALOAD, 0);
+        } else {
+            emitFunctionOf(writer, code, scope, expr);
+        }
+    }
+
+    // The nodes that apply a function to the value of their child
+    private static void emitFunctionOf(ClassFileWriter writer, MethodWriter code, Scope scope, Expr expr) {
+        if (expr instanceof IntPower p) {
+            emitExpr(writer, code, scope, p.base());
+            emitIntPower(code, p.exponent());
+        } else if (expr instanceof Polynomial p) {
+            emitExpr(writer, code, scope, p.arg());
+            emitPolynomial(writer, code, p.coefficients());
+        } else if (expr instanceof HarmonicSeries h) {
+            emitExpr(writer, code, scope, h.arg());
+            emitHarmonicSeries(writer, code, h);
+        } else {
+            emitCall(writer, code, scope, expr);
+        }
+    }
+
+    private static void emitCall(ClassFileWriter writer, MethodWriter code, Scope scope, Expr expr) {
+        if (expr instanceof UnaryCall call) {
+            emitExpr(writer, code, scope, call.arg());
+            emitBuiltin(writer, code, call.fn(), call.precision());
+        } else if (expr instanceof BinaryCall call) {
+            emitExpr(writer, code, scope, call.first());
+            emitExpr(writer, code, scope, call.second());
+            emitBuiltin(writer, code, call.fn(), call.precision());
+        } else {
+            throw NotCompilableException.INSTANCE;
+        }
+    }
+
+    private static void emitArithmetic(ClassFileWriter writer, MethodWriter code, Scope scope, Arithmetic a) {
+        emitExpr(writer, code, scope, a.lhs());
+        emitExpr(writer, code, scope, a.rhs());
+        switch (a.op()) {
+            case ADD -> code.op(DADD, -2);
+            case SUB -> code.op(DSUB, -2);
+            case MUL -> code.op(DMUL, -2);
+            case DIV -> code.op(DDIV, -2);
+            case POW -> code.opU2(INVOKESTATIC, writer.methodRef(MATH_NAME, "pow", "(DD)D"), -2);
+        }
+    }
+
+    // The code is straight-line, so the first occurrence of a shared node in emission
+    // order always runs before the others, and can store the value for them
+    private static void emitShared(ClassFileWriter writer, MethodWriter code, Scope scope, Shared s) {
+        var slot = scope.sharedSlots.get(s);
+        if (slot != null) {
+            code.opU1(DLOAD, slot, 2);
+            return;
+        }
+        emitExpr(writer, code, scope, s.expr());
+        slot = addLocal(code);
+        scope.sharedSlots.put(s, slot);
+        code.op(DUP2, 2);
+        code.opU1(DSTORE, slot, -2);
+    }
+
+    private static int addLocal(MethodWriter code) {
+        var slot = code.addLocal(2);
+        if (slot > MAX_LOCAL_SLOT) {
+            throw NotCompilableException.INSTANCE;
+        }
+        return slot;
+    }
+
+    // Unrolled, in the same order as Polynomial.apply(); the argument is on the stack
+    private static void emitPolynomial(ClassFileWriter writer, MethodWriter code, double[] coefficients) {
+        var arg = addLocal(code);
+        code.opU1(DSTORE, arg, -2);
+        code.opU2(LDC2_W, writer.doubleConst(coefficients[coefficients.length - 1]), 2);
+        for (var i = coefficients.length - 2; i >= 0; --i) {
+            code.opU1(DLOAD, arg, 2);
+            code.op(DMUL, -2);
+            code.opU2(LDC2_W, writer.doubleConst(coefficients[i]), 2);
+            code.op(DADD, -2);
+        }
+    }
+
+    // Unrolled, in the same order as HarmonicSeries.apply(); the angle is on the stack
+    private static void emitHarmonicSeries(ClassFileWriter writer, MethodWriter code, HarmonicSeries h) {
+        var sin = addLocal(code);
+        var cos = addLocal(code);
+        var twoCos = addLocal(code);
+        emitSinCos(writer, code, h.precision(), sin, cos, twoCos);
+
+        // b1 and b2 of the recurrence, for the sines and the cosines
+        var s1 = addLocal(code);
+        var s2 = addLocal(code);
+        var c1 = addLocal(code);
+        var c2 = addLocal(code);
+        for (var slot : new int[] { s1, s2, c1, c2 }) {
+            code.op(DCONST_0, 2);
+            code.opU1(DSTORE, slot, -2);
+        }
+        for (var k = h.sines().length - 1; k >= 0; --k) {
+            emitClenshawStep(writer, code, h.sines()[k], twoCos, s1, s2);
+            emitClenshawStep(writer, code, h.cosines()[k], twoCos, c1, c2);
+        }
+        emitClenshawSum(code, sin, cos, s1, c1, c2);
+    }
+
+    // Stores sin, cos and 2*cos of the angle on the stack
+    private static void emitSinCos(ClassFileWriter writer, MethodWriter code, Precision precision, int sin, int cos,
+            int twoCos) {
+        code.op(DUP2, 2);
+        emitBuiltin(writer, code, Builtin.SIN, precision);
+        code.opU1(DSTORE, sin, -2);
+        emitBuiltin(writer, code, Builtin.COS, precision);
+        code.op(DUP2, 2);
+        code.opU1(DSTORE, cos, -2);
+        code.opU2(LDC2_W, writer.doubleConst(2.0), 2);
+        code.op(DMUL, -2);
+        code.opU1(DSTORE, twoCos, -2);
+    }
+
+    // s1 * sin + (c1 * cos - c2)
+    private static void emitClenshawSum(MethodWriter code, int sin, int cos, int s1, int c1, int c2) {
+        code.opU1(DLOAD, s1, 2);
+        code.opU1(DLOAD, sin, 2);
+        code.op(DMUL, -2);
+        code.opU1(DLOAD, c1, 2);
+        code.opU1(DLOAD, cos, 2);
+        code.op(DMUL, -2);
+        code.opU1(DLOAD, c2, 2);
+        code.op(DSUB, -2);
+        code.op(DADD, -2);
+    }
+
+    // b = coefficient + twoCos * b1 - b2; b2 = b1; b1 = b
+    private static void emitClenshawStep(ClassFileWriter writer, MethodWriter code, double coefficient, int twoCos,
+            int b1, int b2) {
+        code.opU2(LDC2_W, writer.doubleConst(coefficient), 2);
+        code.opU1(DLOAD, twoCos, 2);
+        code.opU1(DLOAD, b1, 2);
+        code.op(DMUL, -2);
+        code.op(DADD, -2);
+        code.opU1(DLOAD, b2, 2);
+        code.op(DSUB, -2);
+        code.opU1(DLOAD, b1, 2);
+        code.opU1(DSTORE, b2, -2);
+        code.opU1(DSTORE, b1, -2);
+    }
+
+    // Must multiply in the same order as IntPower.apply()
+    private static void emitIntPower(MethodWriter code, int exponent) {
+        switch (exponent) {
+            case 2 -> {
+                code.op(DUP2, 2);
+                code.op(DMUL, -2);
+            }
+            case 3 -> {
+                code.op(DUP2, 2);
+                code.op(DUP2, 2);
+                code.op(DMUL, -2);
+                code.op(DMUL, -2);
+            }
+            default -> {
+                code.op(DUP2, 2);
+                code.op(DMUL, -2);
+                code.op(DUP2, 2);
+                code.op(DMUL, -2);
+            }
+        }
+    }
+
+    private static void emitBuiltin(ClassFileWriter writer, MethodWriter code, Builtin fn, Precision precision) {
+        var binary = fn.getArity() == 2;
+        var popped = binary ? -2 : 0;
+        if (fn == Builtin.HYPOT) {
+            code.opU2(INVOKESTATIC, writer.methodRef(HELPERS_NAME, "hypot", "(DD)D"), popped);
+        } else if (fn == Builtin.ROUND) {
+            code.opU2(INVOKESTATIC, writer.methodRef(MATH_NAME, "round", "(D)J"), popped);
+            code.op(L2D, 0);
+        } else {
+            var owner = switch (precision) {
+                case FAST -> FastMath.approximates(fn) ? FAST_MATH_NAME : MATH_NAME;
+                case DEFAULT -> MATH_NAME;
+                case STRICT -> STRICT_MATH_NAME;
+            };
+            var descriptor = binary ? "(DD)D" : "(D)D";
+            code.opU2(INVOKESTATIC, writer.methodRef(owner, fn.name().toLowerCase(), descriptor), popped);
+        }
+    }
+
+    private static void emitCondition(ClassFileWriter writer, MethodWriter code, Scope scope, Condition condition) {
+        if (condition instanceof BoolConstant c) {
+            code.op(c.value() ? ICONST_1 : ICONST_0, 1);
+        } else if (condition instanceof Comparison c) {
+            emitExpr(writer, code, scope, c.lhs());
+            emitExpr(writer, code, scope, c.rhs());
+            var helper = c.op().name().toLowerCase();
+            code.opU2(INVOKESTATIC, writer.methodRef(HELPERS_NAME, helper, "(DD)Z"), -3);
+        } else if (condition instanceof Conjunction c) {
+            // Both sides are side-effect free, so evaluating both without short-circuiting
+            // is equivalent to `&&`, and keeps the method free of branches
+            emitCondition(writer, code, scope, c.lhs());
+            emitCondition(writer, code, scope, c.rhs());
+            code.op(IAND, -1);
+        } else {
+            throw NotCompilableException.INSTANCE;
+        }
+    }
+
+    // Helpers called from generated code. Comparisons are done here rather than
+    // with dcmpg + branches because the generated methods must stay branch-free.
+
+    static boolean lt(double a, double b) {
+        return a < b;
+    }
+
+    static boolean le(double a, double b) {
+        return a <= b;
+    }
+
+    static boolean gt(double a, double b) {
+        return a > b;
+    }
+
+    static boolean ge(double a, double b) {
+        return a >= b;
+    }
+
+    static double hypot(double a, double b) {
+        return Math.sqrt(a * a + b * b);
+    }
+}
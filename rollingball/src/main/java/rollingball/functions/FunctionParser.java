@@ -1,6 +1,6 @@
 package rollingball.functions;
 
-import java.util.Arrays;
+import rollingball.functions.Function.Condition;
 
 /**
  * Namespace for a high-level interface to expression parsing.
@@ -9,39 +9,159 @@ public final class FunctionParser {
     private FunctionParser() {
     }
 
+    /**
+     * The maximum number of parsed functions kept by {@link #parse(String, String)}.
+     */
+    public static final int CACHE_CAPACITY = 512;
+
+    /**
+     * A snapshot of the counters of the parse cache.
+     * @param hits the number of parses answered from the cache
+     * @param misses the number of parses that had to parse the input
+     * @param evictions the number of entries dropped to stay within the capacity
+     * @param size the number of entries currently cached
+     * @param capacity the maximum number of entries
+     */
+    public record CacheStats(long hits, long misses, long evictions, int size, int capacity) {
+    }
+
+    // The cost is that of the tree as parsed, before any optimization, so that
+    // limits can be checked before running the passes over a huge tree
+    private record Parsed(Function function, CostEstimate cost) {
+    }
+
+    private static final ParseCache<Parsed> CACHE = new ParseCache<>(CACHE_CAPACITY);
+
     /**
      * Parses an expression and a condition and returns a function representing them.
      * If either of the strings are empty, null is returned.
+     *
+     * Parsed functions are cached by their input with whitespace removed. Each call still
+     * returns a new {@link Function} with the {@link Function.Backend#TIERED} backend, but
+     * calls with the same input share the parsed tree and any bytecode compiled for it.
+     * This method is thread-safe. Functions are checked against {@link ParserLimits#DEFAULT}.
      * @param exprString the expression to parse.
      * @param conditionString the condition to parse.
      * @return the function representing the expression and the condition, or null.
-     * @throws ParserException if the expression or condition have invalid syntax.
+     * @throws ParserException if the expression or condition have invalid syntax,
+     *         or the function is too expensive to evaluate.
      */
     public static Function parse(String exprString, String conditionString) {
-        var expr = parseChecked(exprString, new ExpressionParser());
-        var cond = parseChecked(conditionString, new ConditionParser());
+        return parse(exprString, conditionString, ParserLimits.DEFAULT);
+    }
 
-        if (expr == null) {
+    /**
+     * Parses an expression and a condition like {@link #parse(String, String)}, rejecting
+     * input whose {@link CostEstimate}, as parsed and before any optimization, exceeds
+     * the given limits.
+     * @param exprString the expression to parse.
+     * @param conditionString the condition to parse.
+     * @param limits the limits to enforce.
+     * @return the function representing the expression and the condition, or null.
+     * @throws ParserException if the input has invalid syntax or exceeds the limits.
+     */
+    public static Function parse(String exprString, String conditionString, ParserLimits limits) {
+        var exprKey = normalize(exprString);
+        var conditionKey = normalize(conditionString);
+        if (exprKey.isEmpty()) {
+            // The condition is still checked for errors, but there is nothing to cache
+            var workspace = WORKSPACES.get();
+            workspace.parse(conditionKey, workspace.conditionParser);
             return null;
         }
-        if (cond == null) {
-            return new Function(expr, ctx -> true);
+
+        var cached = CACHE.get(exprKey, conditionKey);
+        if (cached == null) {
+            cached = parseUncached(exprKey, conditionKey, limits);
+            CACHE.put(exprKey, conditionKey, cached);
+        } else {
+            // Checked on every call, as callers may use different limits for the same input
+            limits.check(cached.cost());
         }
-        return new Function(expr, cond);
+        return cached.function().copy();
     }
 
-    private static <T> T parseChecked(String input, Parser<T> parser) {
-        var dense = removeWhitespace(input);
-        if (dense.length == 0) {
-            return null;
+    /**
+     * Returns the current counters of the parse cache.
+     * @return the counters
+     */
+    public static CacheStats getCacheStats() {
+        return CACHE.stats();
+    }
+
+    /**
+     * Empties the parse cache and resets its counters.
+     */
+    public static void clearCache() {
+        CACHE.clear();
+    }
+
+    private static Parsed parseUncached(String exprString, String conditionString, ParserLimits limits) {
+        var workspace = WORKSPACES.get();
+        var expr = workspace.parse(exprString, workspace.exprParser);
+        var cond = workspace.parse(conditionString, workspace.conditionParser);
+        cond = cond == null ? Condition.constant(true) : cond;
+        var cost = CostEstimate.of(expr, cond);
+        limits.check(cost);
+
+        expr = ExprOptimizer.optimizeExpr(expr);
+        cond = ExprOptimizer.optimizeCondition(cond);
+        return new Parsed(TimeInvariance.hoist(CommonSubexpressions.share(new Function(expr, cond))), cost);
+    }
+
+    /**
+     * The parsers and input buffer of a thread, reused for every parse so that
+     * parsing allocates little beyond the resulting tree.
+     */
+    private static final class Workspace {
+        final ExpressionParser exprParser = new ExpressionParser();
+        final ConditionParser conditionParser = new ConditionParser();
+        char[] buffer = new char[64];
+
+        <T> T parse(String dense, Parser<T> parser) {
+            var length = dense.length();
+            if (length == 0) {
+                return null;
+            }
+            if (buffer.length < length) {
+                buffer = new char[Math.max(length, buffer.length * 2)];
+            }
+            dense.getChars(0, length, buffer, 0);
+
+            var value = parser.parseRange(buffer, 0, length);
+            var idx = parser.getPosition();
+            if (idx != length) {
+                throw new ParserException("Trailing content at end: '%s'", new String(buffer, idx, length - idx));
+            }
+            return value;
+        }
+    }
+
+    private static final ThreadLocal<Workspace> WORKSPACES = ThreadLocal.withInitial(Workspace::new);
+
+    /**
+     * Removes whitespace in a single pass, returning the input itself if there is none.
+     */
+    private static String normalize(String input) {
+        var length = input.length();
+        var i = 0;
+        while (i < length && !Character.isWhitespace(input.charAt(i))) {
+            i++;
+        }
+        if (i == length) {
+            return input;
         }
 
-        var exprResult = parser.parse(dense, 0);
-        if (exprResult.nextCharIdx() != dense.length) {
-            var idx = exprResult.nextCharIdx();
-            throw new ParserException("Trailing content at end: '%s'", new String(dense, idx, dense.length - idx));
+        var result = new char[length];
+        input.getChars(0, i, result, 0);
+        var count = i;
+        for (; i < length; ++i) {
+            var c = input.charAt(i);
+            if (!Character.isWhitespace(c)) {
+                result[count++] = c;
+            }
         }
-        return exprResult.value();
+        return new String(result, 0, count);
     }
 
     /**
@@ -50,15 +170,7 @@ public final class FunctionParser {
      * @return the input string with whitespace removed, as a char array.
      */
     public static char[] removeWhitespace(String expr) {
-        var result = new char[expr.length()];
-        var i = 0;
-        for (var c : expr.toCharArray()) {
-            if (Character.isWhitespace(c)) {
-                continue;
-            }
-            result[i++] = c;
-        }
-        return Arrays.copyOfRange(result, 0, i);
+        return normalize(expr).toCharArray();
     }
 
 }
@@ -0,0 +1,108 @@
+package rollingball.functions;
+
+import java.util.Arrays;
+
+import rollingball.functions.BuiltinFunctions.Builtin;
+import rollingball.functions.BuiltinFunctions.Precision;
+import rollingball.functions.Function.Expr;
+
+/**
+ * A sum of harmonics, <code>a[0]*sin(u) + b[0]*cos(u) + a[1]*sin(2u) + b[1]*cos(2u) + ...</code>,
+ * evaluated with Clenshaw's recurrence from a single sine and cosine of <code>u</code>.
+ * Created by {@link ExprOptimizer} for Fourier series, so that a series of n harmonics
+ * costs two calls instead of n.
+ * @param arg the fundamental angle <code>u</code>
+ * @param sines the coefficients of the sines, <code>a</code>
+ * @param cosines the coefficients of the cosines, <code>b</code>, as many as there are sines
+ * @param precision how accurately <code>sin(u)</code> and <code>cos(u)</code> are evaluated
+ */
+public record HarmonicSeries(Expr arg, double[] sines, double[] cosines, Precision precision)
+        implements Expr {
+    /**
+     * A series evaluated at {@link Precision#DEFAULT}.
+     * @param arg the fundamental angle
+     * @param sines the coefficients of the sines
+     * @param cosines the coefficients of the cosines
+     */
+    public HarmonicSeries(Expr arg, double[] sines, double[] cosines) {
+        this(arg, sines, cosines, Precision.DEFAULT);
+    }
+
+    @Override
+    public double eval(EvalContext ctx) {
+        return apply(arg.eval(ctx), sines, cosines, precision);
+    }
+
+    @Override
+    public double eval(double x, double t) {
+        return apply(arg.eval(x, t), sines, cosines, precision);
+    }
+
+    @Override
+    public void evalBatch(double[] xs, double t, double[] out, int len) {
+        arg.evalBatch(xs, t, out, len);
+        for (var i = 0; i < len; ++i) {
+            out[i] = apply(out[i], sines, cosines, precision);
+        }
+    }
+
+    @Override
+    public Interval evalInterval(Interval x, Interval t) {
+        var u = arg.evalInterval(x, t);
+        var result = Interval.point(0.0);
+        for (var k = 1; k <= sines.length; ++k) {
+            var ku = Interval.mul(Interval.point(k), u);
+            result = Interval.add(result, Interval.mul(Interval.point(sines[k - 1]), Interval.sin(ku)));
+            result = Interval.add(result, Interval.mul(Interval.point(cosines[k - 1]), Interval.cos(ku)));
+        }
+        return result;
+    }
+
+    /**
+     * Evaluates a series. Every backend computes in this exact order, so they all
+     * produce bit-identical results.
+     * @param u the fundamental angle
+     * @param sines the coefficients of the sines
+     * @param cosines the coefficients of the cosines
+     * @param precision how accurately the sine and cosine of <code>u</code> are evaluated
+     * @return the value of the series
+     */
+    public static double apply(double u, double[] sines, double[] cosines, Precision precision) {
+        var sin = Builtin.SIN.apply(u, 0.0, precision);
+        var cos = Builtin.COS.apply(u, 0.0, precision);
+        var twoCos = 2.0 * cos;
+        // b[k] = c[k] + 2cos(u)*b[k+1] - b[k+2], for the sines and the cosines at once
+        var s1 = 0.0;
+        var s2 = 0.0;
+        var c1 = 0.0;
+        var c2 = 0.0;
+        for (var k = sines.length - 1; k >= 0; --k) {
+            var s = sines[k] + twoCos * s1 - s2;
+            s2 = s1;
+            s1 = s;
+            var c = cosines[k] + twoCos * c1 - c2;
+            c2 = c1;
+            c1 = c;
+        }
+        // sum a[k]*sin((k+1)u) = b[0]*sin(u), and sum b[k]*cos((k+1)u) = b[0]*cos(u) - b[1]
+        return s1 * sin + (c1 * cos - c2);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof HarmonicSeries h && arg.equals(h.arg) && precision == h.precision
+                && Arrays.equals(sines, h.sines) && Arrays.equals(cosines, h.cosines);
+    }
+
+    @Override
+    public int hashCode() {
+        return ((31 * arg.hashCode() + Arrays.hashCode(sines)) * 31 + Arrays.hashCode(cosines)) * 31
+                + precision.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "HarmonicSeries[arg=" + arg + ", sines=" + Arrays.toString(sines)
+                + ", cosines=" + Arrays.toString(cosines) + ", precision=" + precision + "]";
+    }
+}
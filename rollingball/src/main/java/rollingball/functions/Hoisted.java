@@ -0,0 +1,69 @@
+package rollingball.functions;
+
+import java.util.Arrays;
+
+import rollingball.functions.Function.Expr;
+
+/**
+ * A subexpression that depends on t but not on x, hoisted out of the per-sample
+ * work by {@link TimeInvariance}. Its value is computed once whenever t changes and
+ * reused for every x: the tree interpreter remembers it in the {@link SampleCache} of
+ * the context like the value of a {@link Shared} node, batches compute it once per
+ * batch, and compiled functions read it from an array filled by a prologue that runs
+ * once per t.
+ */
+public final class Hoisted implements Expr {
+    private final Expr expr;
+    private final int slot = SampleCache.nextSlot();
+
+    /**
+     * Wraps a subexpression.
+     * @param expr the subexpression, which must not depend on x
+     */
+    public Hoisted(Expr expr) {
+        this.expr = expr;
+    }
+
+    /**
+     * Returns the hoisted subexpression.
+     * @return the subexpression
+     */
+    public Expr expr() {
+        return expr;
+    }
+
+    @Override
+    public double eval(EvalContext ctx) {
+        if (ctx == null) {
+            return expr.eval(null);
+        }
+        var t = ctx.t;
+        var cache = ctx.sampleCache();
+        if (cache.contains(slot, this, 0.0, t)) {
+            return cache.get(slot);
+        }
+        var value = expr.eval(ctx); // Does not depend on x
+        cache.put(slot, this, 0.0, t, value);
+        return value;
+    }
+
+    @Override
+    public double eval(double x, double t) {
+        return expr.eval(0.0, t);
+    }
+
+    @Override
+    public void evalBatch(double[] xs, double t, double[] out, int len) {
+        Arrays.fill(out, 0, len, expr.eval(0.0, t));
+    }
+
+    @Override
+    public Interval evalInterval(Interval x, Interval t) {
+        return expr.evalInterval(x, t);
+    }
+
+    @Override
+    public boolean isConstant() {
+        return expr.isConstant();
+    }
+}
@@ -0,0 +1,55 @@
+package rollingball.functions;
+
+import rollingball.functions.Function.Expr;
+
+/**
+ * A small positive integer power, computed with multiplications instead of
+ * {@link Math#pow(double, double)}. Created by {@link ExprOptimizer} for
+ * inputs like <code>x^2</code>.
+ * @param base the base
+ * @param exponent the exponent, between 2 and {@link #MAX_EXPONENT}
+ */
+public record IntPower(Expr base, int exponent) implements Expr {
+    /**
+     * The largest exponent expanded into multiplications.
+     */
+    public static final int MAX_EXPONENT = 4;
+
+    @Override
+    public double eval(EvalContext ctx) {
+        return apply(base.eval(ctx), exponent);
+    }
+
+    @Override
+    public double eval(double x, double t) {
+        return apply(base.eval(x, t), exponent);
+    }
+
+    @Override
+    public void evalBatch(double[] xs, double t, double[] out, int len) {
+        base.evalBatch(xs, t, out, len);
+        for (var i = 0; i < len; ++i) {
+            out[i] = apply(out[i], exponent);
+        }
+    }
+
+    @Override
+    public Interval evalInterval(Interval x, Interval t) {
+        return Interval.integerPow(base.evalInterval(x, t), exponent);
+    }
+
+    /**
+     * Raises a value to a small integer power. Every backend multiplies in this
+     * exact order, so they all produce bit-identical results.
+     * @param value the base
+     * @param exponent the exponent, between 2 and {@link #MAX_EXPONENT}
+     * @return the power
+     */
+    public static double apply(double value, int exponent) {
+        return switch (exponent) {
+            case 2 -> value * value;
+            case 3 -> value * (value * value);
+            default -> (value * value) * (value * value);
+        };
+    }
+}
@@ -0,0 +1,320 @@
+package rollingball.functions;
+
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * A closed range of doubles, used to bound the values an expression can take over
+ * a range of x and t. See {@link Function.Expr#evalInterval(Interval, Interval)}.
+ *
+ * Bounds are conservative: every value the expression evaluates to within the input
+ * ranges lies inside the result, apart from NaN, which is not tracked. Results of inexact
+ * operations are widened by one ulp on both sides to cover rounding.
+ * @param lo the lower bound, inclusive
+ * @param hi the upper bound, inclusive
+ */
+public record Interval(double lo, double hi) {
+    /**
+     * The interval containing no values, for expressions that are NaN everywhere.
+     */
+    public static final Interval EMPTY = new Interval(Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY);
+    /**
+     * The interval containing every value, for expressions that cannot be bounded.
+     */
+    public static final Interval ENTIRE = new Interval(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+
+    private static final double TWO_PI = 2.0 * Math.PI;
+    private static final double HALF_PI = Math.PI / 2.0;
+
+    /**
+     * The possible results of a condition over a range.
+     */
+    public enum Truth {
+        /**
+         * The condition is false everywhere in the range.
+         */
+        NEVER,
+        /**
+         * The condition may be true or false.
+         */
+        MAYBE,
+        /**
+         * The condition is true everywhere in the range where its operands are not NaN.
+         */
+        ALWAYS;
+
+        /**
+         * Combines two conditions that must both hold.
+         * @param other the other condition
+         * @return the truth of the conjunction
+         */
+        public Truth and(Truth other) {
+            return values()[Math.min(ordinal(), other.ordinal())];
+        }
+    }
+
+    /**
+     * Creates an interval containing a single value.
+     * @param value the value
+     * @return the interval, or {@link #EMPTY} for NaN
+     */
+    public static Interval point(double value) {
+        return Double.isNaN(value) ? EMPTY : new Interval(value, value);
+    }
+
+    /**
+     * Creates an interval from unordered bounds.
+     * @param a one bound
+     * @param b the other bound
+     * @return the smallest interval containing both
+     */
+    public static Interval of(double a, double b) {
+        return new Interval(Math.min(a, b), Math.max(a, b));
+    }
+
+    /**
+     * Checks if the interval contains no values.
+     * @return true if empty
+     */
+    public boolean isEmpty() {
+        return !(lo <= hi);
+    }
+
+    /**
+     * Checks if a value lies in the interval.
+     * @param value the value
+     * @return true if <code>lo &lt;= value &lt;= hi</code>
+     */
+    public boolean contains(double value) {
+        return lo <= value && value <= hi;
+    }
+
+    /**
+     * Returns the width of the interval.
+     * @return <code>hi - lo</code>, or 0 for an empty interval
+     */
+    public double width() {
+        return isEmpty() ? 0.0 : hi - lo;
+    }
+
+    // Arithmetic. Any operation with an empty operand has an empty result, apart from pow(NaN, 0).
+
+    static Interval negate(Interval a) {
+        return a.isEmpty() ? EMPTY : new Interval(-a.hi, -a.lo);
+    }
+
+    static Interval add(Interval a, Interval b) {
+        return a.isEmpty() || b.isEmpty() ? EMPTY : widen(a.lo + b.lo, a.hi + b.hi);
+    }
+
+    static Interval sub(Interval a, Interval b) {
+        return a.isEmpty() || b.isEmpty() ? EMPTY : widen(a.lo - b.hi, a.hi - b.lo);
+    }
+
+    static Interval mul(Interval a, Interval b) {
+        if (a.isEmpty() || b.isEmpty()) {
+            return EMPTY;
+        }
+        var p1 = product(a.lo, b.lo);
+        var p2 = product(a.lo, b.hi);
+        var p3 = product(a.hi, b.lo);
+        var p4 = product(a.hi, b.hi);
+        return widen(Math.min(Math.min(p1, p2), Math.min(p3, p4)), Math.max(Math.max(p1, p2), Math.max(p3, p4)));
+    }
+
+    static Interval div(Interval a, Interval b) {
+        if (a.isEmpty() || b.isEmpty()) {
+            return EMPTY;
+        }
+        if (b.contains(0.0)) {
+            return ENTIRE;
+        }
+        return mul(a, widen(1.0 / b.hi, 1.0 / b.lo));
+    }
+
+    static Interval pow(Interval base, Interval exponent) {
+        if (exponent.isEmpty()) {
+            return EMPTY;
+        }
+        if (base.isEmpty()) {
+            return exponent.contains(0.0) ? point(1.0) : EMPTY; // pow(NaN, 0) is 1
+        }
+        if (exponent.lo == exponent.hi && exponent.lo == Math.rint(exponent.lo) && Math.abs(exponent.lo) <= 64) {
+            return integerPow(base, (int) exponent.lo);
+        }
+        if (base.lo <= 0.0) {
+            return ENTIRE;
+        }
+        // For a positive base, pow is monotonic in each argument, so the corners bound it
+        var p1 = Math.pow(base.lo, exponent.lo);
+        var p2 = Math.pow(base.lo, exponent.hi);
+        var p3 = Math.pow(base.hi, exponent.lo);
+        var p4 = Math.pow(base.hi, exponent.hi);
+        return widen(Math.min(Math.min(p1, p2), Math.min(p3, p4)), Math.max(Math.max(p1, p2), Math.max(p3, p4)));
+    }
+
+    static Interval integerPow(Interval base, int n) {
+        if (n == 0) {
+            return point(1.0); // Even for a NaN base
+        }
+        if (base.isEmpty()) {
+            return EMPTY;
+        }
+        if (n < 0) {
+            return div(point(1.0), integerPow(base, -n));
+        }
+        var lo = Math.pow(base.lo, n);
+        var hi = Math.pow(base.hi, n);
+        if (n % 2 == 1) {
+            return widen(lo, hi);
+        }
+        return base.contains(0.0) ? widen(0.0, Math.max(lo, hi)) : widen(Math.min(lo, hi), Math.max(lo, hi));
+    }
+
+    // Builtins
+
+    static Interval sin(Interval a) {
+        if (a.isEmpty()) {
+            return EMPTY;
+        }
+        if (!(a.width() < TWO_PI)) {
+            return new Interval(-1.0, 1.0);
+        }
+        var lo = Math.min(Math.sin(a.lo), Math.sin(a.hi));
+        var hi = Math.max(Math.sin(a.lo), Math.sin(a.hi));
+        if (containsPeriodicPoint(a, HALF_PI)) {
+            hi = 1.0;
+        }
+        if (containsPeriodicPoint(a, -HALF_PI)) {
+            lo = -1.0;
+        }
+        return clamp(widen(lo, hi), -1.0, 1.0);
+    }
+
+    static Interval cos(Interval a) {
+        // Not sin(a + pi/2): rounding the shifted bounds costs far more than an ulp
+        if (a.isEmpty()) {
+            return EMPTY;
+        }
+        if (!(a.width() < TWO_PI)) {
+            return new Interval(-1.0, 1.0);
+        }
+        var lo = Math.min(Math.cos(a.lo), Math.cos(a.hi));
+        var hi = Math.max(Math.cos(a.lo), Math.cos(a.hi));
+        if (containsPeriodicPoint(a, 0.0)) {
+            hi = 1.0;
+        }
+        if (containsPeriodicPoint(a, Math.PI)) {
+            lo = -1.0;
+        }
+        return clamp(widen(lo, hi), -1.0, 1.0);
+    }
+
+    static Interval tan(Interval a) {
+        if (a.isEmpty()) {
+            return EMPTY;
+        }
+        if (!(a.width() < Math.PI) || containsPeriodicPoint(a, HALF_PI) || containsPeriodicPoint(a, -HALF_PI)) {
+            return ENTIRE;
+        }
+        return widen(Math.tan(a.lo), Math.tan(a.hi));
+    }
+
+    /**
+     * Applies a monotonically increasing function to the part of an interval inside its domain.
+     */
+    static Interval increasing(Interval a, double domainLo, double domainHi, DoubleUnaryOperator fn) {
+        var lo = Math.max(a.lo, domainLo);
+        var hi = Math.min(a.hi, domainHi);
+        return lo <= hi ? widen(fn.applyAsDouble(lo), fn.applyAsDouble(hi)) : EMPTY;
+    }
+
+    static Interval increasing(Interval a, DoubleUnaryOperator fn) {
+        return increasing(a, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, fn);
+    }
+
+    /**
+     * Bounds {@link Math#round(double)}, which rounds NaN to 0. Since NaN arguments are
+     * not tracked, 0 is always included.
+     */
+    static Interval round(Interval a) {
+        var rounded = increasing(a, v -> Math.round(v));
+        return rounded.isEmpty() ? point(0.0) : new Interval(Math.min(rounded.lo, 0.0), Math.max(rounded.hi, 0.0));
+    }
+
+    static Interval acos(Interval a) {
+        var lo = Math.max(a.lo, -1.0);
+        var hi = Math.min(a.hi, 1.0);
+        return lo <= hi ? widen(Math.acos(hi), Math.acos(lo)) : EMPTY;
+    }
+
+    static Interval abs(Interval a) {
+        if (a.isEmpty()) {
+            return EMPTY;
+        } else if (a.lo >= 0.0) {
+            return a;
+        } else if (a.hi <= 0.0) {
+            return negate(a);
+        }
+        return new Interval(0.0, Math.max(-a.lo, a.hi));
+    }
+
+    static Interval cosh(Interval a) {
+        var magnitude = abs(a);
+        return magnitude.isEmpty() ? EMPTY : widen(Math.cosh(magnitude.lo), Math.cosh(magnitude.hi));
+    }
+
+    static Interval min(Interval a, Interval b) {
+        return a.isEmpty() || b.isEmpty() ? EMPTY : new Interval(Math.min(a.lo, b.lo), Math.min(a.hi, b.hi));
+    }
+
+    static Interval max(Interval a, Interval b) {
+        return a.isEmpty() || b.isEmpty() ? EMPTY : new Interval(Math.max(a.lo, b.lo), Math.max(a.hi, b.hi));
+    }
+
+    static Interval hypot(Interval a, Interval b) {
+        var sum = add(integerPow(a, 2), integerPow(b, 2));
+        return increasing(sum, 0.0, Double.POSITIVE_INFINITY, Math::sqrt);
+    }
+
+    static Interval atan2(Interval y, Interval x) {
+        return y.isEmpty() || x.isEmpty() ? EMPTY : new Interval(-Math.PI, Math.PI);
+    }
+
+    // Comparisons
+
+    static Truth lessThan(Interval a, Interval b, boolean orEqual) {
+        if (a.isEmpty() || b.isEmpty()) {
+            return Truth.NEVER; // NaN compares false
+        }
+        if (orEqual ? a.hi <= b.lo : a.hi < b.lo) {
+            return Truth.ALWAYS;
+        }
+        if (orEqual ? a.lo > b.hi : a.lo >= b.hi) {
+            return Truth.NEVER;
+        }
+        return Truth.MAYBE;
+    }
+
+    // Helpers
+
+    private static double product(double a, double b) {
+        var p = a * b;
+        return Double.isNaN(p) ? 0.0 : p; // 0 * inf at a bound; real values are finite
+    }
+
+    private static boolean containsPeriodicPoint(Interval a, double phase) {
+        var k = Math.ceil((a.lo - phase) / TWO_PI);
+        return phase + k * TWO_PI <= a.hi;
+    }
+
+    private static Interval clamp(Interval a, double lo, double hi) {
+        return new Interval(Math.max(a.lo, lo), Math.min(a.hi, hi));
+    }
+
+    private static Interval widen(double lo, double hi) {
+        if (Double.isNaN(lo) || Double.isNaN(hi)) {
+            return ENTIRE;
+        }
+        return new Interval(Math.nextDown(lo), Math.nextUp(hi));
+    }
+}
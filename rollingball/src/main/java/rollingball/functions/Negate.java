@@ -0,0 +1,30 @@
+package rollingball.functions;
+
+import rollingball.functions.Function.Expr;
+
+/**
+ * The unary minus.
+ * @param operand the negated expression
+ */
+public record Negate(Expr operand) implements Expr {
+    @Override
+    public double eval(EvalContext ctx) {
+        return -operand.eval(ctx);
+    }
+
+    @Override
+    public double eval(double x, double t) {
+        return -operand.eval(x, t);
+    }
+
+    @Override
+    public void evalBatch(double[] xs, double t, double[] out, int len) {
+        operand.evalBatch(xs, t, out, len);
+        BatchKernels.INSTANCE.negate(out, len);
+    }
+
+    @Override
+    public Interval evalInterval(Interval x, Interval t) {
+        return Interval.negate(operand.evalInterval(x, t));
+    }
+}
@@ -48,7 +48,8 @@ public final class Operators {
         }
 
         /**
-         * Applies this operator to the two inputs.
+         * Applies this operator to the two inputs. Powers are computed with
+         * {@link StrictMath}, as this is used for constant folding.
          * @param lhs the left-hand side operand.
          * @param rhs the right-hand side operand.
          * @return the result of applying this operator to the inputs.
@@ -59,7 +60,7 @@ public final class Operators {
                 case SUB -> lhs - rhs;
                 case MUL -> lhs * rhs;
                 case DIV -> lhs / rhs;
-                case POW -> Math.pow(lhs, rhs);
+                case POW -> StrictMath.pow(lhs, rhs);
             };
         }
     }
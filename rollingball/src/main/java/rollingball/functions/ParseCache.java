@@ -0,0 +1,74 @@
+package rollingball.functions;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded cache of parse results, evicting the least recently used entry when full.
+ * Keys are the expression and condition with whitespace removed, so inputs that differ
+ * only in spacing share an entry. All methods are thread-safe; parsing itself happens
+ * outside the lock, so two threads missing on the same key may both parse it.
+ */
+final class ParseCache<V> {
+    private record Key(String expr, String condition) {
+    }
+
+    private final int capacity;
+    private final Map<Key, V> entries;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    ParseCache(int capacity) {
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, V> eldest) {
+                if (size() > ParseCache.this.capacity) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached result for the inputs, or null on a miss.
+     */
+    V get(String expr, String condition) {
+        var key = new Key(expr, condition);
+        V value;
+        synchronized (entries) {
+            value = entries.get(key);
+        }
+        (value == null ? misses : hits).increment();
+        return value;
+    }
+
+    void put(String expr, String condition, V value) {
+        var key = new Key(expr, condition);
+        synchronized (entries) {
+            entries.put(key, value);
+        }
+    }
+
+    void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+        hits.reset();
+        misses.reset();
+        evictions.reset();
+    }
+
+    FunctionParser.CacheStats stats() {
+        int size;
+        synchronized (entries) {
+            size = entries.size();
+        }
+        return new FunctionParser.CacheStats(hits.sum(), misses.sum(), evictions.sum(), size, capacity);
+    }
+}
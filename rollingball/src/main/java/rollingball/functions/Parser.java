@@ -19,6 +19,10 @@ public abstract sealed class Parser<T> permits ExpressionParser, ConditionParser
      * index of the next unconsumed character in the source string
      */
     protected int srcPos;
+    /**
+     * index one past the last character to parse
+     */
+    protected int srcEnd;
 
     /**
      * Parses the specified source string.
@@ -38,12 +42,45 @@ public abstract sealed class Parser<T> permits ExpressionParser, ConditionParser
             return new ParseResult<>(null, 0);
         }
 
+        var value = parseRange(src, startIdx, src.length);
+        return new ParseResult<>(value, srcPos);
+    }
+
+    /**
+     * Parses part of a buffer, which may be reused between calls. Unlike
+     * {@link #parse(char[], int)}, this does not allocate a result; the index
+     * of the next unconsumed character is read with {@link #getPosition()}.
+     * @param src the buffer containing the source string.
+     * @param startIdx the index of the first character to parse.
+     * @param endIdx the index one past the last character to parse.
+     * @return the parsed value, or null if the range was empty.
+     * @throws ParserException if the source string has invalid syntax.
+     */
+    final T parseRange(char[] src, int startIdx, int endIdx) {
         this.src = src;
         this.srcPos = startIdx;
+        this.srcEnd = endIdx;
+        return endIdx - startIdx <= 0 ? null : doParse();
+    }
 
-        var value = doParse();
+    /**
+     * Returns the index of the next unconsumed character after the last parse.
+     * @return the index into the source buffer.
+     */
+    final int getPosition() {
+        return srcPos;
+    }
 
-        return new ParseResult<>(value, srcPos);
+    /**
+     * Expects the next character to be the specified one, or throws an exception if it is not.
+     * Advances the source position by one.
+     * @param type the expected character.
+     * @param message a human-readable detail message.
+     */
+    protected void expect(char type, String message) {
+        if (!consume(type)) {
+            throw new ParserException(message);
+        }
     }
 
     /**
@@ -78,7 +115,7 @@ public abstract sealed class Parser<T> permits ExpressionParser, ConditionParser
      * @return true if the next character is the specified one, false otherwise.
      */
     protected boolean nextIs(char type) {
-        return srcPos < src.length && src[srcPos] == type;
+        return srcPos < srcEnd && src[srcPos] == type;
     }
 
     /**
@@ -86,7 +123,7 @@ public abstract sealed class Parser<T> permits ExpressionParser, ConditionParser
      * @return true if there are more characters to be parsed, false otherwise.
      */
     protected boolean hasNext() {
-        return srcPos < src.length;
+        return srcPos < srcEnd;
     }
 
 }
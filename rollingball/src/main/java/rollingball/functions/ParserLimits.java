@@ -0,0 +1,51 @@
+package rollingball.functions;
+
+/**
+ * Upper bounds on the {@link CostEstimate} of a parsed function. Functions exceeding
+ * any of them are rejected by {@link FunctionParser#parse(String, String, ParserLimits)}
+ * with a {@link ParserException}, so that a single huge expression cannot stall
+ * every frame or tick that evaluates it.
+ * @param maxNodes the maximum {@link CostEstimate#nodeCount()}
+ * @param maxTranscendentals the maximum {@link CostEstimate#transcendentalCount()}
+ * @param maxDepth the maximum {@link CostEstimate#depth()}, never more than {@link #MAX_DEPTH}
+ */
+public record ParserLimits(int maxNodes, int maxTranscendentals, int maxDepth) {
+    /**
+     * The deepest tree any function may have, whatever the limits. The passes and the
+     * tree evaluator recurse once per level, and stay well within the default thread
+     * stack size at this depth. Long chains like <code>a+b+c+...</code> are balanced
+     * by the parser, so only nesting of parentheses, calls and powers counts towards it.
+     */
+    public static final int MAX_DEPTH = 256;
+
+    /**
+     * Limits for expressions typed by a player, far above anything a level needs.
+     */
+    public static final ParserLimits DEFAULT = new ParserLimits(4096, 1024, MAX_DEPTH);
+
+    /**
+     * No limits besides {@link #MAX_DEPTH}, for trusted, machine-generated expressions.
+     */
+    public static final ParserLimits UNLIMITED = new ParserLimits(Integer.MAX_VALUE, Integer.MAX_VALUE, MAX_DEPTH);
+
+    /**
+     * Checks a function against the limits.
+     * @param cost the estimated cost of the function
+     * @throws ParserException if any limit is exceeded
+     */
+    public void check(CostEstimate cost) {
+        if (cost.nodeCount() > maxNodes) {
+            throw new ParserException("Expression is too large: %d nodes, at most %d allowed",
+                    cost.nodeCount(), maxNodes);
+        }
+        if (cost.transcendentalCount() > maxTranscendentals) {
+            throw new ParserException("Expression has too many function calls: %d, at most %d allowed",
+                    cost.transcendentalCount(), maxTranscendentals);
+        }
+        var depthLimit = Math.min(maxDepth, MAX_DEPTH);
+        if (cost.depth() > depthLimit) {
+            throw new ParserException("Expression is nested too deeply: %d levels, at most %d allowed",
+                    cost.depth(), depthLimit);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package rollingball.functions;
+
+import java.util.Arrays;
+
+import rollingball.functions.Function.Expr;
+
+/**
+ * A polynomial in an expression, evaluated with Horner's scheme. Created by
+ * {@link ExprOptimizer} for sums of powers of x, like <code>1 + 2*x - x^3/6</code>,
+ * so that a polynomial of degree n costs n multiplications and additions.
+ * @param arg the expression the polynomial is evaluated at
+ * @param coefficients the coefficient of <code>arg^i</code> at index i
+ */
+public record Polynomial(Expr arg, double[] coefficients) implements Expr {
+    @Override
+    public double eval(EvalContext ctx) {
+        return apply(arg.eval(ctx), coefficients);
+    }
+
+    @Override
+    public double eval(double x, double t) {
+        return apply(arg.eval(x, t), coefficients);
+    }
+
+    @Override
+    public void evalBatch(double[] xs, double t, double[] out, int len) {
+        arg.evalBatch(xs, t, out, len);
+        for (var i = 0; i < len; ++i) {
+            out[i] = apply(out[i], coefficients);
+        }
+    }
+
+    @Override
+    public Interval evalInterval(Interval x, Interval t) {
+        var a = arg.evalInterval(x, t);
+        var result = Interval.point(coefficients[coefficients.length - 1]);
+        for (var i = coefficients.length - 2; i >= 0; --i) {
+            result = Interval.add(Interval.mul(result, a), Interval.point(coefficients[i]));
+        }
+        return result;
+    }
+
+    /**
+     * Evaluates a polynomial. Every backend computes in this exact order, so they
+     * all produce bit-identical results.
+     * @param value the value of the argument
+     * @param coefficients the coefficients, lowest power first, at least one
+     * @return the value of the polynomial
+     */
+    public static double apply(double value, double[] coefficients) {
+        var result = coefficients[coefficients.length - 1];
+        for (var i = coefficients.length - 2; i >= 0; --i) {
+            result = result * value + coefficients[i];
+        }
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof Polynomial p && arg.equals(p.arg) && Arrays.equals(coefficients, p.coefficients);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * arg.hashCode() + Arrays.hashCode(coefficients);
+    }
+
+    @Override
+    public String toString() {
+        return "Polynomial[arg=" + arg + ", coefficients=" + Arrays.toString(coefficients) + "]";
+    }
+}
@@ -0,0 +1,98 @@
+package rollingball.functions;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import rollingball.functions.BuiltinFunctions.Builtin;
+import rollingball.functions.BuiltinFunctions.Precision;
+import rollingball.functions.Function.Condition;
+import rollingball.functions.Function.Expr;
+import rollingball.functions.Operators.ArithmeticOp;
+
+/**
+ * Sets the {@link Precision} of every builtin call in a function. The <code>^</code>
+ * operator becomes a call to {@link Builtin#POW}, which computes the same thing,
+ * unless the precision is {@link Precision#DEFAULT}.
+ *
+ * {@link Shared} and {@link Hoisted} nodes that contain calls are replaced by new ones,
+ * one per original, so functions at different precisions never share cached values.
+ */
+final class PrecisionRewriter {
+    private final Precision precision;
+    private final Map<Expr, Expr> rewritten = new IdentityHashMap<>();
+
+    private PrecisionRewriter(Precision precision) {
+        this.precision = precision;
+    }
+
+    static Function rewrite(Function fn, Precision precision) {
+        var rewriter = new PrecisionRewriter(precision);
+        return new Function(rewriter.rewriteExpr(fn.getFormula()), rewriter.rewriteCondition(fn.getCondition()));
+    }
+
+    private Condition rewriteCondition(Condition condition) {
+        if (condition instanceof Comparison c) {
+            var lhs = rewriteExpr(c.lhs());
+            var rhs = rewriteExpr(c.rhs());
+            return lhs == c.lhs() && rhs == c.rhs() ? c : new Comparison(lhs, c.op(), rhs);
+        } else if (condition instanceof Conjunction c) {
+            var lhs = rewriteCondition(c.lhs());
+            var rhs = rewriteCondition(c.rhs());
+            return lhs == c.lhs() && rhs == c.rhs() ? c : new Conjunction(lhs, rhs);
+        }
+        return condition;
+    }
+
+    private Expr rewriteExpr(Expr expr) {
+        var result = rewritten.get(expr);
+        if (result == null) {
+            result = rebuild(expr);
+            rewritten.put(expr, result);
+        }
+        return result;
+    }
+
+    // Returns the node itself if it contains no calls
+    private Expr rebuild(Expr expr) {
+        if (expr instanceof Shared s) {
+            var inner = rewriteExpr(s.expr());
+            return inner == s.expr() ? s : new Shared(inner);
+        } else if (expr instanceof Hoisted h) {
+            var inner = rewriteExpr(h.expr());
+            return inner == h.expr() ? h : new Hoisted(inner);
+        } else if (expr instanceof Negate n) {
+            var operand = rewriteExpr(n.operand());
+            return operand == n.operand() ? n : new Negate(operand);
+        } else if (expr instanceof Arithmetic a) {
+            return rebuildArithmetic(a);
+        } else if (expr instanceof IntPower p) {
+            var base = rewriteExpr(p.base());
+            return base == p.base() ? p : new IntPower(base, p.exponent());
+        }
+        return rebuildFunctionOf(expr);
+    }
+
+    private Expr rebuildArithmetic(Arithmetic a) {
+        var lhs = rewriteExpr(a.lhs());
+        var rhs = rewriteExpr(a.rhs());
+        if (a.op() == ArithmeticOp.POW && precision != Precision.DEFAULT) {
+            return new BinaryCall(Builtin.POW, lhs, rhs, precision);
+        }
+        return lhs == a.lhs() && rhs == a.rhs() ? a : new Arithmetic(lhs, a.op(), rhs);
+    }
+
+    // Calls and series are always rebuilt, at the new precision
+    private Expr rebuildFunctionOf(Expr expr) {
+        if (expr instanceof Polynomial p) {
+            var arg = rewriteExpr(p.arg());
+            return arg == p.arg() ? p : new Polynomial(arg, p.coefficients());
+        } else if (expr instanceof HarmonicSeries h) {
+            return new HarmonicSeries(rewriteExpr(h.arg()), h.sines(), h.cosines(), precision);
+        } else if (expr instanceof UnaryCall call) {
+            return new UnaryCall(call.fn(), rewriteExpr(call.arg()), precision);
+        } else if (expr instanceof BinaryCall call) {
+            return new BinaryCall(call.fn(), rewriteExpr(call.first()), rewriteExpr(call.second()), precision);
+        }
+        return expr;
+    }
+}
@@ -0,0 +1,100 @@
+package rollingball.functions;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import rollingball.functions.Function.Condition;
+import rollingball.functions.Function.Expr;
+
+/**
+ * The {@link Hoisted} subexpressions of a compiled function, evaluated once per t.
+ * Compiled code refers to a hoisted node by its index in {@link #valuesAt(double)}.
+ * The values are replaced as a whole whenever t changes, so a prologue can be shared
+ * by several threads.
+ */
+final class Prologue {
+    private static final double[] NO_VALUES = new double[0];
+
+    private final Map<Hoisted, Integer> indices = new IdentityHashMap<>();
+    private final List<Hoisted> nodes = new ArrayList<>();
+    // The value of each node, followed by the t they were computed at
+    private volatile double[] last;
+
+    /**
+     * Collects the hoisted nodes of a function, in the order they appear in.
+     */
+    Prologue(Function fn) {
+        collectExpr(fn.getFormula());
+        collectCondition(fn.getCondition());
+    }
+
+    int size() {
+        return nodes.size();
+    }
+
+    int indexOf(Hoisted node) {
+        return indices.get(node);
+    }
+
+    double[] valuesAt(double t) {
+        if (nodes.isEmpty()) {
+            return NO_VALUES;
+        }
+        var current = last;
+        if (current != null && Double.doubleToRawLongBits(current[nodes.size()]) == Double.doubleToRawLongBits(t)) {
+            return current;
+        }
+        var values = new double[nodes.size() + 1];
+        for (var i = 0; i < nodes.size(); ++i) {
+            values[i] = nodes.get(i).expr().eval(0.0, t); // Does not depend on x
+        }
+        values[nodes.size()] = t;
+        last = values;
+        return values;
+    }
+
+    private void collectExpr(Expr expr) {
+        if (expr instanceof Hoisted h) {
+            if (!indices.containsKey(h)) {
+                indices.put(h, nodes.size());
+                nodes.add(h);
+            }
+        } else if (expr instanceof Shared s) {
+            collectExpr(s.expr());
+        } else if (expr instanceof Negate n) {
+            collectExpr(n.operand());
+        } else if (expr instanceof Arithmetic a) {
+            collectExpr(a.lhs());
+            collectExpr(a.rhs());
+        } else {
+            collectFunctionOf(expr);
+        }
+    }
+
+    private void collectFunctionOf(Expr expr) {
+        if (expr instanceof IntPower p) {
+            collectExpr(p.base());
+        } else if (expr instanceof Polynomial p) {
+            collectExpr(p.arg());
+        } else if (expr instanceof HarmonicSeries h) {
+            collectExpr(h.arg());
+        } else if (expr instanceof UnaryCall call) {
+            collectExpr(call.arg());
+        } else if (expr instanceof BinaryCall call) {
+            collectExpr(call.first());
+            collectExpr(call.second());
+        }
+    }
+
+    private void collectCondition(Condition condition) {
+        if (condition instanceof Comparison c) {
+            collectExpr(c.lhs());
+            collectExpr(c.rhs());
+        } else if (condition instanceof Conjunction c) {
+            collectCondition(c.lhs());
+            collectCondition(c.rhs());
+        }
+    }
+}
@@ -0,0 +1,300 @@
+package rollingball.functions;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import rollingball.functions.BuiltinFunctions.Builtin;
+import rollingball.functions.BuiltinFunctions.Precision;
+import rollingball.functions.Function.Condition;
+import rollingball.functions.Function.Expr;
+
+/**
+ * A function lowered to a flat program for a small register machine.
+ *
+ * The program is an <code>int[]</code> of fixed-size instructions
+ * (<code>opcode, destination, operand a, operand b</code>), a <code>double[]</code>
+ * constant pool, the coefficient tables of {@link Polynomial} and {@link HarmonicSeries}
+ * nodes, and a register file allocated once per program and thread. {@link Hoisted} values
+ * come from a {@link Prologue} evaluated once per t. Evaluating it is a
+ * single loop over the instructions, with no per-node objects or virtual calls and
+ * no allocation. Unlike {@link FunctionCompiler}, building a program does not load a class.
+ *
+ * Each thread gets its own register file, so a program can be evaluated from
+ * several threads at once.
+ */
+public final class RegisterProgram implements CompiledFunction {
+    private static final int CONST = 0;
+    private static final int LOAD_X = 1;
+    private static final int LOAD_T = 2;
+    private static final int NEG = 3;
+    private static final int ADD = 4;
+    private static final int SUB = 5;
+    private static final int MUL = 6;
+    private static final int DIV = 7;
+    private static final int POW = 8;
+    private static final int LT = 9;
+    private static final int LE = 10;
+    private static final int GT = 11;
+    private static final int GE = 12;
+    private static final int AND = 13;
+    private static final int SAVE = 14;
+    private static final int RESTORE = 15;
+    private static final int HOISTED = 16;
+    private static final int POLY = 17;
+    private static final int HARMONIC = 18; // HARMONIC + Precision.ordinal()
+    private static final int CALL = 21; // CALL + Precision.ordinal() * BUILTINS.length + Builtin.ordinal()
+
+    private static final int INSTRUCTION_SIZE = 4;
+    private static final Builtin[] BUILTINS = Builtin.values();
+    private static final Precision[] PRECISIONS = Precision.values();
+
+    // Scratch space of one thread; saved holds the values of shared subexpressions
+    private record Frame(double[] registers, double[] saved) {
+    }
+
+    private final int[] code;
+    private final double[] constants;
+    private final double[][] tables;
+    private final int conditionStart;
+    private final ThreadLocal<Frame> frames;
+    private final Prologue prologue;
+
+    private RegisterProgram(int[] code, double[] constants, double[][] tables, int conditionStart, int numRegisters,
+            int numSaved, Prologue prologue) {
+        this.code = code;
+        this.prologue = prologue;
+        this.constants = constants;
+        this.tables = tables;
+        this.conditionStart = conditionStart;
+        this.frames = ThreadLocal.withInitial(() -> new Frame(new double[numRegisters], new double[numSaved]));
+    }
+
+    /**
+     * Lowers the formula and condition of a function into a program.
+     * @param fn the function
+     * @return the program, or null if the function contains opaque nodes
+     */
+    public static RegisterProgram compile(Function fn) {
+        var emitter = new Emitter(new Prologue(fn));
+        if (!emitter.emitExpr(fn.getFormula(), 0)) {
+            return null;
+        }
+        var conditionStart = emitter.startSection();
+        if (!emitter.emitCondition(fn.getCondition(), 0)) {
+            return null;
+        }
+        return emitter.build(conditionStart);
+    }
+
+    /**
+     * Returns the number of instructions in the program.
+     * @return the instruction count, for the formula and the condition combined
+     */
+    public int getInstructionCount() {
+        return code.length / INSTRUCTION_SIZE;
+    }
+
+    @Override
+    public double eval(double x, double t) {
+        return run(0, conditionStart, x, t, prologue.valuesAt(t));
+    }
+
+    @Override
+    public boolean canEval(double x, double t) {
+        return run(conditionStart, code.length, x, t, prologue.valuesAt(t)) != 0.0;
+    }
+
+    private double run(int start, int end, double x, double t, double[] hoisted) {
+        var frame = frames.get();
+        var regs = frame.registers();
+        var save = frame.saved();
+        for (var pc = start; pc < end; pc += INSTRUCTION_SIZE) {
+            var dst = code[pc + 1];
+            var a = code[pc + 2];
+            var b = code[pc + 3];
+            regs[dst] = switch (code[pc]) {
+                case CONST -> constants[a];
+                case LOAD_X -> x;
+                case LOAD_T -> t;
+                case SAVE -> save[b] = regs[a];
+                case RESTORE -> save[b];
+                case HOISTED -> hoisted[b];
+                default -> apply(code[pc], regs, a, b);
+            };
+        }
+        return regs[0];
+    }
+
+    // The instructions that compute a value from registers; b is a table for POLY and HARMONIC
+    private double apply(int opcode, double[] regs, int a, int b) {
+        return switch (opcode) {
+            case NEG -> -regs[a];
+            case ADD -> regs[a] + regs[b];
+            case SUB -> regs[a] - regs[b];
+            case MUL -> regs[a] * regs[b];
+            case DIV -> regs[a] / regs[b];
+            case POW -> Math.pow(regs[a], regs[b]);
+            case LT, LE, GT, GE, AND -> compare(opcode, regs[a], regs[b]) ? 1.0 : 0.0;
+            case POLY -> Polynomial.apply(regs[a], tables[b]);
+            case HARMONIC, HARMONIC + 1, HARMONIC + 2 ->
+                HarmonicSeries.apply(regs[a], tables[b], tables[b + 1], PRECISIONS[opcode - HARMONIC]);
+            default -> {
+                var call = opcode - CALL;
+                yield BUILTINS[call % BUILTINS.length].apply(regs[a], regs[b], PRECISIONS[call / BUILTINS.length]);
+            }
+        };
+    }
+
+    private static boolean compare(int opcode, double a, double b) {
+        return switch (opcode) {
+            case LT -> a < b;
+            case LE -> a <= b;
+            case GT -> a > b;
+            case GE -> a >= b;
+            default -> a != 0.0 && b != 0.0; // AND
+        };
+    }
+
+    /**
+     * Emits instructions for a tree. Registers are allocated like an operand stack:
+     * a node writes its result to register <code>dst</code> and may use the
+     * registers above it as scratch space for its operands.
+     *
+     * A {@link Shared} node is evaluated at its first occurrence in a section (the
+     * formula or the condition) and saved; the other occurrences restore the saved value.
+     */
+    private static final class Emitter {
+        private int[] code = new int[64];
+        private int codeLength;
+        private double[] constants = new double[8];
+        private int numConstants;
+        private final Map<Double, Integer> constantIndices = new HashMap<>();
+        private final List<double[]> tables = new ArrayList<>();
+        private int numRegisters;
+        private final Prologue prologue;
+        private final Map<Shared, Integer> savedSlots = new IdentityHashMap<>();
+        private final Set<Shared> computed = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        Emitter(Prologue prologue) {
+            this.prologue = prologue;
+        }
+
+        int startSection() {
+            computed.clear();
+            return codeLength;
+        }
+
+        boolean emitExpr(Expr expr, int dst) {
+            if (expr instanceof Constant c) {
+                return emit(CONST, dst, addConstant(c.value()), 0);
+            } else if (expr instanceof Variable v) {
+                return emit(v == Variable.X ? LOAD_X : LOAD_T, dst, 0, 0);
+            } else if (expr instanceof Negate n) {
+                return emitExpr(n.operand(), dst) && emit(NEG, dst, dst, dst);
+            } else if (expr instanceof Arithmetic a) {
+                return emitExpr(a.lhs(), dst) && emitExpr(a.rhs(), dst + 1)
+                        && emit(ADD + a.op().ordinal(), dst, dst, dst + 1);
+            } else if (expr instanceof Shared shared) {
+                return emitShared(shared, dst);
+            } else if (expr instanceof Hoisted h) {
+                return emit(HOISTED, dst, 0, prologue.indexOf(h));
+            }
+            return emitFunctionOf(expr, dst);
+        }
+
+        private boolean emitFunctionOf(Expr expr, int dst) {
+            if (expr instanceof IntPower p) {
+                return emitExpr(p.base(), dst) && emitIntPower(p.exponent(), dst);
+            } else if (expr instanceof Polynomial p) {
+                var table = tables.size();
+                tables.add(p.coefficients());
+                return emitExpr(p.arg(), dst) && emit(POLY, dst, dst, table);
+            } else if (expr instanceof HarmonicSeries h) {
+                var table = tables.size();
+                tables.add(h.sines());
+                tables.add(h.cosines());
+                return emitExpr(h.arg(), dst) && emit(HARMONIC + h.precision().ordinal(), dst, dst, table);
+            } else if (expr instanceof UnaryCall call) {
+                return emitExpr(call.arg(), dst) && emit(callOpcode(call.fn(), call.precision()), dst, dst, dst);
+            } else if (expr instanceof BinaryCall call) {
+                return emitExpr(call.first(), dst) && emitExpr(call.second(), dst + 1)
+                        && emit(callOpcode(call.fn(), call.precision()), dst, dst, dst + 1);
+            }
+            return false;
+        }
+
+        boolean emitCondition(Condition condition, int dst) {
+            if (condition instanceof BoolConstant c) {
+                return emit(CONST, dst, addConstant(c.value() ? 1.0 : 0.0), 0);
+            } else if (condition instanceof Comparison c) {
+                return emitExpr(c.lhs(), dst) && emitExpr(c.rhs(), dst + 1)
+                        && emit(LT + c.op().ordinal(), dst, dst, dst + 1);
+            } else if (condition instanceof Conjunction c) {
+                return emitCondition(c.lhs(), dst) && emitCondition(c.rhs(), dst + 1)
+                        && emit(AND, dst, dst, dst + 1);
+            }
+            return false;
+        }
+
+        private boolean emitShared(Shared shared, int dst) {
+            var slot = savedSlots.computeIfAbsent(shared, s -> savedSlots.size());
+            if (computed.contains(shared)) {
+                return emit(RESTORE, dst, 0, slot);
+            }
+            computed.add(shared);
+            return emitExpr(shared.expr(), dst) && emit(SAVE, dst, dst, slot);
+        }
+
+        // Must multiply in the same order as IntPower.apply()
+        private boolean emitIntPower(int exponent, int dst) {
+            return switch (exponent) {
+                case 2 -> emit(MUL, dst, dst, dst);
+                case 3 -> emit(MUL, dst + 1, dst, dst) && emit(MUL, dst, dst, dst + 1);
+                default -> emit(MUL, dst, dst, dst) && emit(MUL, dst, dst, dst);
+            };
+        }
+
+        RegisterProgram build(int conditionStart) {
+            return new RegisterProgram(Arrays.copyOf(code, codeLength), Arrays.copyOf(constants, numConstants),
+                    tables.toArray(new double[0][]), conditionStart, numRegisters, savedSlots.size(), prologue);
+        }
+
+        private boolean emit(int opcode, int dst, int a, int b) {
+            if (codeLength + INSTRUCTION_SIZE > code.length) {
+                code = Arrays.copyOf(code, code.length * 2);
+            }
+            code[codeLength++] = opcode;
+            code[codeLength++] = dst;
+            code[codeLength++] = a;
+            code[codeLength++] = b;
+            var lastRegister = opcode == SAVE || opcode == RESTORE || opcode == HOISTED
+                    || opcode >= POLY && opcode < CALL ? Math.max(dst, a) : Math.max(dst, b);
+            numRegisters = Math.max(numRegisters, lastRegister + 1);
+            return true;
+        }
+
+        private static int callOpcode(Builtin fn, Precision precision) {
+            return CALL + precision.ordinal() * BUILTINS.length + fn.ordinal();
+        }
+
+        // Double.equals() compares like Double.compare(), so NaN and -0.0 get their own entries
+        private int addConstant(double value) {
+            var index = constantIndices.get(value);
+            if (index != null) {
+                return index;
+            }
+            if (numConstants == constants.length) {
+                constants = Arrays.copyOf(constants, constants.length * 2);
+            }
+            constants[numConstants] = value;
+            constantIndices.put(value, numConstants);
+            return numConstants++;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package rollingball.functions;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The values that {@link Shared} and {@link Hoisted} nodes were last
+ * evaluated to in one {@link EvalContext}, so that each is evaluated once per sample
+ * however many times it occurs in a function.
+ *
+ * The cache is a small direct-mapped table. Every node is given a slot when it is
+ * created, in order, so the nodes of one function rarely collide; a node that finds its
+ * slot taken by another is simply evaluated again. A cache belongs to a single context,
+ * and so to a single thread, so it needs no locking.
+ */
+final class SampleCache {
+    private static final int SIZE = 64; // A power of two
+    private static final AtomicInteger NEXT_SLOT = new AtomicInteger();
+
+    private final Object[] nodes = new Object[SIZE];
+    private final long[] xBits = new long[SIZE];
+    private final long[] tBits = new long[SIZE];
+    private final double[] values = new double[SIZE];
+
+    /**
+     * Picks the slot of a new node.
+     * @return the slot
+     */
+    static int nextSlot() {
+        return NEXT_SLOT.getAndIncrement() & (SIZE - 1);
+    }
+
+    /**
+     * Checks if the slot holds the value of the node at the given point.
+     * The coordinates are compared bitwise, so that 0.0 and -0.0 are kept apart
+     * and NaN matches itself.
+     * @param slot the slot of the node
+     * @param node the node
+     * @param x the x coordinate, or 0 for a node that does not depend on x
+     * @param t the time variable
+     * @return true if {@link #get(int)} returns the value
+     */
+    boolean contains(int slot, Object node, double x, double t) {
+        return nodes[slot] == node && xBits[slot] == Double.doubleToRawLongBits(x)
+                && tBits[slot] == Double.doubleToRawLongBits(t);
+    }
+
+    /**
+     * Returns the value in a slot.
+     * @param slot the slot
+     * @return the value
+     */
+    double get(int slot) {
+        return values[slot];
+    }
+
+    /**
+     * Remembers the value of a node at the given point, replacing whatever was in its slot.
+     * @param slot the slot of the node
+     * @param node the node
+     * @param x the x coordinate, or 0 for a node that does not depend on x
+     * @param t the time variable
+     * @param value the value
+     */
+    void put(int slot, Object node, double x, double t, double value) {
+        nodes[slot] = node;
+        xBits[slot] = Double.doubleToRawLongBits(x);
+        tBits[slot] = Double.doubleToRawLongBits(t);
+        values[slot] = value;
+    }
+}
@@ -0,0 +1,82 @@
+package rollingball.functions;
+
+import rollingball.functions.Operators.ArithmeticOp;
+import rollingball.functions.Operators.RelationalOp;
+
+/**
+ * Plain-loop implementation of {@link BatchKernels}. The loops are simple
+ * enough for the JIT to unroll, and in most cases auto-vectorize.
+ */
+final class ScalarBatchKernels implements BatchKernels {
+
+    @Override
+    public void arithmetic(ArithmeticOp op, double[] out, double[] rhs, int len) {
+        switch (op) {
+            case ADD -> add(out, rhs, len);
+            case SUB -> subtract(out, rhs, len);
+            case MUL -> multiply(out, rhs, len);
+            case DIV -> divide(out, rhs, len);
+            case POW -> pow(out, rhs, len);
+        }
+    }
+
+    @Override
+    public void negate(double[] out, int len) {
+        for (var i = 0; i < len; ++i) {
+            out[i] = -out[i];
+        }
+    }
+
+    @Override
+    public void compare(RelationalOp op, double[] lhs, double[] rhs, boolean[] mask, int len) {
+        switch (op) {
+            case LT -> lessThan(lhs, rhs, mask, len);
+            case LE -> lessOrEqual(lhs, rhs, mask, len);
+            case GT -> lessThan(rhs, lhs, mask, len);
+            case GE -> lessOrEqual(rhs, lhs, mask, len);
+        }
+    }
+
+    private static void add(double[] out, double[] rhs, int len) {
+        for (var i = 0; i < len; ++i) {
+            out[i] += rhs[i];
+        }
+    }
+
+    private static void subtract(double[] out, double[] rhs, int len) {
+        for (var i = 0; i < len; ++i) {
+            out[i] -= rhs[i];
+        }
+    }
+
+    private static void multiply(double[] out, double[] rhs, int len) {
+        for (var i = 0; i < len; ++i) {
+            out[i] *= rhs[i];
+        }
+    }
+
+    private static void divide(double[] out, double[] rhs, int len) {
+        for (var i = 0; i < len; ++i) {
+            out[i] /= rhs[i];
+        }
+    }
+
+    private static void pow(double[] out, double[] rhs, int len) {
+        for (var i = 0; i < len; ++i) {
+            out[i] = Math.pow(out[i], rhs[i]);
+        }
+    }
+
+    // a > b and a >= b are b < a and b <= a, which also hold the same for NaN
+    private static void lessThan(double[] lhs, double[] rhs, boolean[] mask, int len) {
+        for (var i = 0; i < len; ++i) {
+            mask[i] = lhs[i] < rhs[i];
+        }
+    }
+
+    private static void lessOrEqual(double[] lhs, double[] rhs, boolean[] mask, int len) {
+        for (var i = 0; i < len; ++i) {
+            mask[i] = lhs[i] <= rhs[i];
+        }
+    }
+}
@@ -0,0 +1,309 @@
+package rollingball.functions;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import rollingball.functions.BuiltinFunctions.Builtin;
+import rollingball.functions.BuiltinFunctions.Precision;
+import rollingball.functions.Function.Expr;
+import rollingball.functions.Operators.ArithmeticOp;
+
+/**
+ * The pass of {@link ExprOptimizer} that specializes the terms of a flattened sum:
+ * constant multiples of powers of x become one {@link Polynomial}, and constant
+ * multiples of <code>sin(k*u)</code> and <code>cos(k*u)</code>, with integer multiples
+ * k of a common frequency, become one {@link HarmonicSeries} per angle. Polynomials and
+ * series built for parts of the sum are merged back in.
+ */
+final class SeriesSpecializer {
+    /** The highest power of x collected into a {@link Polynomial}. */
+    private static final int MAX_DEGREE = 64;
+    /** The most harmonics collected into a {@link HarmonicSeries}. */
+    private static final int MAX_HARMONIC = 1024;
+
+    private final List<Expr> terms;
+    private final List<Boolean> negated;
+    private double constant;
+
+    /**
+     * Creates the pass over a sum of signed terms and a constant.
+     * @param terms the terms, replaced in place
+     * @param negated whether each term is subtracted, updated along with the terms
+     * @param constant the constant of the sum
+     */
+    SeriesSpecializer(List<Expr> terms, List<Boolean> negated, double constant) {
+        this.terms = terms;
+        this.negated = negated;
+        this.constant = constant;
+    }
+
+    /**
+     * Specializes the terms.
+     * @return the new constant of the sum, which may have been folded into a polynomial
+     */
+    double run() {
+        specializePolynomial();
+        specializeHarmonics();
+        return constant;
+    }
+
+    /**
+     * A term split into a constant coefficient and the rest: <code>c*expr</code>, or
+     * <code>1*expr</code> if there is no coefficient.
+     */
+    private record Scaled(double coefficient, Expr expr) {
+        static Scaled of(Expr term, boolean negative) {
+            var sign = negative ? -1.0 : 1.0;
+            if (term instanceof Arithmetic a && a.op() == ArithmeticOp.MUL && a.lhs() instanceof Constant c) {
+                return new Scaled(sign * c.value(), a.rhs());
+            }
+            return new Scaled(sign, term);
+        }
+    }
+
+    /**
+     * The coefficients collected from the terms, either of a polynomial in
+     * <code>first</code>, or of the sines and cosines of a series in <code>first</code>
+     * and <code>second</code>.
+     */
+    private static final class Collected {
+        final double[] first;
+        final double[] second;
+        final boolean[] members;
+        int size;
+        int count;
+        boolean merged;
+
+        Collected(int capacity, int termCount) {
+            this.first = new double[capacity];
+            this.second = new double[capacity];
+            this.members = new boolean[termCount];
+        }
+
+        void grow(int newSize) {
+            size = Math.max(size, newSize);
+        }
+    }
+
+    /**
+     * Replaces the terms <code>c*x^k</code> with one {@link Polynomial}, if there
+     * are at least three of them or one would otherwise need {@link Math#pow}.
+     */
+    private void specializePolynomial() {
+        var poly = new Collected(MAX_DEGREE + 1, terms.size());
+        poly.size = 1;
+        for (var i = 0; i < terms.size(); ++i) {
+            poly.members[i] = collectMonomial(poly, Scaled.of(terms.get(i), negated.get(i)));
+        }
+        if (poly.count < 3 && poly.size - 1 <= IntPower.MAX_EXPONENT && !poly.merged) {
+            return;
+        }
+        poly.first[0] += constant;
+        constant = 0.0;
+        removeTerms(poly.members);
+        var polynomial = ConstantFolder.polynomial(Variable.X, Arrays.copyOf(poly.first, poly.size));
+        if (polynomial instanceof Constant c) {
+            constant = c.value();
+        } else {
+            addTerm(polynomial);
+        }
+    }
+
+    private static boolean collectMonomial(Collected poly, Scaled term) {
+        var k = monomialDegree(term.expr());
+        if (k > 0) {
+            poly.first[k] += term.coefficient();
+            poly.grow(k + 1);
+            ++poly.count;
+            return true;
+        }
+        if (!(term.expr() instanceof Polynomial p && p.arg() == Variable.X
+                && p.coefficients().length <= poly.first.length)) {
+            return false;
+        }
+        for (var j = 0; j < p.coefficients().length; ++j) {
+            poly.first[j] += term.coefficient() * p.coefficients()[j];
+        }
+        poly.grow(p.coefficients().length);
+        poly.merged = true;
+        return true;
+    }
+
+    /**
+     * Replaces sines and cosines of integer multiples of the same angle with one
+     * {@link HarmonicSeries} per angle, if there are at least three of them and
+     * the series needs at most a few harmonics per term.
+     */
+    private void specializeHarmonics() {
+        var replaced = new boolean[terms.size()];
+        var series = new ArrayList<Expr>();
+        for (var group : groupByAngle().values()) {
+            var built = buildSeries(group, replaced);
+            if (built != null) {
+                series.add(built);
+            }
+        }
+        if (series.isEmpty()) {
+            return;
+        }
+        removeTerms(replaced);
+        series.forEach(this::addTerm);
+    }
+
+    // Groups the indices of the sines, cosines and series by angle and precision
+    private LinkedHashMap<List<Object>, List<Integer>> groupByAngle() {
+        var groups = new LinkedHashMap<List<Object>, List<Integer>>();
+        for (var i = 0; i < terms.size(); ++i) {
+            var term = Scaled.of(terms.get(i), negated.get(i)).expr();
+            var angle = angleOf(term);
+            if (angle != null) {
+                var key = List.<Object>of(Scaled.of(angle, false).expr(), precisionOf(term));
+                groups.computeIfAbsent(key, k -> new ArrayList<>()).add(i);
+            }
+        }
+        return groups;
+    }
+
+    // Returns the series for a group, marking the terms it replaces, or null
+    private Expr buildSeries(List<Integer> group, boolean[] replaced) {
+        var fundamental = fundamentalOf(group);
+        if (!(fundamental > 0.0 && Double.isFinite(fundamental))) {
+            return null;
+        }
+        var series = new Collected(MAX_HARMONIC, terms.size());
+        var first = -1;
+        for (var i : group) {
+            series.members[i] = collectHarmonic(series, Scaled.of(terms.get(i), negated.get(i)), fundamental);
+            first = first < 0 && series.members[i] ? i : first;
+        }
+        if ((series.count < 3 && !series.merged) || series.size > 4 * series.count) {
+            return null;
+        }
+        for (var i : group) {
+            replaced[i] |= series.members[i];
+        }
+        return toSeries(series, Scaled.of(terms.get(first), false).expr(), fundamental);
+    }
+
+    // Builds the collected series, at the angle and precision of one of its terms
+    private static Expr toSeries(Collected series, Expr term, double fundamental) {
+        var angle = Scaled.of(angleOf(term), false).expr();
+        var arg = fundamental == 1.0 ? angle : ConstantFolder.arithmetic(new Constant(fundamental), ArithmeticOp.MUL, angle);
+        return ConstantFolder.harmonicSeries(arg, Arrays.copyOf(series.first, series.size),
+                Arrays.copyOf(series.second, series.size), precisionOf(term));
+    }
+
+    // The smallest frequency in the group, which every other should be a multiple of
+    private double fundamentalOf(List<Integer> group) {
+        var fundamental = Double.POSITIVE_INFINITY;
+        for (var i : group) {
+            var term = Scaled.of(terms.get(i), negated.get(i)).expr();
+            fundamental = Math.min(fundamental, Math.abs(Scaled.of(angleOf(term), false).coefficient()));
+        }
+        return fundamental;
+    }
+
+    private static boolean collectHarmonic(Collected series, Scaled term, double fundamental) {
+        if (term.expr() instanceof UnaryCall call) {
+            return collectCall(series, term.coefficient(), call, fundamental);
+        }
+        return collectSeries(series, term.coefficient(), (HarmonicSeries) term.expr(), fundamental);
+    }
+
+    private static boolean collectCall(Collected series, double coefficient, UnaryCall call, double fundamental) {
+        var frequency = Scaled.of(call.arg(), false).coefficient();
+        var k = harmonicOf(frequency, fundamental);
+        if (k == 0) {
+            return false;
+        }
+        if (call.fn() == Builtin.SIN) {
+            series.first[k - 1] += frequency < 0.0 ? -coefficient : coefficient; // sin(-u) = -sin(u)
+        } else {
+            series.second[k - 1] += coefficient;
+        }
+        series.grow(k);
+        ++series.count;
+        return true;
+    }
+
+    private static boolean collectSeries(Collected series, double coefficient, HarmonicSeries inner,
+            double fundamental) {
+        var frequency = Scaled.of(inner.arg(), false).coefficient();
+        var k = harmonicOf(frequency, fundamental);
+        var n = inner.sines().length;
+        if (k == 0 || k * n > MAX_HARMONIC) {
+            return false;
+        }
+        var sign = frequency < 0.0 ? -1.0 : 1.0;
+        for (var j = 0; j < n; ++j) {
+            series.first[k * (j + 1) - 1] += sign * coefficient * inner.sines()[j];
+            series.second[k * (j + 1) - 1] += coefficient * inner.cosines()[j];
+        }
+        series.grow(k * n);
+        series.count += n;
+        series.merged = true;
+        return true;
+    }
+
+    /**
+     * @return the argument of a sine, cosine or harmonic series, otherwise null
+     */
+    private static Expr angleOf(Expr term) {
+        if (term instanceof UnaryCall call && (call.fn() == Builtin.SIN || call.fn() == Builtin.COS)) {
+            return call.arg();
+        }
+        return term instanceof HarmonicSeries series ? series.arg() : null;
+    }
+
+    private static Precision precisionOf(Expr term) {
+        return term instanceof UnaryCall call ? call.precision() : ((HarmonicSeries) term).precision();
+    }
+
+    /**
+     * @return k if <code>expr</code> is <code>x^k</code>, otherwise 0
+     */
+    private static int monomialDegree(Expr expr) {
+        if (expr == Variable.X) {
+            return 1;
+        } else if (expr instanceof IntPower p && p.base() == Variable.X) {
+            return p.exponent();
+        } else if (expr instanceof Arithmetic a && a.op() == ArithmeticOp.POW && a.lhs() == Variable.X
+                && a.rhs() instanceof Constant c && c.value() == Math.rint(c.value())
+                && c.value() >= 1.0 && c.value() <= MAX_DEGREE) {
+            return (int) c.value();
+        }
+        return 0;
+    }
+
+    /**
+     * @return k if <code>|frequency|</code> is k times the fundamental, up to rounding,
+     *         otherwise 0
+     */
+    private static int harmonicOf(double frequency, double fundamental) {
+        var k = Math.rint(Math.abs(frequency) / fundamental);
+        if (k < 1.0 || k > MAX_HARMONIC || Math.abs(k * fundamental - Math.abs(frequency)) > 1e-12 * Math.abs(frequency)) {
+            return 0;
+        }
+        return (int) k;
+    }
+
+    private void addTerm(Expr term) {
+        terms.add(term);
+        negated.add(false);
+    }
+
+    private void removeTerms(boolean[] removed) {
+        var kept = 0;
+        for (var i = 0; i < removed.length; ++i) {
+            if (!removed[i]) {
+                terms.set(kept, terms.get(i));
+                negated.set(kept, negated.get(i));
+                ++kept;
+            }
+        }
+        terms.subList(kept, terms.size()).clear();
+        negated.subList(kept, negated.size()).clear();
+    }
+}
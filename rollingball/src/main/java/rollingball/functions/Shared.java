@@ -0,0 +1,78 @@
+package rollingball.functions;
+
+import rollingball.functions.Function.Expr;
+
+/**
+ * A subexpression that occurs more than once within a function. Created by
+ * {@link CommonSubexpressions}; the same instance takes the place of every occurrence,
+ * so that the subexpression is only evaluated once per <code>(x, t)</code>.
+ *
+ * The node itself is immutable. Its value is remembered in the {@link SampleCache}
+ * of the context it is evaluated in, and over a batch in the per-thread
+ * {@link BatchScratch} until the function has been evaluated, so a shared node may be
+ * evaluated from several threads at once. Evaluating it without a context evaluates
+ * the subexpression every time.
+ */
+public final class Shared implements Expr {
+    private final Expr expr;
+    private final int slot = SampleCache.nextSlot();
+
+    /**
+     * Wraps a subexpression.
+     * @param expr the shared subexpression
+     */
+    public Shared(Expr expr) {
+        this.expr = expr;
+    }
+
+    /**
+     * Returns the shared subexpression.
+     * @return the subexpression
+     */
+    public Expr expr() {
+        return expr;
+    }
+
+    @Override
+    public double eval(EvalContext ctx) {
+        if (ctx == null) {
+            return expr.eval(null);
+        }
+        var x = ctx.x;
+        var t = ctx.t;
+        var cache = ctx.sampleCache();
+        if (cache.contains(slot, this, x, t)) {
+            return cache.get(slot);
+        }
+        var value = expr.eval(ctx);
+        cache.put(slot, this, x, t, value);
+        return value;
+    }
+
+    @Override
+    public double eval(double x, double t) {
+        return expr.eval(x, t);
+    }
+
+    @Override
+    public void evalBatch(double[] xs, double t, double[] out, int len) {
+        var scratch = BatchScratch.get();
+        var values = scratch.sharedValues(this);
+        if (values != null) {
+            System.arraycopy(values, 0, out, 0, len);
+            return;
+        }
+        expr.evalBatch(xs, t, out, len);
+        scratch.putSharedValues(this, out, len);
+    }
+
+    @Override
+    public Interval evalInterval(Interval x, Interval t) {
+        return expr.evalInterval(x, t);
+    }
+
+    @Override
+    public boolean isConstant() {
+        return expr.isConstant();
+    }
+}
@@ -0,0 +1,176 @@
+package rollingball.functions;
+
+/**
+ * A time-invariant function sampled over a fixed range of x and interpolated
+ * with cubic Hermite polynomials, one per cell of a uniform grid.
+ *
+ * The table is refined by doubling the number of cells until the interpolation
+ * agrees with the function within the error bound at three probe points inside every
+ * cell, or until {@link #MAX_CELLS} is reached. Cells that still disagree, such as those
+ * containing a jump, a kink or a pole, are marked to evaluate the function exactly,
+ * as are x coordinates outside the range. A lookup is a few multiplications and does
+ * not walk the expression tree.
+ *
+ * The error bound is only estimated from the probes, not guaranteed: a feature narrower
+ * than the spacing of the probes, such as a spike between two of them, can go unnoticed
+ * and be interpolated with any error. Use the table where that is acceptable, such as for
+ * drawing, and evaluate the function where it is not, such as for collisions.
+ *
+ * Tables are immutable and can be shared between threads.
+ */
+public final class TabulatedFunction {
+    /**
+     * The default bound on the error of an interpolated value at the probe points,
+     * relative to the magnitude of the value, or absolute below 1.
+     */
+    public static final double DEFAULT_MAX_ERROR = 1e-9;
+
+    /**
+     * The maximum number of cells in a table.
+     */
+    public static final int MAX_CELLS = 1 << 14;
+
+    private static final int MIN_CELLS = 1 << 8;
+    private static final double[] PROBES = { 0.25, 0.5, 0.75 };
+
+    private final Function fn;
+    private final double lo;
+    private final double invStep;
+    private final int numCells;
+    // Four coefficients per cell, in powers of the position within the cell. NaN for exact cells.
+    private final double[] coefficients;
+
+    private TabulatedFunction(Function fn, double lo, double invStep, int numCells, double[] coefficients) {
+        this.fn = fn;
+        this.lo = lo;
+        this.invStep = invStep;
+        this.numCells = numCells;
+        this.coefficients = coefficients;
+    }
+
+    /**
+     * Tabulates a function over <code>[lo, hi)</code>.
+     * @param fn the function. Its condition is not tabulated; check it with {@link Function#canEval(double, double)}.
+     * @param derivative the derivative of the function with respect to x, see {@link Derivatives}
+     * @param lo the lower end of the range
+     * @param hi the upper end of the range
+     * @param maxError the error bound checked at the probe points, see {@link #DEFAULT_MAX_ERROR}
+     * @return the table, or null if the function or its derivative depend on t
+     */
+    public static TabulatedFunction build(Function fn, Function derivative, double lo, double hi, double maxError) {
+        if (!fn.isTimeInvariant() || !derivative.isTimeInvariant()) {
+            return null;
+        }
+        for (var numCells = MIN_CELLS; ; numCells *= 2) {
+            var coefficients = new double[4 * numCells];
+            var numInexact = fit(fn, derivative, lo, (hi - lo) / numCells, numCells, maxError, coefficients);
+            if (numInexact == 0 || numCells == MAX_CELLS) {
+                return new TabulatedFunction(fn, lo, numCells / (hi - lo), numCells, coefficients);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of cells the range was divided into.
+     * @return the cell count
+     */
+    public int getCellCount() {
+        return numCells;
+    }
+
+    /**
+     * Returns the number of cells that evaluate the function exactly.
+     * @return the count of cells whose interpolation exceeded the error bound at a probe point
+     */
+    public int getExactCellCount() {
+        var count = 0;
+        for (var i = 0; i < numCells; ++i) {
+            count += Double.isNaN(coefficients[4 * i]) ? 1 : 0;
+        }
+        return count;
+    }
+
+    /**
+     * Evaluates the function at the given x coordinate, by interpolation where possible.
+     * @param x the x coordinate
+     * @return the value of the formula, which may exceed the error bound between the probe points
+     */
+    public double eval(double x) {
+        var u = (x - lo) * invStep;
+        if (!(u >= 0.0 && u < numCells)) { // Also catches NaN
+            return fn.eval(x, 0.0);
+        }
+        var cell = (int) u;
+        var c = 4 * cell;
+        if (Double.isNaN(coefficients[c])) {
+            return fn.eval(x, 0.0);
+        }
+        var s = u - cell;
+        return coefficients[c] + s * (coefficients[c + 1] + s * (coefficients[c + 2] + s * coefficients[c + 3]));
+    }
+
+    /**
+     * Samples the function and fits a polynomial to every cell.
+     * @return the number of cells that had to be marked exact
+     */
+    private static int fit(Function fn, Function derivative, double lo, double step, int numCells, double maxError,
+            double[] coefficients) {
+        var xs = new double[numCells + 1];
+        for (var i = 0; i <= numCells; ++i) {
+            xs[i] = lo + i * step;
+        }
+        var ys = evalAll(fn, xs);
+        var slopes = evalAll(derivative, xs);
+        var probeYs = evalAll(fn, probeXs(xs, step));
+
+        var numInexact = 0;
+        for (var i = 0; i < numCells; ++i) {
+            var c = 4 * i;
+            fitCell(coefficients, c, ys[i], ys[i + 1], slopes[i] * step, slopes[i + 1] * step);
+            if (!agreesAtProbes(coefficients, c, probeYs, i * PROBES.length, maxError)) {
+                coefficients[c] = Double.NaN;
+                ++numInexact;
+            }
+        }
+        return numInexact;
+    }
+
+    private static double[] evalAll(Function fn, double[] xs) {
+        var ys = new double[xs.length];
+        fn.evalBatch(xs, 0.0, ys, new boolean[xs.length]);
+        return ys;
+    }
+
+    private static double[] probeXs(double[] xs, double step) {
+        var probeXs = new double[(xs.length - 1) * PROBES.length];
+        for (var i = 0; i < xs.length - 1; ++i) {
+            for (var p = 0; p < PROBES.length; ++p) {
+                probeXs[i * PROBES.length + p] = xs[i] + PROBES[p] * step;
+            }
+        }
+        return probeXs;
+    }
+
+    // The cubic Hermite polynomial through (0, y0) and (1, y1) with slopes m0 and m1
+    private static void fitCell(double[] coefficients, int c, double y0, double y1, double m0, double m1) {
+        coefficients[c] = y0;
+        coefficients[c + 1] = m0;
+        coefficients[c + 2] = 3.0 * (y1 - y0) - 2.0 * m0 - m1;
+        coefficients[c + 3] = 2.0 * (y0 - y1) + m0 + m1;
+    }
+
+    private static boolean agreesAtProbes(double[] coefficients, int c, double[] probeYs, int firstProbe,
+            double maxError) {
+        for (var p = 0; p < PROBES.length; ++p) {
+            var s = PROBES[p];
+            var interpolated = coefficients[c]
+                    + s * (coefficients[c + 1] + s * (coefficients[c + 2] + s * coefficients[c + 3]));
+            var expected = probeYs[firstProbe + p];
+            // Non-finite values fail this too, as the comparison is false for NaN
+            if (!(Math.abs(interpolated - expected) <= maxError * Math.max(1.0, Math.abs(expected)))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
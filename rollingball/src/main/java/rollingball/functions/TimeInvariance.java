@@ -0,0 +1,207 @@
+package rollingball.functions;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import rollingball.functions.Function.Condition;
+import rollingball.functions.Function.Expr;
+
+/**
+ * Classifies nodes by the variables they depend on, and hoists the subexpressions
+ * that depend only on t out of the per-sample work. In
+ * <code>sin(t/2)+max(0,1.7*sin(x/2.15))</code>, <code>sin(t/2)</code> becomes a
+ * {@link Hoisted} node, which is evaluated once per t instead of once per x.
+ *
+ * Opaque nodes are assumed to depend on both variables.
+ */
+public final class TimeInvariance {
+    private TimeInvariance() {
+    } // Make non-instantiable
+
+    private static final int DEPENDS_ON_X = 1;
+    private static final int DEPENDS_ON_T = 2;
+    private static final int DEPENDS_ON_BOTH = DEPENDS_ON_X | DEPENDS_ON_T;
+
+    /**
+     * Checks if an expression depends on a variable.
+     * @param expr the expression
+     * @param variable the variable
+     * @return true if the value of the expression may change with the variable
+     */
+    public static boolean exprDependsOn(Expr expr, Variable variable) {
+        return (new Analysis().exprDependencies(expr) & bit(variable)) != 0;
+    }
+
+    /**
+     * Checks if a condition depends on a variable.
+     * @param condition the condition
+     * @param variable the variable
+     * @return true if the result of the condition may change with the variable
+     */
+    public static boolean conditionDependsOn(Condition condition, Variable variable) {
+        return (new Analysis().conditionDependencies(condition) & bit(variable)) != 0;
+    }
+
+    /**
+     * Wraps every largest subexpression that depends on t but not on x in a {@link Hoisted} node.
+     * Identical subexpressions (as shared by {@link CommonSubexpressions}) get the same node.
+     * @param fn the function
+     * @return a function with the same backend, or <code>fn</code> itself if nothing can be hoisted
+     */
+    public static Function hoist(Function fn) {
+        return hoist(fn, new Analysis());
+    }
+
+    /**
+     * Hoists the t-only subexpressions of several functions, see {@link #hoist(Function)}.
+     * Subexpressions shared between the functions get the same {@link Hoisted} node.
+     * @param fns the functions
+     * @return the hoisted functions, in the same order
+     */
+    public static List<Function> hoist(List<Function> fns) {
+        var analysis = new Analysis();
+        return fns.stream().map(fn -> hoist(fn, analysis)).toList();
+    }
+
+    private static Function hoist(Function fn, Analysis analysis) {
+        var formula = analysis.hoistExpr(fn.getFormula());
+        var condition = analysis.hoistCondition(fn.getCondition());
+        if (formula == fn.getFormula() && condition == fn.getCondition()) {
+            return fn;
+        }
+        var result = new Function(formula, condition);
+        result.setBackend(fn.getBackend());
+        return result;
+    }
+
+    private static int bit(Variable variable) {
+        return variable == Variable.X ? DEPENDS_ON_X : DEPENDS_ON_T;
+    }
+
+    private static final class Analysis {
+        // Memoized per node, as trees with shared nodes are DAGs
+        private final Map<Expr, Integer> dependencies = new IdentityHashMap<>();
+        private final Map<Expr, Expr> hoisted = new IdentityHashMap<>();
+
+        int exprDependencies(Expr expr) {
+            var result = dependencies.get(expr);
+            if (result == null) {
+                result = computeDependencies(expr);
+                dependencies.put(expr, result);
+            }
+            return result;
+        }
+
+        int conditionDependencies(Condition condition) {
+            if (condition instanceof Comparison c) {
+                return exprDependencies(c.lhs()) | exprDependencies(c.rhs());
+            } else if (condition instanceof Conjunction c) {
+                return conditionDependencies(c.lhs()) | conditionDependencies(c.rhs());
+            }
+            return condition.isConstant() ? 0 : DEPENDS_ON_BOTH;
+        }
+
+        private int computeDependencies(Expr expr) {
+            if (expr instanceof Variable v) {
+                return bit(v);
+            } else if (expr instanceof Shared s) {
+                return exprDependencies(s.expr());
+            } else if (expr instanceof Hoisted h) {
+                return exprDependencies(h.expr());
+            } else if (expr instanceof Negate n) {
+                return exprDependencies(n.operand());
+            } else if (expr instanceof Arithmetic a) {
+                return exprDependencies(a.lhs()) | exprDependencies(a.rhs());
+            }
+            return computeFunctionDependencies(expr);
+        }
+
+        private int computeFunctionDependencies(Expr expr) {
+            if (expr instanceof IntPower p) {
+                return exprDependencies(p.base());
+            } else if (expr instanceof Polynomial p) {
+                return exprDependencies(p.arg());
+            } else if (expr instanceof HarmonicSeries h) {
+                return exprDependencies(h.arg());
+            } else if (expr instanceof UnaryCall call) {
+                return exprDependencies(call.arg());
+            } else if (expr instanceof BinaryCall call) {
+                return exprDependencies(call.first()) | exprDependencies(call.second());
+            }
+            return expr.isConstant() ? 0 : DEPENDS_ON_BOTH;
+        }
+
+        Condition hoistCondition(Condition condition) {
+            if (condition instanceof Comparison c) {
+                var lhs = hoistExpr(c.lhs());
+                var rhs = hoistExpr(c.rhs());
+                return lhs == c.lhs() && rhs == c.rhs() ? c : new Comparison(lhs, c.op(), rhs);
+            } else if (condition instanceof Conjunction c) {
+                var lhs = hoistCondition(c.lhs());
+                var rhs = hoistCondition(c.rhs());
+                return lhs == c.lhs() && rhs == c.rhs() ? c : new Conjunction(lhs, rhs);
+            }
+            return condition;
+        }
+
+        Expr hoistExpr(Expr expr) {
+            var result = hoisted.get(expr);
+            if (result == null) {
+                result = computeHoisted(expr);
+                hoisted.put(expr, result);
+            }
+            return result;
+        }
+
+        private Expr computeHoisted(Expr expr) {
+            if (expr instanceof Hoisted || expr instanceof Variable || expr instanceof Constant) {
+                return expr;
+            }
+            if (exprDependencies(expr) == DEPENDS_ON_T) {
+                // The hoisted node is shared by itself
+                return new Hoisted(expr instanceof Shared s ? s.expr() : expr);
+            }
+            return rebuild(expr);
+        }
+
+        // Returns the node itself if none of its children changed
+        private Expr rebuild(Expr expr) {
+            if (expr instanceof Shared s) {
+                var inner = hoistExpr(s.expr());
+                return inner == s.expr() ? s : new Shared(inner);
+            } else if (expr instanceof Negate n) {
+                var operand = hoistExpr(n.operand());
+                return operand == n.operand() ? n : new Negate(operand);
+            } else if (expr instanceof Arithmetic a) {
+                var lhs = hoistExpr(a.lhs());
+                var rhs = hoistExpr(a.rhs());
+                return lhs == a.lhs() && rhs == a.rhs() ? a : new Arithmetic(lhs, a.op(), rhs);
+            } else if (expr instanceof IntPower p) {
+                var base = hoistExpr(p.base());
+                return base == p.base() ? p : new IntPower(base, p.exponent());
+            }
+            return rebuildFunctionOf(expr);
+        }
+
+        private Expr rebuildFunctionOf(Expr expr) {
+            if (expr instanceof Polynomial p) {
+                var arg = hoistExpr(p.arg());
+                return arg == p.arg() ? p : new Polynomial(arg, p.coefficients());
+            } else if (expr instanceof HarmonicSeries h) {
+                var arg = hoistExpr(h.arg());
+                return arg == h.arg() ? h : new HarmonicSeries(arg, h.sines(), h.cosines(), h.precision());
+            } else if (expr instanceof UnaryCall call) {
+                var arg = hoistExpr(call.arg());
+                return arg == call.arg() ? call : new UnaryCall(call.fn(), arg, call.precision());
+            } else if (expr instanceof BinaryCall call) {
+                var first = hoistExpr(call.first());
+                var second = hoistExpr(call.second());
+                return first == call.first() && second == call.second()
+                        ? call
+                        : new BinaryCall(call.fn(), first, second, call.precision());
+            }
+            return expr;
+        }
+    }
+}
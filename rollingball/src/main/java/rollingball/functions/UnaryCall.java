@@ -0,0 +1,43 @@
+package rollingball.functions;
+
+import rollingball.functions.BuiltinFunctions.Builtin;
+import rollingball.functions.BuiltinFunctions.Precision;
+import rollingball.functions.Function.Expr;
+
+/**
+ * A call to a single-parameter built-in function.
+ * @param fn the function
+ * @param arg the parameter
+ * @param precision how accurately the function is evaluated
+ */
+public record UnaryCall(Builtin fn, Expr arg, Precision precision) implements Expr {
+    /**
+     * A call evaluated at {@link Precision#DEFAULT}.
+     * @param fn the function
+     * @param arg the parameter
+     */
+    public UnaryCall(Builtin fn, Expr arg) {
+        this(fn, arg, Precision.DEFAULT);
+    }
+
+    @Override
+    public double eval(EvalContext ctx) {
+        return fn.apply(arg.eval(ctx), 0.0, precision);
+    }
+
+    @Override
+    public double eval(double x, double t) {
+        return fn.apply(arg.eval(x, t), 0.0, precision);
+    }
+
+    @Override
+    public void evalBatch(double[] xs, double t, double[] out, int len) {
+        arg.evalBatch(xs, t, out, len);
+        fn.applyBatch(out, null, len, precision);
+    }
+
+    @Override
+    public Interval evalInterval(Interval x, Interval t) {
+        return fn.applyInterval(arg.evalInterval(x, t), null);
+    }
+}
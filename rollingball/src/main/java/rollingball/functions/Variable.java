@@ -0,0 +1,36 @@
+package rollingball.functions;
+
+import java.util.Arrays;
+
+import rollingball.functions.Function.Expr;
+
+/**
+ * A reference to one of the runtime variables in {@link EvalContext}.
+ */
+public enum Variable implements Expr {
+    X, T;
+
+    @Override
+    public double eval(EvalContext ctx) {
+        return this == X ? ctx.x : ctx.t;
+    }
+
+    @Override
+    public double eval(double x, double t) {
+        return this == X ? x : t;
+    }
+
+    @Override
+    public void evalBatch(double[] xs, double t, double[] out, int len) {
+        if (this == X) {
+            System.arraycopy(xs, 0, out, 0, len);
+        } else {
+            Arrays.fill(out, 0, len, t);
+        }
+    }
+
+    @Override
+    public Interval evalInterval(Interval x, Interval t) {
+        return this == X ? x : t;
+    }
+}
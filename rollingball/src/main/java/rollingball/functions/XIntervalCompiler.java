@@ -0,0 +1,254 @@
+package rollingball.functions;
+
+import rollingball.functions.Function.Condition;
+import rollingball.functions.Function.Expr;
+import rollingball.functions.Operators.ArithmeticOp;
+import rollingball.functions.Operators.RelationalOp;
+import rollingball.functions.XIntervals.Spans;
+
+/**
+ * Compiles the conditions supported by {@link XIntervals} into parts that are solved
+ * for x at a given t. Comparisons are rearranged into <code>slope * x + offset op 0</code>
+ * or <code>|slope * x + offset| op limit</code>, with slope, offset and limit
+ * independent of x; each solved bound is then refined with {@link BoundRefinement}.
+ */
+final class XIntervalCompiler {
+    private XIntervalCompiler() {
+    } // Make non-instantiable
+
+    /**
+     * A condition, or part of one, that can be solved for x at a given t.
+     */
+    interface Part {
+        /**
+         * Returns the set where the part holds, or null if it cannot be solved at this t.
+         */
+        Spans solve(EvalContext ctx);
+    }
+
+    /**
+     * <code>slope * x + offset</code>, with slope and offset independent of x.
+     */
+    private record Affine(Expr slope, Expr offset) {
+    }
+
+    private record Fixed(boolean value) implements Part {
+        @Override
+        public Spans solve(EvalContext ctx) {
+            return value ? Spans.ALL : Spans.NONE;
+        }
+    }
+
+    private record And(Part lhs, Part rhs) implements Part {
+        @Override
+        public Spans solve(EvalContext ctx) {
+            var lhsSpans = lhs.solve(ctx);
+            if (lhsSpans == null || lhsSpans.size() == 0) {
+                return lhsSpans;
+            }
+            var rhsSpans = rhs.solve(ctx);
+            return rhsSpans == null ? null : lhsSpans.intersect(rhsSpans);
+        }
+    }
+
+    /**
+     * <code>slope * x + offset op 0</code>, which holds on a half-line.
+     */
+    private record Linear(Comparison original, Affine difference, RelationalOp op) implements Part {
+        @Override
+        public Spans solve(EvalContext ctx) {
+            var slope = difference.slope().eval(ctx);
+            var offset = difference.offset().eval(ctx);
+            if (slope == 0.0) {
+                return BoundRefinement.holdsAt(original, ctx, 0.0) ? Spans.ALL : Spans.NONE;
+            }
+            if (!Double.isFinite(slope) || !Double.isFinite(offset)) {
+                return null;
+            }
+            var root = -offset / slope;
+            var belowZero = op == RelationalOp.LT || op == RelationalOp.LE;
+            return belowZero == slope > 0.0
+                    ? BoundRefinement.upTo(original, ctx, root)
+                    : BoundRefinement.from(original, ctx, root);
+        }
+    }
+
+    /**
+     * <code>|slope * x + offset| op limit</code>, which holds on a band or outside it.
+     */
+    private record Abs(Comparison original, Affine arg, Expr limit, RelationalOp op) implements Part {
+        @Override
+        public Spans solve(EvalContext ctx) {
+            var slope = arg.slope().eval(ctx);
+            var offset = arg.offset().eval(ctx);
+            var c = limit.eval(ctx);
+            if (slope == 0.0) {
+                return BoundRefinement.holdsAt(original, ctx, 0.0) ? Spans.ALL : Spans.NONE;
+            }
+            if (!Double.isFinite(slope) || !Double.isFinite(offset) || Double.isNaN(c)) {
+                return null;
+            }
+            var inside = op == RelationalOp.LT || op == RelationalOp.LE;
+            if (c < 0.0 || c == 0.0 && (op == RelationalOp.LT || op == RelationalOp.GE)) {
+                // No x is inside the band, or every x is outside it
+                return inside ? Spans.NONE : Spans.ALL;
+            }
+            var first = (-c - offset) / slope;
+            var second = (c - offset) / slope;
+            var lo = Math.min(first, second);
+            var hi = Math.max(first, second);
+            return inside ? insideBand(ctx, lo, hi) : outsideBand(ctx, lo, hi);
+        }
+
+        private Spans insideBand(EvalContext ctx, double lo, double hi) {
+            var from = BoundRefinement.from(original, ctx, lo);
+            var upTo = BoundRefinement.upTo(original, ctx, hi);
+            return from == null || upTo == null ? null : from.intersect(upTo);
+        }
+
+        private Spans outsideBand(EvalContext ctx, double lo, double hi) {
+            var below = BoundRefinement.upTo(original, ctx, lo);
+            var above = BoundRefinement.from(original, ctx, hi);
+            if (below == null || above == null) {
+                return null;
+            }
+            if (below.size() == 0 || above.size() == 0) {
+                return below.size() == 0 ? above : below;
+            }
+            return below.getHi(0) < above.getLo(0)
+                    ? new Spans(new double[] { below.getLo(0), above.getLo(0) },
+                            new double[] { below.getHi(0), above.getHi(0) })
+                    : Spans.ALL;
+        }
+    }
+
+    /**
+     * Compiles a condition into a part.
+     * @param condition the condition
+     * @return the part, or null if the condition depends on x in a way that is not supported
+     */
+    static Part compile(Condition condition) {
+        if (condition instanceof BoolConstant c) {
+            return new Fixed(c.value());
+        } else if (condition instanceof Conjunction c) {
+            var lhs = compile(c.lhs());
+            var rhs = compile(c.rhs());
+            return lhs == null || rhs == null ? null : new And(lhs, rhs);
+        } else if (condition instanceof Comparison c) {
+            return compileComparison(c);
+        }
+        return null;
+    }
+
+    private static Part compileComparison(Comparison c) {
+        var lhsAbs = absArgument(c.lhs());
+        if (lhsAbs != null && !dependsOnX(c.rhs())) {
+            var arg = affine(lhsAbs);
+            return arg == null ? null : new Abs(c, arg, c.rhs(), c.op());
+        }
+        var rhsAbs = absArgument(c.rhs());
+        if (rhsAbs != null && !dependsOnX(c.lhs())) {
+            var arg = affine(rhsAbs);
+            return arg == null ? null : new Abs(c, arg, c.lhs(), flip(c.op()));
+        }
+
+        var lhs = affine(c.lhs());
+        var rhs = affine(c.rhs());
+        if (lhs == null || rhs == null) {
+            return null;
+        }
+        var difference = new Affine(minus(lhs.slope(), rhs.slope()), minus(lhs.offset(), rhs.offset()));
+        return new Linear(c, difference, c.op());
+    }
+
+    private static Expr absArgument(Expr expr) {
+        var unwrapped = unwrap(expr);
+        return unwrapped instanceof UnaryCall call && call.fn() == BuiltinFunctions.Builtin.ABS ? call.arg() : null;
+    }
+
+    private static Affine affine(Expr expr) {
+        if (!dependsOnX(expr)) {
+            return new Affine(zero(), expr);
+        }
+        expr = unwrap(expr);
+        if (expr == Variable.X) {
+            return new Affine(new Constant(1.0), zero());
+        } else if (expr instanceof Negate n) {
+            var operand = affine(n.operand());
+            return operand == null ? null
+                    : new Affine(ConstantFolder.negate(operand.slope()), ConstantFolder.negate(operand.offset()));
+        } else if (expr instanceof Arithmetic a) {
+            return affine(a);
+        }
+        return null;
+    }
+
+    private static Affine affine(Arithmetic a) {
+        var lhs = affine(a.lhs());
+        var rhs = affine(a.rhs());
+        if (lhs == null || rhs == null) {
+            return null;
+        }
+        return switch (a.op()) {
+            case ADD -> new Affine(plus(lhs.slope(), rhs.slope()), plus(lhs.offset(), rhs.offset()));
+            case SUB -> new Affine(minus(lhs.slope(), rhs.slope()), minus(lhs.offset(), rhs.offset()));
+            case MUL -> {
+                if (!dependsOnX(a.lhs())) {
+                    yield scale(rhs, a.lhs(), ArithmeticOp.MUL);
+                }
+                yield dependsOnX(a.rhs()) ? null : scale(lhs, a.rhs(), ArithmeticOp.MUL);
+            }
+            case DIV -> dependsOnX(a.rhs()) ? null : scale(lhs, a.rhs(), ArithmeticOp.DIV);
+            case POW -> null;
+        };
+    }
+
+    private static Affine scale(Affine affine, Expr factor, ArithmeticOp op) {
+        return new Affine(ConstantFolder.arithmetic(affine.slope(), op, factor),
+                isZero(affine.offset()) ? zero() : ConstantFolder.arithmetic(affine.offset(), op, factor));
+    }
+
+    private static boolean dependsOnX(Expr expr) {
+        return TimeInvariance.exprDependsOn(expr, Variable.X);
+    }
+
+    private static Expr unwrap(Expr expr) {
+        if (expr instanceof Shared s) {
+            return unwrap(s.expr());
+        } else if (expr instanceof Hoisted h) {
+            return unwrap(h.expr());
+        }
+        return expr;
+    }
+
+    private static RelationalOp flip(RelationalOp op) {
+        return switch (op) {
+            case LT -> RelationalOp.GT;
+            case LE -> RelationalOp.GE;
+            case GT -> RelationalOp.LT;
+            case GE -> RelationalOp.LE;
+        };
+    }
+
+    private static Constant zero() {
+        return new Constant(0.0);
+    }
+
+    private static boolean isZero(Expr expr) {
+        return expr instanceof Constant c && c.value() == 0.0;
+    }
+
+    private static Expr plus(Expr a, Expr b) {
+        if (isZero(a)) {
+            return b;
+        }
+        return isZero(b) ? a : ConstantFolder.arithmetic(a, ArithmeticOp.ADD, b);
+    }
+
+    private static Expr minus(Expr a, Expr b) {
+        if (isZero(b)) {
+            return a;
+        }
+        return isZero(a) ? ConstantFolder.negate(b) : ConstantFolder.arithmetic(a, ArithmeticOp.SUB, b);
+    }
+}
@@ -0,0 +1,187 @@
+package rollingball.functions;
+
+import java.util.Arrays;
+
+import rollingball.functions.Function.Condition;
+import rollingball.functions.XIntervalCompiler.Part;
+
+/**
+ * A condition compiled into the set of x where it holds, for conditions built from
+ * comparisons that are linear in x, such as <code>0 &lt; x &lt; 1</code> or
+ * <code>-3 &lt;= x/2 &lt;= t</code>. Comparisons of the form <code>|ax+b| &lt; c</code>
+ * are supported as well. The coefficients may depend on t, so the set is recomputed
+ * whenever t changes, after which testing a sample is a binary search.
+ *
+ * The bounds of the set are not solved for alone: starting from the solved bound, each
+ * one is moved to the exact double where the original comparison changes its result,
+ * so the set agrees with evaluating the condition.
+ */
+public final class XIntervals {
+    /**
+     * A sorted set of disjoint closed intervals of x.
+     */
+    public static final class Spans {
+        /**
+         * The set containing every x.
+         */
+        public static final Spans ALL = new Spans(new double[] { Double.NEGATIVE_INFINITY },
+                new double[] { Double.POSITIVE_INFINITY });
+        /**
+         * The empty set.
+         */
+        public static final Spans NONE = new Spans(new double[0], new double[0]);
+
+        private final double[] los;
+        private final double[] his;
+
+        Spans(double[] los, double[] his) {
+            this.los = los;
+            this.his = his;
+        }
+
+        static Spans of(double lo, double hi) {
+            return lo <= hi ? new Spans(new double[] { lo }, new double[] { hi }) : NONE;
+        }
+
+        /**
+         * Returns the number of intervals.
+         * @return the number of intervals
+         */
+        public int size() {
+            return los.length;
+        }
+
+        /**
+         * Returns the lower bound of an interval.
+         * @param i the index of the interval, in increasing order of x
+         * @return the lower bound, inclusive
+         */
+        public double getLo(int i) {
+            return los[i];
+        }
+
+        /**
+         * Returns the upper bound of an interval.
+         * @param i the index of the interval, in increasing order of x
+         * @return the upper bound, inclusive
+         */
+        public double getHi(int i) {
+            return his[i];
+        }
+
+        /**
+         * Checks if the set contains a value.
+         * @param x the value
+         * @return true if the condition holds at x
+         */
+        public boolean contains(double x) {
+            var i = lastStartingAtOrBefore(x);
+            return i >= 0 && x <= his[i];
+        }
+
+        /**
+         * Checks if the set contains any value within a range.
+         * @param lo the lower bound of the range, inclusive
+         * @param hi the upper bound of the range, inclusive
+         * @return true if the condition holds somewhere in the range
+         */
+        public boolean intersects(double lo, double hi) {
+            var i = lastStartingAtOrBefore(hi);
+            return i >= 0 && lo <= his[i];
+        }
+
+        /**
+         * Checks if the set contains every value within a range.
+         * @param lo the lower bound of the range, inclusive
+         * @param hi the upper bound of the range, inclusive
+         * @return true if the condition holds throughout the range
+         */
+        public boolean covers(double lo, double hi) {
+            var i = lastStartingAtOrBefore(lo);
+            return i >= 0 && hi <= his[i];
+        }
+
+        // Binary search for the last interval with lo <= x, or -1
+        private int lastStartingAtOrBefore(double x) {
+            var low = 0;
+            var high = los.length - 1;
+            while (low <= high) {
+                var mid = (low + high) >>> 1;
+                if (los[mid] <= x) {
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return high;
+        }
+
+        Spans intersect(Spans other) {
+            var newLos = new double[los.length + other.los.length];
+            var newHis = new double[newLos.length];
+            var count = 0;
+            var i = 0;
+            var j = 0;
+            while (i < los.length && j < other.los.length) {
+                count = add(newLos, newHis, count, Math.max(los[i], other.los[j]), Math.min(his[i], other.his[j]));
+                if (his[i] < other.his[j]) {
+                    i++;
+                } else {
+                    j++;
+                }
+            }
+            return count == 0 ? NONE : new Spans(Arrays.copyOf(newLos, count), Arrays.copyOf(newHis, count));
+        }
+
+        // Appends an interval unless it is empty, returning the new count
+        private static int add(double[] los, double[] his, int count, double lo, double hi) {
+            if (lo > hi) {
+                return count;
+            }
+            los[count] = lo;
+            his[count] = hi;
+            return count + 1;
+        }
+    }
+
+    private record Sample(double t, Spans spans) {
+    }
+
+    private final Part root;
+    private Sample last;
+
+    private XIntervals(Part root) {
+        this.root = root;
+    }
+
+    /**
+     * Compiles a condition into intervals of x.
+     * @param condition the condition
+     * @return the compiled condition, or null if the condition does not depend on x,
+     *         or depends on it in a way that is not supported
+     */
+    public static XIntervals compile(Condition condition) {
+        if (!TimeInvariance.conditionDependsOn(condition, Variable.X)) {
+            return null;
+        }
+        var part = XIntervalCompiler.compile(condition);
+        return part == null ? null : new XIntervals(part);
+    }
+
+    /**
+     * Returns the set of x where the condition holds at the given time. The result is
+     * kept until t changes.
+     * @param t the time variable
+     * @return the set, or null if the condition cannot be solved at this t, for example
+     *         because a coefficient is infinite
+     */
+    public Spans spansAt(double t) {
+        var sample = last;
+        if (sample != null && Double.doubleToRawLongBits(sample.t()) == Double.doubleToRawLongBits(t)) {
+            return sample.spans();
+        }
+        var spans = root.solve(new EvalContext(t));
+        last = new Sample(t, spans);
+        return spans;
+    }
+}
@@ -1,4 +1,17 @@
 /**
  * Contains functions and classes for representing, parsing and evaluating numerical and conditional expressions.
+ *
+ * Parsed expressions are trees of the node types {@link rollingball.functions.Constant},
+ * {@link rollingball.functions.Variable}, {@link rollingball.functions.Negate},
+ * {@link rollingball.functions.Arithmetic}, {@link rollingball.functions.IntPower},
+ * {@link rollingball.functions.Polynomial}, {@link rollingball.functions.HarmonicSeries},
+ * {@link rollingball.functions.UnaryCall}, {@link rollingball.functions.BinaryCall},
+ * {@link rollingball.functions.Shared} and {@link rollingball.functions.Hoisted}, and
+ * conditions are trees of {@link rollingball.functions.BoolConstant},
+ * {@link rollingball.functions.Comparison} and {@link rollingball.functions.Conjunction}.
+ * Unlike plain lambdas, these can be inspected after parsing, which is what makes it
+ * possible to compile or otherwise transform parsed expressions. Any
+ * {@link rollingball.functions.Function.Expr} or {@link rollingball.functions.Function.Condition}
+ * that is not one of these is treated as an opaque node by the rest of the package.
  */
 package rollingball.functions;
@@ -0,0 +1,157 @@
+package rollingball.game;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
+import rollingball.functions.Function;
+import rollingball.functions.FunctionParser;
+import rollingball.functions.ParserException;
+
+/**
+ * Re-plays large numbers of solutions, such as every stored solution after a level
+ * has changed, in parallel. Each solution is simulated by its own task with its own
+ * {@link Level} instance, {@link Ball} and parsed functions, so the tasks share no
+ * mutable game state and scale with the number of cores.
+ */
+public final class BatchValidator {
+    /**
+     * A solution to validate: the level, and the functions the player entered.
+     * @param level the level
+     * @param formulas the formulas of the functions
+     * @param conditions the conditions of the functions, one per formula; empty for none
+     */
+    public static record Solution(LevelBlueprint level, List<String> formulas, List<String> conditions) {
+        public Solution {
+            if (formulas.size() != conditions.size()) {
+                throw new IllegalArgumentException("Every formula needs a condition");
+            }
+        }
+    }
+
+    /**
+     * The result of validating one solution.
+     * @param index the index of the solution in the batch
+     * @param solution the solution
+     * @param result the result of the simulation, or null if a function did not parse
+     * @param error the reason a function did not parse, or null
+     */
+    public static record Report(int index, Solution solution, SimulationRunner.Result result, ParserException error) {
+        /**
+         * @return true if the solution still wins its level
+         */
+        public boolean isVictory() {
+            return result != null && result.isVictory();
+        }
+    }
+
+    /**
+     * Totals for a batch.
+     * @param simulations the number of solutions simulated
+     * @param ticks the number of ticks simulated over all solutions
+     * @param elapsedNanos the real time the batch took
+     */
+    public static record Throughput(int simulations, long ticks, long elapsedNanos) {
+        /**
+         * @return the number of solutions simulated per second
+         */
+        public double simulationsPerSecond() {
+            return simulations / (elapsedNanos / 1e9);
+        }
+
+        /**
+         * @return the number of ticks simulated per second
+         */
+        public double ticksPerSecond() {
+            return ticks / (elapsedNanos / 1e9);
+        }
+    }
+
+    private final Executor executor;
+    private final SimulationRunner runner;
+
+    /**
+     * Creates a validator that runs on the common {@link ForkJoinPool} with the default limits.
+     */
+    public BatchValidator() {
+        this(ForkJoinPool.commonPool(), new SimulationRunner());
+    }
+
+    /**
+     * Creates a validator.
+     * @param executor runs the simulations; it is not shut down by the validator
+     * @param runner simulates each solution
+     */
+    public BatchValidator(Executor executor, SimulationRunner runner) {
+        this.executor = executor;
+        this.runner = runner;
+    }
+
+    /**
+     * Validates every solution. The reports are passed to <code>onReport</code> as the
+     * simulations complete, in no particular order, on the calling thread.
+     * @param solutions the solutions
+     * @param onReport receives a report for every solution
+     * @return the totals for the batch
+     * @throws InterruptedException if interrupted while waiting for a simulation
+     */
+    public Throughput validate(List<Solution> solutions, Consumer<Report> onReport) throws InterruptedException {
+        var start = System.nanoTime();
+        var completion = new ExecutorCompletionService<Report>(executor);
+        for (var i = 0; i < solutions.size(); ++i) {
+            var index = i;
+            completion.submit(() -> validate(index, solutions.get(index)));
+        }
+
+        var ticks = collectReports(completion, solutions.size(), onReport);
+        return new Throughput(solutions.size(), ticks, System.nanoTime() - start);
+    }
+
+    // Passes on the reports as they complete, returning the total number of ticks simulated
+    private static long collectReports(ExecutorCompletionService<Report> completion, int count,
+            Consumer<Report> onReport) throws InterruptedException {
+        var ticks = 0L;
+        for (var i = 0; i < count; ++i) {
+            Report report;
+            try {
+                report = completion.take().get();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Simulation failed", e.getCause());
+            }
+            if (report.result() != null) {
+                ticks += report.result().ticks();
+            }
+            onReport.accept(report);
+        }
+        return ticks;
+    }
+
+    private Report validate(int index, Solution solution) {
+        List<Function> functions;
+        try {
+            functions = parseAll(solution);
+        } catch (ParserException e) {
+            return new Report(index, solution, null, e);
+        }
+        return new Report(index, solution, runner.run(solution.level(), functions), null);
+    }
+
+    private static List<Function> parseAll(Solution solution) {
+        var functions = new ArrayList<Function>();
+        for (var i = 0; i < solution.formulas().size(); ++i) {
+            // parse() returns a copy that shares its node trees with the cached function and
+            // with other tasks. The nodes are immutable, and the values computed while evaluating
+            // them live in the per-thread BatchScratch and the SampleCache of each EvalContext,
+            // so sharing is safe; the copy gives each task its own tier-up state.
+            var fn = FunctionParser.parse(solution.formulas().get(i), solution.conditions().get(i));
+            if (fn != null) { // Empty formula
+                functions.add(fn);
+            }
+        }
+        return functions;
+    }
+}
@@ -0,0 +1,83 @@
+package rollingball.game;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import rollingball.functions.Function;
+
+/**
+ * Tracks the measured time spent evaluating each function per frame or tick, and
+ * how much work must be skipped to stay within a budget.
+ *
+ * Callers evaluate every <code>getStride(fn)</code>-th sample of a function and report
+ * the time it took with {@link #record(Function, long)}. The stride doubles while the
+ * average cost of evaluating every sample is above the budget, and halves again once
+ * it fits comfortably. A function still over budget at the maximum stride is flagged.
+ *
+ * Not thread-safe; each renderer or simulator keeps its own.
+ */
+public final class EvaluationBudget {
+    // Weight of the newest measurement in the moving average
+    private static final double SMOOTHING = 0.25;
+
+    private static final class Usage {
+        double averageNanos; // Of evaluating every sample, extrapolated from the stride used
+        int stride = 1;
+    }
+
+    private final long budgetNanos;
+    private final int maxStride;
+    private final Map<Function, Usage> usages = new WeakHashMap<>();
+
+    /**
+     * Creates a budget.
+     * @param budgetNanos the time a single function may take per frame or tick
+     * @param maxStride the largest stride to degrade to, a power of two
+     */
+    public EvaluationBudget(long budgetNanos, int maxStride) {
+        this.budgetNanos = budgetNanos;
+        this.maxStride = maxStride;
+    }
+
+    /**
+     * Returns how many samples to advance by between evaluations of a function.
+     * @param fn the function
+     * @return 1 unless the function has been over budget
+     */
+    public int getStride(Function fn) {
+        var usage = usages.get(fn);
+        return usage == null ? 1 : usage.stride;
+    }
+
+    /**
+     * Checks whether a function takes longer than the budget even at the maximum stride.
+     * @param fn the function
+     * @return true if the function should be flagged to the player
+     */
+    public boolean isOverBudget(Function fn) {
+        var usage = usages.get(fn);
+        return usage != null && usage.averageNanos / maxStride > budgetNanos;
+    }
+
+    /**
+     * Reports the time spent evaluating a function at its current stride, and adjusts
+     * the stride for the next evaluation.
+     * @param fn the function
+     * @param nanos the measured time, in nanoseconds
+     */
+    public void record(Function fn, long nanos) {
+        var usage = usages.computeIfAbsent(fn, f -> new Usage());
+        var fullCost = (double) nanos * usage.stride;
+        usage.averageNanos = usage.averageNanos == 0.0
+                ? fullCost
+                : usage.averageNanos + SMOOTHING * (fullCost - usage.averageNanos);
+
+        while (usage.stride < maxStride && usage.averageNanos / usage.stride > budgetNanos) {
+            usage.stride *= 2;
+        }
+        // Hysteresis: only go back to a finer stride when it would use at most half the budget
+        while (usage.stride > 1 && usage.averageNanos / (usage.stride / 2) <= budgetNanos / 2) {
+            usage.stride /= 2;
+        }
+    }
+}
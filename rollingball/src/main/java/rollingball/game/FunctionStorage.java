@@ -1,11 +1,18 @@
 package rollingball.game;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javafx.scene.paint.Color;
+import rollingball.functions.BuiltinFunctions.Precision;
+import rollingball.functions.Derivatives;
 import rollingball.functions.Function;
+import rollingball.functions.TabulatedFunction;
+import rollingball.functions.Variable;
 
 /**
  * A container for the functions entered by the user.
@@ -17,10 +24,19 @@ public final class FunctionStorage {
      * Represents a single function. Each function has a different color and id.
      */
     public static final class Graph {
-        private Function fn;
+        private volatile Function fn;
         private final Color color;
 
         private final int id;
+        private FunctionStorage storage;
+
+        private final Function[] derivatives = new Function[Variable.values().length];
+        private Function derivativesOf;
+
+        private volatile double tableMaxError = TabulatedFunction.DEFAULT_MAX_ERROR;
+        private TabulatedFunction table;
+        private Function tableOf;
+        private Precision tablePrecision;
 
         /**
          * Creates a new graph with the given function and color.
@@ -38,6 +54,59 @@ public final class FunctionStorage {
             return fn;
         }
 
+        /**
+         * Returns the derivative of the function with respect to x or t.
+         * It is computed on first use and cached until the function changes.
+         * @param wrt the variable to differentiate with respect to
+         * @return the derivative, or null if the graph has no function
+         */
+        public Function getDerivative(Variable wrt) {
+            var current = fn;
+            if (current == null) {
+                return null;
+            }
+            if (derivativesOf != current) {
+                Arrays.fill(derivatives, null);
+                derivativesOf = current;
+            }
+            var derivative = derivatives[wrt.ordinal()];
+            if (derivative == null) {
+                derivative = Derivatives.differentiate(current, wrt);
+                derivatives[wrt.ordinal()] = derivative;
+            }
+            return derivative;
+        }
+
+        /**
+         * Returns the function tabulated over the level, <code>-LEVEL_WIDTH..LEVEL_WIDTH</code>.
+         * It is built on first use and rebuilt when the function, the precision or the
+         * error bound changes. The error bound is only checked at sample points, so the
+         * table is meant for drawing; collisions evaluate the function itself.
+         * @param precision the precision the function is sampled at
+         * @return the table, or null if the graph has no function or the function depends on t
+         */
+        public TabulatedFunction getTable(Precision precision) {
+            var current = fn;
+            if (current == null) {
+                return null;
+            }
+            if (tableOf != current || tablePrecision != precision) {
+                tableOf = current;
+                tablePrecision = precision;
+                table = buildTable(current, getDerivative(Variable.X), precision, tableMaxError);
+            }
+            return table;
+        }
+
+        /**
+         * Sets the error bound of the table returned by {@link #getTable(Precision)}.
+         * @param maxError the bound, see {@link TabulatedFunction#DEFAULT_MAX_ERROR}
+         */
+        public void setTableMaxError(double maxError) {
+            this.tableMaxError = maxError;
+            this.tableOf = null;
+        }
+
         public Color getColor() {
             return color;
         }
@@ -45,10 +114,28 @@ public final class FunctionStorage {
         /**
          * Replaces the function in the graph without affecting the id or color.
          * Intended for permitting the editability of already-entered functions.
+         * The work done by {@link FunctionStorage#prepare(Function, Graph, Precision)} for the
+         * function is taken over.
          * @param fn the new function
          */
         public void setFunction(Function fn) {
+            install(fn);
+        }
+
+        private void install(Function fn) {
             this.fn = fn;
+            var prepared = storage != null && fn != null ? storage.prepared.remove(fn) : null;
+            if (prepared == null) {
+                return;
+            }
+            Arrays.fill(derivatives, null);
+            derivatives[Variable.X.ordinal()] = prepared.derivative();
+            derivativesOf = fn;
+            if (prepared.tableMaxError() == tableMaxError) {
+                table = prepared.table();
+                tablePrecision = prepared.tablePrecision();
+                tableOf = fn;
+            }
         }
 
         @Override
@@ -60,6 +147,13 @@ public final class FunctionStorage {
     private final List<Graph> graphs;
 
     private final List<Integer> recycledIds;
+    // What prepare() computed for the functions it returned, until they are set or discarded
+    private final Map<Function, Prepared> prepared = new ConcurrentHashMap<>();
+
+    private record Prepared(Function derivative, TabulatedFunction table, Precision tablePrecision,
+            double tableMaxError) {
+    }
+
     private int graphId = 0;
 
     /**
@@ -79,6 +173,8 @@ public final class FunctionStorage {
         var id = computeNewGraphId();
         var color = computeColorFor(id);
         var graph = new Graph(id, expr, color);
+        graph.storage = this;
+        graph.install(expr);
         graphs.add(graph);
         return graph;
     }
@@ -90,6 +186,7 @@ public final class FunctionStorage {
     public void removeGraph(Graph graph) {
         if (graphs.remove(graph)) {
             recycledIds.add(graph.id);
+            graph.storage = null;
         }
     }
 
@@ -101,6 +198,47 @@ public final class FunctionStorage {
         return Collections.unmodifiableList(graphs);
     }
 
+    /**
+     * Does the work a graph would otherwise do on first use of a function: the function
+     * is compiled at the given precision, and its derivative and table are built, so that
+     * adding or setting it is cheap. Unlike the other methods, this may be called from any
+     * thread. A function that is prepared but never used must be passed to
+     * {@link #discard(Function)}.
+     * @param fn the function, or null
+     * @param replacing the graph the function is for, or null for a new graph
+     * @param precision the precision the function will be evaluated at
+     * @return fn
+     */
+    public Function prepare(Function fn, Graph replacing, Precision precision) {
+        if (fn == null) {
+            return null;
+        }
+        var derivative = Derivatives.differentiate(fn, Variable.X);
+        fn.withPrecision(precision).compile();
+        derivative.withPrecision(precision).compile();
+        var maxError = replacing != null ? replacing.tableMaxError : TabulatedFunction.DEFAULT_MAX_ERROR;
+        var table = buildTable(fn, derivative, precision, maxError);
+        prepared.put(fn, new Prepared(derivative, table, precision, maxError));
+        return fn;
+    }
+
+    /**
+     * Forgets the work done by {@link #prepare(Function, Graph, Precision)} for a function
+     * that was not used after all.
+     * @param fn the function, or null
+     */
+    public void discard(Function fn) {
+        if (fn != null) {
+            prepared.remove(fn);
+        }
+    }
+
+    private static TabulatedFunction buildTable(Function fn, Function derivative, Precision precision,
+            double maxError) {
+        return TabulatedFunction.build(fn.withPrecision(precision), derivative.withPrecision(precision),
+                -GameSimulator.LEVEL_WIDTH, GameSimulator.LEVEL_WIDTH, maxError);
+    }
+
     private int computeNewGraphId() {
         if (!recycledIds.isEmpty()) {
             return recycledIds.remove(recycledIds.size() - 1);
@@ -2,8 +2,10 @@ package rollingball.game;
 
 import java.util.List;
 
-import rollingball.functions.EvalContext;
+import rollingball.functions.BuiltinFunctions.Precision;
 import rollingball.functions.Function;
+import rollingball.functions.Interval;
+import rollingball.functions.Variable;
 import rollingball.game.FunctionStorage.Graph;
 
 /**
@@ -24,8 +26,29 @@ public final class GameSimulator {
      */
     public static final int LEVEL_HEIGHT = 8; // -8..8
 
+    /**
+     * The length of one simulation tick, in seconds.
+     */
+    public static final double TICK_SECONDS = 1.0 / 60.0; // 60 FPS
+
     private static final double FLAG_SIZE = 1.0;
 
+    /**
+     * The ways the ball can die.
+     */
+    public enum DeathCause {
+        /** Fell through the bottom of the playing field. */
+        BELOW_LEVEL,
+        /** Flew over the top of the playing field. */
+        ABOVE_LEVEL,
+        /** Left the playing field on the left, after rolling backwards up a steep curve. */
+        LEFT_OF_LEVEL,
+        /** Left the playing field on the right without touching the flag. */
+        RIGHT_OF_LEVEL,
+        /** Touched an obstacle. */
+        OBSTACLE
+    }
+
     /**
      * A callback for communicating when the simulation stops for any reason.
      */
@@ -39,10 +62,18 @@ public final class GameSimulator {
         void onGameEnd(boolean victory, double playTimeSeconds);
     }
 
+    // The outcome of a run must not depend on the machine it is simulated on
+    private static final Precision PRECISION = Precision.STRICT;
+
+    // Graphs taking longer than this per tick are flagged; see isOverBudget()
+    private static final long GRAPH_BUDGET_NANOS = 2_000_000;
+
     private static final double BALL_SPEED = 1.5; // grid units per second
     private static final double GRAVITY = 0.67; // acceleration; grid units per second^2
 
     private final FunctionStorage graphs;
+    // The outcome must not depend on timing, so slow graphs are only flagged, never skipped
+    private final EvaluationBudget budget = new EvaluationBudget(GRAPH_BUDGET_NANOS, 1);
 
     private Level level;
 
@@ -51,6 +82,7 @@ public final class GameSimulator {
     private final GameEndCallback playEndCallback;
 
     private Ball theBall;
+    private DeathCause deathCause;
 
     /**
      * Creates a new simulator for the given level. 
@@ -71,6 +103,9 @@ public final class GameSimulator {
      */
     public void togglePlaying() {
         this.isPlaying = !this.isPlaying;
+        if (this.isPlaying) {
+            this.deathCause = null;
+        }
         this.simulationTimeSeconds = 0.0;
         this.theBall.reset(this.level);
     }
@@ -105,6 +140,14 @@ public final class GameSimulator {
         return this.level;
     }
 
+    /**
+     * Returns why the ball died, if the last run ended in death.
+     * @return the cause, or null if the last run was won or is still going
+     */
+    public DeathCause getDeathCause() {
+        return this.deathCause;
+    }
+
     /**
      * Adds a graph to the simulation.
      * @param fn the graph to add
@@ -114,6 +157,26 @@ public final class GameSimulator {
         return graphs.addGraph(fn);
     }
 
+    /**
+     * Prepares a function to be added as a graph or set on one, doing the expensive work
+     * of setting it ahead of time; see {@link FunctionStorage#prepare(Function, Graph, Precision)}.
+     * Unlike the other methods, this may be called from any thread.
+     * @param fn the function
+     * @param replacing the graph the function is for, or null for a new graph
+     * @return the function to add or set, or null if fn is null
+     */
+    public Function prepareGraph(Function fn, Graph replacing) {
+        return graphs.prepare(fn, replacing, PRECISION);
+    }
+
+    /**
+     * Forgets a function from {@link #prepareGraph(Function, Graph)} that was not used after all.
+     * @param fn the function, or null
+     */
+    public void discardGraph(Function fn) {
+        graphs.discard(fn);
+    }
+
     /**
      * Removes a graph from the simulation.
      * @param graph the graph to remove
@@ -130,19 +193,31 @@ public final class GameSimulator {
         return graphs.getGraphs();
     }
 
+    /**
+     * Checks whether evaluating a graph has been taking longer than its share of a tick.
+     * @param graph the graph
+     * @return true if the graph should be flagged to the player as too slow
+     */
+    public boolean isOverBudget(Graph graph) {
+        var fn = graph.geFunction();
+        return fn != null && budget.isOverBudget(fn);
+    }
+
     /**
      * Advances the simulation by one simulation tick.
      */
     public void update() {
         if (this.isPlaying) {
             var timeSeconds = simulationTimeSeconds;
-            var deltaTime = 1.0 / 60.0; // 60 FPS
+            var deltaTime = TICK_SECONDS;
 
             this.level.onUpdate(timeSeconds, deltaTime);
 
             updateBallPos(timeSeconds, deltaTime);
-            if (checkShouldDie()) {
+            var cause = checkDeathCause();
+            if (cause != null) {
                 togglePlaying();
+                this.deathCause = cause;
                 playEndCallback.onGameEnd(false, timeSeconds);
             } else if (checkIsTouchingFlag()) {
                 togglePlaying();
@@ -153,17 +228,21 @@ public final class GameSimulator {
         }
     }
 
-    private boolean checkShouldDie() {
-        if (theBall.y < -LEVEL_HEIGHT - 1 || theBall.y > LEVEL_HEIGHT + 1 || theBall.x > LEVEL_WIDTH + 1) {
-            return true;
+    private DeathCause checkDeathCause() {
+        if (theBall.y < -LEVEL_HEIGHT - 1) {
+            return DeathCause.BELOW_LEVEL;
+        } else if (theBall.y > LEVEL_HEIGHT + 1) {
+            return DeathCause.ABOVE_LEVEL;
+        } else if (theBall.x < -LEVEL_WIDTH - 1) {
+            return DeathCause.LEFT_OF_LEVEL;
+        } else if (theBall.x > LEVEL_WIDTH + 1) {
+            return DeathCause.RIGHT_OF_LEVEL;
         }
 
-        for (var obstacle : level.getObstacles()) {
-            if (obstacle.checkWouldKill(theBall)) {
-                return true;
-            }
+        if (level.anyObstacleWouldKill(theBall)) {
+            return DeathCause.OBSTACLE;
         }
-        return false;
+        return null;
     }
 
     private boolean checkIsTouchingFlag() {
@@ -174,22 +253,15 @@ public final class GameSimulator {
     }
 
     private void updateBallPos(double time, double deltaTime) {
-        var ctx = new EvalContext(time);
-
         var nextY = theBall.y - computeGravity(time) - Ball.RADIUS;
-        var nextX = theBall.x + computeHorizontalSpeed(deltaTime, ctx);
+        var nextX = theBall.x + computeHorizontalSpeed(deltaTime, time);
+
+        var ballRange = new Interval(theBall.x - Ball.RADIUS, theBall.x + Ball.RADIUS);
+        var timeRange = Interval.point(time);
 
         Graph curve = null;
         for (var graph : getGraphs()) {
-            var fn = graph.geFunction();
-
-            ctx.x = theBall.x;
-            var y = fn.eval(ctx);
-            if (Double.isNaN(y) || y - 0.005 > theBall.y || !fn.canEval(ctx)) {
-                continue;
-            }
-
-            var adjustedY = GoldenSectionSearch.computeBallYOnCurve(fn, ctx, theBall.x);
+            var adjustedY = timeRestingY(graph, time, ballRange, timeRange, nextY);
             if (nextY < adjustedY) {
                 nextY = adjustedY;
                 curve = graph;
@@ -201,12 +273,63 @@ public final class GameSimulator {
         theBall.collidingCurve = curve;
     }
 
-    private double computeHorizontalSpeed(double deltaTime, EvalContext ctx) {
+    // Computes the resting y on a graph, charging the time taken to its evaluation budget
+    private double timeRestingY(Graph graph, double time, Interval ballRange, Interval timeRange, double nextY) {
+        var fn = graph.geFunction();
+        if (fn == null) { // null while being edited
+            return Double.NEGATIVE_INFINITY;
+        }
+        var start = System.nanoTime();
+        var y = computeRestingY(fn, time, ballRange, timeRange, nextY);
+        budget.record(fn, System.nanoTime() - start);
+        return y;
+    }
+
+    /**
+     * Computes the lowest y the ball can be at without clipping the graph.
+     * @return the y, or negative infinity if the graph does not touch the ball
+     */
+    private double computeRestingY(Function fn, double time, Interval ballRange, Interval timeRange, double nextY) {
+        if (isOutOfReach(fn, ballRange, timeRange, nextY)) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        fn = fn.withPrecision(PRECISION);
+
+        // Evaluated exactly rather than looked up from Graph.getTable(), whose error is only
+        // checked at sample points; a spike between them would let the ball pass through
+        var y = fn.eval(theBall.x, time);
+        if (Double.isNaN(y) || y - 0.005 > theBall.y || !fn.canEval(theBall.x, time)) {
+            return Double.NEGATIVE_INFINITY;
+        }
+
+        return GoldenSectionSearch.computeBallYOnCurve(fn, time, theBall.x);
+    }
+
+    /**
+     * Broad phase for collisions: checks with interval arithmetic whether a graph can
+     * possibly touch the ball, without evaluating it at any single point. Any graph
+     * rejected here would also be rejected by the exact checks in {@link #updateBallPos}.
+     */
+    private boolean isOutOfReach(Function fn, Interval ballRange, Interval timeRange, double nextY) {
+        var spans = fn.getXSpans(timeRange.lo());
+        if (spans != null) {
+            if (!spans.intersects(ballRange.lo(), ballRange.hi())) {
+                return true;
+            }
+        } else if (fn.getCondition().evalInterval(ballRange, timeRange) == Interval.Truth.NEVER) {
+            return true;
+        }
+        var y = fn.getFormula().evalInterval(ballRange, timeRange);
+        // Entirely above the ball, or entirely below where the ball is falling to anyway
+        return y.isEmpty() || y.lo() - 0.005 > theBall.y || y.hi() <= nextY;
+    }
+
+    private double computeHorizontalSpeed(double deltaTime, double time) {
         if (theBall.collidingCurve == null) {
             return BALL_SPEED * deltaTime;
         }
 
-        var dy = computeApproxCurveDerivative(theBall.collidingCurve, theBall.x, ctx);
+        var dy = computeCurveSlope(theBall.collidingCurve, theBall.x, time);
 
         // By max(0, ...)'ing, only upwards slopes affect the speed. This is "unfair" to
         // the player,
@@ -226,10 +349,18 @@ public final class GameSimulator {
         return Math.max(0.1, Math.min(0.5, time - theBall.lastCollisionTimestamp)) * GRAVITY;
     }
 
-    private static double computeApproxCurveDerivative(Graph graph, double x, EvalContext ctx) {
+    private static double computeCurveSlope(Graph graph, double x, double time) {
+        var slope = graph.getDerivative(Variable.X).withPrecision(PRECISION).eval(x, time);
+        // The exact derivative can be infinite or NaN where the curve is vertical
+        // or has a cusp (sqrt(x) at 0); a finite difference is still usable there
+        return Double.isFinite(slope) ? slope : computeApproxCurveDerivative(graph, x, time);
+    }
+
+    private static double computeApproxCurveDerivative(Graph graph, double x, double time) {
         var dx = 0.01;
-        var y1 = graph.geFunction().evalAt(x - dx / 2.0, ctx);
-        var y2 = graph.geFunction().evalAt(x + dx / 2.0, ctx);
+        var fn = graph.geFunction().withPrecision(PRECISION);
+        var y1 = fn.eval(x - dx / 2.0, time);
+        var y2 = fn.eval(x + dx / 2.0, time);
         return (y2 - y1) / dx;
     }
 }
\ No newline at end of file
@@ -1,6 +1,7 @@
 package rollingball.game;
 
-import rollingball.functions.EvalContext;
+import java.util.function.DoubleUnaryOperator;
+
 import rollingball.functions.Function;
 
 /**
@@ -44,11 +45,24 @@ public final class GoldenSectionSearch {
      * the curve.
      * 
      * @param f     the curve function to to compute the Y for.
-     * @param ctx   the evaluation context containing variables other than x.
+     * @param t     the time variable.
+     * @param ballX the ball's x position.
+     * @return the ball's minimum Y position.
+     */
+    public static double computeBallYOnCurve(Function f, double t, double ballX) {
+        return computeBallYOnCurve(x -> f.eval(x, t), ballX);
+    }
+
+    /**
+     * Computes the Y position that the ball must be placed on in order not to clip
+     * the curve, for a curve given as a function of x alone, such as a
+     * {@link rollingball.functions.TabulatedFunction}.
+     * 
+     * @param f     the curve to compute the Y for.
      * @param ballX the ball's x position.
      * @return the ball's minimum Y position.
      */
-    public static double computeBallYOnCurve(Function f, EvalContext ctx, double ballX) {
+    public static double computeBallYOnCurve(DoubleUnaryOperator f, double ballX) {
         var h = BALL_DIAMETER;
         var a = ballX - Ball.RADIUS;
         var b = ballX + Ball.RADIUS;
@@ -56,8 +70,8 @@ public final class GoldenSectionSearch {
         var c = a + h / (PHI * PHI);
         var d = a + h / PHI;
 
-        var yc = evalAt(c, f, ctx, ballX);
-        var yd = evalAt(d, f, ctx, ballX);
+        var yc = evalAt(c, f, ballX);
+        var yd = evalAt(d, f, ballX);
 
         for (var k = 0; k < NUM_ITERATIONS; k++) {
             if (yc < yd) {
@@ -67,7 +81,7 @@ public final class GoldenSectionSearch {
                 h = h / PHI;
                 c = a + h / (PHI * PHI);
 
-                yc = evalAt(c, f, ctx, ballX);
+                yc = evalAt(c, f, ballX);
             } else {
                 a = c;
                 c = d;
@@ -75,18 +89,18 @@ public final class GoldenSectionSearch {
                 h = h / PHI;
                 d = a + h / PHI;
 
-                yd = evalAt(d, f, ctx, ballX);
+                yd = evalAt(d, f, ballX);
             }
         }
 
         // The algorithm obviously gives an interval rather than a single point. With a
         // low-enough tolerance, the midpoint of the interval should be a very good approximation.
-        ctx.x = (yc < yd) ? (a + d) / 2.0 : (c + b) / 2.0;
-        return -evalAt(ctx.x, f, ctx, ballX);
+        var x = (yc < yd) ? (a + d) / 2.0 : (c + b) / 2.0;
+        return -evalAt(x, f, ballX);
     }
 
-    private static double evalAt(double x, Function fn, EvalContext ctx, double ballX) {
-        return ballCurve(x - ballX) - fn.evalAt(x, ctx);
+    private static double evalAt(double x, DoubleUnaryOperator fn, double ballX) {
+        return ballCurve(x - ballX) - fn.applyAsDouble(x);
     }
 
     private static double ballCurve(double x) {
@@ -2,6 +2,7 @@ package rollingball.game;
 
 import java.util.Collections;
 import java.util.List;
+import java.util.stream.IntStream;
 
 /**
  * Represents the runtime state of a LevelBlueprint. Each LevelBlueprint defines, 
@@ -25,16 +26,30 @@ public class Level {
     }
 
     protected final List<Obstacle> obstacles;
+    private final int[] animatedIndices;
+    private final ObstacleGrid obstacleGrid;
 
     private final LevelBlueprint levelBlueprint;
     private XY start;
     private XY end;
 
-    Level(LevelBlueprint level, XY start, XY end, List<Obstacle> obstacles) {
+    /**
+     * Creates a level. Subclasses that move obstacles in {@link #onUpdate(double, double)}
+     * must report each move with {@link #onObstacleMoved(int)}.
+     * @param level the blueprint the level is based on
+     * @param start the (x,y) where the ball should spawn
+     * @param end the (x,y) of the flag
+     * @param obstacles the obstacles
+     */
+    public Level(LevelBlueprint level, XY start, XY end, List<Obstacle> obstacles) {
         this.levelBlueprint = level;
         this.start = start;
         this.end = end;
         this.obstacles = obstacles;
+        this.animatedIndices = IntStream.range(0, obstacles.size()).filter(i -> obstacles.get(i).isAnimated()).toArray();
+        this.obstacleGrid = new ObstacleGrid(obstacles,
+                -GameSimulator.LEVEL_WIDTH - 1, -GameSimulator.LEVEL_HEIGHT - 1,
+                GameSimulator.LEVEL_WIDTH + 1, GameSimulator.LEVEL_HEIGHT + 1);
     }
 
     /**
@@ -69,11 +84,31 @@ public class Level {
      * @param deltaTime time, in seconds, since the last simulation update
      */
     public void onUpdate(double timeSeconds, double deltaTime) {
-        for (var obstacle : obstacles) {
-            obstacle.update(timeSeconds);
+        for (var index : animatedIndices) {
+            obstacles.get(index).update(timeSeconds);
+            onObstacleMoved(index);
         }
     }
 
+    /**
+     * Tells the level that an obstacle has moved, so that collision checks find it
+     * in its new position.
+     * @param index the index of the obstacle in {@link #getObstacles()}
+     */
+    protected void onObstacleMoved(int index) {
+        obstacleGrid.update(index);
+    }
+
+    /**
+     * Checks whether any obstacle would kill the ball, looking only at the obstacles
+     * near it.
+     * @param ball the ball
+     * @return true if the ball should die
+     */
+    boolean anyObstacleWouldKill(Ball ball) {
+        return obstacleGrid.anyWouldKill(ball);
+    }
+
     /**
      * Returns the obstacles in the level.
      * @return an unmodifiable view of the obstacles
@@ -5,10 +5,10 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
 
 import rollingball.game.Level.XY;
 import rollingball.game.Obstacles.Spike;
+import rollingball.game.Obstacles.SpikeField;
 
 /**
  * Contains the list of levels defined for the game.
@@ -92,38 +92,23 @@ public enum LevelBlueprint {
         }
     },
     LEVEL_4(3, "Level 4") {
-        static final class Level4 extends Level {
-            private final List<XY> basePositions;
-
-            Level4(LevelBlueprint level, XY start, XY end, List<Obstacle> spikes) {
-                super(level, start, end, spikes);
-                this.basePositions = spikes.stream().map(s -> (Spike) s).map(s -> XY.of(s.getX(), s.getY()))
-                        .collect(Collectors.toList());
-            }
-
-            @Override
-            public void onUpdate(double timeSeconds, double deltaTime) {
-                var yOff = Math.sin(timeSeconds * 0.5) * 1.5;
-                for (var i = 0; i < obstacles.size(); i++) {
-                    var spike = (Spike) obstacles.get(i);
-                    var basePos = basePositions.get(i);
-
-                    spike.setPosition(basePos.x(), basePos.y() + yOff);
-                }
-            }
-        }
-
         @Override
         public Level createInstance() {
-            var obstacles = new ArrayList<Obstacle>();
+            var xs = new double[32];
+            var ys = new double[32];
             for (int i = 0; i < 8; i++) {
-                obstacles.add(new Spike(-i, 2));
-                obstacles.add(new Spike(-i, -2));
-                obstacles.add(new Spike(i + 1, 2 + 3 * Math.cos((i - 3) / 7.0 * Math.PI)));
-                obstacles.add(new Spike(i + 1, -2 + 3 * Math.cos((i - 3) / 7.0 * Math.PI)));
+                xs[4 * i] = -i;
+                ys[4 * i] = 2;
+                xs[4 * i + 1] = -i;
+                ys[4 * i + 1] = -2;
+                xs[4 * i + 2] = i + 1;
+                ys[4 * i + 2] = 2 + 3 * Math.cos((i - 3) / 7.0 * Math.PI);
+                xs[4 * i + 3] = i + 1;
+                ys[4 * i + 3] = -2 + 3 * Math.cos((i - 3) / 7.0 * Math.PI);
             }
+            var spikes = new SpikeField(xs, ys, timeSeconds -> Math.sin(timeSeconds * 0.5) * 1.5);
 
-            return new Level4(this, XY.of(-6, 0), XY.of(6, 0), obstacles);
+            return new Level(this, XY.of(-6, 0), XY.of(6, 0), List.of(spikes));
         }
 
         @Override
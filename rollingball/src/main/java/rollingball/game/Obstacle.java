@@ -1,12 +1,13 @@
 package rollingball.game;
 
 import rollingball.game.Obstacles.Spike;
+import rollingball.game.Obstacles.SpikeField;
 import rollingball.game.Obstacles.SpikeWheel;
 
 /**
  * An interface implemented by all obstacles.
  */
-public sealed interface Obstacle permits Spike, SpikeWheel {
+public sealed interface Obstacle permits Spike, SpikeWheel, SpikeField {
 
     /**
      * Checks if the ball is at a position where it would
@@ -14,7 +15,47 @@ public sealed interface Obstacle permits Spike, SpikeWheel {
      * @param ball the ball
      * @return true if the ball should die, false otherwise
      */
-    boolean checkWouldKill(Ball ball);
+    default boolean checkWouldKill(Ball ball) {
+        return checkWouldKill(ball.getX(), ball.getY());
+    }
+
+    /**
+     * Checks if a ball centered at the given position would be killed by the
+     * obstacle in its current state.
+     * @param ballX the x coordinate of the center of the ball
+     * @param ballY the y coordinate of the center of the ball
+     * @return true if the ball should die, false otherwise
+     */
+    boolean checkWouldKill(double ballX, double ballY);
+
+    /**
+     * Returns the x coordinate of the center of the obstacle's bounding circle.
+     * @return the x coordinate
+     */
+    double getX();
+
+    /**
+     * Returns the y coordinate of the center of the obstacle's bounding circle.
+     * @return the y coordinate
+     */
+    double getY();
+
+    /**
+     * Returns the radius of a circle around ({@link #getX()}, {@link #getY()}) that
+     * contains every part of the obstacle that can kill the ball. The ball can only
+     * die if it overlaps this circle.
+     * @return the radius
+     */
+    double getBoundingRadius();
+
+    /**
+     * Tells whether {@link #update(double)} changes the obstacle. The level only
+     * updates the obstacles that are animated.
+     * @return true if the obstacle is animated
+     */
+    default boolean isAnimated() {
+        return false;
+    }
 
     /**
      * Updates the obstacle's state. This method is called once per frame.
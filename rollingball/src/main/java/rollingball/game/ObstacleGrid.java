@@ -0,0 +1,185 @@
+package rollingball.game;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * A uniform grid over the bounding circles of the obstacles in a level, so that
+ * checking whether the ball touches an obstacle only looks at the obstacles near
+ * the ball rather than at every obstacle in the level.
+ *
+ * Every obstacle is listed in each cell its bounding box overlaps. Cells outside the
+ * grid are clamped to its border, so obstacles and balls that leave the area the grid
+ * was built for are still found, only less efficiently. When an obstacle moves, only
+ * the cells it enters and leaves are updated.
+ */
+final class ObstacleGrid {
+    private static final double CELL_SIZE = 1.0;
+    // Keeps the grid small for levels that are spread over huge areas
+    private static final int MAX_CELLS_PER_AXIS = 1024;
+
+    private final List<Obstacle> obstacles;
+
+    private final double minX;
+    private final double minY;
+    private final double cellSize;
+    private final int columns;
+    private final int rows;
+
+    private final int[][] cells; // Indices of the obstacles in each cell
+    private final int[] cellSizes;
+    // The cells each obstacle is in: first column, first row, last column, last row
+    private final int[] cellRanges;
+    private final int[] newRange = new int[4];
+
+    // Each query stamps the obstacles it has checked, as one can be in many cells
+    private final int[] checkedAt;
+    private int query;
+
+    /**
+     * Builds a grid over the given area and the current positions of the obstacles.
+     * @param obstacles the obstacles; indices into this list identify them
+     * @param minX the left edge of the area the ball can be in
+     * @param minY the bottom edge of the area
+     * @param maxX the right edge of the area
+     * @param maxY the top edge of the area
+     */
+    ObstacleGrid(List<Obstacle> obstacles, double minX, double minY, double maxX, double maxY) {
+        for (var obstacle : obstacles) {
+            var r = obstacle.getBoundingRadius();
+            minX = Math.min(minX, obstacle.getX() - r);
+            minY = Math.min(minY, obstacle.getY() - r);
+            maxX = Math.max(maxX, obstacle.getX() + r);
+            maxY = Math.max(maxY, obstacle.getY() + r);
+        }
+        this.obstacles = obstacles;
+        this.minX = minX;
+        this.minY = minY;
+        this.cellSize = Math.max(CELL_SIZE, Math.max(maxX - minX, maxY - minY) / MAX_CELLS_PER_AXIS);
+        this.columns = (int) Math.ceil((maxX - minX) / cellSize) + 1;
+        this.rows = (int) Math.ceil((maxY - minY) / cellSize) + 1;
+        this.cells = new int[columns * rows][];
+        this.cellSizes = new int[columns * rows];
+        this.cellRanges = new int[4 * obstacles.size()];
+        this.checkedAt = new int[obstacles.size()];
+
+        for (var i = 0; i < obstacles.size(); ++i) {
+            var index = i;
+            computeCellRange(obstacles.get(index), cellRanges, 4 * index);
+            forEachCell(cellRanges, 4 * index, cell -> add(cell, index));
+        }
+    }
+
+    /**
+     * Moves an obstacle to the cells its bounding circle overlaps now. Cheap when it
+     * stays within the same cells.
+     * @param index the index of the obstacle
+     */
+    void update(int index) {
+        computeCellRange(obstacles.get(index), newRange, 0);
+        var offset = 4 * index;
+        if (Arrays.equals(newRange, 0, 4, cellRanges, offset, offset + 4)) {
+            return;
+        }
+        forEachCell(cellRanges, offset, cell -> remove(cell, index));
+        System.arraycopy(newRange, 0, cellRanges, offset, 4);
+        forEachCell(cellRanges, offset, cell -> add(cell, index));
+    }
+
+    /**
+     * Checks whether any obstacle would kill the ball. Only the obstacles whose
+     * bounding circles may overlap the ball are checked.
+     * @param ball the ball
+     * @return true if the ball should die
+     */
+    boolean anyWouldKill(Ball ball) {
+        var x = ball.getX();
+        var y = ball.getY();
+        var firstColumn = column(x - Ball.RADIUS);
+        var lastColumn = column(x + Ball.RADIUS);
+        var firstRow = row(y - Ball.RADIUS);
+        var lastRow = row(y + Ball.RADIUS);
+
+        if (++query == 0) { // Wrapped around; forget every old stamp
+            Arrays.fill(checkedAt, 0);
+            query = 1;
+        }
+        for (var row = firstRow; row <= lastRow; ++row) {
+            for (var column = firstColumn; column <= lastColumn; ++column) {
+                if (anyInCellWouldKill(row * columns + column, ball)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // Checks the obstacles in a cell that no earlier cell of the same query has checked
+    private boolean anyInCellWouldKill(int cell, Ball ball) {
+        var indices = cells[cell];
+        for (var i = 0; i < cellSizes[cell]; ++i) {
+            var index = indices[i];
+            if (checkedAt[index] == query) {
+                continue;
+            }
+            checkedAt[index] = query;
+            var obstacle = obstacles.get(index);
+            var dx = obstacle.getX() - ball.getX();
+            var dy = obstacle.getY() - ball.getY();
+            var reach = obstacle.getBoundingRadius() + Ball.RADIUS;
+            if (dx * dx + dy * dy < reach * reach && obstacle.checkWouldKill(ball)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int column(double x) {
+        return Math.max(0, Math.min(columns - 1, (int) Math.floor((x - minX) / cellSize)));
+    }
+
+    private int row(double y) {
+        return Math.max(0, Math.min(rows - 1, (int) Math.floor((y - minY) / cellSize)));
+    }
+
+    private void computeCellRange(Obstacle obstacle, int[] out, int offset) {
+        var r = obstacle.getBoundingRadius();
+        out[offset] = column(obstacle.getX() - r);
+        out[offset + 1] = row(obstacle.getY() - r);
+        out[offset + 2] = column(obstacle.getX() + r);
+        out[offset + 3] = row(obstacle.getY() + r);
+    }
+
+    private void forEachCell(int[] ranges, int offset, IntConsumer action) {
+        for (var row = ranges[offset + 1]; row <= ranges[offset + 3]; ++row) {
+            for (var column = ranges[offset]; column <= ranges[offset + 2]; ++column) {
+                action.accept(row * columns + column);
+            }
+        }
+    }
+
+    private void add(int cell, int index) {
+        var indices = cells[cell];
+        if (indices == null) {
+            indices = new int[4];
+            cells[cell] = indices;
+        } else if (cellSizes[cell] == indices.length) {
+            indices = Arrays.copyOf(indices, indices.length * 2);
+            cells[cell] = indices;
+        }
+        indices[cellSizes[cell]++] = index;
+    }
+
+    private void remove(int cell, int index) {
+        var indices = cells[cell];
+        var size = cellSizes[cell];
+        for (var i = 0; i < size; ++i) {
+            if (indices[i] == index) {
+                indices[i] = indices[size - 1]; // Order within a cell does not matter
+                cellSizes[cell] = size - 1;
+                return;
+            }
+        }
+    }
+}
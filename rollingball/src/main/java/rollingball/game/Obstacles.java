@@ -2,7 +2,10 @@ package rollingball.game;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.function.DoubleUnaryOperator;
+import java.util.stream.IntStream;
 
 /**
  * List of obstacles currently in the game.
@@ -42,18 +45,25 @@ public final class Obstacles {
             this.y = y;
         }
 
+        @Override
         public double getX() {
             return x;
         }
 
+        @Override
         public double getY() {
             return y;
         }
 
         @Override
-        public boolean checkWouldKill(Ball ball) {
-            var dx = ball.getX() - x;
-            var dy = ball.getY() - y;
+        public double getBoundingRadius() {
+            return RADIUS;
+        }
+
+        @Override
+        public boolean checkWouldKill(double ballX, double ballY) {
+            var dx = ballX - x;
+            var dy = ballY - y;
             var spikeRadius = 0.35;
             var ballRadius = Ball.RADIUS;
             var collisionRadius = spikeRadius + ballRadius;
@@ -62,7 +72,12 @@ public final class Obstacles {
     }
 
     /**
-     * A rotating wheel of spikes for maximum danger.
+     * A rotating wheel of spikes for maximum danger: a spike at the center, and
+     * <code>radius - 1</code> evenly spaced spikes on each of its spokes.
+     *
+     * Collisions are checked in the rotating frame of the wheel, where the spikes
+     * stand still, so the cost does not depend on the number of spikes. The positions
+     * of the individual spikes are only computed when {@link #getSpikes()} is called.
      */
     public static final class SpikeWheel implements Obstacle {
         private final List<Spike> spikes;
@@ -72,6 +87,13 @@ public final class Obstacles {
         private final int radius;
         private final double speed;
 
+        // Directions of the spokes at angle 0
+        private final double[] spokeCos;
+        private final double[] spokeSin;
+
+        private double angle;
+        private boolean spikesStale;
+
         /**
          * Constructs a new spike wheel.
          * 
@@ -88,46 +110,294 @@ public final class Obstacles {
             this.numEdges = numEdges;
             this.radius = radius;
             this.speed = speed;
+            this.spokeCos = new double[numEdges];
+            this.spokeSin = new double[numEdges];
 
+            var angleStep = 2.0 * Math.PI / numEdges;
+            for (var i = 0; i < numEdges; ++i) {
+                spokeCos[i] = Math.cos(i * angleStep);
+                spokeSin[i] = Math.sin(i * angleStep);
+            }
             for (int i = 0; i < numEdges * (radius - 1) + 1; ++i) {
-                spikes.add(new Spike(0, 0));
+                spikes.add(new Spike(x, y));
             }
             update(0.0); // init spike positions
         }
 
         /**
-         * Returns the spikes in the wheel.
+         * Returns the spikes in the wheel, at their current positions.
          * 
          * @return an unmodifiable view of the spikes
          */
         public List<Spike> getSpikes() {
+            if (spikesStale) {
+                var cos = Math.cos(angle);
+                var sin = Math.sin(angle);
+                var index = 1; // skip center spike
+                for (int i = 0; i < numEdges; i++) {
+                    // The spoke direction rotated by the current angle
+                    var dx = spokeCos[i] * cos - spokeSin[i] * sin;
+                    var dy = spokeSin[i] * cos + spokeCos[i] * sin;
+                    for (int r = 1; r < radius; ++r) {
+                        spikes.get(index++).setPosition(centerX + r * dx, centerY + r * dy);
+                    }
+                }
+                spikesStale = false;
+            }
             return Collections.unmodifiableList(spikes);
         }
 
+        @Override
+        public double getX() {
+            return centerX;
+        }
+
+        @Override
+        public double getY() {
+            return centerY;
+        }
+
+        @Override
+        public double getBoundingRadius() {
+            return radius - 1 + Spike.RADIUS; // The outermost spikes are radius - 1 from the center
+        }
+
+        @Override
+        public boolean isAnimated() {
+            return true;
+        }
+
         @Override
         public void update(double timeSeconds) {
-            var angle = timeSeconds * speed;
-            var angleStep = 2.0 * Math.PI / numEdges;
-            var index = 1; // skip center spike
-            for (int i = 0; i < numEdges; i++) {
-                var cos = Math.cos(angle);
-                var sin = Math.sin(angle);
-                for (int r = 1; r < radius; ++r) {
-                    spikes.get(index++).setPosition(centerX + r * cos, centerY + r * sin);
-                }
+            this.angle = timeSeconds * speed;
+            this.spikesStale = true;
+        }
 
-                angle += angleStep;
+        @Override
+        public boolean checkWouldKill(double ballX, double ballY) {
+            var dx = ballX - centerX;
+            var dy = ballY - centerY;
+            var reach = Spike.RADIUS + Ball.RADIUS;
+            var reachSq = reach * reach;
+            var distanceSq = dx * dx + dy * dy;
+            var outer = getBoundingRadius() + Ball.RADIUS;
+            if (distanceSq >= outer * outer) {
+                return false;
+            }
+            if (distanceSq < reachSq) { // The center spike
+                return true;
+            } else if (radius < 2) { // No spokes
+                return false;
             }
+
+            // The ball in the frame of the wheel, where the spokes do not rotate
+            var cos = Math.cos(angle);
+            var sin = Math.sin(angle);
+            return anySpokeWouldKill(dx * cos + dy * sin, dy * cos - dx * sin);
         }
 
-        @Override
-        public boolean checkWouldKill(Ball ball) {
-            for (var spike : spikes) {
-                if (spike.checkWouldKill(ball)) {
+        private boolean anySpokeWouldKill(double u, double v) {
+            var reach = Spike.RADIUS + Ball.RADIUS;
+            for (var i = 0; i < numEdges; ++i) {
+                var along = u * spokeCos[i] + v * spokeSin[i];
+                var across = v * spokeCos[i] - u * spokeSin[i];
+                if (Math.abs(across) >= reach) {
+                    continue;
+                }
+                // The nearest spike on the spoke
+                var r = Math.max(1, Math.min(radius - 1, Math.rint(along)));
+                var gap = along - r;
+                if (gap * gap + across * across < reach * reach) {
                     return true;
                 }
             }
             return false;
         }
     }
+
+    /**
+     * A field of spikes stored as arrays of coordinates rather than as {@link Spike}
+     * objects, for levels with thousands of spikes. The whole field can move up and
+     * down as one.
+     *
+     * The field is a single obstacle with one bounding circle around every spike, so the
+     * {@link ObstacleGrid} cannot narrow down which spikes are near the ball. The field
+     * does that itself instead: the spikes are sorted into columns by x, and collision
+     * checking only looks at the columns the ball overlaps.
+     */
+    public static final class SpikeField implements Obstacle {
+        private static final double COLUMN_WIDTH = 1.0;
+
+        private final double[] baseYs;
+        private final double[] xs; // Sorted
+        private final double[] ys;
+        private final DoubleUnaryOperator yOffset;
+
+        private final double minX;
+        private final double columnWidth;
+        // The index of the first spike in each column, and the number of spikes at the end
+        private final int[] columnStarts;
+
+        // The bounding circle at offset 0
+        private final double centerX;
+        private final double baseCenterY;
+        private final double boundingRadius;
+
+        private double offset;
+
+        /**
+         * Constructs a field of spikes that do not move.
+         * 
+         * @param xs the x coordinates of the spikes
+         * @param ys the y coordinates of the spikes
+         */
+        public SpikeField(double[] xs, double[] ys) {
+            this(xs, ys, null);
+        }
+
+        /**
+         * Constructs a field of spikes that all move up and down by the same amount.
+         * 
+         * @param xs      the x coordinates of the spikes
+         * @param ys      the y coordinates of the spikes at offset 0
+         * @param yOffset the offset of every spike at a given time, in seconds, or null
+         *                if the spikes do not move
+         */
+        public SpikeField(double[] xs, double[] ys, DoubleUnaryOperator yOffset) {
+            if (xs.length != ys.length) {
+                throw new IllegalArgumentException("Every spike needs both coordinates");
+            }
+            var order = IntStream.range(0, xs.length).boxed()
+                    .sorted(Comparator.comparingDouble(i -> xs[i]))
+                    .mapToInt(Integer::intValue)
+                    .toArray();
+            this.xs = new double[xs.length];
+            this.ys = new double[xs.length];
+            for (var i = 0; i < order.length; ++i) {
+                this.xs[i] = xs[order[i]];
+                this.ys[i] = ys[order[i]];
+            }
+            this.baseYs = this.ys.clone();
+            this.yOffset = yOffset;
+
+            var minX = Double.POSITIVE_INFINITY;
+            var minY = Double.POSITIVE_INFINITY;
+            var maxX = Double.NEGATIVE_INFINITY;
+            var maxY = Double.NEGATIVE_INFINITY;
+            for (var i = 0; i < xs.length; ++i) {
+                minX = Math.min(minX, xs[i]);
+                minY = Math.min(minY, ys[i]);
+                maxX = Math.max(maxX, xs[i]);
+                maxY = Math.max(maxY, ys[i]);
+            }
+            if (xs.length == 0) {
+                minX = maxX = minY = maxY = 0.0;
+            }
+            this.centerX = (minX + maxX) / 2.0;
+            this.baseCenterY = (minY + maxY) / 2.0;
+            this.boundingRadius = Math.hypot(maxX - minX, maxY - minY) / 2.0 + Spike.RADIUS;
+
+            // No more columns than spikes, for fields spread over huge areas
+            this.minX = minX;
+            this.columnWidth = Math.max(COLUMN_WIDTH, (maxX - minX) / Math.max(1, xs.length));
+            this.columnStarts = new int[(int) ((maxX - minX) / columnWidth) + 2];
+            var spike = 0;
+            for (var column = 0; column < columnStarts.length; ++column) {
+                columnStarts[column] = spike;
+                while (spike < this.xs.length && column(this.xs[spike]) == column) {
+                    ++spike;
+                }
+            }
+        }
+
+        private int column(double x) {
+            return Math.max(0, Math.min(columnStarts.length - 2, (int) Math.floor((x - minX) / columnWidth)));
+        }
+
+        /**
+         * Returns the number of spikes in the field.
+         * 
+         * @return the number of spikes
+         */
+        public int size() {
+            return xs.length;
+        }
+
+        /**
+         * Returns the current x coordinates of the spikes, in ascending order. The array
+         * is the field's own and must not be modified.
+         * 
+         * @return the x coordinates
+         */
+        public double[] getXs() {
+            return xs;
+        }
+
+        /**
+         * Returns the current y coordinates of the spikes, in the order of {@link #getXs()}.
+         * The array is the field's own and must not be modified.
+         * 
+         * @return the y coordinates
+         */
+        public double[] getYs() {
+            return ys;
+        }
+
+        @Override
+        public double getX() {
+            return centerX;
+        }
+
+        @Override
+        public double getY() {
+            return baseCenterY + offset;
+        }
+
+        @Override
+        public double getBoundingRadius() {
+            return boundingRadius;
+        }
+
+        @Override
+        public boolean isAnimated() {
+            return yOffset != null;
+        }
+
+        @Override
+        public void update(double timeSeconds) {
+            if (yOffset == null) {
+                return;
+            }
+            var dy = yOffset.applyAsDouble(timeSeconds);
+            this.offset = dy;
+            for (var i = 0; i < ys.length; ++i) {
+                ys[i] = baseYs[i] + dy;
+            }
+        }
+
+        @Override
+        public boolean checkWouldKill(double ballX, double ballY) {
+            return anyCollides(ballX, ballY);
+        }
+
+        /**
+         * Checks whether a ball centered at the given position touches any spike.
+         * 
+         * @param ballX the x coordinate of the center of the ball
+         * @param ballY the y coordinate of the center of the ball
+         * @return true if the ball touches a spike
+         */
+        public boolean anyCollides(double ballX, double ballY) {
+            var reach = Spike.RADIUS + Ball.RADIUS;
+            var first = columnStarts[column(ballX - reach)];
+            var end = columnStarts[column(ballX + reach) + 1];
+            var nearestSq = Double.POSITIVE_INFINITY;
+            for (var i = first; i < end; ++i) {
+                var dx = ballX - xs[i];
+                var dy = ballY - ys[i];
+                nearestSq = Math.min(nearestSq, dx * dx + dy * dy);
+            }
+            return nearestSq < reach * reach;
+        }
+    }
 }
@@ -0,0 +1,162 @@
+package rollingball.game;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import rollingball.functions.Function;
+import rollingball.game.GameSimulator.DeathCause;
+import rollingball.game.Level.XY;
+
+/**
+ * Runs a level to completion without a renderer, as fast as the CPU allows, to find
+ * out whether a set of functions solves it. Every run stops: a curve the ball can
+ * never leave, such as a kink it rocks back and forth in, is cut off by the tick and
+ * wall-clock limits.
+ *
+ * The runner keeps no state between runs, so one runner can be shared by any number
+ * of threads, as long as each run gets its own functions or the functions are safe
+ * to evaluate concurrently.
+ */
+public final class SimulationRunner {
+    /**
+     * Two minutes of game time.
+     */
+    public static final long DEFAULT_MAX_TICKS = 120 * 60;
+    /**
+     * Ten seconds of real time.
+     */
+    public static final long DEFAULT_MAX_NANOS = 10_000_000_000L;
+
+    // Checking the clock is cheap, but not free
+    private static final int CLOCK_CHECK_INTERVAL = 64;
+
+    /**
+     * How a run ended.
+     */
+    public enum Outcome {
+        /** The ball reached the flag. */
+        VICTORY,
+        /** The ball died; see {@link Result#deathCause()}. */
+        DEATH,
+        /** The game time ran out first. */
+        TICK_LIMIT,
+        /** The real time ran out first. */
+        TIME_LIMIT
+    }
+
+    /**
+     * The result of a run.
+     * @param outcome how the run ended
+     * @param deathCause why the ball died, or null unless the outcome is {@link Outcome#DEATH}
+     * @param timeSeconds the game time when the run ended, in seconds
+     * @param ticks the number of ticks simulated
+     * @param score the score from {@link LevelBlueprint#computeScorePercentage(int, double)},
+     *              or 0.0 unless the outcome is {@link Outcome#VICTORY}
+     * @param trajectory the position of the ball at the start of every tick, or an empty
+     *                   list if the trajectory was not recorded
+     */
+    public static record Result(Outcome outcome, DeathCause deathCause, double timeSeconds, long ticks,
+            double score, List<XY> trajectory) {
+        /**
+         * @return true if the ball reached the flag
+         */
+        public boolean isVictory() {
+            return outcome == Outcome.VICTORY;
+        }
+    }
+
+    private final long maxTicks;
+    private final long maxNanos;
+    private final boolean recordTrajectory;
+
+    /**
+     * Creates a runner with the default limits, that does not record trajectories.
+     */
+    public SimulationRunner() {
+        this(DEFAULT_MAX_TICKS, DEFAULT_MAX_NANOS, false);
+    }
+
+    /**
+     * Creates a runner.
+     * @param maxTicks the most ticks to simulate per run
+     * @param maxNanos the most real time to spend per run, in nanoseconds
+     * @param recordTrajectory whether to record the path of the ball
+     */
+    public SimulationRunner(long maxTicks, long maxNanos, boolean recordTrajectory) {
+        if (maxTicks < 0 || maxNanos < 0) {
+            throw new IllegalArgumentException("Limits must not be negative");
+        }
+        this.maxTicks = maxTicks;
+        this.maxNanos = maxNanos;
+        this.recordTrajectory = recordTrajectory;
+    }
+
+    /**
+     * Plays a level with the given functions until the ball reaches the flag or dies,
+     * or a limit is hit.
+     * @param blueprint the level
+     * @param functions the functions entered by the player
+     * @return the result
+     */
+    public Result run(LevelBlueprint blueprint, List<Function> functions) {
+        var ending = new Ending();
+        var simulator = new GameSimulator(blueprint.createInstance(), ending);
+        for (var fn : functions) {
+            simulator.addGraph(fn);
+        }
+
+        var trajectory = recordTrajectory ? new ArrayList<XY>() : null;
+        var ticks = simulate(simulator, ending, trajectory);
+        if (!ending.ended) {
+            var outcome = ticks >= maxTicks ? Outcome.TICK_LIMIT : Outcome.TIME_LIMIT;
+            return new Result(outcome, null, simulator.getPlayingTimeSeconds(), ticks, 0.0, listOf(trajectory));
+        }
+        if (ending.victory) {
+            var score = blueprint.computeScorePercentage(functions.size(), ending.timeSeconds);
+            return new Result(Outcome.VICTORY, null, ending.timeSeconds, ticks, score, listOf(trajectory));
+        }
+        return new Result(Outcome.DEATH, simulator.getDeathCause(), ending.timeSeconds, ticks, 0.0,
+                listOf(trajectory));
+    }
+
+    /**
+     * Simulates ticks until the game ends or a limit is hit.
+     * @return the number of ticks simulated
+     */
+    private long simulate(GameSimulator simulator, Ending ending, List<XY> trajectory) {
+        var ball = simulator.getBall();
+        var start = System.nanoTime();
+        var ticks = 0L;
+        simulator.togglePlaying();
+        while (!ending.ended && ticks < maxTicks) {
+            if (ticks % CLOCK_CHECK_INTERVAL == 0 && System.nanoTime() - start >= maxNanos) {
+                break;
+            }
+            if (trajectory != null) {
+                trajectory.add(XY.of(ball.getX(), ball.getY()));
+            }
+            simulator.update();
+            ++ticks;
+        }
+        return ticks;
+    }
+
+    // Records how the game ended
+    private static final class Ending implements GameSimulator.GameEndCallback {
+        boolean ended;
+        boolean victory;
+        double timeSeconds;
+
+        @Override
+        public void onGameEnd(boolean won, double playTimeSeconds) {
+            this.ended = true;
+            this.victory = won;
+            this.timeSeconds = playTimeSeconds;
+        }
+    }
+
+    private static List<XY> listOf(List<XY> trajectory) {
+        return trajectory == null ? List.of() : Collections.unmodifiableList(trajectory);
+    }
+}
@@ -0,0 +1,201 @@
+package rollingball.ui;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import javafx.application.Platform;
+import rollingball.functions.Function;
+import rollingball.functions.FunctionParser;
+import rollingball.functions.ParserException;
+
+/**
+ * Parses the contents of an input row off the UI thread while the user types.
+ * Requests are debounced, and each request supersedes the previous ones: a pending
+ * parse is cancelled, and the result of a parse that is already running is dropped,
+ * so a stale result never replaces a newer one. Results are delivered through the
+ * publisher, which for the UI is the JavaFX application thread. A request may also
+ * prepare the parsed function on the parse thread, so that using it on the publishing
+ * thread is cheap; see {@link Preparation}.
+ *
+ * Methods other than the constructor must be called from the publishing thread.
+ */
+public final class BackgroundParser {
+    /**
+     * The delay after the last keystroke before the input is parsed.
+     */
+    public static final long DEBOUNCE_MILLIS = 150;
+
+    /**
+     * The outcome of parsing an input row.
+     * @param expression the expression that was parsed
+     * @param condition the condition that was parsed
+     * @param function the parsed function, or null if the expression was empty or invalid
+     * @param error the syntax error, or null if parsing succeeded
+     */
+    public record Result(String expression, String condition, Function function, ParserException error) {
+    }
+
+    /**
+     * Work done on a parsed function before it is delivered.
+     */
+    public interface Preparation {
+        /**
+         * Leaves the function as parsed.
+         */
+        Preparation NONE = new Preparation() {
+            @Override
+            public Function prepare(Function fn) {
+                return fn;
+            }
+
+            @Override
+            public void discard(Function prepared) {
+            }
+        };
+
+        /**
+         * Prepares a parsed function. Called on the parse thread.
+         * @param fn the function, not null
+         * @return the function to deliver
+         */
+        Function prepare(Function fn);
+
+        /**
+         * Releases a prepared function whose result was superseded and not delivered.
+         * Called on the publishing thread.
+         * @param prepared the function returned by {@link #prepare(Function)}
+         */
+        void discard(Function prepared);
+    }
+
+    private static ScheduledExecutorService uiExecutor;
+
+    private final ScheduledExecutorService executor;
+    private final Executor publisher;
+    private final long debounceMillis;
+
+    private long generation;
+    private ScheduledFuture<?> pending;
+
+    /**
+     * Creates a parser that runs on the given executor.
+     * @param executor runs the parses; a single thread keeps results in request order
+     * @param publisher delivers the results
+     * @param debounceMillis the delay before a debounced request is parsed
+     */
+    public BackgroundParser(ScheduledExecutorService executor, Executor publisher, long debounceMillis) {
+        this.executor = executor;
+        this.publisher = publisher;
+        this.debounceMillis = debounceMillis;
+    }
+
+    /**
+     * Creates a parser that parses on a shared daemon thread and publishes results
+     * on the JavaFX application thread.
+     * @return the parser
+     */
+    public static BackgroundParser createForUi() {
+        return new BackgroundParser(getUiExecutor(), Platform::runLater, DEBOUNCE_MILLIS);
+    }
+
+    private static synchronized ScheduledExecutorService getUiExecutor() {
+        if (uiExecutor == null) {
+            uiExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                var thread = new Thread(runnable, "Expression parser");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return uiExecutor;
+    }
+
+    /**
+     * Parses the input after {@link #DEBOUNCE_MILLIS} unless another request comes first.
+     * @param expression the expression
+     * @param condition the condition
+     * @param onResult receives the result, unless it has been superseded
+     */
+    public void request(String expression, String condition, Consumer<Result> onResult) {
+        request(expression, condition, Preparation.NONE, onResult);
+    }
+
+    /**
+     * Parses and prepares the input after {@link #DEBOUNCE_MILLIS} unless another request comes first.
+     * @param expression the expression
+     * @param condition the condition
+     * @param preparation prepares the parsed function
+     * @param onResult receives the result with the prepared function, unless it has been superseded
+     */
+    public void request(String expression, String condition, Preparation preparation, Consumer<Result> onResult) {
+        submit(expression, condition, preparation, onResult, debounceMillis);
+    }
+
+    /**
+     * Parses the input as soon as possible, superseding any pending request.
+     * @param expression the expression
+     * @param condition the condition
+     * @param onResult receives the result, unless it has been superseded
+     */
+    public void requestNow(String expression, String condition, Consumer<Result> onResult) {
+        requestNow(expression, condition, Preparation.NONE, onResult);
+    }
+
+    /**
+     * Parses and prepares the input as soon as possible, superseding any pending request.
+     * @param expression the expression
+     * @param condition the condition
+     * @param preparation prepares the parsed function
+     * @param onResult receives the result with the prepared function, unless it has been superseded
+     */
+    public void requestNow(String expression, String condition, Preparation preparation,
+            Consumer<Result> onResult) {
+        submit(expression, condition, preparation, onResult, 0);
+    }
+
+    /**
+     * Drops any pending or running request without delivering its result.
+     */
+    public void cancel() {
+        generation++;
+        if (pending != null) {
+            pending.cancel(false);
+            pending = null;
+        }
+    }
+
+    private void submit(String expression, String condition, Preparation preparation, Consumer<Result> onResult,
+            long delayMillis) {
+        cancel();
+        var requested = generation;
+        pending = executor.schedule(() -> {
+            var result = prepare(parse(expression, condition), preparation);
+            publisher.execute(() -> {
+                if (generation == requested) {
+                    pending = null;
+                    onResult.accept(result);
+                } else if (result.function() != null) {
+                    preparation.discard(result.function());
+                }
+            });
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private static Result prepare(Result parsed, Preparation preparation) {
+        if (parsed.function() == null) {
+            return parsed;
+        }
+        return new Result(parsed.expression(), parsed.condition(), preparation.prepare(parsed.function()), null);
+    }
+
+    private static Result parse(String expression, String condition) {
+        try {
+            return new Result(expression, condition, FunctionParser.parse(expression, condition), null);
+        } catch (ParserException ex) {
+            return new Result(expression, condition, null, ex);
+        }
+    }
+}
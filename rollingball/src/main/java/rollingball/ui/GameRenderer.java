@@ -1,6 +1,10 @@
 package rollingball.ui;
 
+import java.util.Arrays;
+import java.util.Map;
 import java.util.Stack;
+import java.util.WeakHashMap;
+import java.util.function.Consumer;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
@@ -21,7 +25,6 @@ import javafx.scene.control.Label;
 import javafx.scene.control.ListView;
 import javafx.scene.control.SplitPane;
 import javafx.scene.control.TextField;
-import javafx.scene.control.Alert.AlertType;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.input.MouseEvent;
@@ -43,15 +46,18 @@ import javafx.stage.Stage;
 import javafx.util.Duration;
 import rollingball.Main;
 import rollingball.dao.UserProgressDao;
-import rollingball.functions.EvalContext;
+import rollingball.functions.BuiltinFunctions.Precision;
 import rollingball.functions.Function;
 import rollingball.functions.FunctionParser;
-import rollingball.functions.ParserException;
+import rollingball.functions.Interval;
+import rollingball.functions.XIntervals;
 import rollingball.game.Ball;
+import rollingball.game.EvaluationBudget;
 import rollingball.game.GameSimulator;
 import rollingball.game.Level;
 import rollingball.game.FunctionStorage.Graph;
 import rollingball.game.Obstacles.Spike;
+import rollingball.game.Obstacles.SpikeField;
 import rollingball.game.Obstacles.SpikeWheel;
 
 /**
@@ -81,6 +87,34 @@ public final class GameRenderer {
 
     private final GameSimulator state;
 
+    // Graphs are sampled at the same x coordinates every frame
+    private final double[] sampleXs = computeSampleXs();
+    private final double[] sampleYs = new double[sampleXs.length];
+    private final boolean[] sampleMask = new boolean[sampleXs.length];
+
+    // Samples are culled in chunks with interval arithmetic; the rest are gathered here
+    private static final int CULL_CHUNK_SIZE = 16;
+    private static final double CULL_MARGIN = 0.1;
+    private final int[] gatheredIndices = new int[sampleXs.length];
+    private final double[] gatheredXs = new double[sampleXs.length];
+    private final double[] gatheredYs = new double[sampleXs.length];
+    private final boolean[] gatheredMask = new boolean[sampleXs.length];
+    private final int[] skippedIndices = new int[sampleXs.length];
+
+    // Graphs that do not depend on t look the same every frame, so their samples are kept
+    // until the function is replaced
+    private record StaticSamples(double[] ys, boolean[] mask) {
+    }
+
+    private final Map<Function, StaticSamples> staticSamples = new WeakHashMap<>();
+    private final StaticSamples frameSamples = new StaticSamples(sampleYs, sampleMask);
+
+    // Graphs too slow to sample fully every frame are sampled more coarsely, and drawn
+    // dashed when even that is too slow. The stride must stay below CULL_CHUNK_SIZE.
+    private static final long GRAPH_BUDGET_NANOS = 2_000_000;
+    private static final int MAX_SAMPLE_STRIDE = 8;
+    private final EvaluationBudget budget = new EvaluationBudget(GRAPH_BUDGET_NANOS, MAX_SAMPLE_STRIDE);
+
     private GameRenderer(Canvas canvas, GameSimulator state, Label timeDisplay) {
         this.canvas = canvas;
         this.state = state;
@@ -133,18 +167,24 @@ public final class GameRenderer {
         for (var obstacle : state.getLevel().getObstacles()) {
             var random = ++index * 3; // poor way to get per-obstacle "random" value...
             if (obstacle instanceof Spike s) {
-                drawSpike(s, random);
+                drawSpike(s.getX(), s.getY(), random);
             } else if (obstacle instanceof SpikeWheel wheel) {
                 for (var spike : wheel.getSpikes()) {
-                    drawSpike(spike, random);
+                    drawSpike(spike.getX(), spike.getY(), random);
+                }
+            } else if (obstacle instanceof SpikeField field) {
+                var xs = field.getXs();
+                var ys = field.getYs();
+                for (var i = 0; i < field.size(); ++i) {
+                    drawSpike(xs[i], ys[i], random + 3 * i);
                 }
             }
         }
     }
 
-    private void drawSpike(Spike s, int random) {
-        var x = s.getX() * PX_PER_GRAPH_AREA_UNIT;
-        var y = s.getY() * PX_PER_GRAPH_AREA_UNIT;
+    private void drawSpike(double spikeX, double spikeY, int random) {
+        var x = spikeX * PX_PER_GRAPH_AREA_UNIT;
+        var y = spikeY * PX_PER_GRAPH_AREA_UNIT;
         var angleOffset = Math.sin(System.currentTimeMillis() * 0.002 + random) * 0.1;
         for (var i = 0; i < 5; ++i) {
             var angle = Math.PI * 2 * i / 5 + angleOffset;
@@ -155,18 +195,18 @@ public final class GameRenderer {
     }
 
     private void drawGraphs() {
-        var evalCtx = new EvalContext(state.getPlayingTimeSeconds());
+        var time = state.getPlayingTimeSeconds();
 
         graphics.setLineWidth(2.0);
         for (var graph : state.getGraphs()) {
             if (graph.geFunction() == null) { // User made syntax error while editing
                 continue;
             }
-            renderGraph(graph, evalCtx);
+            renderGraph(graph, time);
         }
     }
 
-    private void renderGraph(Graph graph, EvalContext ctx) {
+    private void renderGraph(Graph graph, double time) {
         graphics.setStroke(graph.getColor());
         graphics.beginPath();
 
@@ -175,29 +215,156 @@ public final class GameRenderer {
         // by approximating the second derivative and adjusting stepSize such that
         // straight
         // lines need much less vertices
-        var stepSize = 2.0;
-        var fn = graph.geFunction();
-        for (var pixelX = -GRAPH_AREA_WIDTH_PX; pixelX <= GRAPH_AREA_WIDTH_PX; pixelX += stepSize) {
-            ctx.x = pixelX / PX_PER_GRAPH_AREA_UNIT;
+        // 1e-9 is far below a pixel, so graphs are drawn with the approximate builtins
+        var fn = graph.geFunction().withPrecision(Precision.FAST);
+        var samples = evalSamples(fn, time);
+        if (budget.isOverBudget(fn) || state.isOverBudget(graph)) {
+            graphics.setLineDashes(8.0, 6.0);
+        }
+        var ys = samples.ys();
+        var mask = samples.mask();
 
-            if (!fn.canEval(ctx)) {
+        var wasValid = false;
+        for (var i = 0; i < sampleXs.length; ++i) {
+            if (!mask[i]) {
+                wasValid = false;
                 continue;
             }
 
             // up is negative in screen coords so negate the value
-            graphics.moveTo(pixelX, -fn.eval(ctx) * PX_PER_GRAPH_AREA_UNIT);
-            pixelX += stepSize;
-            ctx.x += stepSize / PX_PER_GRAPH_AREA_UNIT;
+            var pixelX = sampleXs[i] * PX_PER_GRAPH_AREA_UNIT;
+            var pixelY = -ys[i] * PX_PER_GRAPH_AREA_UNIT;
+            if (wasValid) {
+                graphics.lineTo(pixelX, pixelY);
+            } else {
+                graphics.moveTo(pixelX, pixelY);
+            }
+            wasValid = true;
+        }
+
+        graphics.stroke();
+        graphics.setLineDashes();
+    }
 
-            while (fn.canEval(ctx) && pixelX <= GRAPH_AREA_WIDTH_PX) {
-                graphics.lineTo(pixelX, -fn.eval(ctx) * PX_PER_GRAPH_AREA_UNIT);
+    private StaticSamples evalSamples(Function fn, double time) {
+        if (!fn.isTimeInvariant()) {
+            var start = System.nanoTime();
+            evalVisibleSamples(fn, time, budget.getStride(fn));
+            budget.record(fn, System.nanoTime() - start);
+            return frameSamples;
+        }
+        var cached = staticSamples.get(fn);
+        if (cached == null) {
+            evalVisibleSamples(fn, time, 1);
+            cached = new StaticSamples(sampleYs.clone(), sampleMask.clone());
+            staticSamples.put(fn, cached);
+        }
+        return cached;
+    }
 
-                pixelX += stepSize;
-                ctx.x += stepSize / PX_PER_GRAPH_AREA_UNIT;
+    /**
+     * Evaluates the graph at every sample that can be visible. Chunks of samples where
+     * the condition never holds are skipped entirely, and chunks lying entirely above or
+     * below the screen are only evaluated at their ends, so that lines leaving the
+     * screen are still drawn up to its edge. Conditions compiled to x-intervals are
+     * culled with a binary search instead of interval arithmetic.
+     *
+     * With a stride above 1, only every stride-th sample of a visible chunk is evaluated
+     * and the ones in between are interpolated linearly.
+     */
+    private void evalVisibleSamples(Function fn, double time, int stride) {
+        var timeRange = Interval.point(time);
+        var spans = fn.getXSpans(time);
+        var count = 0;
+        for (var start = 0; start < sampleXs.length; start += CULL_CHUNK_SIZE) {
+            var end = Math.min(start + CULL_CHUNK_SIZE, sampleXs.length) - 1;
+            if (spans != null && !spans.intersects(sampleXs[start], sampleXs[end])) {
+                continue;
+            }
+            var xRange = new Interval(sampleXs[start], sampleXs[end]);
+            if (spans == null && fn.getCondition().evalInterval(xRange, timeRange) == Interval.Truth.NEVER) {
+                continue;
+            }
+            var y = fn.getFormula().evalInterval(xRange, timeRange);
+            if (y.isEmpty()) {
+                continue;
+            }
+            var offScreen = y.lo() > GRAPH_AREA_HEIGHT + CULL_MARGIN || y.hi() < -GRAPH_AREA_HEIGHT - CULL_MARGIN;
+            var step = offScreen ? Math.max(1, end - start) : stride;
+            for (var i = start; i <= end; i += step) {
+                gatheredIndices[count] = i;
+                gatheredXs[count++] = sampleXs[i];
+            }
+            if (gatheredIndices[count - 1] != end) {
+                gatheredIndices[count] = end;
+                gatheredXs[count++] = sampleXs[end];
             }
         }
 
-        graphics.stroke();
+        fn.evalBatch(gatheredXs, time, gatheredYs, gatheredMask, count);
+        Arrays.fill(sampleMask, false);
+        for (var i = 0; i < count; ++i) {
+            sampleYs[gatheredIndices[i]] = gatheredYs[i];
+            sampleMask[gatheredIndices[i]] = gatheredMask[i];
+        }
+        if (stride > 1) {
+            interpolateSkippedSamples(fn, time, spans, count, stride);
+        }
+    }
+
+    // The samples between two evaluated ones are interpolated only where the condition is
+    // known to hold over the whole gap, and left out where it never holds. Elsewhere they
+    // are evaluated after all, as the graph may start or end in between
+    private void interpolateSkippedSamples(Function fn, double time, XIntervals.Spans spans, int count, int stride) {
+        var timeRange = Interval.point(time);
+        var evaluated = 0;
+        for (var k = 1; k < count; ++k) {
+            var a = gatheredIndices[k - 1];
+            var b = gatheredIndices[k];
+            // Wider gaps are the insides of off-screen chunks
+            if (b - a <= 1 || b - a > stride) {
+                continue;
+            }
+            var truth = spans != null
+                    ? spans.covers(sampleXs[a], sampleXs[b]) ? Interval.Truth.ALWAYS
+                            : spans.intersects(sampleXs[a], sampleXs[b]) ? Interval.Truth.MAYBE
+                            : Interval.Truth.NEVER
+                    : fn.getCondition().evalInterval(new Interval(sampleXs[a], sampleXs[b]), timeRange);
+            if (truth == Interval.Truth.NEVER) {
+                continue;
+            }
+            if (truth != Interval.Truth.ALWAYS || !gatheredMask[k - 1] || !gatheredMask[k]) {
+                for (var i = a + 1; i < b; ++i) {
+                    skippedIndices[evaluated++] = i;
+                }
+                continue;
+            }
+            for (var i = a + 1; i < b; ++i) {
+                var s = (double) (i - a) / (b - a);
+                sampleYs[i] = gatheredYs[k - 1] + s * (gatheredYs[k] - gatheredYs[k - 1]);
+                sampleMask[i] = true;
+            }
+        }
+
+        // The gathered samples have been copied out, so their buffers are free again
+        for (var i = 0; i < evaluated; ++i) {
+            gatheredXs[i] = sampleXs[skippedIndices[i]];
+        }
+        fn.evalBatch(gatheredXs, time, gatheredYs, gatheredMask, evaluated);
+        for (var i = 0; i < evaluated; ++i) {
+            sampleYs[skippedIndices[i]] = gatheredYs[i];
+            sampleMask[skippedIndices[i]] = gatheredMask[i];
+        }
+    }
+
+    private static double[] computeSampleXs() {
+        var stepSize = 2.0;
+        var numSamples = (int) (2 * GRAPH_AREA_WIDTH_PX / stepSize) + 1;
+        var xs = new double[numSamples];
+        for (var i = 0; i < numSamples; ++i) {
+            xs[i] = (-GRAPH_AREA_WIDTH_PX + i * stepSize) / PX_PER_GRAPH_AREA_UNIT;
+        }
+        return xs;
     }
 
     private void drawGrid() {
@@ -248,6 +415,8 @@ public final class GameRenderer {
         conditionInput.setPromptText("Filter (ex: `0 < x < 1`)");
         HBox.setMargin(conditionInput, new Insets(0, 10, 0, 10));
 
+        var inputError = createErrorLabel();
+
         // Make life easier by allowing enter instead of requiring user to click
         equationInput.setOnKeyPressed(keyEvent -> {
             if (keyEvent.getCode() == javafx.scene.input.KeyCode.ENTER) {
@@ -259,16 +428,20 @@ public final class GameRenderer {
                 return;
             }
             if (equationInput.getText().isEmpty()) {
-                Alert alert = new Alert(Alert.AlertType.ERROR);
-                alert.setTitle("Error");
-                alert.setHeaderText("Equation field is empty!");
-                alert.showAndWait();
+                inputError.setText("Equation field is empty!");
                 return;
             }
             addEquationButton.fire();
         });
 
-        var equationControls = new HBox(equationInput, conditionInput, addEquationButton);
+        // Syntax errors are reported while typing, without waiting for enter
+        var inputParser = BackgroundParser.createForUi();
+        equationInput.textProperty().addListener((obs, oldVal, newVal) -> inputParser
+                .request(newVal, conditionInput.getText(), result -> showParseError(inputError, result)));
+        conditionInput.textProperty().addListener((obs, oldVal, newVal) -> inputParser
+                .request(equationInput.getText(), newVal, result -> showParseError(inputError, result)));
+
+        var equationControls = new HBox(equationInput, conditionInput, inputError, addEquationButton);
         equationControls.setPadding(new Insets(10.0));
         equationControls.setPrefWidth(Double.MAX_VALUE);
 
@@ -337,12 +510,28 @@ public final class GameRenderer {
             levelLabel.setVisible(true);
         }));
 
-        addEquationButton.setOnAction(e -> addExpression(equationInput, conditionInput, equationList, state));
+        addEquationButton.setOnAction(e -> inputParser.requestNow(equationInput.getText(), conditionInput.getText(),
+                prepareFor(state, null), result -> {
+                    showParseError(inputError, result);
+                    // The input may have been edited while parsing, in which case the newer
+                    // request has already replaced this one
+                    if (result.function() != null) {
+                        equationInput.clear();
+                        conditionInput.clear();
+                        inputParser.cancel();
+                        addExpression(result, equationList, state);
+                    }
+                }));
+        // Stored solutions are parsed in the background too; the parse thread completes
+        // them in order, so they are listed in the order they were saved
         progressDao.getLevelCompletions().stream().filter(eq -> eq.level() == level.getBlueprint()).forEach(data -> {
             for (var equation : data.equations()) {
-                equationInput.setText(equation.formula());
-                conditionInput.setText(equation.condition());
-                addExpression(equationInput, conditionInput, equationList, state);
+                BackgroundParser.createForUi().requestNow(equation.formula(), equation.condition(),
+                        prepareFor(state, null), result -> {
+                            if (result.function() != null) {
+                                addExpression(result, equationList, state);
+                            }
+                        });
             }
         });
 
@@ -412,72 +601,83 @@ public final class GameRenderer {
         return scene;
     }
 
-    private static void addExpression(TextField equationInput, TextField conditionInput, ListView<HBox> equationList,
+    private static void addExpression(BackgroundParser.Result parsed, ListView<HBox> equationList,
             GameSimulator state) {
-        var exprAsString = equationInput.getText();
-        var condAsString = conditionInput.getText();
-        var expr = readExpression(exprAsString, condAsString);
-        if (expr == null) {
-            return;
-        }
-
-        equationInput.clear();
-        conditionInput.clear();
-
-        var graph = state.addGraph(expr);
+        var graph = state.addGraph(parsed.function());
 
         var rgb = graph.getColor();
-        var equationInputField = new TextField(exprAsString);
+        var equationInputField = new TextField(parsed.expression());
         equationInputField.setStyle(String.format("-fx-text-fill: rgb(%d, %d, %d);", (int) (255 * rgb.getRed()),
                 (int) (255 * rgb.getGreen()), (int) (255 * rgb.getBlue())));
         HBox.setHgrow(equationInputField, Priority.ALWAYS);
 
-        var conditionInputField = new TextField(condAsString);
+        var conditionInputField = new TextField(parsed.condition());
         conditionInputField.setPrefWidth(200);
         conditionInputField.setPromptText("(Filter)");
         HBox.setMargin(conditionInputField, new Insets(0, 10, 0, 10));
 
+        var errorLabel = createErrorLabel();
+
         var equationListEntry = new HBox();
+        var parser = BackgroundParser.createForUi();
         var removeEquationButton = new Button("Remove");
         removeEquationButton.setOnAction(ee -> {
+            parser.cancel();
             state.removeGraph(graph);
             equationList.getItems().remove(equationListEntry);
         });
 
-        equationListEntry.getChildren().addAll(equationInputField, conditionInputField, removeEquationButton);
+        equationListEntry.getChildren().addAll(equationInputField, conditionInputField, errorLabel, removeEquationButton);
 
         equationList.getItems().add(0, equationListEntry);
 
         equationInputField.setOnKeyPressed(keyEvent -> {
-            if (keyEvent.getCode() == javafx.scene.input.KeyCode.ENTER) {
-                if (equationInputField.getText().isEmpty()) {
-                    removeEquationButton.fire();
-                } else {
-                    graph.setFunction(readExpression(equationInputField.getText(), conditionInputField.getText()));
-                }
+            if (keyEvent.getCode() == javafx.scene.input.KeyCode.ENTER && equationInputField.getText().isEmpty()) {
+                removeEquationButton.fire();
             }
         });
-        conditionInputField.setOnKeyPressed(keyEvent -> {
-            if (conditionInputField.getText().isEmpty() || keyEvent.getCode() != javafx.scene.input.KeyCode.ENTER) {
-                return;
+
+        // Edits are previewed live. On a syntax error the graph keeps its last valid function
+        var preparation = prepareFor(state, graph);
+        Consumer<BackgroundParser.Result> publish = result -> {
+            showParseError(errorLabel, result);
+            if (result.error() == null) {
+                graph.setFunction(result.function());
             }
-            graph.setFunction(readExpression(equationInputField.getText(), conditionInputField.getText()));
-        });
+        };
+        equationInputField.textProperty().addListener(
+                (obs, oldVal, newVal) -> parser.request(newVal, conditionInputField.getText(), preparation, publish));
+        conditionInputField.textProperty().addListener(
+                (obs, oldVal, newVal) -> parser.request(equationInputField.getText(), newVal, preparation, publish));
     }
 
-    private static Function readExpression(String expressionString, String conditionString) {
-        if (expressionString.isEmpty()) {
-            return null;
-        }
+    // Shares, compiles and tabulates functions on the parse thread, leaving only
+    // swapping them in for the UI thread
+    private static BackgroundParser.Preparation prepareFor(GameSimulator state, Graph graph) {
+        return new BackgroundParser.Preparation() {
+            @Override
+            public Function prepare(Function fn) {
+                var prepared = state.prepareGraph(fn, graph);
+                prepared.withPrecision(Precision.FAST).compile(); // The precision graphs are drawn at
+                return prepared;
+            }
 
-        try {
-            return FunctionParser.parse(expressionString, conditionString);
-        } catch (ParserException ex) {
-            var errorAlert = new Alert(AlertType.ERROR);
-            errorAlert.setHeaderText("Invalid input");
-            errorAlert.setContentText(ex.getMessage());
-            errorAlert.showAndWait();
-            return null;
-        }
+            @Override
+            public void discard(Function prepared) {
+                state.discardGraph(prepared);
+            }
+        };
+    }
+
+    private static Label createErrorLabel() {
+        var label = new Label();
+        label.setTextFill(Color.RED);
+        label.setMaxWidth(250);
+        HBox.setMargin(label, new Insets(4, 10, 0, 0));
+        return label;
+    }
+
+    private static void showParseError(Label errorLabel, BackgroundParser.Result result) {
+        errorLabel.setText(result.error() == null ? "" : result.error().getMessage());
     }
 }
@@ -0,0 +1,85 @@
+package rollingball.functions;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+import rollingball.functions.Operators.ArithmeticOp;
+import rollingball.functions.Operators.RelationalOp;
+
+/**
+ * Implementation of {@link BatchKernels} on top of the incubating JDK Vector API.
+ * Only compiled with the <code>vector</code> Maven profile, and loaded reflectively
+ * by {@link BatchKernels#INSTANCE} when enabled.
+ *
+ * <code>^</code> has no lane-wise equivalent that matches {@link Math#pow(double, double)}
+ * exactly, so it is computed one lane at a time, like the transcendental builtins.
+ */
+final class VectorBatchKernels implements BatchKernels {
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    private final ScalarBatchKernels scalar = new ScalarBatchKernels();
+
+    @Override
+    public void arithmetic(ArithmeticOp op, double[] out, double[] rhs, int len) {
+        if (op == ArithmeticOp.POW) {
+            scalar.arithmetic(op, out, rhs, len);
+            return;
+        }
+
+        var operator = switch (op) {
+            case ADD -> VectorOperators.ADD;
+            case SUB -> VectorOperators.SUB;
+            case MUL -> VectorOperators.MUL;
+            default -> VectorOperators.DIV;
+        };
+
+        var bound = SPECIES.loopBound(len);
+        var i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            var a = DoubleVector.fromArray(SPECIES, out, i);
+            var b = DoubleVector.fromArray(SPECIES, rhs, i);
+            a.lanewise(operator, b).intoArray(out, i);
+        }
+        for (; i < len; ++i) {
+            out[i] = op.apply(out[i], rhs[i]);
+        }
+    }
+
+    @Override
+    public void negate(double[] out, int len) {
+        var bound = SPECIES.loopBound(len);
+        var i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, out, i).neg().intoArray(out, i);
+        }
+        for (; i < len; ++i) {
+            out[i] = -out[i];
+        }
+    }
+
+    @Override
+    public void compare(RelationalOp op, double[] lhs, double[] rhs, boolean[] mask, int len) {
+        var comparison = switch (op) {
+            case LT -> VectorOperators.LT;
+            case LE -> VectorOperators.LE;
+            case GT -> VectorOperators.GT;
+            case GE -> VectorOperators.GE;
+        };
+
+        var bound = SPECIES.loopBound(len);
+        var i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            var a = DoubleVector.fromArray(SPECIES, lhs, i);
+            var b = DoubleVector.fromArray(SPECIES, rhs, i);
+            a.compare(comparison, b).intoArray(mask, i);
+        }
+        for (; i < len; ++i) {
+            mask[i] = switch (op) {
+                case LT -> lhs[i] < rhs[i];
+                case LE -> lhs[i] <= rhs[i];
+                case GT -> lhs[i] > rhs[i];
+                case GE -> lhs[i] >= rhs[i];
+            };
+        }
+    }
+}
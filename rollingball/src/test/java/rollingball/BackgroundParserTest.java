@@ -0,0 +1,108 @@
+package rollingball;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import rollingball.functions.Function;
+import rollingball.ui.BackgroundParser;
+
+public class BackgroundParserTest {
+    private ScheduledExecutorService executor;
+    // Stands in for the UI thread: results are only delivered when the test drains it
+    private ConcurrentLinkedQueue<Runnable> published;
+    private BackgroundParser parser;
+    private List<BackgroundParser.Result> results;
+
+    @BeforeEach
+    public void setUp() {
+        executor = Executors.newSingleThreadScheduledExecutor();
+        published = new ConcurrentLinkedQueue<>();
+        parser = new BackgroundParser(executor, published::add, 20);
+        results = new ArrayList<>();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private void drain() throws Exception {
+        executor.schedule(() -> { }, 50, TimeUnit.MILLISECONDS).get(); // Runs after the pending parses
+        Runnable task;
+        while ((task = published.poll()) != null) {
+            task.run();
+        }
+    }
+
+    @Test
+    public void testOnlyLatestRequestIsDelivered() throws Exception {
+        parser.request("x+", "", results::add);
+        parser.request("x+1", "", results::add);
+        parser.requestNow("2x", "x > 0", results::add);
+        drain();
+
+        assertEquals(1, results.size());
+        assertEquals("2x", results.get(0).expression());
+        assertEquals(true, results.get(0).function() != null);
+    }
+
+    @Test
+    public void testErrorsAreDeliveredAsResults() throws Exception {
+        parser.request("sin(x", "", results::add);
+        drain();
+
+        assertEquals(1, results.size());
+        assertEquals(null, results.get(0).function());
+        assertEquals(true, results.get(0).error() != null);
+    }
+
+    @Test
+    public void testCompletedParseIsDroppedAfterCancel() throws Exception {
+        parser.requestNow("x", "", results::add);
+        executor.schedule(() -> { }, 0, TimeUnit.MILLISECONDS).get();
+        assertEquals(1, published.size()); // Parsed, but not yet delivered
+
+        parser.cancel();
+        drain();
+        assertEquals(0, results.size());
+    }
+
+    @Test
+    public void testSupersededPreparationsAreDiscarded() throws Exception {
+        var prepared = new ConcurrentLinkedQueue<Function>();
+        var discarded = new ArrayList<Function>();
+        var preparation = new BackgroundParser.Preparation() {
+            @Override
+            public Function prepare(Function fn) {
+                var copy = new Function(fn.getFormula(), fn.getCondition());
+                prepared.add(copy);
+                return copy;
+            }
+
+            @Override
+            public void discard(Function fn) {
+                discarded.add(fn);
+            }
+        };
+        parser.requestNow("x", "", preparation, results::add);
+        executor.schedule(() -> { }, 0, TimeUnit.MILLISECONDS).get(); // Prepared, but not yet delivered
+        parser.requestNow("2x", "", preparation, results::add);
+        drain();
+
+        var first = prepared.poll();
+        var second = prepared.poll();
+        assertEquals(1, results.size());
+        assertEquals(true, results.get(0).function() == second);
+        assertEquals(List.of(first), discarded);
+    }
+}
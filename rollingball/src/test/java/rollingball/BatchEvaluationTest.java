@@ -0,0 +1,89 @@
+package rollingball;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+import rollingball.functions.EvalContext;
+import rollingball.functions.Function;
+import rollingball.functions.FunctionParser;
+
+public class BatchEvaluationTest {
+
+    @Test
+    public void testBatchMatchesScalarEvaluation() {
+        assertBatchMatches("-2.5*e^(-x^2/(2*1.5^2))+1+max(0,x/4)", "");
+        assertBatchMatches("sin(t/2)+max(0,1.7*sin(x/2.15))", "-3 <= x/2 <= t");
+        assertBatchMatches("hypot(x, t)-atan2(x, 2)+round(x)", "0 < x < 5");
+        assertBatchMatches("-x^3", "x > 1");
+    }
+
+    @Test
+    public void testBatchReturnsNumberOfValidSamples() {
+        var fn = FunctionParser.parse("x", "0 < x < 3");
+        var xs = new double[] { -1, 0, 1, 2, 3, 4 };
+        var out = new double[xs.length];
+        var mask = new boolean[xs.length];
+
+        assertEquals(2, fn.evalBatch(xs, 0.0, out, mask));
+        assertEquals(false, mask[1]);
+        assertEquals(true, mask[2]);
+        assertEquals(true, mask[3]);
+        assertEquals(false, mask[4]);
+    }
+
+    @Test
+    public void testBatchFallsBackForOpaqueNodes() {
+        var fn = new Function(ctx -> ctx.x * ctx.t, ctx -> ctx.x > 0);
+        var xs = new double[] { -1, 2 };
+        var out = new double[xs.length];
+        var mask = new boolean[xs.length];
+
+        assertEquals(1, fn.evalBatch(xs, 3.0, out, mask));
+        assertEquals(-3.0, out[0]);
+        assertEquals(6.0, out[1]);
+    }
+
+    @Test
+    public void testCompiledBatchMatchesTreeBatch() {
+        var fn = FunctionParser.parse("4sin(t/2)+sin(x/4)", "x < t");
+        var xs = new double[Function.COMPILE_THRESHOLD];
+        for (var i = 0; i < xs.length; ++i) {
+            xs[i] = -8.0 + 16.0 * i / xs.length;
+        }
+        var treeOut = new double[xs.length];
+        var treeMask = new boolean[xs.length];
+        fn.evalBatch(xs, 1.5, treeOut, treeMask);
+        assertEquals(true, fn.isCompiled());
+
+        var compiledOut = new double[xs.length];
+        var compiledMask = new boolean[xs.length];
+        fn.evalBatch(xs, 1.5, compiledOut, compiledMask);
+        for (var i = 0; i < xs.length; ++i) {
+            assertEquals(treeOut[i], compiledOut[i]);
+            assertEquals(treeMask[i], compiledMask[i]);
+        }
+    }
+
+    private static void assertBatchMatches(String formula, String condition) {
+        var fn = FunctionParser.parse(formula, condition);
+        fn.setBackend(Function.Backend.TREE);
+
+        var xs = new double[401];
+        for (var i = 0; i < xs.length; ++i) {
+            xs[i] = -8.0 + i * 0.04;
+        }
+        var out = new double[xs.length];
+        var mask = new boolean[xs.length];
+
+        for (var t = 0.0; t < 3.0; t += 0.7) {
+            fn.evalBatch(xs, t, out, mask);
+            var ctx = new EvalContext(t);
+            for (var i = 0; i < xs.length; ++i) {
+                ctx.x = xs[i];
+                assertEquals(fn.eval(ctx), out[i]);
+                assertEquals(fn.canEval(ctx), mask[i]);
+            }
+        }
+    }
+}
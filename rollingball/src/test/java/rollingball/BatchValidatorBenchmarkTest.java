@@ -0,0 +1,64 @@
+package rollingball;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import rollingball.game.BatchValidator;
+import rollingball.game.BatchValidator.Solution;
+import rollingball.game.LevelBlueprint;
+import rollingball.game.SimulationRunner;
+
+/**
+ * Measures how batch validation scales with the number of threads, up to the number
+ * of cores. Run with <code>mvn test -P benchmark</code>.
+ */
+@Tag("benchmark")
+public class BatchValidatorBenchmarkTest {
+    private static final String[] MODEL_SOLUTIONS = {
+        "1/3x+1.5", "-cos(x/1.2)*2-1.4", "-2.5*e^(-x^2/(2*1.5^2))+1+max(0,x/4)",
+        "sin(t/2)+max(0,1.7*sin(x/2.15))", "4sin(t/2)+sin(t/4)+sin(t/6)",
+    };
+
+    private static double measure(int threads, List<Solution> solutions) throws InterruptedException {
+        var pool = new ForkJoinPool(threads);
+        try {
+            var validator = new BatchValidator(pool, new SimulationRunner());
+            var best = 0.0;
+            for (var round = 0; round < 3; ++round) {
+                best = Math.max(best, validator.validate(solutions, report -> { }).ticksPerSecond());
+            }
+            return best;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testThroughputScalesWithCores() throws InterruptedException {
+        var solutions = new ArrayList<Solution>();
+        for (var i = 0; i < 200; ++i) {
+            // Distinct inputs, so that every task parses and compiles its own functions
+            var level = LevelBlueprint.values()[i % MODEL_SOLUTIONS.length];
+            solutions.add(new Solution(level, List.of(MODEL_SOLUTIONS[level.ordinal()] + "+0*" + i), List.of("")));
+        }
+        measure(1, solutions); // Warm up
+
+        var cores = Runtime.getRuntime().availableProcessors();
+        var single = measure(1, solutions);
+        var parallel = single;
+        for (var threads = 1; threads <= cores; threads *= 2) {
+            var ticksPerSecond = threads == 1 ? single : measure(threads, solutions);
+            System.out.printf("%3d threads: %12.0f ticks/s, %5.2fx%n", threads, ticksPerSecond, ticksPerSecond / single);
+            parallel = ticksPerSecond;
+        }
+        var threads = Integer.highestOneBit(cores);
+        // Allow for shared caches, turbo clocks and noise
+        assertEquals(true, parallel >= 0.5 * threads * single, "speedup " + parallel / single + " on " + threads);
+    }
+}
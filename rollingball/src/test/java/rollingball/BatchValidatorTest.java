@@ -0,0 +1,78 @@
+package rollingball;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+import rollingball.functions.FunctionParser;
+import rollingball.game.BatchValidator;
+import rollingball.game.BatchValidator.Report;
+import rollingball.game.BatchValidator.Solution;
+import rollingball.game.LevelBlueprint;
+import rollingball.game.SimulationRunner;
+
+public class BatchValidatorTest {
+    private static final String[] MODEL_SOLUTIONS = {
+        "1/3x+1.5", "-cos(x/1.2)*2-1.4", "-2.5*e^(-x^2/(2*1.5^2))+1+max(0,x/4)",
+        "sin(t/2)+max(0,1.7*sin(x/2.15))", "4sin(t/2)+sin(t/4)+sin(t/6)",
+    };
+
+    private static List<Solution> batch(int copies) {
+        var solutions = new ArrayList<Solution>();
+        for (var i = 0; i < copies; ++i) {
+            for (var level : LevelBlueprint.values()) {
+                solutions.add(new Solution(level, List.of(MODEL_SOLUTIONS[level.ordinal()]), List.of("")));
+            }
+        }
+        return solutions;
+    }
+
+    @Test
+    public void testEverySolutionIsReportedOnce() throws InterruptedException {
+        var solutions = batch(8);
+        solutions.add(new Solution(LevelBlueprint.LEVEL_1, List.of("2x"), List.of("")));
+        solutions.add(new Solution(LevelBlueprint.LEVEL_1, List.of("2x+"), List.of("")));
+
+        var pool = new ForkJoinPool(4);
+        try {
+            var reports = new Report[solutions.size()];
+            var throughput = new BatchValidator(pool, new SimulationRunner()).validate(solutions, report -> {
+                assertEquals(null, reports[report.index()]);
+                reports[report.index()] = report;
+            });
+
+            var ticks = 0L;
+            for (var i = 0; i < solutions.size() - 2; ++i) {
+                assertEquals(true, reports[i].isVictory(), solutions.get(i).toString());
+                ticks += reports[i].result().ticks();
+            }
+            var lost = reports[solutions.size() - 2];
+            assertEquals(false, lost.isVictory());
+            ticks += lost.result().ticks();
+            var invalid = reports[solutions.size() - 1];
+            assertEquals(null, invalid.result());
+            assertEquals(true, invalid.error() != null);
+
+            assertEquals(solutions.size(), throughput.simulations());
+            assertEquals(ticks, throughput.ticks());
+            assertEquals(true, throughput.simulationsPerSecond() > 0.0);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testParallelResultsMatchSequentialOnes() throws InterruptedException {
+        var solutions = batch(4);
+        var runner = new SimulationRunner();
+        new BatchValidator().validate(solutions, report -> {
+            var solution = report.solution();
+            var expected = runner.run(solution.level(), List.of(FunctionParser.parse(solution.formulas().get(0), "")));
+            assertEquals(expected, report.result());
+        });
+    }
+}
@@ -0,0 +1,131 @@
+package rollingball;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import rollingball.functions.Arithmetic;
+import rollingball.functions.CommonSubexpressions;
+import rollingball.functions.Comparison;
+import rollingball.functions.Conjunction;
+import rollingball.functions.EvalContext;
+import rollingball.functions.Function;
+import rollingball.functions.FunctionCompiler;
+import rollingball.functions.FunctionParser;
+import rollingball.functions.Operators.ArithmeticOp;
+import rollingball.functions.RegisterProgram;
+import rollingball.functions.Shared;
+import rollingball.game.FunctionStorage;
+
+public class CommonSubexpressionsTest {
+    @Test
+    public void testRepeatedSubtreesAreShared() {
+        var formula = (Arithmetic) FunctionParser.parse("sin(x/2)*t + sin(x/2)", "").getFormula();
+        var lhs = (Arithmetic) formula.lhs();
+        assertEquals(true, formula.rhs() instanceof Shared);
+        assertEquals(true, lhs.lhs() == formula.rhs());
+    }
+
+    @Test
+    public void testConditionOperandsAreShared() {
+        var condition = (Conjunction) FunctionParser.parse("x", "0 < x/2 < x/2+1").getCondition();
+        var middle = ((Comparison) condition.lhs()).rhs();
+        assertEquals(true, middle instanceof Shared);
+        assertEquals(true, ((Comparison) condition.rhs()).lhs() == middle);
+    }
+
+    @Test
+    public void testSharedSubtreeIsEvaluatedOncePerSample() {
+        var calls = new int[1];
+        Function.Expr counted = ctx -> {
+            calls[0]++;
+            return ctx.x;
+        };
+        var fn = CommonSubexpressions.share(new Function(new Arithmetic(counted, ArithmeticOp.MUL, counted), ctx -> true));
+
+        var ctx = new EvalContext(0.0);
+        ctx.x = 3.0;
+        assertEquals(9.0, fn.eval(ctx));
+        assertEquals(1, calls[0]);
+        ctx.x = 4.0;
+        assertEquals(16.0, fn.eval(ctx));
+        assertEquals(2, calls[0]);
+    }
+
+    @Test
+    public void testSharedSubtreeIsEvaluatedOncePerBatch() {
+        var calls = new int[1];
+        Function.Expr counted = ctx -> {
+            calls[0]++;
+            return ctx.x;
+        };
+        var fn = CommonSubexpressions.share(new Function(new Arithmetic(counted, ArithmeticOp.MUL, counted), ctx -> true));
+        fn.setBackend(Function.Backend.TREE);
+
+        var xs = new double[] { 1.0, 2.0, 3.0 };
+        var out = new double[xs.length];
+        fn.evalBatch(xs, 0.0, out, new boolean[xs.length]);
+        assertEquals(9.0, out[2]);
+        assertEquals(3, calls[0]);
+        xs[2] = 5.0; // Same array, new contents
+        fn.evalBatch(xs, 0.0, out, new boolean[xs.length]);
+        assertEquals(25.0, out[2]);
+        assertEquals(6, calls[0]);
+    }
+
+    @Test
+    public void testSubtreesAreSharedBetweenFunctions() {
+        var fns = CommonSubexpressions.share(List.of(
+                FunctionParser.parse("4sin(t/2)+sin(t/4)", ""),
+                FunctionParser.parse("4sin(t/2)+sin(t/4)", "x > 1")));
+        assertEquals(true, fns.get(0).getFormula() == fns.get(1).getFormula());
+    }
+
+    @Test
+    public void testSharedSubtreeIsEvaluatedOncePerSampleInEachGraph() {
+        var calls = new int[1];
+        Function.Expr counted = ctx -> {
+            calls[0]++;
+            return ctx.x + ctx.t;
+        };
+        var storage = new FunctionStorage();
+        var first = storage.addGraph(CommonSubexpressions.share(
+                new Function(new Arithmetic(counted, ArithmeticOp.MUL, counted), ctx -> true)));
+        var second = storage.addGraph(CommonSubexpressions.share(
+                new Function(new Arithmetic(counted, ArithmeticOp.ADD, counted), ctx -> true)));
+        first.geFunction().setBackend(Function.Backend.TREE);
+        second.geFunction().setBackend(Function.Backend.TREE);
+
+        // The graphs are evaluated one after the other, as by the renderer and the simulator
+        for (var x = 0.0; x < 10.0; ++x) {
+            assertEquals((x + 1) * (x + 1), first.geFunction().eval(x, 1.0));
+            assertEquals(2 * (x + 1), second.geFunction().eval(x, 1.0));
+        }
+        assertEquals(20, calls[0]);
+
+        // Evaluating the same sample again reuses the values
+        assertEquals(100.0, first.geFunction().eval(9.0, 1.0));
+        assertEquals(20.0, second.geFunction().eval(9.0, 1.0));
+        assertEquals(20, calls[0]);
+    }
+
+    @Test
+    public void testSharedSubtreesCompileToSameValues() {
+        var exprs = new String[] { "sin(t/2)*x + sin(t/2)", "(x+1)^2 * (x+1) - sqrt(abs(x+1))", "max(x/3, -x/3) + x/3" };
+        var ctx = new EvalContext(0.7);
+        for (var expr : exprs) {
+            var fn = FunctionParser.parse(expr, "x/3 < 1");
+            var compiled = FunctionCompiler.compile(fn);
+            var program = RegisterProgram.compile(fn);
+            for (var x = -4.0; x <= 4.0; x += 0.5) {
+                ctx.x = x;
+                assertEquals(fn.eval(ctx), compiled.eval(x, 0.7));
+                assertEquals(fn.eval(ctx), program.eval(x, 0.7));
+                assertEquals(fn.canEval(ctx), compiled.canEval(x, 0.7));
+                assertEquals(fn.canEval(ctx), program.canEval(x, 0.7));
+            }
+        }
+    }
+}
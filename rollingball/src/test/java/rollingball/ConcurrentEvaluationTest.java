@@ -0,0 +1,115 @@
+package rollingball;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.Test;
+
+import rollingball.functions.EvalContext;
+import rollingball.functions.Function;
+import rollingball.functions.FunctionCompiler;
+import rollingball.functions.FunctionParser;
+import rollingball.functions.RegisterProgram;
+
+public class ConcurrentEvaluationTest {
+    private static final int NUM_THREADS = 4;
+    private static final String EXPRESSION = "sin(x/2)*t + sin(x/2)^2 - cos(t)*x";
+    private static final String CONDITION = "x*x < 30 + t";
+
+    @Test
+    public void testPrimitiveEvaluationMatchesContext() {
+        var fn = FunctionParser.parse(EXPRESSION, CONDITION);
+        fn.setBackend(Function.Backend.TREE);
+        for (var x = -6.0; x <= 6.0; x += 0.5) {
+            var ctx = new EvalContext(1.5, x);
+            assertEquals(fn.eval(ctx), fn.eval(x, 1.5));
+            assertEquals(fn.canEval(ctx), fn.canEval(x, 1.5));
+        }
+    }
+
+    @Test
+    public void testPrimitiveEvaluationDoesNotAllocate() {
+        var fn = FunctionParser.parse(EXPRESSION, CONDITION); // With shared and hoisted nodes
+        fn.setBackend(Function.Backend.TREE);
+        var sum = 0.0;
+        for (var round = 0; round < 2; ++round) { // The first round warms up
+            var before = allocatedBytes();
+            for (var x = -8.0; x <= 8.0; x += 0.001) {
+                sum += fn.canEval(x, 1.5) ? fn.eval(x, 1.5) : 0.0;
+            }
+            if (round == 1) {
+                assertEquals(true, allocatedBytes() - before < 10_000, "allocated " + (allocatedBytes() - before));
+            }
+        }
+        assertEquals(false, Double.isNaN(sum));
+    }
+
+    private static long allocatedBytes() {
+        var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    @Test
+    public void testSharedFunctionCanBeEvaluatedFromSeveralThreads() throws Exception {
+        for (var backend : Function.Backend.values()) {
+            var reference = FunctionParser.parse(EXPRESSION, CONDITION);
+            reference.setBackend(Function.Backend.TREE);
+            var fn = FunctionParser.parse(EXPRESSION, CONDITION);
+            fn.setBackend(backend);
+            assertEvaluatesConcurrently(reference, fn::eval, fn::canEval, backend.name());
+        }
+    }
+
+    @Test
+    public void testCompiledCodeCanBeEvaluatedFromSeveralThreads() throws Exception {
+        var reference = FunctionParser.parse(EXPRESSION, CONDITION);
+        reference.setBackend(Function.Backend.TREE);
+        var bytecode = FunctionCompiler.compile(reference);
+        assertEvaluatesConcurrently(reference, bytecode::eval, bytecode::canEval, "bytecode");
+        var program = RegisterProgram.compile(reference);
+        assertEvaluatesConcurrently(reference, program::eval, program::canEval, "registers");
+    }
+
+    private interface Formula {
+        double eval(double x, double t);
+    }
+
+    private interface Predicate {
+        boolean test(double x, double t);
+    }
+
+    private static void assertEvaluatesConcurrently(Function reference, Formula formula, Predicate condition,
+            String name) throws Exception {
+        var executor = Executors.newFixedThreadPool(NUM_THREADS);
+        try {
+            var tasks = new ArrayList<Callable<Integer>>();
+            for (var i = 0; i < NUM_THREADS; ++i) {
+                // Each thread walks its own times, so samples interleave at different (x, t)
+                var t0 = i * 0.37;
+                tasks.add(() -> {
+                    var mismatches = 0;
+                    for (var t = t0; t < t0 + 4.0; t += 0.25) {
+                        for (var x = -8.0; x <= 8.0; x += 0.01) {
+                            var expected = reference.eval(new EvalContext(t, x));
+                            var expectedValid = reference.canEval(new EvalContext(t, x));
+                            if (Double.compare(expected, formula.eval(x, t)) != 0
+                                    || expectedValid != condition.test(x, t)) {
+                                ++mismatches;
+                            }
+                        }
+                    }
+                    return mismatches;
+                });
+            }
+            for (var result : executor.invokeAll(tasks)) {
+                assertEquals(0, result.get(), name);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package rollingball;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrowsExactly;
+
+import org.junit.jupiter.api.Test;
+
+import rollingball.functions.CostEstimate;
+import rollingball.functions.FunctionParser;
+import rollingball.functions.ParserException;
+import rollingball.functions.ParserLimits;
+
+public class CostEstimateTest {
+    @Test
+    public void testCostCountsNodesOnce() {
+        // sin(x*t) is shared, so it is only counted once
+        var cost = FunctionParser.parse("sin(x*t) + sin(x*t)^2", "x > 0").getCost();
+        assertEquals(new CostEstimate(8, 1, 5), cost);
+    }
+
+    @Test
+    public void testTranscendentalsAreCounted() {
+        assertEquals(0, FunctionParser.parse("abs(x) + max(x, t) + sqrt(x) + x^3", "").getCost().transcendentalCount());
+        assertEquals(3, FunctionParser.parse("exp(x) + x^t + atan2(x, t)", "").getCost().transcendentalCount());
+    }
+
+    @Test
+    public void testLimitsRejectExpensiveFunctions() {
+        var deep = "x" + "^x".repeat(40);
+        assertEquals(true, FunctionParser.parse(deep, "").getCost().depth() > 40);
+        assertThrowsExactly(ParserException.class, () -> FunctionParser.parse(deep, "", new ParserLimits(1000, 1000, 20)));
+        assertThrowsExactly(ParserException.class, () -> FunctionParser.parse(deep, "", new ParserLimits(1000, 10, 1000)));
+        assertThrowsExactly(ParserException.class, () -> FunctionParser.parse(deep, "", new ParserLimits(10, 1000, 1000)));
+        assertEquals(true, FunctionParser.parse(deep, "", ParserLimits.UNLIMITED) != null);
+
+        var wide = "x" + "+sin(x*t)".repeat(1500);
+        assertThrowsExactly(ParserException.class, () -> FunctionParser.parse(wide, ""));
+        assertEquals(true, FunctionParser.parse(wide, "", ParserLimits.UNLIMITED) != null);
+        assertThrowsExactly(ParserException.class, () -> FunctionParser.parse(wide, "")); // Also when cached
+    }
+}
@@ -0,0 +1,87 @@
+package rollingball;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+import rollingball.functions.Derivatives;
+import rollingball.functions.EvalContext;
+import rollingball.functions.Function;
+import rollingball.functions.FunctionCompiler;
+import rollingball.functions.FunctionParser;
+import rollingball.functions.Variable;
+import rollingball.game.FunctionStorage;
+
+public class DerivativesTest {
+    private static final double H = 1e-6;
+
+    private static double numeric(Function fn, double x, double t, Variable wrt) {
+        var dx = wrt == Variable.X ? H : 0.0;
+        var dt = wrt == Variable.T ? H : 0.0;
+        var after = new EvalContext(t + dt);
+        after.x = x + dx;
+        var before = new EvalContext(t - dt);
+        before.x = x - dx;
+        return (fn.eval(after) - fn.eval(before)) / (2 * H);
+    }
+
+    private static void assertDerivativeMatches(String expr, double from, double to) {
+        var fn = FunctionParser.parse(expr, "");
+        for (var wrt : Variable.values()) {
+            var derivative = Derivatives.differentiate(fn, wrt);
+            for (var x = from; x <= to; x += 0.37) {
+                var ctx = new EvalContext(0.8);
+                ctx.x = x;
+                var expected = numeric(fn, x, 0.8, wrt);
+                assertEquals(expected, derivative.eval(ctx), 1e-4 * Math.max(1.0, Math.abs(expected)), expr + " at " + x);
+            }
+        }
+    }
+
+    @Test
+    public void testArithmeticDerivatives() {
+        assertDerivativeMatches("3x^2 - 2x + 1", -3, 3);
+        assertDerivativeMatches("x*t + x/t - t/x", 0.1, 3);
+        assertDerivativeMatches("x^t + 2^x + x^x", 0.1, 3);
+        assertDerivativeMatches("-2.5*e^(-x^2/(2*1.5^2))+1", -3, 3);
+    }
+
+    @Test
+    public void testBuiltinDerivatives() {
+        assertDerivativeMatches("sin(x*t) + cos(2x) + tan(x/3)", -3, 3);
+        assertDerivativeMatches("asin(x/4) + acos(x/5) + atan(x)", -3, 3);
+        assertDerivativeMatches("sinh(x/2) + cosh(x/3) + tanh(x)", -3, 3);
+        assertDerivativeMatches("exp(x/2) + log(x) + log10(x) + sqrt(x) + cbrt(x)", 0.1, 3);
+        assertDerivativeMatches("abs(x - 0.05) + min(x, t) + max(x^2, t) + pow(x, 3)", -3, 3);
+        assertDerivativeMatches("atan2(x, t) + hypot(x, t)", -3, 3);
+    }
+
+    @Test
+    public void testStepFunctionsFallBackToNumericDerivative() {
+        var fn = FunctionParser.parse("floor(x) + round(x) + x", "");
+        var derivative = Derivatives.differentiate(fn, Variable.X);
+        var ctx = new EvalContext(0.0);
+        ctx.x = 0.25;
+        assertEquals(1.0, derivative.eval(ctx), 1e-9);
+        ctx.x = 1.0;
+        assertEquals(1.0 + 1.0 / Derivatives.NUMERIC_STEP, derivative.eval(ctx), 1e-6);
+        assertEquals(true, FunctionCompiler.compile(derivative) != null);
+
+        var opaque = new Function(c -> c.x * c.x, c -> true);
+        ctx.x = 2.0;
+        assertEquals(4.0, Derivatives.differentiate(opaque, Variable.X).eval(ctx), 1e-6);
+    }
+
+    @Test
+    public void testDerivativeIsCachedUntilFunctionChanges() {
+        var graph = new FunctionStorage().addGraph(FunctionParser.parse("x^2", ""));
+        var derivative = graph.getDerivative(Variable.X);
+        assertEquals(true, derivative == graph.getDerivative(Variable.X));
+        assertEquals(true, graph.getDerivative(Variable.T).getFormula().isConstant());
+
+        graph.setFunction(FunctionParser.parse("x^3", ""));
+        var ctx = new EvalContext(0.0);
+        ctx.x = 2.0;
+        assertEquals(12.0, graph.getDerivative(Variable.X).eval(ctx), 1e-9);
+    }
+}
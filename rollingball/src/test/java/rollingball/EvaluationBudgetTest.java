@@ -0,0 +1,51 @@
+package rollingball;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+import rollingball.functions.FunctionParser;
+import rollingball.game.EvaluationBudget;
+
+public class EvaluationBudgetTest {
+    @Test
+    public void testStrideGrowsWhileOverBudget() {
+        var budget = new EvaluationBudget(1000, 8);
+        var fn = FunctionParser.parse("sin(x*t)", "");
+        assertEquals(1, budget.getStride(fn));
+
+        budget.record(fn, 500);
+        assertEquals(1, budget.getStride(fn));
+        for (var i = 0; i < 50; ++i) {
+            budget.record(fn, 3000 / budget.getStride(fn)); // Evaluating every sample costs 3000
+        }
+        assertEquals(4, budget.getStride(fn));
+        assertEquals(false, budget.isOverBudget(fn));
+    }
+
+    @Test
+    public void testStrideShrinksOnceCheapAgain() {
+        var budget = new EvaluationBudget(1000, 8);
+        var fn = FunctionParser.parse("sin(x*t)", "");
+        budget.record(fn, 4000);
+        assertEquals(4, budget.getStride(fn));
+        for (var i = 0; i < 50; ++i) {
+            budget.record(fn, 100 / budget.getStride(fn));
+        }
+        assertEquals(1, budget.getStride(fn));
+    }
+
+    @Test
+    public void testFunctionsOverBudgetAtMaxStrideAreFlagged() {
+        var budget = new EvaluationBudget(1000, 8);
+        var slow = FunctionParser.parse("sin(x*t)", "");
+        var fast = FunctionParser.parse("x", "");
+        for (var i = 0; i < 10; ++i) {
+            budget.record(slow, 100_000 / budget.getStride(slow));
+            budget.record(fast, 10);
+        }
+        assertEquals(8, budget.getStride(slow));
+        assertEquals(true, budget.isOverBudget(slow));
+        assertEquals(false, budget.isOverBudget(fast));
+    }
+}
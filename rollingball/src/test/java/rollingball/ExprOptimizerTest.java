@@ -0,0 +1,95 @@
+package rollingball;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+import rollingball.functions.Arithmetic;
+import rollingball.functions.BuiltinFunctions.Builtin;
+import rollingball.functions.Constant;
+import rollingball.functions.EvalContext;
+import rollingball.functions.Function;
+import rollingball.functions.FunctionCompiler;
+import rollingball.functions.FunctionParser;
+import rollingball.functions.IntPower;
+import rollingball.functions.Operators.ArithmeticOp;
+import rollingball.functions.RegisterProgram;
+import rollingball.functions.UnaryCall;
+import rollingball.functions.Variable;
+
+public class ExprOptimizerTest {
+    private static final double EPSILON = 0.00001;
+
+    private static Function.Expr formula(String expr) {
+        return FunctionParser.parse(expr, "").getFormula();
+    }
+
+    @Test
+    public void testIdentitiesAreRemoved() {
+        assertEquals(Variable.X, formula("x*1"));
+        assertEquals(Variable.X, formula("1*x"));
+        assertEquals(Variable.X, formula("x/1"));
+        assertEquals(Variable.X, formula("x+0"));
+        assertEquals(Variable.X, formula("0+x-0"));
+        assertEquals(Variable.X, formula("x^1"));
+        assertEquals(new Constant(1.0), formula("x^0"));
+    }
+
+    @Test
+    public void testMultiplicationByZeroIsOnlyRemovedWhenNaNSafe() {
+        assertEquals(new Constant(0.0), formula("0*x"));
+        assertEquals(new Constant(0.0), formula("0*sin(x)*t"));
+        assertEquals(false, formula("0*log(x)").isConstant());
+        assertEquals(false, formula("0*(1/x)").isConstant());
+
+        var ctx = new EvalContext(0.0);
+        ctx.x = 0.0;
+        assertEquals(Double.NaN, FunctionParser.parse("0*log(x)", "").eval(ctx));
+    }
+
+    @Test
+    public void testPowersAreStrengthReduced() {
+        assertEquals(new IntPower(Variable.X, 2), formula("x^2"));
+        assertEquals(new IntPower(Variable.X, 3), formula("x*x*x"));
+        assertEquals(new IntPower(Variable.X, 4), formula("pow(x, 4)"));
+        assertEquals(new UnaryCall(Builtin.EXP, Variable.X), formula("e^x"));
+    }
+
+    @Test
+    public void testConstantsAreReassociated() {
+        assertEquals(new Arithmetic(new Constant(6.0), ArithmeticOp.MUL, Variable.X), formula("2*x*3"));
+        assertEquals(new Arithmetic(new Constant(0.25), ArithmeticOp.MUL, Variable.X), formula("x/4"));
+        assertEquals(new Arithmetic(Variable.X, ArithmeticOp.SUB, new Constant(2.0)), formula("1+x-3"));
+        assertEquals(new Arithmetic(new Constant(-3.0), ArithmeticOp.MUL, Variable.X), formula("-(3*x)"));
+    }
+
+    @Test
+    public void testOptimizedFunctionsMatchUnoptimizedValues() {
+        var exprs = new String[] {
+            "x^2 + 2*x*3 - x/4", "e^(x/2) * (x+1-3)", "-(2*x)*x*x / t", "pow(x, 3) + x^4 - 0*cos(x)", "3/(2*x)",
+        };
+        var ctx = new EvalContext(1.5);
+        for (var expr : exprs) {
+            var fn = FunctionParser.parse(expr, "");
+            var compiled = FunctionCompiler.compile(fn);
+            var program = RegisterProgram.compile(fn);
+            for (var x = -3.0; x <= 3.0; x += 0.25) {
+                ctx.x = x;
+                var expected = naive(expr, x, 1.5);
+                assertEquals(expected, fn.eval(ctx), EPSILON * Math.max(1.0, Math.abs(expected)));
+                assertEquals(fn.eval(ctx), compiled.eval(x, 1.5));
+                assertEquals(fn.eval(ctx), program.eval(x, 1.5));
+            }
+        }
+    }
+
+    private static double naive(String expr, double x, double t) {
+        return switch (expr) {
+            case "x^2 + 2*x*3 - x/4" -> Math.pow(x, 2) + 2 * x * 3 - x / 4;
+            case "e^(x/2) * (x+1-3)" -> Math.pow(Math.E, x / 2) * (x + 1 - 3);
+            case "-(2*x)*x*x / t" -> -(2 * x) * x * x / t;
+            case "pow(x, 3) + x^4 - 0*cos(x)" -> Math.pow(x, 3) + Math.pow(x, 4) - 0 * Math.cos(x);
+            default -> 3 / (2 * x);
+        };
+    }
+}
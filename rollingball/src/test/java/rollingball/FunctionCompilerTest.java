@@ -0,0 +1,89 @@
+package rollingball;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.Test;
+
+import rollingball.functions.EvalContext;
+import rollingball.functions.Function;
+import rollingball.functions.FunctionCompiler;
+import rollingball.functions.FunctionParser;
+
+public class FunctionCompilerTest {
+
+    @Test
+    public void testCompiledArithmeticMatchesInterpreter() {
+        assertCompiledMatches("1/3x+1.5", "");
+        assertCompiledMatches("-cos(x/1.2)*2-1.4", "");
+        assertCompiledMatches("-2.5*e^(-x^2/(2*1.5^2))+1+max(0,x/4)", "");
+        assertCompiledMatches("sin(t/2)+max(0,1.7*sin(x/2.15))", "");
+        assertCompiledMatches("4sin(t/2)+sin(t/4)+sin(t/6)", "");
+    }
+
+    @Test
+    public void testCompiledBuiltinsMatchInterpreter() {
+        assertCompiledMatches("sin(x)+cos(x)+tan(x)+asin(x/9)+acos(x/9)+atan(x)", "");
+        assertCompiledMatches("sinh(x/4)+cosh(x/4)+tanh(x)+exp(x/4)+ln(abs(x))+lg(abs(x))", "");
+        assertCompiledMatches("sqrt(abs(x))+cbrt(x)+floor(x)+ceil(x)+round(x)+sign(x)", "");
+        assertCompiledMatches("min(x,t)+max(x,t)+pow(abs(x),t)+atan2(x,t)+hypot(x,t)", "");
+    }
+
+    @Test
+    public void testCompiledConditionsMatchInterpreter() {
+        assertCompiledMatches("x", "0 < x < 5");
+        assertCompiledMatches("x", "0 <= x < t");
+        assertCompiledMatches("x", "1 > x >= -1");
+        assertCompiledMatches("x", "5 >= x > 0");
+        assertCompiledMatches("x", "2 > 3");
+    }
+
+    @Test
+    public void testOpaqueNodesAreNotCompiled() {
+        assertNull(FunctionCompiler.compile(new Function(ctx -> 0.0, ctx -> true)));
+    }
+
+    @Test
+    public void testTieredFunctionCompilesAfterThreshold() {
+        var fn = FunctionParser.parse("x^2+t", "x > 0");
+        var ctx = new EvalContext(1.0);
+        ctx.x = 2.0;
+        for (int i = 0; i < Function.COMPILE_THRESHOLD - 1; ++i) {
+            fn.eval(ctx);
+        }
+        assertEquals(false, fn.isCompiled());
+
+        fn.eval(ctx);
+        assertEquals(true, fn.isCompiled());
+        assertEquals(5.0, fn.eval(ctx));
+        assertEquals(true, fn.canEval(ctx));
+    }
+
+    @Test
+    public void testTreeBackendNeverCompiles() {
+        var fn = FunctionParser.parse("x", "");
+        fn.setBackend(Function.Backend.TREE);
+        var ctx = new EvalContext(0.0);
+        for (int i = 0; i < Function.COMPILE_THRESHOLD * 2; ++i) {
+            fn.eval(ctx);
+        }
+        assertEquals(false, fn.isCompiled());
+    }
+
+    private static void assertCompiledMatches(String formula, String condition) {
+        var fn = FunctionParser.parse(formula, condition);
+        fn.setBackend(Function.Backend.TREE);
+        var compiled = FunctionCompiler.compile(fn);
+        assertNotNull(compiled);
+
+        for (var t = 0.0; t < 3.0; t += 0.7) {
+            var ctx = new EvalContext(t);
+            for (var x = -8.0; x <= 8.0; x += 0.37) {
+                ctx.x = x;
+                assertEquals(fn.eval(ctx), compiled.eval(x, t));
+                assertEquals(fn.canEval(ctx), compiled.canEval(x, t));
+            }
+        }
+    }
+}
@@ -7,6 +7,7 @@ import static org.junit.jupiter.api.Assertions.assertThrowsExactly;
 import org.junit.jupiter.api.Test;
 
 import rollingball.functions.EvalContext;
+import rollingball.functions.ExpressionParser;
 import rollingball.functions.FunctionParser;
 import rollingball.functions.ParserException;
 
@@ -277,4 +278,49 @@ public class FunctionParserTest {
         ctx.x = 5.0;
         assertEquals(true, fn.canEval(ctx));
     }
+
+    @Test
+    public void testConstantsAreFoldedThroughAllNodeKinds() {
+        assertEquals(true, FunctionParser.parse("-2*pi", "").getFormula().isConstant());
+        assertEquals(true, FunctionParser.parse("max(0, 3)", "").getFormula().isConstant());
+        assertEquals(true, FunctionParser.parse("sin(2)+sqrt(pi)", "").getFormula().isConstant());
+        assertEquals(true, FunctionParser.parse("-(-(3-2))", "").getFormula().isConstant());
+        assertEquals(true, FunctionParser.parse("x", "0 < 1 <= 1").getCondition().isConstant());
+        assertEquals(false, FunctionParser.parse("2x", "").getFormula().isConstant());
+        assertEquals(false, FunctionParser.parse("x", "0 < x").getCondition().isConstant());
+
+        assertEquals(-2 * Math.PI, FunctionParser.parse("-2*pi", "").eval(null), EPSILON);
+        assertEquals(Math.sin(2) + Math.sqrt(Math.PI), FunctionParser.parse("sin(2)+sqrt(pi)", "").eval(null), EPSILON);
+    }
+
+    @Test
+    public void testChainedConditionsAreSimplified() {
+        var ctx = new EvalContext(0.0);
+        ctx.x = 3.0;
+        assertEquals(true, FunctionParser.parse("x", "0 < 1 < x").canEval(ctx));
+        assertEquals(true, FunctionParser.parse("x", "0 < x < 4 < 2").getCondition().isConstant());
+        assertEquals(false, FunctionParser.parse("x", "0 < x < 4 < 2").canEval(ctx));
+        assertEquals(true, FunctionParser.parse("x", "2 < 1 < x").getCondition().isConstant());
+    }
+
+    @Test
+    public void testParserCanBeReusedAfterErrors() {
+        var parser = new ExpressionParser();
+        assertThrowsExactly(ParserException.class, () -> parser.parse("(1+(2*".toCharArray(), 0));
+        assertThrowsExactly(ParserException.class, () -> parser.parse("foo(1)".toCharArray(), 0));
+
+        var result = parser.parse("2*(3+max(1,4)*2)-1".toCharArray(), 0);
+        assertEquals(21.0, result.value().eval(null), EPSILON);
+        assertEquals(18, result.nextCharIdx());
+    }
+
+    @Test
+    public void testIdentifiersAreMatchedExactly() {
+        assertEquals(Math.sin(1.0), FunctionParser.parse("SIN(1)", "").eval(null), EPSILON);
+        assertEquals(Math.PI, FunctionParser.parse("PI", "").eval(null), EPSILON);
+        assertThrowsExactly(ParserException.class, () -> FunctionParser.parse("Pi", ""));
+        assertThrowsExactly(ParserException.class, () -> FunctionParser.parse("MAX(1, 2)", ""));
+        assertThrowsExactly(ParserException.class, () -> FunctionParser.parse("sinh2(1)", ""));
+        assertThrowsExactly(ParserException.class, () -> FunctionParser.parse("x", "x <"));
+    }
 }
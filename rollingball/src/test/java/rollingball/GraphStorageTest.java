@@ -10,7 +10,10 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import javafx.scene.paint.Color;
+import rollingball.functions.BuiltinFunctions.Precision;
 import rollingball.functions.Function;
+import rollingball.functions.FunctionParser;
+import rollingball.functions.Variable;
 import rollingball.game.FunctionStorage;
 
 public class GraphStorageTest {
@@ -77,4 +80,16 @@ public class GraphStorageTest {
         assertEquals(graph1, graph1);
         assertEquals(graph2, graph2);
     }
+
+    @Test
+    public void testPreparedFunctionIsCompiledAndDifferentiatedBeforeItIsSet() {
+        var graph = graphs.addGraph(FunctionParser.parse("x", ""));
+        var prepared = graphs.prepare(FunctionParser.parse("sin(x)/2", ""), graph, Precision.STRICT);
+        assertEquals(true, prepared.withPrecision(Precision.STRICT).isCompiled());
+
+        graph.setFunction(prepared);
+        assertEquals(true, graph.geFunction() == prepared);
+        assertEquals(true, graph.getDerivative(Variable.X).withPrecision(Precision.STRICT).isCompiled());
+        assertEquals(true, graph.getTable(Precision.STRICT) != null);
+    }
 }
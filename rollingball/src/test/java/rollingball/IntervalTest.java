@@ -0,0 +1,116 @@
+package rollingball;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import rollingball.functions.EvalContext;
+import rollingball.functions.Function;
+import rollingball.functions.FunctionParser;
+import rollingball.functions.Interval;
+
+public class IntervalTest {
+    private static final String[] EXPRESSIONS = {
+        "3x^2 - 2x + 1", "x*t - x/(t+2)", "sin(x) + cos(3x) * tan(x/4)", "sqrt(x) + log(x) + log10(x^2)",
+        "asin(x/8) + acos(x/8) + atan(x)", "sinh(x/3) - cosh(x/3) + tanh(x)", "exp(-x^2/2) / cbrt(x+9)",
+        "abs(x) + floor(x) - ceil(t) + round(x*t) + sign(x)", "min(x, t) * max(x^3, -t) + pow(abs(x), t)",
+        "atan2(x, t) + hypot(x, t) + x^-2", "2^x - e^(x/4)",
+    };
+
+    @Test
+    public void testBoundsContainEverySample() {
+        var random = new Random(1234);
+        for (var expr : EXPRESSIONS) {
+            var fn = FunctionParser.parse(expr, "");
+            for (var trial = 0; trial < 200; ++trial) {
+                var x = randomInterval(random, 8.0);
+                var t = randomInterval(random, 4.0);
+                var bounds = fn.getFormula().evalInterval(x, t);
+                for (var i = 0; i < 20; ++i) {
+                    var ctx = new EvalContext(sampleIn(random, t));
+                    ctx.x = sampleIn(random, x);
+                    var y = fn.eval(ctx);
+                    assertEquals(true, Double.isNaN(y) || bounds.contains(y),
+                            expr + " = " + y + " at " + ctx.x + ", " + ctx.t + " not in " + bounds);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testConditionNeverHoldsWhenReportedSo() {
+        var random = new Random(4321);
+        var fn = FunctionParser.parse("x", "x^2 < t < sin(x) + 2");
+        for (var trial = 0; trial < 500; ++trial) {
+            var x = randomInterval(random, 8.0);
+            var t = randomInterval(random, 4.0);
+            if (fn.getCondition().evalInterval(x, t) != Interval.Truth.NEVER) {
+                continue;
+            }
+            for (var i = 0; i < 20; ++i) {
+                var ctx = new EvalContext(sampleIn(random, t));
+                ctx.x = sampleIn(random, x);
+                assertEquals(false, fn.canEval(ctx));
+            }
+        }
+    }
+
+    @Test
+    public void testSpecialCases() {
+        var x = new Interval(-1.0, 1.0);
+        var t = Interval.point(0.0);
+        assertEquals(Interval.ENTIRE, FunctionParser.parse("1/x", "").getFormula().evalInterval(x, t));
+        assertEquals(true, FunctionParser.parse("sqrt(x - 2)", "").getFormula().evalInterval(x, t).isEmpty());
+        assertEquals(true, FunctionParser.parse("sin(x)", "").getFormula().evalInterval(Interval.ENTIRE, t).contains(1.0));
+        assertEquals(Interval.Truth.NEVER, FunctionParser.parse("x", "x > 2").getCondition().evalInterval(x, t));
+        assertEquals(Interval.Truth.ALWAYS, FunctionParser.parse("x", "x < 2").getCondition().evalInterval(x, t));
+        assertEquals(Interval.Truth.MAYBE, FunctionParser.parse("x", "x < 0").getCondition().evalInterval(x, t));
+        var opaque = new Function(ctx -> 0.0, ctx -> true);
+        assertEquals(Interval.ENTIRE, opaque.getFormula().evalInterval(x, t));
+    }
+
+    @Test
+    public void testTrigonometricBoundsContainPoints() {
+        var random = new Random(5678);
+        var sin = FunctionParser.parse("sin(x)", "").getFormula();
+        var cos = FunctionParser.parse("cos(x)", "").getFormula();
+        var t = Interval.point(0.0);
+        for (var i = 0; i < 200_000; ++i) {
+            var x = (random.nextDouble() * 2 - 1) * 10.0;
+            assertEquals(true, sin.evalInterval(Interval.point(x), t).contains(Math.sin(x)), "sin at " + x);
+            assertEquals(true, cos.evalInterval(Interval.point(x), t).contains(Math.cos(x)), "cos at " + x);
+        }
+        assertEquals(true, cos.evalInterval(Interval.point(4.617563814065817), t).contains(Math.cos(4.617563814065817)));
+    }
+
+    @Test
+    public void testNaNArgumentsThatBecomeNumbers() {
+        var x = new Interval(-3.0, -1.0);
+        var t = Interval.point(0.0);
+        // round(NaN) and pow(NaN, 0) are numbers, so these graphs exist and must not be culled
+        var round = FunctionParser.parse("round(sqrt(x))", "");
+        assertEquals(0.0, round.eval(-2.0, 0.0));
+        assertEquals(true, round.getFormula().evalInterval(x, t).contains(0.0));
+        var partial = FunctionParser.parse("round(log(x))", "").getFormula();
+        assertEquals(true, partial.evalInterval(new Interval(-1.0, 0.5), t).contains(0.0));
+
+        var pow = FunctionParser.parse("pow(sqrt(x), t)", "");
+        assertEquals(1.0, pow.eval(-2.0, 0.0));
+        assertEquals(true, pow.getFormula().evalInterval(x, t).contains(1.0));
+        assertEquals(true, pow.getFormula().evalInterval(x, Interval.point(2.0)).isEmpty());
+        var power = FunctionParser.parse("sqrt(x)^t", "");
+        assertEquals(true, power.getFormula().evalInterval(x, t).contains(power.eval(-2.0, 0.0)));
+    }
+
+    private static Interval randomInterval(Random random, double range) {
+        var a = (random.nextDouble() * 2 - 1) * range;
+        var width = random.nextInt(4) == 0 ? 0.0 : random.nextDouble() * range;
+        return new Interval(a, a + width);
+    }
+
+    private static double sampleIn(Random random, Interval interval) {
+        return interval.lo() + random.nextDouble() * (interval.hi() - interval.lo());
+    }
+}
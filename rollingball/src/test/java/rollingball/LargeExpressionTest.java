@@ -0,0 +1,109 @@
+package rollingball;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrowsExactly;
+
+import org.junit.jupiter.api.Test;
+
+import rollingball.functions.Function;
+import rollingball.functions.FunctionParser;
+import rollingball.functions.ParserException;
+import rollingball.functions.ParserLimits;
+
+public class LargeExpressionTest {
+    // Small enough that recursing once per nested parenthesis would overflow it
+    private static final long SMALL_STACK = 128 * 1024;
+
+    static String fourierSeries(int terms) {
+        var sb = new StringBuilder("0.5");
+        for (var i = 1; i <= terms; ++i) {
+            sb.append(i % 2 == 0 ? '+' : '-').append("sin(").append(i).append("x+t)/").append(i);
+        }
+        return sb.toString();
+    }
+
+    private static void runWithSmallStack(Runnable task) throws InterruptedException {
+        var failure = new Throwable[1];
+        var thread = new Thread(null, () -> {
+            try {
+                task.run();
+            } catch (Throwable e) {
+                failure[0] = e;
+            }
+        }, "small-stack", SMALL_STACK);
+        thread.start();
+        thread.join();
+        assertEquals(null, failure[0]);
+    }
+
+    @Test
+    public void testLongSeriesAreBalanced() {
+        // About 100k tokens
+        var fn = FunctionParser.parse(fourierSeries(10_000), "", ParserLimits.UNLIMITED);
+        assertEquals(true, fn.getCost().depth() < 64);
+
+        for (var x = -2.0; x <= 2.0; x += 0.25) {
+            var expected = 0.5;
+            for (var i = 1; i <= 10_000; ++i) {
+                expected += (i % 2 == 0 ? 1 : -1) * Math.sin(i * x + 1.0) / i;
+            }
+            assertEquals(expected, fn.eval(x, 1.0), 1e-9);
+        }
+        // Too large for bytecode, so the tiered backend moves to a register program
+        for (var i = 0; i < Function.COMPILE_THRESHOLD; ++i) {
+            fn.eval(0.5, 1.0);
+        }
+        assertEquals(true, fn.isCompiled());
+    }
+
+    @Test
+    public void testShortChainsKeepTheWrittenOrder() {
+        var fn = FunctionParser.parse("x-t+x*t/2-x", "");
+        assertEquals(FunctionParser.parse("((x-t)+(x*t)/2)-x", "").getFormula(), fn.getFormula());
+
+        var sum = new StringBuilder("x");
+        for (var i = 1; i <= 100; ++i) {
+            sum.append(i % 3 == 0 ? "-" : "+").append(i).append("*x*t");
+        }
+        var expected = 0.0;
+        for (var i = 1; i <= 100; ++i) {
+            expected += (i % 3 == 0 ? -i : i) * 6.0;
+        }
+        assertEquals(3.0 + expected, FunctionParser.parse(sum.toString(), "").eval(3.0, 2.0), 1e-9);
+    }
+
+    @Test
+    public void testDeepNestingDoesNotOverflowTheStack() throws InterruptedException {
+        runWithSmallStack(() -> {
+            var parens = "(".repeat(100_000) + "x" + ")".repeat(100_000);
+            assertEquals(3.0, FunctionParser.parse(parens, "", ParserLimits.UNLIMITED).eval(3.0, 0.0));
+
+            // Nesting that the passes would recurse through is rejected rather than overflowing
+            var calls = "sin(".repeat(100_000) + "x" + ")".repeat(100_000);
+            assertThrowsExactly(ParserException.class, () -> FunctionParser.parse(calls, "", ParserLimits.UNLIMITED));
+            var powers = "x^".repeat(100_000) + "x";
+            assertThrowsExactly(ParserException.class, () -> FunctionParser.parse(powers, "", ParserLimits.UNLIMITED));
+            var unclosed = "(".repeat(100_000) + "x";
+            assertThrowsExactly(ParserException.class, () -> FunctionParser.parse(unclosed, "", ParserLimits.UNLIMITED));
+        });
+
+        var nested = "sin(".repeat(ParserLimits.MAX_DEPTH - 1) + "x" + ")".repeat(ParserLimits.MAX_DEPTH - 1);
+        var fn = FunctionParser.parse(nested, "", ParserLimits.UNLIMITED);
+        var expected = 0.5;
+        for (var i = 0; i < ParserLimits.MAX_DEPTH - 1; ++i) {
+            expected = Math.sin(expected);
+        }
+        assertEquals(expected, fn.eval(0.5, 0.0));
+    }
+
+    @Test
+    public void testLongConditions() {
+        var chain = new StringBuilder("-1<x");
+        for (var i = 1; i <= 10_000; ++i) {
+            chain.append('<').append(i);
+        }
+        var fn = FunctionParser.parse("x", chain.toString(), ParserLimits.UNLIMITED);
+        assertEquals(true, fn.canEval(0.5, 0.0));
+        assertEquals(false, fn.canEval(1.5, 0.0));
+    }
+}
@@ -0,0 +1,56 @@
+package rollingball;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import rollingball.functions.FunctionParser;
+import rollingball.game.GameSimulator;
+import rollingball.game.Level;
+import rollingball.game.Level.XY;
+import rollingball.game.LevelBlueprint;
+
+/**
+ * Measures the time per simulation tick for levels with growing numbers of
+ * obstacles, none of them near the ball. Run with <code>mvn test -P benchmark</code>.
+ */
+@Tag("benchmark")
+public class ObstacleGridBenchmarkTest {
+    private static double nanosPerTick(int obstacles) {
+        var level = new Level(LevelBlueprint.LEVEL_1, XY.of(-6, 0), XY.of(6, 4),
+                ObstacleGridTest.spikesOffThePath(obstacles, obstacles));
+        var best = Double.MAX_VALUE;
+        for (var round = 0; round < 5; ++round) {
+            var simulation = new GameSimulator(level, (victory, time) -> { });
+            simulation.addGraph(FunctionParser.parse("1/3x+1.5", ""));
+            simulation.togglePlaying();
+            var ticks = 0;
+            var start = System.nanoTime();
+            while (simulation.isPlaying()) {
+                simulation.update();
+                ++ticks;
+            }
+            best = Math.min(best, (double) (System.nanoTime() - start) / ticks);
+        }
+        return best;
+    }
+
+    @Test
+    public void testTickTimeDoesNotGrowWithLevelSize() {
+        nanosPerTick(100); // Warm up
+
+        double smallest = 0.0;
+        double largest = 0.0;
+        for (var obstacles = 100; obstacles <= 100_000; obstacles *= 10) {
+            var nanos = nanosPerTick(obstacles);
+            System.out.printf("%7d obstacles: %10.0f ns/tick%n", obstacles, nanos);
+            if (smallest == 0.0) {
+                smallest = nanos;
+            }
+            largest = nanos;
+        }
+        // A linear scan would be about a thousand times slower at the largest size
+        assertEquals(true, largest < 3.0 * smallest, "ns/tick grew from " + smallest + " to " + largest);
+    }
+}
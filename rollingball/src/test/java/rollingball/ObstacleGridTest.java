@@ -0,0 +1,88 @@
+package rollingball;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import rollingball.functions.FunctionParser;
+import rollingball.game.GameSimulator;
+import rollingball.game.GameSimulator.DeathCause;
+import rollingball.game.Level;
+import rollingball.game.Level.XY;
+import rollingball.game.LevelBlueprint;
+import rollingball.game.Obstacle;
+import rollingball.game.Obstacles.Spike;
+import rollingball.game.Obstacles.SpikeWheel;
+
+public class ObstacleGridTest {
+    // Solves level 1: the ball rolls from (-6, 0) to (6, 4) along the line
+    private static final String PATH = "1/3x+1.5";
+
+    static List<Obstacle> spikesOffThePath(int count, long seed) {
+        var random = new Random(seed);
+        var obstacles = new ArrayList<Obstacle>();
+        for (var i = 0; i < count; ++i) {
+            obstacles.add(new Spike(random.nextDouble() * 16 - 8, -8 + random.nextDouble() * 5));
+        }
+        return obstacles;
+    }
+
+    static DeathCause play(Level level) {
+        var won = new boolean[1];
+        var simulation = new GameSimulator(level, (victory, time) -> won[0] = victory);
+        simulation.addGraph(FunctionParser.parse(PATH, ""));
+        simulation.togglePlaying();
+        while (simulation.isPlaying()) {
+            simulation.update();
+        }
+        return won[0] ? null : simulation.getDeathCause();
+    }
+
+    private static Level level(List<Obstacle> obstacles) {
+        return new Level(LevelBlueprint.LEVEL_1, XY.of(-6, 0), XY.of(6, 4), obstacles);
+    }
+
+    @Test
+    public void testOnlyObstaclesOnThePathKill() {
+        assertEquals(null, play(level(spikesOffThePath(5000, 1))));
+
+        var obstacles = spikesOffThePath(5000, 2);
+        obstacles.add(new Spike(0.0, 1.5));
+        assertEquals(DeathCause.OBSTACLE, play(level(obstacles)));
+
+        // Far outside the playing field, the grid is stretched to cover it
+        var far = spikesOffThePath(100, 3);
+        far.add(new Spike(1e6, 1e6));
+        far.add(new Spike(3.0, 2.5));
+        assertEquals(DeathCause.OBSTACLE, play(level(far)));
+    }
+
+    @Test
+    public void testWheelsAreFoundByTheirBoundingCircle() {
+        var wheel = new ArrayList<Obstacle>(List.of(new SpikeWheel(0.0, 1.5, 5, 3, 1.0)));
+        assertEquals(DeathCause.OBSTACLE, play(level(wheel)));
+        var below = new ArrayList<Obstacle>(List.of(new SpikeWheel(0.0, -5.0, 5, 3, 1.0)));
+        assertEquals(null, play(level(below)));
+    }
+
+    @Test
+    public void testMovingObstaclesAreTracked() {
+        var obstacles = spikesOffThePath(1000, 4);
+        var moving = new Spike(0.0, -7.0);
+        obstacles.add(moving);
+        var movingIndex = obstacles.size() - 1;
+        var level = new Level(LevelBlueprint.LEVEL_1, XY.of(-6, 0), XY.of(6, 4), obstacles) {
+            @Override
+            public void onUpdate(double timeSeconds, double deltaTime) {
+                // Rises into the path well before the ball gets there
+                moving.setPosition(0.0, Math.min(1.5, -7.0 + 4.0 * timeSeconds));
+                onObstacleMoved(movingIndex);
+            }
+        };
+        assertEquals(DeathCause.OBSTACLE, play(level));
+    }
+}
@@ -0,0 +1,71 @@
+package rollingball;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrowsExactly;
+
+import org.junit.jupiter.api.Test;
+
+import rollingball.functions.EvalContext;
+import rollingball.functions.Function;
+import rollingball.functions.FunctionParser;
+import rollingball.functions.ParserException;
+
+public class ParseCacheTest {
+    @Test
+    public void testInputsDifferingInWhitespaceShareAnEntry() {
+        FunctionParser.clearCache();
+        var first = FunctionParser.parse("x^2 + 1", "x > 0");
+        var second = FunctionParser.parse(" x ^ 2+1 ", "x>0");
+
+        var stats = FunctionParser.getCacheStats();
+        assertEquals(1, stats.misses());
+        assertEquals(1, stats.hits());
+        assertEquals(1, stats.size());
+        assertEquals(true, first != second);
+        assertEquals(true, first.getFormula() == second.getFormula());
+    }
+
+    @Test
+    public void testCachedFunctionsHaveIndependentBackends() {
+        FunctionParser.clearCache();
+        var first = FunctionParser.parse("sin(x)", "");
+        first.setBackend(Function.Backend.REGISTERS);
+        var second = FunctionParser.parse("sin(x)", "");
+        assertEquals(Function.Backend.TIERED, second.getBackend());
+        assertEquals(false, second.isCompiled());
+
+        var ctx = new EvalContext(0.0);
+        ctx.x = 1.0;
+        assertEquals(Math.sin(1.0), second.eval(ctx));
+        assertEquals(first.eval(ctx), second.eval(ctx));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEntryIsEvicted() {
+        FunctionParser.clearCache();
+        FunctionParser.parse("x", "");
+        for (var i = 0; i < FunctionParser.CACHE_CAPACITY; ++i) {
+            FunctionParser.parse("x", ""); // Keep "x" recently used
+            FunctionParser.parse("x + " + i, "");
+        }
+
+        var stats = FunctionParser.getCacheStats();
+        assertEquals(FunctionParser.CACHE_CAPACITY, stats.size());
+        assertEquals(1, stats.evictions());
+
+        var hits = stats.hits();
+        FunctionParser.parse("x", "");
+        assertEquals(hits + 1, FunctionParser.getCacheStats().hits());
+        FunctionParser.parse("x + 0", "");
+        assertEquals(hits + 1, FunctionParser.getCacheStats().hits());
+    }
+
+    @Test
+    public void testErrorsAreNotCached() {
+        FunctionParser.clearCache();
+        assertThrowsExactly(ParserException.class, () -> FunctionParser.parse("1.0+", ""));
+        assertThrowsExactly(ParserException.class, () -> FunctionParser.parse("1.0+", ""));
+        assertEquals(0, FunctionParser.getCacheStats().size());
+        assertEquals(null, FunctionParser.parse("", "x > 0"));
+    }
+}
@@ -0,0 +1,58 @@
+package rollingball;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import rollingball.functions.FunctionParser;
+import rollingball.functions.ParserLimits;
+
+/**
+ * Measures parse time and allocation per input character for Fourier series of
+ * growing length. Run with <code>mvn test -P benchmark</code>.
+ */
+@Tag("benchmark")
+public class ParserBenchmarkTest {
+    private static final int ROUNDS = 5;
+
+    @Test
+    public void testParsingScalesLinearly() {
+        var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        var threadId = Thread.currentThread().getId();
+
+        // Warm up, so that the first size is not measured in the interpreter
+        for (var i = 0; i < 20; ++i) {
+            FunctionParser.clearCache();
+            FunctionParser.parse(LargeExpressionTest.fourierSeries(2000), "", ParserLimits.UNLIMITED);
+        }
+
+        double smallest = 0.0;
+        double largest = 0.0;
+        for (var terms = 1000; terms <= 64_000; terms *= 2) {
+            var input = LargeExpressionTest.fourierSeries(terms);
+            var bestNanos = Long.MAX_VALUE;
+            var bytes = 0L;
+            for (var round = 0; round < ROUNDS; ++round) {
+                FunctionParser.clearCache();
+                var allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+                var start = System.nanoTime();
+                FunctionParser.parse(input, "", ParserLimits.UNLIMITED);
+                bestNanos = Math.min(bestNanos, System.nanoTime() - start);
+                bytes = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+            }
+
+            var nanosPerChar = (double) bestNanos / input.length();
+            System.out.printf("%6d terms, %8d chars: %8.2f ms, %6.1f ns/char, %6.1f bytes/char%n",
+                    terms, input.length(), bestNanos / 1e6, nanosPerChar, (double) bytes / input.length());
+            if (smallest == 0.0) {
+                smallest = nanosPerChar;
+            }
+            largest = nanosPerChar;
+        }
+        // Linear growth keeps the time per character roughly constant; allow for noise
+        assertEquals(true, largest < 4.0 * smallest, "ns/char grew from " + smallest + " to " + largest);
+    }
+}
@@ -0,0 +1,94 @@
+package rollingball;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+import rollingball.functions.BinaryCall;
+import rollingball.functions.BuiltinFunctions.Builtin;
+import rollingball.functions.BuiltinFunctions.Precision;
+import rollingball.functions.Function;
+import rollingball.functions.FunctionCompiler;
+import rollingball.functions.FunctionParser;
+import rollingball.functions.RegisterProgram;
+import rollingball.functions.Variable;
+
+public class PrecisionTest {
+    private static final String EXPRESSION = "sin(x) + cos(3x) * tan(x/5) + atan(x) - atan2(x, t) + exp(x/2)"
+            + " + log(abs(x) + 0.1) + log10(x^2 + 1) + abs(x)^1.7 + pow(2, x)";
+
+    private static void assertClose(double expected, double actual, String message) {
+        if (Double.isNaN(expected)) {
+            assertEquals(expected, actual, message);
+        } else {
+            assertEquals(expected, actual, 1e-9 * Math.max(1.0, Math.abs(expected)), message);
+        }
+    }
+
+    @Test
+    public void testFastBuiltinsAreCloseToMath() {
+        var unary = new Builtin[] { Builtin.SIN, Builtin.COS, Builtin.TAN, Builtin.ATAN, Builtin.EXP,
+            Builtin.LOG, Builtin.LOG10, Builtin.SQRT, Builtin.COSH };
+        for (var fn : unary) {
+            for (var a = -800.0; a <= 800.0; a += 0.0137) {
+                assertClose(fn.apply(a, 0.0), fn.apply(a, 0.0, Precision.FAST), fn + "(" + a + ")");
+            }
+        }
+        for (var a = -20.0; a <= 20.0; a += 0.173) {
+            for (var b = -20.0; b <= 20.0; b += 0.191) {
+                assertClose(Math.pow(a, b), Builtin.POW.apply(a, b, Precision.FAST), "pow(" + a + ", " + b + ")");
+                assertClose(Math.atan2(a, b), Builtin.ATAN2.apply(a, b, Precision.FAST), "atan2(" + a + ", " + b + ")");
+            }
+        }
+        var special = new double[] { 0.0, -0.0, Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY,
+            Double.MIN_VALUE };
+        for (var fn : unary) {
+            for (var a : special) {
+                assertEquals(fn.apply(a, 0.0), fn.apply(a, 0.0, Precision.FAST), fn + "(" + a + ")");
+            }
+            assertClose(fn.apply(1e300, 0.0), fn.apply(1e300, 0.0, Precision.FAST), fn + "(1e300)");
+        }
+    }
+
+    @Test
+    public void testStrictMatchesStrictMathOnEveryBackend() {
+        var fn = FunctionParser.parse("sin(x) * exp(x) + x^1.5", "").withPrecision(Precision.STRICT);
+        var bytecode = FunctionCompiler.compile(fn);
+        var program = RegisterProgram.compile(fn);
+        for (var x = 0.0; x <= 8.0; x += 0.01) {
+            var expected = StrictMath.sin(x) * StrictMath.exp(x) + StrictMath.pow(x, 1.5);
+            assertEquals(expected, fn.eval(x, 0.0));
+            assertEquals(expected, bytecode.eval(x, 0.0));
+            assertEquals(expected, program.eval(x, 0.0));
+        }
+    }
+
+    @Test
+    public void testBackendsAgreeAtEveryPrecision() {
+        for (var precision : Precision.values()) {
+            var fn = FunctionParser.parse(EXPRESSION, "").withPrecision(precision);
+            fn.setBackend(Function.Backend.TREE);
+            var bytecode = FunctionCompiler.compile(fn);
+            var program = RegisterProgram.compile(fn);
+            for (var x = -8.0; x <= 8.0; x += 0.01) {
+                var expected = fn.eval(x, 1.5);
+                assertEquals(expected, bytecode.eval(x, 1.5), precision + " at x=" + x);
+                assertEquals(expected, program.eval(x, 1.5), precision + " at x=" + x);
+            }
+        }
+    }
+
+    @Test
+    public void testVariantsAreCachedAndRewritePowers() {
+        var fn = FunctionParser.parse("x^t", "");
+        var fast = fn.withPrecision(Precision.FAST);
+        assertEquals(fast, fn.withPrecision(Precision.FAST));
+        assertEquals(new BinaryCall(Builtin.POW, Variable.X, Variable.T, Precision.FAST), fast.getFormula());
+
+        fn.setBackend(Function.Backend.REGISTERS);
+        assertEquals(Function.Backend.REGISTERS, fn.withPrecision(Precision.STRICT).getBackend());
+        for (var x = 0.0; x <= 8.0; x += 0.01) {
+            assertClose(fn.eval(x, 1.5), fast.eval(x, 1.5), "x=" + x);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package rollingball;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.Test;
+
+import rollingball.functions.EvalContext;
+import rollingball.functions.Function;
+import rollingball.functions.FunctionParser;
+import rollingball.functions.RegisterProgram;
+
+public class RegisterProgramTest {
+
+    @Test
+    public void testProgramMatchesTree() {
+        assertProgramMatches("1/3x+1.5", "");
+        assertProgramMatches("-2.5*e^(-x^2/(2*1.5^2))+1+max(0,x/4)", "");
+        assertProgramMatches("sin(t/2)+max(0,1.7*sin(x/2.15))", "-3 <= x/2 <= t");
+        assertProgramMatches("sqrt(abs(x))+cbrt(x)+floor(x)+ceil(x)+round(x)+sign(x)", "x > 0");
+        assertProgramMatches("min(x,t)+max(x,t)+pow(abs(x),t)+atan2(x,t)+hypot(x,t)", "1 > x >= -1");
+        assertProgramMatches("-(x-t)", "2 > 3");
+    }
+
+    @Test
+    public void testOpaqueNodesAreNotLowered() {
+        assertNull(RegisterProgram.compile(new Function(ctx -> 0.0, ctx -> true)));
+    }
+
+    @Test
+    public void testRegistersBackendIsSelectable() {
+        var fn = FunctionParser.parse("x*t", "x < 2");
+        fn.setBackend(Function.Backend.REGISTERS);
+        assertEquals(true, fn.isCompiled());
+
+        var ctx = new EvalContext(3.0);
+        ctx.x = 1.0;
+        assertEquals(3.0, fn.eval(ctx));
+        assertEquals(true, fn.canEval(ctx));
+    }
+
+    @Test
+    public void testRegistersBackendFallsBackToTree() {
+        var fn = new Function(ctx -> 1.0, ctx -> true);
+        fn.setBackend(Function.Backend.REGISTERS);
+        assertEquals(false, fn.isCompiled());
+        assertEquals(1.0, fn.eval(null));
+    }
+
+    private static void assertProgramMatches(String formula, String condition) {
+        var fn = FunctionParser.parse(formula, condition);
+        fn.setBackend(Function.Backend.TREE);
+        var program = RegisterProgram.compile(fn);
+        assertNotNull(program);
+
+        for (var t = 0.0; t < 3.0; t += 0.7) {
+            var ctx = new EvalContext(t);
+            for (var x = -8.0; x <= 8.0; x += 0.37) {
+                ctx.x = x;
+                assertEquals(fn.eval(ctx), program.eval(x, t));
+                assertEquals(fn.canEval(ctx), program.canEval(x, t));
+            }
+        }
+    }
+}
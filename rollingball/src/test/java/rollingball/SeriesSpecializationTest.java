@@ -0,0 +1,126 @@
+package rollingball;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+import java.util.function.DoubleUnaryOperator;
+
+import org.junit.jupiter.api.Test;
+
+import rollingball.functions.BuiltinFunctions.Precision;
+import rollingball.functions.Derivatives;
+import rollingball.functions.EvalContext;
+import rollingball.functions.FunctionCompiler;
+import rollingball.functions.FunctionParser;
+import rollingball.functions.HarmonicSeries;
+import rollingball.functions.Interval;
+import rollingball.functions.ParserLimits;
+import rollingball.functions.Polynomial;
+import rollingball.functions.RegisterProgram;
+import rollingball.functions.Variable;
+
+public class SeriesSpecializationTest {
+    private static final String POLYNOMIAL = "1 + 2x - x^3/6 + 3x^2 + x^5/120";
+    private static final String FOURIER = "sin(x) - sin(2x)/2 + sin(3x)/3 - cos(4x)/4 + 0.5cos(x) + 2";
+
+    private static void assertMatches(String expr, DoubleUnaryOperator naive, double from, double to) {
+        var fn = FunctionParser.parse(expr, "");
+        var compiled = FunctionCompiler.compile(fn);
+        var program = RegisterProgram.compile(fn);
+        for (var x = from; x <= to; x += 0.13) {
+            var expected = naive.applyAsDouble(x);
+            var y = fn.eval(x, 0.0);
+            assertEquals(expected, y, 1e-12 * Math.max(1.0, Math.abs(expected)), expr + " at " + x);
+            assertEquals(y, compiled.eval(x, 0.0));
+            assertEquals(y, program.eval(x, 0.0));
+            assertEquals(expected, fn.withPrecision(Precision.STRICT).eval(x, 0.0), 1e-12 * Math.max(1.0, Math.abs(expected)));
+        }
+    }
+
+    @Test
+    public void testPolynomialsUseHornersScheme() {
+        assertEquals(true, FunctionParser.parse(POLYNOMIAL, "").getFormula() instanceof Polynomial);
+        assertMatches(POLYNOMIAL, x -> 1 + 2 * x - Math.pow(x, 3) / 6 + 3 * x * x + Math.pow(x, 5) / 120, -4, 4);
+
+        // Powers too large for IntPower would otherwise call Math.pow
+        assertEquals(true, FunctionParser.parse("x^7 + 1", "").getFormula() instanceof Polynomial);
+        assertMatches("x^7 + 1", x -> Math.pow(x, 7) + 1, -2, 2);
+    }
+
+    @Test
+    public void testHarmonicSumsNeedOneSineAndCosine() {
+        var fn = FunctionParser.parse(FOURIER, "");
+        assertEquals(1, fn.getCost().transcendentalCount());
+        assertMatches(FOURIER, x -> Math.sin(x) - Math.sin(2 * x) / 2 + Math.sin(3 * x) / 3 - Math.cos(4 * x) / 4
+                + 0.5 * Math.cos(x) + 2, -7, 7);
+
+        // Frequencies that are multiples of a non-integer fundamental, and negative ones
+        assertEquals(1, FunctionParser.parse("sin(0.1x) + sin(-0.2x) + cos(0.3x)", "").getCost().transcendentalCount());
+        assertMatches("sin(0.1x) + sin(-0.2x) + cos(0.3x)",
+                x -> Math.sin(0.1 * x) + Math.sin(-0.2 * x) + Math.cos(0.3 * x), -20, 20);
+
+        // Sums of the same angle that depends on t
+        var ctx = new EvalContext(0.7);
+        ctx.x = 1.3;
+        var timed = FunctionParser.parse("sin(x*t) + cos(2x*t) + 3sin(3*x*t)", "");
+        assertEquals(1, timed.getCost().transcendentalCount());
+        assertEquals(Math.sin(0.91) + Math.cos(1.82) + 3 * Math.sin(2.73), timed.eval(ctx), 1e-12);
+    }
+
+    @Test
+    public void testLongSeriesBecomeOneNode() {
+        var sb = new StringBuilder("0");
+        for (var i = 1; i <= 1000; ++i) {
+            sb.append(i % 2 == 0 ? '+' : '-').append("sin(").append(i).append("x)/").append(i);
+        }
+        var fn = FunctionParser.parse(sb.toString(), "", ParserLimits.UNLIMITED);
+        assertEquals(true, fn.getFormula() instanceof HarmonicSeries);
+        for (var x = -3.0; x <= 3.0; x += 0.5) {
+            var expected = 0.0;
+            for (var i = 1; i <= 1000; ++i) {
+                expected += (i % 2 == 0 ? 1 : -1) * Math.sin(i * x) / i;
+            }
+            assertEquals(expected, fn.eval(x, 0.0), 1e-9);
+        }
+    }
+
+    @Test
+    public void testShortOrSparseSumsAreKept() {
+        assertEquals(false, FunctionParser.parse("x^2 + x", "").getFormula() instanceof Polynomial);
+        assertEquals(2, FunctionParser.parse("sin(x) + cos(x)", "").getCost().transcendentalCount());
+        // A series with a thousand harmonics would cost more than the three calls
+        assertEquals(3, FunctionParser.parse("sin(x) + sin(500x) + sin(1000x)", "").getCost().transcendentalCount());
+        // Not multiples of a common frequency
+        assertEquals(3, FunctionParser.parse("sin(x) + sin(sqrt(2)*x) + sin(3x + 1)", "").getCost().transcendentalCount());
+    }
+
+    @Test
+    public void testDerivatives() {
+        for (var expr : new String[] { POLYNOMIAL, FOURIER }) {
+            var fn = FunctionParser.parse(expr, "");
+            var derivative = Derivatives.differentiate(fn, Variable.X);
+            assertEquals(0.0, Derivatives.differentiate(fn, Variable.T).eval(1.0, 0.5));
+            for (var x = -3.0; x <= 3.0; x += 0.37) {
+                var expected = (fn.eval(x + 1e-6, 0.0) - fn.eval(x - 1e-6, 0.0)) / 2e-6;
+                assertEquals(expected, derivative.eval(x, 0.0), 1e-4 * Math.max(1.0, Math.abs(expected)), expr + " at " + x);
+            }
+        }
+    }
+
+    @Test
+    public void testBoundsContainEverySample() {
+        var random = new Random(2024);
+        for (var expr : new String[] { POLYNOMIAL, FOURIER }) {
+            var fn = FunctionParser.parse(expr, "");
+            for (var trial = 0; trial < 200; ++trial) {
+                var a = (random.nextDouble() * 2 - 1) * 8.0;
+                var x = new Interval(a, a + random.nextDouble() * 4.0);
+                var bounds = fn.getFormula().evalInterval(x, Interval.point(0.0));
+                for (var i = 0; i < 20; ++i) {
+                    var sample = x.lo() + random.nextDouble() * (x.hi() - x.lo());
+                    assertEquals(true, bounds.contains(fn.eval(sample, 0.0)), expr + " at " + sample);
+                }
+            }
+        }
+    }
+}
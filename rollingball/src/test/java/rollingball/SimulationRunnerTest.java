@@ -0,0 +1,72 @@
+package rollingball;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import rollingball.functions.FunctionParser;
+import rollingball.game.GameSimulator;
+import rollingball.game.GameSimulator.DeathCause;
+import rollingball.game.LevelBlueprint;
+import rollingball.game.SimulationRunner;
+import rollingball.game.SimulationRunner.Outcome;
+
+public class SimulationRunnerTest {
+    private static SimulationRunner.Result run(SimulationRunner runner, LevelBlueprint level, String... exprs) {
+        return runner.run(level, List.of(exprs).stream().map(e -> FunctionParser.parse(e, "")).toList());
+    }
+
+    @Test
+    public void testModelSolutionWins() {
+        var result = run(new SimulationRunner(), LevelBlueprint.LEVEL_1, "1/3x+1.5");
+        assertEquals(Outcome.VICTORY, result.outcome());
+        assertEquals(null, result.deathCause());
+        assertEquals(true, result.timeSeconds() < 9.0);
+        assertEquals(result.timeSeconds(), (result.ticks() - 1) * GameSimulator.TICK_SECONDS, 1e-9);
+        assertEquals(LevelBlueprint.LEVEL_1.computeScorePercentage(1, result.timeSeconds()), result.score());
+        assertEquals(List.of(), result.trajectory());
+    }
+
+    @Test
+    public void testDeathCauseIsReported() {
+        var result = run(new SimulationRunner(), LevelBlueprint.LEVEL_1, "2x");
+        assertEquals(Outcome.DEATH, result.outcome());
+        assertEquals(DeathCause.BELOW_LEVEL, result.deathCause());
+        assertEquals(0.0, result.score());
+
+        // Too steep to climb, so the ball rolls back off the left edge
+        var backwards = run(new SimulationRunner(), LevelBlueprint.LEVEL_1, "3.5*(x+6)+0.2t");
+        assertEquals(Outcome.DEATH, backwards.outcome());
+        assertEquals(DeathCause.LEFT_OF_LEVEL, backwards.deathCause());
+    }
+
+    @Test
+    public void testTrajectoryIsRecorded() {
+        var runner = new SimulationRunner(SimulationRunner.DEFAULT_MAX_TICKS, SimulationRunner.DEFAULT_MAX_NANOS, true);
+        var result = run(runner, LevelBlueprint.LEVEL_1, "1/3x+1.5");
+        assertEquals(result.ticks(), result.trajectory().size());
+        var start = LevelBlueprint.LEVEL_1.createInstance().getStart();
+        assertEquals(start.x(), result.trajectory().get(0).x());
+        for (var i = 1; i < result.trajectory().size(); ++i) {
+            assertEquals(true, result.trajectory().get(i).x() > result.trajectory().get(i - 1).x());
+        }
+    }
+
+    @Test
+    public void testLimitsEndEveryRun() {
+        var ticks = run(new SimulationRunner(100, SimulationRunner.DEFAULT_MAX_NANOS, false), LevelBlueprint.LEVEL_1,
+                "1/3x+1.5");
+        assertEquals(Outcome.TICK_LIMIT, ticks.outcome());
+        assertEquals(100, ticks.ticks());
+
+        var time = run(new SimulationRunner(SimulationRunner.DEFAULT_MAX_TICKS, 0, false), LevelBlueprint.LEVEL_1,
+                "1/3x+1.5");
+        assertEquals(Outcome.TIME_LIMIT, time.outcome());
+
+        // The ball rocks back and forth in the kink forever
+        var stuck = run(new SimulationRunner(), LevelBlueprint.LEVEL_1, "max(4*(x+6), 0)");
+        assertEquals(Outcome.TICK_LIMIT, stuck.outcome());
+    }
+}
@@ -0,0 +1,80 @@
+package rollingball;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import rollingball.game.GameSimulator.DeathCause;
+import rollingball.game.Level;
+import rollingball.game.Level.XY;
+import rollingball.game.LevelBlueprint;
+import rollingball.game.Obstacles.Spike;
+import rollingball.game.Obstacles.SpikeField;
+
+public class SpikeFieldTest {
+    @Test
+    public void testCollisionsMatchIndividualSpikes() {
+        var random = new Random(7);
+        var xs = new double[1000];
+        var ys = new double[1000];
+        for (var i = 0; i < xs.length; ++i) {
+            xs[i] = random.nextDouble() * 16 - 8;
+            ys[i] = random.nextDouble() * 16 - 8;
+        }
+        var field = new SpikeField(xs, ys, t -> Math.sin(t) * 2.0);
+        for (var trial = 0; trial < 200; ++trial) {
+            var t = random.nextDouble() * 10.0;
+            field.update(t);
+            for (var i = 0; i < 50; ++i) {
+                var x = random.nextDouble() * 18 - 9;
+                var y = random.nextDouble() * 18 - 9;
+                var expected = false;
+                for (var j = 0; j < xs.length; ++j) {
+                    expected |= new Spike(xs[j], ys[j] + Math.sin(t) * 2.0).checkWouldKill(x, y);
+                }
+                assertEquals(expected, field.anyCollides(x, y));
+            }
+            // The bounding circle follows the field
+            for (var j = 0; j < field.size(); ++j) {
+                var dx = field.getXs()[j] - field.getX();
+                var dy = field.getYs()[j] - field.getY();
+                assertEquals(true, Math.hypot(dx, dy) + Spike.RADIUS <= field.getBoundingRadius() + 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void testSpikesInNeighbouringColumnsAreFound() {
+        var field = new SpikeField(new double[] { 1000.0, 0.0, 0.5, -1000.0 }, new double[] { 0.0, 0.0, 3.0, 0.0 });
+        assertEquals(true, field.anyCollides(-0.6, 0.0));
+        assertEquals(true, field.anyCollides(999.4, 0.0));
+        assertEquals(true, field.anyCollides(-1000.6, 0.0));
+        assertEquals(false, field.anyCollides(500.0, 0.0));
+        assertEquals(-1000.0, field.getXs()[0]); // Sorted, with the y coordinates alongside
+        assertEquals(3.0, field.getYs()[2]);
+        assertEquals(false, new SpikeField(new double[0], new double[0]).anyCollides(0.0, 0.0));
+    }
+
+    @Test
+    public void testLargeFieldsInLevels() {
+        var random = new Random(8);
+        var xs = new double[20_000];
+        var ys = new double[20_000];
+        for (var i = 0; i < xs.length; ++i) {
+            xs[i] = random.nextDouble() * 16 - 8;
+            ys[i] = -8 + random.nextDouble() * 5;
+        }
+        var below = new SpikeField(xs, ys);
+        assertEquals(false, below.isAnimated());
+        assertEquals(null, ObstacleGridTest.play(
+                new Level(LevelBlueprint.LEVEL_1, XY.of(-6, 0), XY.of(6, 4), List.of(below))));
+
+        // Rises into the path of the ball
+        var rising = new SpikeField(xs, ys, t -> Math.min(5.0, t));
+        assertEquals(DeathCause.OBSTACLE, ObstacleGridTest.play(
+                new Level(LevelBlueprint.LEVEL_1, XY.of(-6, 0), XY.of(6, 4), List.of(rising))));
+    }
+}
@@ -0,0 +1,58 @@
+package rollingball;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import rollingball.game.Ball;
+import rollingball.game.Obstacles.Spike;
+import rollingball.game.Obstacles.SpikeWheel;
+
+public class SpikeWheelTest {
+    private static boolean anySpikeKills(SpikeWheel wheel, double x, double y) {
+        for (var spike : wheel.getSpikes()) {
+            if (spike.checkWouldKill(x, y)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void testRotatingFrameMatchesTheSpikes() {
+        var random = new Random(99);
+        var wheels = new SpikeWheel[] {
+            new SpikeWheel(0.0, 0.0, 5, 5, -0.8), new SpikeWheel(1.5, -2.0, 3, 12, 2.3),
+            new SpikeWheel(-3.0, 1.0, 16, 2, 0.5), new SpikeWheel(0.0, 0.0, 4, 1, 1.0),
+        };
+        for (var wheel : wheels) {
+            var reach = wheel.getBoundingRadius() + Ball.RADIUS + 0.5;
+            var kills = 0;
+            for (var trial = 0; trial < 20_000; ++trial) {
+                wheel.update(random.nextDouble() * 100.0);
+                var x = wheel.getX() + (random.nextDouble() * 2 - 1) * reach;
+                var y = wheel.getY() + (random.nextDouble() * 2 - 1) * reach;
+                var expected = anySpikeKills(wheel, x, y);
+                assertEquals(expected, wheel.checkWouldKill(x, y), "at " + x + ", " + y);
+                kills += expected ? 1 : 0;
+            }
+            assertEquals(true, kills > 0);
+        }
+    }
+
+    @Test
+    public void testSpikesFollowTheRotation() {
+        var wheel = new SpikeWheel(1.0, 2.0, 4, 3, 0.5);
+        wheel.update(Math.PI); // A quarter turn
+        var spikes = wheel.getSpikes();
+        assertEquals(4 * 2 + 1, spikes.size());
+        assertEquals(1.0, spikes.get(0).getX());
+        assertEquals(2.0, spikes.get(0).getY());
+        // The first spoke started along the x axis, and now points up
+        assertEquals(1.0, spikes.get(2).getX(), 1e-12);
+        assertEquals(4.0, spikes.get(2).getY(), 1e-12);
+        assertEquals(true, spikes.get(2).checkWouldKill(1.0, 4.0 + Spike.RADIUS));
+    }
+}
@@ -0,0 +1,83 @@
+package rollingball;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+import rollingball.functions.BuiltinFunctions.Precision;
+import rollingball.functions.Derivatives;
+import rollingball.functions.FunctionParser;
+import rollingball.functions.TabulatedFunction;
+import rollingball.functions.Variable;
+import rollingball.game.FunctionStorage;
+
+public class TabulatedFunctionTest {
+    private static TabulatedFunction tabulate(String expression, double maxError) {
+        var fn = FunctionParser.parse(expression, "");
+        return TabulatedFunction.build(fn, Derivatives.differentiate(fn, Variable.X), -8.0, 8.0, maxError);
+    }
+
+    @Test
+    public void testSmoothFunctionsAreWithinTheBound() {
+        var expressions = new String[] { "sin(3x) + x^2/4", "-2.5*e^(-x^2/(2*1.5^2))+1", "sqrt(x^2 + 1)" };
+        for (var expression : expressions) {
+            var table = tabulate(expression, 1e-9);
+            assertEquals(0, table.getExactCellCount(), expression);
+            var fn = FunctionParser.parse(expression, "");
+            for (var x = -8.0; x < 8.0; x += 0.0013) {
+                var expected = fn.eval(x, 0.0);
+                assertEquals(expected, table.eval(x), 1e-9 * Math.max(1.0, Math.abs(expected)), expression);
+            }
+        }
+    }
+
+    @Test
+    public void testLooserBoundUsesFewerCells() {
+        assertEquals(true, tabulate("sin(5x)", 1e-4).getCellCount() < tabulate("sin(5x)", 1e-10).getCellCount());
+    }
+
+    @Test
+    public void testNarrowFeaturesBetweenProbesAreMissed() {
+        // The coarsest table has cells 1/16 wide, probed every 1/64. The spike is centered
+        // 1/128 past a cell boundary and is far too narrow to show at any sample point,
+        // so the table is accepted with an error a million times the bound.
+        var expression = "x + 0.001*e^(-((x - 1.0078125)/0.0001)^2)";
+        var fn = FunctionParser.parse(expression, "");
+        var table = tabulate(expression, 1e-9);
+        assertEquals(0, table.getExactCellCount());
+        assertEquals(true, table.getCellCount() < TabulatedFunction.MAX_CELLS);
+
+        var expected = fn.eval(1.0078125, 0.0);
+        assertEquals(1.0088125, expected, 1e-12);
+        assertEquals(true, Math.abs(table.eval(1.0078125) - expected) > 1e-9 * Math.max(1.0, Math.abs(expected)));
+    }
+
+    @Test
+    public void testDiscontinuitiesAreEvaluatedExactly() {
+        var fn = FunctionParser.parse("floor(x) + 1/(x - 0.3)", "");
+        var table = tabulate("floor(x) + 1/(x - 0.3)", 1e-9);
+        assertEquals(true, table.getExactCellCount() > 0);
+        for (var x = -8.0; x < 8.0; x += 0.0017) {
+            var expected = fn.eval(x, 0.0);
+            assertEquals(expected, table.eval(x), 1e-9 * Math.max(1.0, Math.abs(expected)), "x=" + x);
+        }
+        assertEquals(fn.eval(9.5, 0.0), table.eval(9.5));
+    }
+
+    @Test
+    public void testTimeDependentFunctionsAreNotTabulated() {
+        assertEquals(null, tabulate("sin(x + t)", 1e-9));
+
+        var storage = new FunctionStorage();
+        var graph = storage.addGraph(FunctionParser.parse("x^2", ""));
+        var table = graph.getTable(Precision.DEFAULT);
+        assertEquals(true, table != null);
+        assertEquals(table, graph.getTable(Precision.DEFAULT));
+        assertEquals(4.0, table.eval(2.0), 1e-9);
+
+        graph.setFunction(FunctionParser.parse("x*t", ""));
+        assertEquals(null, graph.getTable(Precision.DEFAULT));
+        graph.setFunction(FunctionParser.parse("3x", ""));
+        assertEquals(6.0, graph.getTable(Precision.DEFAULT).eval(2.0), 1e-9);
+    }
+}
@@ -0,0 +1,98 @@
+package rollingball;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import rollingball.functions.Arithmetic;
+import rollingball.functions.CommonSubexpressions;
+import rollingball.functions.EvalContext;
+import rollingball.functions.Function;
+import rollingball.functions.FunctionCompiler;
+import rollingball.functions.FunctionParser;
+import rollingball.functions.Hoisted;
+import rollingball.functions.Operators.ArithmeticOp;
+import rollingball.functions.RegisterProgram;
+import rollingball.functions.TimeInvariance;
+import rollingball.functions.UnaryCall;
+import rollingball.functions.Variable;
+
+public class TimeInvarianceTest {
+    @Test
+    public void testDependenciesAreClassified() {
+        var fn = FunctionParser.parse("sin(t/2)+max(0,1.7*sin(x/2.15))", "t < 3");
+        assertEquals(true, TimeInvariance.exprDependsOn(fn.getFormula(), Variable.X));
+        assertEquals(true, TimeInvariance.exprDependsOn(fn.getFormula(), Variable.T));
+        assertEquals(false, TimeInvariance.conditionDependsOn(fn.getCondition(), Variable.X));
+        assertEquals(true, TimeInvariance.conditionDependsOn(fn.getCondition(), Variable.T));
+
+        assertEquals(true, FunctionParser.parse("x^2/3 + cos(x)", "x > 0").isTimeInvariant());
+        assertEquals(false, FunctionParser.parse("x^2/3 + cos(x)", "x > t").isTimeInvariant());
+        assertEquals(false, FunctionParser.parse("x + t", "").isTimeInvariant());
+    }
+
+    @Test
+    public void testLargestTimeOnlySubtreeIsHoisted() {
+        var formula = (Arithmetic) FunctionParser.parse("sin(t/2)+max(0,1.7*sin(x/2.15))", "").getFormula();
+        var hoisted = (Hoisted) formula.lhs();
+        assertEquals(true, hoisted.expr() instanceof UnaryCall);
+        assertEquals(false, formula.rhs() instanceof Hoisted);
+    }
+
+    @Test
+    public void testHoistedSubtreeIsEvaluatedOncePerTime() {
+        var calls = new int[1];
+        Function.Expr counted = ctx -> {
+            calls[0]++;
+            return ctx.t;
+        };
+        var hoisted = new Hoisted(counted);
+        var fn = new Function(new Arithmetic(hoisted, ArithmeticOp.ADD, Variable.X), ctx -> true);
+
+        var ctx = new EvalContext(2.0);
+        for (var x = 0.0; x < 10.0; x += 1.0) {
+            assertEquals(x + 2.0, fn.evalAt(x, ctx));
+        }
+        assertEquals(1, calls[0]);
+
+        var xs = new double[] { 1.0, 2.0, 3.0 };
+        var ys = new double[xs.length];
+        fn.evalBatch(xs, 3.0, ys, new boolean[xs.length]);
+        assertEquals(4.0, ys[0]);
+        assertEquals(6.0, ys[2]);
+        assertEquals(2, calls[0]);
+    }
+
+    @Test
+    public void testHoistedNodesAreSharedBetweenFunctions() {
+        var fns = TimeInvariance.hoist(CommonSubexpressions.share(List.of(
+                FunctionParser.parse("x + 4sin(t/2)", ""),
+                FunctionParser.parse("2x + 4sin(t/2)", ""))));
+        var first = ((Arithmetic) fns.get(0).getFormula()).rhs();
+        var second = ((Arithmetic) fns.get(1).getFormula()).rhs();
+        assertEquals(true, first instanceof Hoisted);
+        assertEquals(true, first == second);
+    }
+
+    @Test
+    public void testHoistedFunctionsCompileToSameValues() {
+        var exprs = new String[] { "sin(t/2)+max(0,1.7*sin(x/2.15))", "x*cos(t)^2 - t/3", "(t+1)*(x+t+1)" };
+        for (var expr : exprs) {
+            var fn = FunctionParser.parse(expr, "x < 2sin(t)");
+            var compiled = FunctionCompiler.compile(fn);
+            var program = RegisterProgram.compile(fn);
+            for (var t = 0.0; t < 2.0; t += 0.25) {
+                var ctx = new EvalContext(t);
+                for (var x = -4.0; x <= 4.0; x += 0.5) {
+                    ctx.x = x;
+                    assertEquals(fn.eval(ctx), compiled.eval(x, t));
+                    assertEquals(fn.eval(ctx), program.eval(x, t));
+                    assertEquals(fn.canEval(ctx), compiled.canEval(x, t));
+                    assertEquals(fn.canEval(ctx), program.canEval(x, t));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package rollingball;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+import rollingball.functions.EvalContext;
+import rollingball.functions.FunctionParser;
+import rollingball.functions.XIntervals;
+
+public class XIntervalsTest {
+    @Test
+    public void testLinearConditionsAreCompiled() {
+        var spans = XIntervals.compile(FunctionParser.parse("x", "0 < x < 1").getCondition()).spansAt(0.0);
+        assertEquals(1, spans.size());
+        assertEquals(Math.nextUp(0.0), spans.getLo(0));
+        assertEquals(Math.nextDown(1.0), spans.getHi(0));
+
+        var moving = XIntervals.compile(FunctionParser.parse("x", "-3 <= x/2 <= t").getCondition());
+        assertEquals(-6.0, moving.spansAt(2.0).getLo(0));
+        assertEquals(4.0, moving.spansAt(2.0).getHi(0));
+        assertEquals(0, moving.spansAt(-4.0).size());
+    }
+
+    @Test
+    public void testAbsoluteValuesSplitIntoTwoIntervals() {
+        var spans = XIntervals.compile(FunctionParser.parse("x", "abs(x - 1) >= 2").getCondition()).spansAt(0.0);
+        assertEquals(2, spans.size());
+        assertEquals(-1.0, spans.getHi(0), 1e-12);
+        assertEquals(3.0, spans.getLo(1), 1e-12);
+        assertEquals(true, spans.contains(-5.0));
+        assertEquals(false, spans.contains(0.0));
+        assertEquals(true, spans.intersects(-2.0, 0.0));
+        assertEquals(false, spans.intersects(-0.5, 2.5));
+        assertEquals(true, spans.covers(-5.0, -1.0));
+        assertEquals(false, spans.covers(-2.0, 0.0)); // The gap can hide a cut-off graph
+        assertEquals(false, spans.covers(-2.0, 4.0));
+    }
+
+    @Test
+    public void testUnsupportedConditionsAreNotCompiled() {
+        assertEquals(null, XIntervals.compile(FunctionParser.parse("x", "x^2 < 1").getCondition()));
+        assertEquals(null, XIntervals.compile(FunctionParser.parse("x", "sin(x) < 0.5").getCondition()));
+        assertEquals(null, XIntervals.compile(FunctionParser.parse("x", "t < 1").getCondition()));
+        assertEquals(null, XIntervals.compile(FunctionParser.parse("x", "0 < x < 1/x").getCondition()));
+    }
+
+    @Test
+    public void testSpansAgreeWithCondition() {
+        var conditions = new String[] {
+            "0 < x < 1", "x/3 < 1", "-3 <= x/2 <= t", "2 - x > t*x", "0.1 < 0.3x + 0.7 <= 0.2t",
+            "abs(x/3 - t) < 0.7", "abs(2x + 1) > t", "-x >= -0.3", "x*t < 1 < 3",
+        };
+        for (var source : conditions) {
+            var fn = FunctionParser.parse("x", source);
+            for (var t = -1.0; t <= 2.0; t += 0.25) {
+                assertEquals(true, fn.getXSpans(t) != null, source);
+                var ctx = new EvalContext(t);
+                for (var x = -8.0; x <= 8.0; x += 0.01) {
+                    ctx.x = x;
+                    assertEquals(fn.getCondition().eval(ctx), fn.canEval(ctx), source + " at x=" + x + ", t=" + t);
+                }
+            }
+        }
+    }
+}